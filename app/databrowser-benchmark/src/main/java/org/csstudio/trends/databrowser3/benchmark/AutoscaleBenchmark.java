@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.benchmark;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.csstudio.javafx.rtplot.LineStyle;
+import org.csstudio.javafx.rtplot.PointType;
+import org.csstudio.javafx.rtplot.TraceType;
+import org.csstudio.javafx.rtplot.internal.Plot;
+import org.csstudio.javafx.rtplot.internal.PlotProcessor;
+import org.csstudio.javafx.rtplot.internal.TraceImpl;
+import org.csstudio.javafx.rtplot.internal.YAxisImpl;
+import org.csstudio.trends.databrowser3.model.PVItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.paint.Color;
+
+/** Benchmark for {@link PlotProcessor#autoscale()}
+ *
+ *  <p>Determines the value range of several traces
+ *  for a time range that shows half of their samples.
+ *  The plot is not displayed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@SuppressWarnings("nls")
+public class AutoscaleBenchmark
+{
+    /** Number of samples per trace */
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    /** Number of traces */
+    @Param({ "1", "10" })
+    public int traces;
+
+    private PlotProcessor<Instant> processor;
+
+    @Setup
+    public void setup()
+    {
+        final Plot<Instant> plot = new Plot<>(Instant.class, false);
+        plot.getXAxis().setValueRange(SyntheticData.time(size / 4), SyntheticData.time(3 * size / 4));
+        final YAxisImpl<Instant> y_axis = plot.getYAxes().get(0);
+        y_axis.setAutoscale(true);
+        for (int i=0; i<traces; ++i)
+        {
+            final PVItem item = SyntheticData.createItem("trace" + i, size, true);
+            plot.addTrace(new TraceImpl<>(item.getName(), "", item.getSamples(), Color.BLUE,
+                                          TraceType.AREA, 2, LineStyle.SOLID, PointType.NONE, 5, 0));
+        }
+        processor = new PlotProcessor<>(plot);
+    }
+
+    @Benchmark
+    public void autoscale()
+    {
+        processor.autoscale();
+    }
+}
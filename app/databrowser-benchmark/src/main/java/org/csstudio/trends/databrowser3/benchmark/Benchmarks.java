@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Run the benchmarks
+ *
+ *  <p>Accepts the JMH command line options.
+ *  Unless specified otherwise, results are written as JSON
+ *  to <code>jmh-result.json</code> so they can be compared between builds.
+ */
+@SuppressWarnings("nls")
+public class Benchmarks
+{
+    public static void main(final String[] args) throws Exception
+    {
+        final CommandLineOptions cmd = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (! cmd.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (! cmd.getResult().hasValue())
+            options.result("jmh-result.json");
+        new Runner(options.build()).run();
+    }
+}
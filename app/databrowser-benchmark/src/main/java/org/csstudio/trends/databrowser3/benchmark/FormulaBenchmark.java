@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.csstudio.trends.databrowser3.model.FormulaInput;
+import org.csstudio.trends.databrowser3.model.FormulaItem;
+import org.csstudio.trends.databrowser3.model.PVItem;
+import org.epics.vtype.VType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark for the computation of a {@link FormulaItem}
+ *
+ *  <p>Computes a formula over all samples of two inputs,
+ *  and re-evaluates it after each input received a new live sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@SuppressWarnings("nls")
+public class FormulaBenchmark
+{
+    /** Number of archived samples per input */
+    @Param({ "10000", "100000" })
+    public int size;
+
+    private FormulaInput[] inputs;
+    private PVItem a, b;
+    private FormulaItem formula;
+    private long next;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        a = SyntheticData.createItem("a", size, false);
+        b = SyntheticData.createItem("b", size, false);
+        inputs = new FormulaInput[] { new FormulaInput(a, "a"), new FormulaInput(b, "b") };
+        formula = new FormulaItem("f", "a + 2*b", inputs);
+        next = size;
+    }
+
+    /** Compute formula from scratch */
+    @Benchmark
+    public FormulaItem computeAll() throws Exception
+    {
+        return new FormulaItem("f", "a + 2*b", inputs);
+    }
+
+    /** Add one new sample to each input, then re-evaluate */
+    @Benchmark
+    public boolean reevaluateLive() throws Exception
+    {
+        final VType value = SyntheticData.values(next, 1, next).get(0);
+        ++next;
+        a.getSamples().addLiveSample(value);
+        b.getSamples().addLiveSample(value);
+        return formula.reevaluate();
+    }
+}
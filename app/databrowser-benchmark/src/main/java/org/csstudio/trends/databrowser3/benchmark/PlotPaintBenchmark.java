@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.csstudio.javafx.rtplot.LineStyle;
+import org.csstudio.javafx.rtplot.PointType;
+import org.csstudio.javafx.rtplot.TraceType;
+import org.csstudio.javafx.rtplot.internal.PlotPart;
+import org.csstudio.javafx.rtplot.internal.PlotPartListener;
+import org.csstudio.javafx.rtplot.internal.TraceImpl;
+import org.csstudio.javafx.rtplot.internal.TracePainter;
+import org.csstudio.javafx.rtplot.internal.YAxisImpl;
+import org.csstudio.javafx.rtplot.internal.util.TimeScreenTransform;
+import org.csstudio.trends.databrowser3.model.PVItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.paint.Color;
+
+/** Benchmark for {@link TracePainter} painting the samples of a PV
+ *
+ *  <p>Paints into an off-screen image, no display required.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@SuppressWarnings("nls")
+public class PlotPaintBenchmark
+{
+    private static final int WIDTH = 1000, HEIGHT = 600;
+
+    /** Number of samples */
+    @Param({ "100000", "1000000", "10000000" })
+    public int size;
+
+    /** Trace type */
+    @Param({ "AREA", "LINES", "SINGLE_LINE" })
+    public TraceType type;
+
+    /** Use samples with min/max/average? */
+    @Param({ "true" })
+    public boolean statistics;
+
+    private final PlotPartListener listener = new PlotPartListener()
+    {
+        @Override
+        public void layoutPlotPart(final PlotPart plotPart)
+        {
+        }
+
+        @Override
+        public void refreshPlotPart(final PlotPart plotPart)
+        {
+        }
+    };
+
+    private BufferedImage image;
+    private Graphics2D gc;
+    private final Rectangle bounds = new Rectangle(0, 0, WIDTH, HEIGHT);
+    private final TimeScreenTransform x_transform = new TimeScreenTransform();
+    private YAxisImpl<Instant> y_axis;
+    private TraceImpl<Instant> trace;
+    private final TracePainter<Instant> painter = new TracePainter<>();
+
+    @Setup
+    public void setup()
+    {
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        gc = image.createGraphics();
+
+        final PVItem item = SyntheticData.createItem("paint", size, statistics);
+        x_transform.config(SyntheticData.time(0), SyntheticData.time(size), 0, WIDTH);
+        y_axis = new YAxisImpl<>("Value", listener);
+        y_axis.setBounds(0, 0, 50, HEIGHT);
+        y_axis.setValueRange(-2.0, 2.0);
+        trace = new TraceImpl<>("paint", "", item.getSamples(), Color.BLUE,
+                                type, 2, LineStyle.SOLID, PointType.NONE, 5, 0);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        gc.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint()
+    {
+        painter.paint(gc, bounds, 50, x_transform, y_axis, trace);
+        return image;
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.csstudio.trends.databrowser3.model.PlotSampleColumns;
+import org.csstudio.trends.databrowser3.model.PlotSampleMerger;
+import org.csstudio.trends.databrowser3.model.PlotSampleRope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark for {@link PlotSampleMerger}
+ *
+ *  <p>Merges newly received archive data into existing samples,
+ *  where the new data overlaps the second half of the existing samples,
+ *  or is appended after them.
+ *  Compares copying into new columns with splicing into a rope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@SuppressWarnings("nls")
+public class PlotSampleMergerBenchmark
+{
+    /** Number of existing samples */
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    private PlotSampleColumns old, overlapping, appended, middle;
+    private PlotSampleRope rope;
+
+    @Setup
+    public void setup()
+    {
+        old = PlotSampleColumns.of("old", SyntheticData.values(0, size, 1));
+        overlapping = PlotSampleColumns.of("new", SyntheticData.values(size / 2, size, 2));
+        appended = PlotSampleColumns.of("new", SyntheticData.values(size, size / 10, 3));
+        middle = PlotSampleColumns.of("new", SyntheticData.values(size / 4, size / 2, 4));
+        rope = PlotSampleRope.of(old);
+    }
+
+    @Benchmark
+    public PlotSampleColumns mergeOverlapping()
+    {
+        return PlotSampleMerger.merge(old, overlapping);
+    }
+
+    @Benchmark
+    public PlotSampleColumns mergeAppended()
+    {
+        return PlotSampleMerger.merge(old, appended);
+    }
+
+    @Benchmark
+    public PlotSampleColumns mergeMiddle()
+    {
+        return PlotSampleMerger.merge(old, middle);
+    }
+
+    @Benchmark
+    public PlotSampleRope spliceOverlapping()
+    {
+        return PlotSampleMerger.merge(rope, overlapping);
+    }
+
+    @Benchmark
+    public PlotSampleRope spliceAppended()
+    {
+        return PlotSampleMerger.merge(rope, appended);
+    }
+
+    @Benchmark
+    public PlotSampleRope spliceMiddle()
+    {
+        return PlotSampleMerger.merge(rope, middle);
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.benchmark;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.csstudio.trends.databrowser3.model.PVItem;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VType;
+
+/** Synthetic samples for benchmarks
+ *
+ *  <p>Values are a noisy sine wave.
+ *  A fixed random seed results in the same samples for each run.
+ */
+public class SyntheticData
+{
+    /** Start time of all samples */
+    public static final Instant START = Instant.ofEpochSecond(1700000000L);
+
+    /** Period between samples in milliseconds */
+    public static final long PERIOD_MS = 100;
+
+    /** @param index Sample index
+     *  @return Time stamp of that sample
+     */
+    public static Instant time(final long index)
+    {
+        return START.plusMillis(index * PERIOD_MS);
+    }
+
+    /** @param first Index of first sample
+     *  @param count Number of samples
+     *  @param seed Random seed
+     *  @return Samples with values
+     */
+    public static List<VType> values(final long first, final int count, final long seed)
+    {
+        final Random random = new Random(seed);
+        final List<VType> samples = new ArrayList<>(count);
+        for (int i=0; i<count; ++i)
+        {
+            final long index = first + i;
+            final double value = Math.sin(index * 0.001) + random.nextGaussian() * 0.1;
+            samples.add(VDouble.of(value, Alarm.none(), Time.of(time(index)), Display.none()));
+        }
+        return samples;
+    }
+
+    /** @param first Index of first sample
+     *  @param count Number of samples
+     *  @param seed Random seed
+     *  @return Samples with min/max/average, as returned by 'optimized' archive requests
+     */
+    public static List<VType> statistics(final long first, final int count, final long seed)
+    {
+        final Random random = new Random(seed);
+        final List<VType> samples = new ArrayList<>(count);
+        for (int i=0; i<count; ++i)
+        {
+            final long index = first + i;
+            final double value = Math.sin(index * 0.001);
+            final double spread = 0.1 + random.nextDouble() * 0.2;
+            samples.add(VStatistics.of(value, spread / 2, value - spread, value + spread, 10,
+                                       Alarm.none(), Time.of(time(index)), Display.none()));
+        }
+        return samples;
+    }
+
+    /** @param name Name of PV item
+     *  @param count Number of archived samples
+     *  @param statistics Use statistics or plain values?
+     *  @return PV item with archived samples
+     */
+    public static PVItem createItem(final String name, final int count, final boolean statistics)
+    {
+        final PVItem item = new PVItem(name, 0.0);
+        final List<VType> samples = statistics ? statistics(0, count, name.hashCode())
+                                               : values(0, count, name.hashCode());
+        item.getSamples().mergeArchivedData("Benchmark", samples);
+        return item;
+    }
+}
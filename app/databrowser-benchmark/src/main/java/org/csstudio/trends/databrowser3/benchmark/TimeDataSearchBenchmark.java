@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.benchmark;
+
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.csstudio.javafx.rtplot.data.TimeDataSearch;
+import org.csstudio.trends.databrowser3.model.PVItem;
+import org.csstudio.trends.databrowser3.model.PVSamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark for {@link TimeDataSearch} on the samples of a PV
+ *
+ *  <p>Searches for the sample closest to random times,
+ *  as done for the cursor and to find the visible samples.
+ *  Thread scope, because the thread that runs the benchmark
+ *  holds the lock on the samples.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@SuppressWarnings("nls")
+public class TimeDataSearchBenchmark
+{
+    /** Number of samples */
+    @Param({ "100000", "1000000", "10000000" })
+    public int size;
+
+    private final TimeDataSearch search = new TimeDataSearch();
+    private PVSamples samples;
+    private Instant[] times;
+    private int next = 0;
+
+    @Setup
+    public void setup()
+    {
+        final PVItem item = SyntheticData.createItem("search", size, false);
+        samples = item.getSamples();
+        final Random random = new Random(42);
+        times = new Instant[1024];
+        for (int i=0; i<times.length; ++i)
+            times[i] = SyntheticData.time(random.nextInt(size)).plusMillis(SyntheticData.PERIOD_MS / 3);
+        samples.getLock().lock();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        samples.getLock().unlock();
+    }
+
+    @Benchmark
+    public int findClosestSample()
+    {
+        next = (next + 1) % times.length;
+        return search.findClosestSample(samples, times[next]);
+    }
+
+    @Benchmark
+    public int findSampleLessOrEqual()
+    {
+        next = (next + 1) % times.length;
+        return search.findSampleLessOrEqual(samples, times[next]);
+    }
+}
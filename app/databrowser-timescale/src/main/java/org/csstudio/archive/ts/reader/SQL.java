@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2021-2022 Oak Ridge National Laboratory.
+ * Copyright (c) 2021-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * which accompanies this distribution, and is available at
  * are made available under the terms of the Eclipse Public License v1.0
@@ -48,4 +48,25 @@ public class SQL
                                                      "   WHERE channel_id=?" +
                                                      "     AND smpl_time BETWEEN ? AND ?" +
                                                      "   ORDER BY smpl_time, nanosecs";
+
+    /** Find samples for array of channel IDs between start and end time,
+     *  including the sample at-or-before the start time for each channel.
+     *  Parameters: channel IDs, start, start, end
+     */
+    public final String sample_sel_by_ids_start_end = "SELECT s.smpl_time, s.severity_id, s.status_id, s.num_val, s.float_val, s.str_val, s.nanosecs, s.datatype, s.array_val, s.channel_id" +
+                                                      "   FROM unnest(?::INT[]) AS c(channel_id)" +
+                                                      "   LEFT JOIN LATERAL (SELECT smpl_time FROM " + prefix + "sample" +
+                                                      "                      WHERE channel_id=c.channel_id AND smpl_time<=?" +
+                                                      "                      ORDER BY smpl_time DESC LIMIT 1) i ON TRUE" +
+                                                      "   JOIN " + prefix + "sample s ON s.channel_id=c.channel_id" +
+                                                      "     AND s.smpl_time BETWEEN COALESCE(i.smpl_time, ?) AND ?" +
+                                                      "   ORDER BY s.channel_id, s.smpl_time, s.nanosecs";
+
+    /** Optimized samples for array of channel IDs.
+     *  Parameters: channel IDs, start, end, bucket count
+     */
+    public final String sample_sel_optimized_by_ids = "SELECT o.bucket, o.severity_id, o.status_id, o.min, o.max, o.avg, o.num_val, o.str_val, o.n, c.channel_id" +
+                                                      "   FROM unnest(?::INT[]) WITH ORDINALITY AS c(channel_id, nr)" +
+                                                      "   CROSS JOIN LATERAL auto_optimize(c.channel_id, ?::TIMESTAMPTZ, ?::TIMESTAMPTZ, ?) AS o" +
+                                                      "   ORDER BY c.nr, o.bucket";
 }
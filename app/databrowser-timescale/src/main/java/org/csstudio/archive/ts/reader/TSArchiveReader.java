@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2021-2022 Oak Ridge National Laboratory.
+ * Copyright (c) 2021-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * which accompanies this distribution, and is available at
  * are made available under the terms of the Eclipse Public License v1.0
@@ -17,7 +17,13 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
@@ -34,6 +40,7 @@ import org.epics.vtype.VStatistics;
 import org.epics.vtype.VString;
 import org.epics.vtype.VType;
 import org.phoebus.archive.reader.ArchiveReader;
+import org.phoebus.archive.reader.LazyValueIterator;
 import org.phoebus.archive.reader.UnknownChannelException;
 import org.phoebus.archive.reader.ValueIterator;
 import org.phoebus.framework.rdb.RDBConnectionPool;
@@ -65,6 +72,11 @@ public class TSArchiveReader implements ArchiveReader
     /** Map of status IDs to Status strings */
     private static final ConcurrentHashMap<Integer, String> stati = new ConcurrentHashMap<>();
 
+    /** Maximum number of raw samples that a batch request reads into memory.
+     *  Channels beyond that are streamed one by one.
+     */
+    private static final int MAX_SAMPLES = 100000;
+
     /** @param url Database URL
      *  @throws Exception on error
      */
@@ -305,68 +317,248 @@ public class TSArchiveReader implements ArchiveReader
 
             addForCancellation(statement);
 
-            // final VTypeFormat format = DoubleVTypeFormat.get();
             try (final ResultSet result = statement.executeQuery())
             {
                 while (result.next())
-                {
-                    final Instant stamp = result.getTimestamp(1).toInstant();
-                    final int N = result.getInt(9);
-                    final VType value;
+                    values.add(decodeOptimizedValue(result, display));
+            }
+            finally
+            {
+                removeFromCancellation(statement);
+            }
+        }
+        finally
+        {
+            pool.releaseConnection(connection);
+        }
+
+        return new ArrayValueIterator(values);
+    }
+
+    /** Decode optimized sample
+     *  @param result Row with bucket, severity_id, status_id, min, max, avg, num_val, str_val, n
+     *  @param display Meta data of the channel
+     *  @return Value
+     *  @throws Exception on error
+     */
+    private VType decodeOptimizedValue(final ResultSet result, final DisplayInfo display) throws Exception
+    {
+        final Instant stamp = result.getTimestamp(1).toInstant();
+        final int N = result.getInt(9);
+        final VType value;
+
+        // Is there a string?
+        final String text = result.getString(8);
+        if (!result.wasNull() && text != null)
+        {
+            // Read severity, status unless statistics
+            final Alarm alarm = decodeAlarm(result.getInt(2), result.getInt(3));
+            value = VString.of(text, alarm, Time.of(stamp));
+        }
+        else
+        {   // Is it an integer?
+            final int num_val = result.getInt(7);
+            if (!result.wasNull())
+            {
+                final Alarm alarm = decodeAlarm(result.getInt(2), result.getInt(3));
+                // Check for enum or numeric
+                if (display.getLabels() != null)
+                    value = VEnum.of(num_val, display.getLabels(), alarm, Time.of(stamp));
+                else
+                    value = VInt.of(num_val, alarm, Time.of(stamp), display.getDisplay());
+            }
+            else if (N==1)
+                // 'raw' double sample
+                value = VDouble.of(result.getDouble(6),
+                                   Alarm.none(),
+                                   Time.of(stamp),
+                                   display.getDisplay());
+            else
+                // Optimized min/max/avg sample
+                value = VStatistics.of(result.getDouble(6),
+                                       Double.NaN,
+                                       result.getDouble(4),
+                                       result.getDouble(5),
+                                       N,
+                                       Alarm.none(),
+                                       Time.of(stamp),
+                                       display.getDisplay());
+        }
+        return value;
+    }
+
+    @Override
+    public boolean supportsBatchRequests()
+    {
+        return true;
+    }
 
-                    // Is there a string?
-                    final String text = result.getString(8);
-                    if (!result.wasNull() && text != null)
+    @Override
+    public Map<String, ValueIterator> getRawValues(final Collection<String> names,
+            final Instant start, final Instant end) throws Exception
+    {
+        final Map<String, Integer> ids = getChannelIDs(names);
+        final Map<Integer, List<VType>> samples = new HashMap<>();
+        // Channels read completely. The others are streamed.
+        final Set<Integer> complete = new HashSet<>();
+        if (! ids.isEmpty())
+        {
+            final Connection connection = pool.getConnection();
+            connection.setAutoCommit(false);
+            try
+            (
+                final PreparedStatement statement = connection.prepareStatement(sql.sample_sel_by_ids_start_end,
+                                                                                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+            )
+            {
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                statement.setFetchSize(Preferences.fetch_size);
+                statement.setArray(1, connection.createArrayOf("INTEGER", new LinkedHashSet<>(ids.values()).toArray()));
+                statement.setTimestamp(2, Timestamp.from(start));
+                statement.setTimestamp(3, Timestamp.from(start));
+                statement.setTimestamp(4, Timestamp.from(end));
+
+                addForCancellation(statement);
+                try (final ResultSet result = statement.executeQuery())
+                {
+                    int channel_id = -1;
+                    DisplayInfo display = null;
+                    List<VType> values = null;
+                    int total = 0;
+                    boolean read_all = true;
+                    while (result.next())
                     {
-                        // Read severity, status unless statistics
-                        final Alarm alarm = decodeAlarm(result.getInt(2), result.getInt(3));
-                        value = VString.of(text, alarm, Time.of(stamp));
+                        if (result.getInt(10) != channel_id)
+                        {
+                            complete.add(channel_id);
+                            channel_id = result.getInt(10);
+                            display = DisplayInfo.forChannel(channel_id, this);
+                            values = samples.computeIfAbsent(channel_id, id -> new ArrayList<>());
+                        }
+                        if (++total > MAX_SAMPLES)
+                        {   // Drop the partial samples of this channel,
+                            // it will be streamed with the remaining channels
+                            samples.remove(channel_id);
+                            read_all = false;
+                            break;
+                        }
+                        values.add(TSRawSampleIterator.decodeSampleTableValue(this, display, result));
                     }
-                    else
-                    {   // Is it an integer?
-                        final int num_val = result.getInt(7);
-                        if (!result.wasNull())
+                    if (read_all)
+                        complete.addAll(ids.values());
+                }
+                finally
+                {
+                    removeFromCancellation(statement);
+                }
+            }
+            finally
+            {
+                connection.rollback();
+                connection.setAutoCommit(true);
+                pool.releaseConnection(connection);
+            }
+        }
+
+        final Map<String, ValueIterator> result = toIterators(ids, samples);
+        int streamed = 0;
+        for (Map.Entry<String, Integer> entry : ids.entrySet())
+            if (! complete.contains(entry.getValue()))
+            {
+                final int channel_id = entry.getValue();
+                result.put(entry.getKey(), new LazyValueIterator(entry.getKey(), () ->
+                    new TSRawSampleIterator(this, channel_id, determineActualStart(channel_id, start), end)));
+                ++streamed;
+            }
+        if (streamed > 0)
+            logger.log(Level.FINE, ids.size() + " channels: " + streamed + " streamed");
+        return result;
+    }
+
+    @Override
+    public Map<String, ValueIterator> getOptimizedValues(final Collection<String> names,
+            final Instant start, final Instant end, final int count) throws Exception
+    {
+        final Map<String, Integer> ids = getChannelIDs(names);
+        final Map<Integer, List<VType>> samples = new HashMap<>();
+        if (! ids.isEmpty())
+        {
+            logger.log(Level.FINE, () -> ids.size() + " channels: " + count + " buckets");
+            final Connection connection = pool.getConnection();
+            try
+            (
+                final PreparedStatement statement = connection.prepareStatement(sql.sample_sel_optimized_by_ids)
+            )
+            {
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                statement.setFetchSize(Preferences.fetch_size);
+                statement.setArray(1, connection.createArrayOf("INTEGER", new LinkedHashSet<>(ids.values()).toArray()));
+                statement.setTimestamp(2, Timestamp.from(start));
+                statement.setTimestamp(3, Timestamp.from(end));
+                statement.setLong(4, count);
+
+                addForCancellation(statement);
+                try (final ResultSet result = statement.executeQuery())
+                {
+                    int channel_id = -1;
+                    DisplayInfo display = null;
+                    List<VType> values = null;
+                    while (result.next())
+                    {
+                        if (result.getInt(10) != channel_id)
                         {
-                            final Alarm alarm = decodeAlarm(result.getInt(2), result.getInt(3));
-                            // Check for enum or numeric
-                            if (display.getLabels() != null)
-                                value = VEnum.of(num_val, display.getLabels(), alarm, Time.of(stamp));
-                            else
-                                value = VInt.of(num_val, alarm, Time.of(stamp), display.getDisplay());
+                            channel_id = result.getInt(10);
+                            display = DisplayInfo.forChannel(channel_id, this);
+                            values = samples.computeIfAbsent(channel_id, id -> new ArrayList<>());
                         }
-                        else if (N==1)
-                            // 'raw' double sample
-                            value = VDouble.of(result.getDouble(6),
-                                               Alarm.none(),
-                                               Time.of(stamp),
-                                               display.getDisplay());
-                        else
-                            // Optimized min/max/avg sample
-                            value = VStatistics.of(result.getDouble(6),
-                                                   Double.NaN,
-                                                   result.getDouble(4),
-                                                   result.getDouble(5),
-                                                   N,
-                                                   Alarm.none(),
-                                                   Time.of(stamp),
-                                                   display.getDisplay());
+                        values.add(decodeOptimizedValue(result, display));
                     }
-                    values.add(value);
-                    // System.out.println(TimestampFormats.FULL_FORMAT.format(((TimeProvider)value).getTime().getTimestamp()) +
-                    //                    " " + format.format(value));
+                }
+                finally
+                {
+                    removeFromCancellation(statement);
                 }
             }
             finally
             {
-                removeFromCancellation(statement);
+                pool.releaseConnection(connection);
             }
         }
-        finally
+        return toIterators(ids, samples);
+    }
+
+    /** @param names Channel names
+     *  @return Numeric channel IDs by name, skipping unknown channels
+     *  @throws Exception on error
+     */
+    private Map<String, Integer> getChannelIDs(final Collection<String> names) throws Exception
+    {
+        final Map<String, Integer> ids = new LinkedHashMap<>();
+        for (String name : names)
         {
-            pool.releaseConnection(connection);
+            try
+            {
+                ids.put(name, getChannelID(name));
+            }
+            catch (UnknownChannelException ex)
+            {
+                logger.log(Level.FINE, "Unknown channel {0}", name);
+            }
         }
+        return ids;
+    }
 
-        return new ArrayValueIterator(values);
+    /** @param ids Channel IDs by name
+     *  @param samples Samples by channel ID
+     *  @return Iterators for the samples by name
+     */
+    private static Map<String, ValueIterator> toIterators(final Map<String, Integer> ids,
+                                                          final Map<Integer, List<VType>> samples)
+    {
+        final Map<String, ValueIterator> result = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : ids.entrySet())
+            result.put(entry.getKey(), new ArrayValueIterator(samples.getOrDefault(entry.getValue(), List.of())));
+        return result;
     }
 
     /** @param name Channel name
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2021-2022 Oak Ridge National Laboratory.
+ * Copyright (c) 2021-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -149,6 +149,19 @@ public class TSRawSampleIterator implements ValueIterator
      *  @throws Exception on error, including cancellation
      */
     protected VType decodeSampleTableValue(final ResultSet result) throws Exception
+    {
+        return decodeSampleTableValue(reader, display, result);
+    }
+
+    /** Extract value from SQL result
+     *  @param reader Reader for decoding the alarm
+     *  @param display Meta data of the channel
+     *  @param result ResultSet that must contain contain time, severity, ..., value
+     *  @return IValue Decoded IValue
+     *  @throws Exception on error, including cancellation
+     */
+    static VType decodeSampleTableValue(final TSArchiveReader reader, final DisplayInfo display,
+                                        final ResultSet result) throws Exception
     {
         // 1          2            3          4        5          6        7         8         9
         // smpl_time, severity_id, status_id, num_val, float_val, str_val, nanosecs, datatype, array_val
@@ -0,0 +1,609 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.archive;
+
+import static org.csstudio.trends.databrowser3.Activator.logger;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import org.csstudio.trends.databrowser3.model.RequestType;
+import org.epics.vtype.VType;
+import org.phoebus.core.vtypes.VTypeHelper;
+
+/** Cache of archived samples
+ *
+ *  <p>Samples are cached per channel, archive URL, request type
+ *  and, for optimized requests, resolution, i.e. time span per bin.
+ *  For each such {@link Key}, the cache tracks which time intervals
+ *  have been fetched, so a request only needs to read the gaps
+ *  from the archive.
+ *
+ *  <p>The number of samples kept in memory is limited.
+ *  The least recently used channels are evicted, and spilled
+ *  to a directory if one is configured.
+ *  Spilled channels are read back when requested again,
+ *  including after a restart of the application.
+ *  The spill directory is limited in size, and files that have
+ *  not been written for some time are removed.
+ *  Files are written and read without holding the lock on the cache,
+ *  so lookups of other channels are not delayed by file I/O.
+ */
+@SuppressWarnings("nls")
+class ArchiveCache
+{
+    /** Most recent data may not have been written to the archive, yet.
+     *  Intervals that end within this time from 'now' are not marked as covered.
+     */
+    static final Duration SETTLE_TIME = Duration.ofMinutes(5);
+
+    /** Identification of cached samples */
+    static class Key
+    {
+        final String url, channel;
+        final RequestType type;
+        /** Time span per bin for optimized requests in millisecs, 0 for raw requests */
+        final long resolution;
+
+        /** @param url Archive URL
+         *  @param channel Channel name
+         *  @param type Request type
+         *  @param start Start of request
+         *  @param end End of request
+         *  @param bins Number of bins for optimized request
+         */
+        Key(final String url, final String channel, final RequestType type,
+            final Instant start, final Instant end, final int bins)
+        {
+            this.url = url;
+            this.channel = channel;
+            this.type = type;
+            if (type == RequestType.RAW)
+                resolution = 0;
+            else
+                resolution = Math.max(1, Duration.between(start, end).toMillis() / Math.max(1, bins));
+        }
+
+        /** @param start Start of interval
+         *  @param end End of interval
+         *  @return Number of bins for the interval at the resolution of this key
+         */
+        int getBins(final Instant start, final Instant end)
+        {
+            if (resolution <= 0)
+                return 1;
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Duration.between(start, end).toMillis() / resolution));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(url, channel, type, resolution);
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (! (obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return url.equals(other.url)  &&  channel.equals(other.channel)  &&
+                   type == other.type  &&  resolution == other.resolution;
+        }
+
+        @Override
+        public String toString()
+        {
+            return channel + " from " + url + ", " + type + (resolution > 0 ? " " + resolution + " ms" : "");
+        }
+    }
+
+    /** Time interval that has been fetched, with its samples */
+    static class Segment
+    {
+        final Instant start, end;
+        /** Samples ordered by time */
+        final List<VType> samples;
+
+        Segment(final Instant start, final Instant end, final List<VType> samples)
+        {
+            this.start = start;
+            this.end = end;
+            this.samples = samples;
+        }
+    }
+
+    /** Part of a requested time range */
+    static class Piece
+    {
+        final Instant start, end;
+        /** Cached samples, or <code>null</code> if this is a gap that needs to be fetched */
+        final List<VType> samples;
+
+        Piece(final Instant start, final Instant end, final List<VType> samples)
+        {
+            this.start = start;
+            this.end = end;
+            this.samples = samples;
+        }
+
+        /** @return Is this a gap that needs to be fetched? */
+        boolean isGap()
+        {
+            return samples == null;
+        }
+    }
+
+    /** Fetched segments of a channel, ordered by start time */
+    private static class Entry
+    {
+        final TreeMap<Instant, Segment> segments = new TreeMap<>();
+        int sample_count = 0;
+    }
+
+    /** Maximum number of samples to keep in memory, 0 to disable the cache */
+    private final int max_samples;
+
+    /** Directory for spilling entries, or <code>null</code> */
+    private final File directory;
+
+    /** Maximum size of the files in the spill directory in bytes, 0 for no limit */
+    private final long max_directory_size;
+
+    /** Maximum age of files in the spill directory, 0 for no limit */
+    private final Duration max_age;
+
+    /** Lock for the files in the spill directory.
+     *  When both are needed, this lock is taken before the lock on the cache.
+     */
+    private final Object file_lock = new Object();
+
+    /** Entries in least recently used order */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Entries that have been evicted and still need to be spilled */
+    private final Map<Key, Entry> spilling = new HashMap<>();
+
+    /** Number of samples in all entries */
+    private int sample_count = 0;
+
+    /** @param max_samples Maximum number of samples to keep in memory, 0 to disable the cache
+     *  @param directory Directory for spilling entries, or empty to disable
+     *  @param max_directory_size Maximum size of the spill directory in bytes, 0 for no limit
+     *  @param max_age Maximum age of spilled entries, 0 for no limit
+     */
+    ArchiveCache(final int max_samples, final String directory,
+                 final long max_directory_size, final Duration max_age)
+    {
+        this.max_samples = Math.max(0, max_samples);
+        this.max_directory_size = Math.max(0, max_directory_size);
+        this.max_age = max_age;
+        if (max_samples > 0  &&  directory != null  &&  !directory.isBlank())
+        {
+            final File dir = new File(directory);
+            if (dir.isDirectory()  ||  dir.mkdirs())
+                this.directory = dir;
+            else
+            {
+                logger.log(Level.WARNING, "Cannot use archive cache directory " + dir);
+                this.directory = null;
+            }
+        }
+        else
+            this.directory = null;
+        // Remove what's too old or too much from a previous run
+        if (this.directory != null)
+            synchronized (file_lock)
+            {
+                prune();
+            }
+    }
+
+    /** @return Is the cache enabled? */
+    boolean isEnabled()
+    {
+        return max_samples > 0;
+    }
+
+    /** Determine which parts of a time range are in the cache
+     *  @param key Channel etc.
+     *  @param start Start of requested time range
+     *  @param end End of requested time range
+     *  @return Pieces in time order that are either cached or need to be fetched
+     */
+    List<Piece> lookup(final Key key, final Instant start, final Instant end)
+    {
+        readSpilled(key);
+        synchronized (this)
+        {
+            return getPieces(entries.get(key), start, end);
+        }
+    }
+
+    /** @param entry Entry or <code>null</code>
+     *  @param start Start of requested time range
+     *  @param end End of requested time range
+     *  @return Pieces in time order that are either cached or need to be fetched
+     */
+    private static List<Piece> getPieces(final Entry entry, final Instant start, final Instant end)
+    {
+        if (entry == null)
+            return List.of(new Piece(start, end, null));
+
+        final List<Piece> pieces = new ArrayList<>();
+        Instant time = start;
+        // Segment that could start before the requested range, then all that start within
+        final Map.Entry<Instant, Segment> before = entry.segments.floorEntry(start);
+        final Iterator<Segment> segments = entry.segments.tailMap(before == null ? start : before.getKey(), true).values().iterator();
+        while (time.isBefore(end)  &&  segments.hasNext())
+        {
+            final Segment segment = segments.next();
+            if (! segment.end.isAfter(time))
+                continue;
+            if (! segment.start.isBefore(end))
+                break;
+            if (segment.start.isAfter(time))
+                pieces.add(new Piece(time, segment.start, null));
+            final Instant piece_start = segment.start.isAfter(time) ? segment.start : time;
+            final Instant piece_end = segment.end.isBefore(end) ? segment.end : end;
+            pieces.add(new Piece(piece_start, piece_end, getSamples(segment, piece_start, piece_end, pieces.isEmpty())));
+            time = piece_end;
+        }
+        if (time.isBefore(end))
+            pieces.add(new Piece(time, end, null));
+        return pieces;
+    }
+
+    /** @param segment Segment
+     *  @param start Start time
+     *  @param end End time
+     *  @param with_previous Include the last sample before the start time?
+     *  @return Samples of segment in time range
+     */
+    private static List<VType> getSamples(final Segment segment, final Instant start, final Instant end,
+                                          final boolean with_previous)
+    {
+        int first = findFirstAtOrAfter(segment.samples, start);
+        if (with_previous  &&  first > 0)
+            --first;
+        int last = findFirstAtOrAfter(segment.samples, end);
+        // Include sample at the end
+        while (last < segment.samples.size()  &&  ! VTypeHelper.getTimestamp(segment.samples.get(last)).isAfter(end))
+            ++last;
+        return new ArrayList<>(segment.samples.subList(first, last));
+    }
+
+    /** @param samples Samples ordered by time
+     *  @param time Time stamp
+     *  @return Index of first sample at or after time stamp, samples.size() if none
+     */
+    private static int findFirstAtOrAfter(final List<VType> samples, final Instant time)
+    {
+        int low = 0, high = samples.size()-1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (VTypeHelper.getTimestamp(samples.get(mid)).isBefore(time))
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /** Add samples that were fetched from the archive
+     *  @param key Channel etc.
+     *  @param start Start of fetched time range
+     *  @param end End of fetched time range
+     *  @param samples Samples ordered by time
+     */
+    void add(final Key key, final Instant start, Instant end, final List<VType> samples)
+    {
+        if (! isEnabled())
+            return;
+        // Do not mark the most recent data as covered
+        final Instant settled = Instant.now().minus(SETTLE_TIME);
+        if (end.isAfter(settled))
+            end = settled;
+        if (! start.isBefore(end))
+            return;
+
+        // Combine with a spilled entry
+        readSpilled(key);
+        synchronized (this)
+        {
+            addToMemory(key, start, end, samples);
+        }
+        spill();
+    }
+
+    /** Add samples to entry in memory
+     *  @param key Channel etc.
+     *  @param start Start of fetched time range
+     *  @param end End of fetched time range
+     *  @param samples Samples ordered by time
+     */
+    private void addToMemory(final Key key, final Instant start, final Instant end, final List<VType> samples)
+    {
+        Entry entry = entries.get(key);
+        if (entry == null)
+        {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+
+        // Combine with overlapping or adjacent segments
+        Instant new_start = start, new_end = end;
+        final List<Segment> overlap = new ArrayList<>();
+        final Map.Entry<Instant, Segment> before = entry.segments.floorEntry(start);
+        final Iterator<Segment> segments = entry.segments.tailMap(before == null ? start : before.getKey(), true).values().iterator();
+        while (segments.hasNext())
+        {
+            final Segment segment = segments.next();
+            if (segment.end.isBefore(start))
+                continue;
+            if (segment.start.isAfter(end))
+                break;
+            overlap.add(segment);
+            segments.remove();
+            entry.sample_count -= segment.samples.size();
+            sample_count -= segment.samples.size();
+            if (segment.start.isBefore(new_start))
+                new_start = segment.start;
+            if (segment.end.isAfter(new_end))
+                new_end = segment.end;
+        }
+
+        // New samples replace old samples within their time range
+        final List<VType> combined = new ArrayList<>();
+        for (Segment segment : overlap)
+            for (VType value : segment.samples)
+                if (VTypeHelper.getTimestamp(value).isBefore(start))
+                    combined.add(value);
+        for (VType value : samples)
+        {
+            final Instant time = VTypeHelper.getTimestamp(value);
+            if (time.isAfter(end))
+                break;
+            // Keep a sample from before the start only if it's newer than old samples
+            if (time.isBefore(start)  &&  !combined.isEmpty()  &&
+                ! time.isAfter(VTypeHelper.getTimestamp(combined.get(combined.size()-1))))
+                continue;
+            combined.add(value);
+        }
+        for (Segment segment : overlap)
+            for (VType value : segment.samples)
+                if (VTypeHelper.getTimestamp(value).isAfter(end))
+                    combined.add(value);
+
+        entry.segments.put(new_start, new Segment(new_start, new_end, combined));
+        entry.sample_count += combined.size();
+        sample_count += combined.size();
+
+        evict();
+    }
+
+    /** Read entry back from the spill directory unless it's in memory
+     *  <p>
+     *  Must be called without holding the lock on the cache.
+     *  @param key Channel etc.
+     */
+    private void readSpilled(final Key key)
+    {
+        if (directory == null)
+            return;
+        final boolean in_memory;
+        synchronized (this)
+        {
+            if (entries.containsKey(key))
+                return;
+            // Evicted, but not written, yet?
+            final Entry entry = spilling.remove(key);
+            in_memory = entry != null;
+            if (in_memory)
+                put(key, entry);
+        }
+        if (! in_memory)
+            synchronized (file_lock)
+            {
+                final File file = getFile(key);
+                if (! file.canRead())
+                    return;
+                if (isTooOld(file))
+                {
+                    file.delete();
+                    return;
+                }
+                final Entry entry = new Entry();
+                try
+                {
+                    for (Segment segment : ArchiveCacheFile.read(file, key.toString()))
+                    {
+                        entry.segments.put(segment.start, segment);
+                        entry.sample_count += segment.samples.size();
+                    }
+                }
+                catch (Exception ex)
+                {
+                    logger.log(Level.WARNING, "Cannot read archive cache " + file, ex);
+                    file.delete();
+                    return;
+                }
+                logger.log(Level.FINE, () -> "Archive cache read " + key + " from " + file);
+                synchronized (this)
+                {   // Keep what has been added in the meantime
+                    if (! entries.containsKey(key))
+                        put(key, entry);
+                }
+            }
+        spill();
+    }
+
+    /** @param key Channel etc.
+     *  @param entry Entry to add to memory
+     */
+    private void put(final Key key, final Entry entry)
+    {
+        entries.put(key, entry);
+        sample_count += entry.sample_count;
+        evict();
+    }
+
+    /** Evict least recently used entries until below the sample limit
+     *  <p>
+     *  With a spill directory, evicted entries are queued for {@link #spill()}
+     */
+    private void evict()
+    {
+        final Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+        while (sample_count > max_samples  &&  iter.hasNext())
+        {
+            final Map.Entry<Key, Entry> lru = iter.next();
+            iter.remove();
+            sample_count -= lru.getValue().sample_count;
+            if (directory != null)
+                spilling.put(lru.getKey(), lru.getValue());
+        }
+    }
+
+    /** Write evicted entries to the spill directory
+     *  <p>
+     *  Must be called without holding the lock on the cache.
+     */
+    private void spill()
+    {
+        if (directory == null)
+            return;
+        synchronized (file_lock)
+        {
+            boolean spilled = false;
+            while (true)
+            {
+                final Key key;
+                final Entry entry;
+                synchronized (this)
+                {
+                    final Iterator<Map.Entry<Key, Entry>> iter = spilling.entrySet().iterator();
+                    if (! iter.hasNext())
+                        break;
+                    final Map.Entry<Key, Entry> next = iter.next();
+                    iter.remove();
+                    key = next.getKey();
+                    entry = next.getValue();
+                }
+                // Entry is no longer in the cache, so nobody else modifies it
+                final File file = getFile(key);
+                try
+                {
+                    ArchiveCacheFile.write(file, key.toString(), entry.segments.values());
+                    logger.log(Level.FINE, () -> "Archive cache spilled " + key + " to " + file);
+                }
+                catch (Exception ex)
+                {
+                    logger.log(Level.WARNING, "Cannot spill archive cache for " + key, ex);
+                    file.delete();
+                }
+                spilled = true;
+            }
+            if (spilled)
+                prune();
+        }
+    }
+
+    /** @param file File in spill directory
+     *  @return Is the file older than the maximum age?
+     */
+    private boolean isTooOld(final File file)
+    {
+        return ! max_age.isZero()  &&
+               file.lastModified() < System.currentTimeMillis() - max_age.toMillis();
+    }
+
+    /** @return Files in spill directory */
+    private File[] listFiles()
+    {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".cache"));
+        return files == null ? new File[0] : files;
+    }
+
+    /** Delete files that are too old, then the oldest files beyond the size limit
+     *  <p>
+     *  Caller must hold the file lock.
+     */
+    private void prune()
+    {
+        final File[] files = listFiles();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long size = 0;
+        for (File file : files)
+        {
+            size += file.length();
+            if (isTooOld(file)  ||  (max_directory_size > 0  &&  size > max_directory_size))
+            {
+                logger.log(Level.FINE, () -> "Archive cache removes " + file);
+                file.delete();
+            }
+        }
+    }
+
+    /** @param key Channel etc.
+     *  @return File in spill directory
+     */
+    private File getFile(final Key key)
+    {
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder();
+            for (byte b : digest)
+                name.append(String.format("%02x", b));
+            return new File(directory, name.append(".cache").toString());
+        }
+        catch (Exception ex)
+        {   // SHA-1 is always available
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /** @return Number of samples in memory */
+    synchronized int getSampleCount()
+    {
+        return sample_count;
+    }
+
+    /** Remove all entries from memory and the spill directory */
+    void clear()
+    {
+        synchronized (this)
+        {
+            entries.clear();
+            spilling.clear();
+            sample_count = 0;
+        }
+        if (directory != null)
+            synchronized (file_lock)
+            {
+                for (File file : listFiles())
+                    file.delete();
+            }
+    }
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.csstudio.trends.databrowser3.archive.ArchiveCache.Segment;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.stats.Range;
+import org.epics.util.text.NumberFormats;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.EnumDisplay;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+
+/** File format for spilling the {@link ArchiveCache}
+ *
+ *  <p>Numbers are stored as double, number arrays as double arrays,
+ *  which is how the Data Browser plots them.
+ *  Samples of other types cannot be spilled.
+ */
+@SuppressWarnings("nls")
+class ArchiveCacheFile
+{
+    private static final int MAGIC = 0x44424331, // "DBC1"
+                             STATISTICS = 1, NUMBER = 2, STRING = 3, ENUM = 4, ARRAY = 5;
+
+    /** @param file File to write
+     *  @param key Identification of the samples
+     *  @param segments Segments to write
+     *  @throws Exception on error, including samples that cannot be spilled
+     */
+    static void write(final File file, final String key, final Collection<Segment> segments) throws Exception
+    {
+        try
+        (
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        )
+        {
+            out.writeInt(MAGIC);
+            out.writeUTF(key);
+            out.writeInt(segments.size());
+            for (Segment segment : segments)
+            {
+                writeTime(out, segment.start);
+                writeTime(out, segment.end);
+                out.writeInt(segment.samples.size());
+                for (VType value : segment.samples)
+                    writeValue(out, value);
+            }
+        }
+    }
+
+    /** @param file File to read
+     *  @param key Expected identification of the samples
+     *  @return Segments
+     *  @throws Exception on error
+     */
+    static List<Segment> read(final File file, final String key) throws Exception
+    {
+        try
+        (
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        )
+        {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Invalid file format");
+            final String file_key = in.readUTF();
+            if (! file_key.equals(key))
+                throw new IOException("Expected " + key + " but got " + file_key);
+            final int N = in.readInt();
+            final List<Segment> segments = new ArrayList<>(N);
+            for (int i=0; i<N; ++i)
+            {
+                final Instant start = readTime(in);
+                final Instant end = readTime(in);
+                final int count = in.readInt();
+                final List<VType> samples = new ArrayList<>(count);
+                for (int s=0; s<count; ++s)
+                    samples.add(readValue(in));
+                segments.add(new Segment(start, end, samples));
+            }
+            return segments;
+        }
+    }
+
+    private static void writeValue(final DataOutputStream out, final VType value) throws Exception
+    {
+        final Alarm alarm = Alarm.alarmOf(value);
+        final Time time = Time.timeOf(value);
+        if (value instanceof VStatistics)
+        {
+            final VStatistics stats = (VStatistics) value;
+            out.writeByte(STATISTICS);
+            writeTime(out, time.getTimestamp());
+            writeAlarm(out, alarm);
+            writeDisplay(out, stats.getDisplay());
+            out.writeDouble(stats.getAverage().doubleValue());
+            out.writeDouble(stats.getStdDev().doubleValue());
+            out.writeDouble(stats.getMin().doubleValue());
+            out.writeDouble(stats.getMax().doubleValue());
+            out.writeInt(stats.getNSamples().intValue());
+        }
+        else if (value instanceof VNumber)
+        {
+            final VNumber number = (VNumber) value;
+            out.writeByte(NUMBER);
+            writeTime(out, time.getTimestamp());
+            writeAlarm(out, alarm);
+            writeDisplay(out, number.getDisplay());
+            out.writeDouble(number.getValue().doubleValue());
+        }
+        else if (value instanceof VString)
+        {
+            out.writeByte(STRING);
+            writeTime(out, time.getTimestamp());
+            writeAlarm(out, alarm);
+            out.writeUTF(((VString) value).getValue());
+        }
+        else if (value instanceof VEnum)
+        {
+            final VEnum enumerated = (VEnum) value;
+            out.writeByte(ENUM);
+            writeTime(out, time.getTimestamp());
+            writeAlarm(out, alarm);
+            out.writeInt(enumerated.getIndex());
+            final List<String> labels = enumerated.getDisplay().getChoices();
+            out.writeInt(labels.size());
+            for (String label : labels)
+                out.writeUTF(label);
+        }
+        else if (value instanceof VNumberArray)
+        {
+            final VNumberArray array = (VNumberArray) value;
+            out.writeByte(ARRAY);
+            writeTime(out, time.getTimestamp());
+            writeAlarm(out, alarm);
+            writeDisplay(out, array.getDisplay());
+            final int N = array.getData().size();
+            out.writeInt(N);
+            for (int i=0; i<N; ++i)
+                out.writeDouble(array.getData().getDouble(i));
+        }
+        else
+            throw new Exception("Cannot spill " + value);
+    }
+
+    private static VType readValue(final DataInputStream in) throws Exception
+    {
+        final int type = in.readByte();
+        final Time time = Time.of(readTime(in));
+        final Alarm alarm = readAlarm(in);
+        switch (type)
+        {
+        case STATISTICS:
+        {
+            final Display display = readDisplay(in);
+            final double average = in.readDouble(), stddev = in.readDouble(),
+                         min = in.readDouble(), max = in.readDouble();
+            return VStatistics.of(average, stddev, min, max, in.readInt(), alarm, time, display);
+        }
+        case NUMBER:
+        {
+            final Display display = readDisplay(in);
+            return VDouble.of(in.readDouble(), alarm, time, display);
+        }
+        case STRING:
+            return VString.of(in.readUTF(), alarm, time);
+        case ENUM:
+        {
+            final int index = in.readInt();
+            final int N = in.readInt();
+            final List<String> labels = new ArrayList<>(N);
+            for (int i=0; i<N; ++i)
+                labels.add(in.readUTF());
+            return VEnum.of(index, EnumDisplay.of(labels), alarm, time);
+        }
+        case ARRAY:
+        {
+            final Display display = readDisplay(in);
+            final double[] data = new double[in.readInt()];
+            for (int i=0; i<data.length; ++i)
+                data[i] = in.readDouble();
+            return VDoubleArray.of(ArrayDouble.of(data), alarm, time, display);
+        }
+        default:
+            throw new IOException("Unknown sample type " + type);
+        }
+    }
+
+    private static void writeTime(final DataOutputStream out, final Instant time) throws IOException
+    {
+        out.writeLong(time.getEpochSecond());
+        out.writeInt(time.getNano());
+    }
+
+    private static Instant readTime(final DataInputStream in) throws IOException
+    {
+        final long secs = in.readLong();
+        return Instant.ofEpochSecond(secs, in.readInt());
+    }
+
+    private static void writeAlarm(final DataOutputStream out, final Alarm alarm) throws IOException
+    {
+        out.writeByte(alarm.getSeverity().ordinal());
+        out.writeByte(alarm.getStatus().ordinal());
+        out.writeUTF(alarm.getName());
+    }
+
+    private static Alarm readAlarm(final DataInputStream in) throws IOException
+    {
+        final AlarmSeverity severity = AlarmSeverity.values()[in.readByte()];
+        final AlarmStatus status = AlarmStatus.values()[in.readByte()];
+        return Alarm.of(severity, status, in.readUTF());
+    }
+
+    private static void writeDisplay(final DataOutputStream out, final Display display) throws IOException
+    {
+        writeRange(out, display.getDisplayRange());
+        writeRange(out, display.getAlarmRange());
+        writeRange(out, display.getWarningRange());
+        writeRange(out, display.getControlRange());
+        out.writeUTF(display.getUnit());
+        final NumberFormat format = display.getFormat();
+        out.writeInt(format instanceof DecimalFormat ? format.getMaximumFractionDigits() : -1);
+        out.writeUTF(display.getDescription() == null ? "" : display.getDescription());
+    }
+
+    private static Display readDisplay(final DataInputStream in) throws IOException
+    {
+        final Range display = readRange(in), alarm = readRange(in),
+                    warning = readRange(in), control = readRange(in);
+        final String units = in.readUTF();
+        final int precision = in.readInt();
+        final NumberFormat format = precision < 0 ? Display.defaultNumberFormat() : NumberFormats.precisionFormat(precision);
+        final String description = in.readUTF();
+        return Display.of(display, alarm, warning, control, units, format,
+                          description.isEmpty() ? null : description);
+    }
+
+    private static void writeRange(final DataOutputStream out, final Range range) throws IOException
+    {
+        out.writeDouble(range.getMinimum());
+        out.writeDouble(range.getMaximum());
+    }
+
+    private static Range readRange(final DataInputStream in) throws IOException
+    {
+        final double min = in.readDouble(), max = in.readDouble();
+        if (Double.isNaN(min)  &&  Double.isNaN(max))
+            return Range.undefined();
+        return Range.of(min, max);
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010-2020 Oak Ridge National Laboratory.
+ * Copyright (c) 2010-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,14 +10,25 @@ package org.csstudio.trends.databrowser3.archive;
 import static org.csstudio.trends.databrowser3.Activator.logger;
 
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 
 import org.csstudio.trends.databrowser3.Activator;
@@ -30,8 +41,10 @@ import org.csstudio.trends.databrowser3.preferences.Preferences;
 import org.epics.vtype.VType;
 import org.phoebus.archive.reader.ArchiveReader;
 import org.phoebus.archive.reader.ArchiveReaders;
+import org.phoebus.archive.reader.MergingValueIterator;
 import org.phoebus.archive.reader.UnknownChannelException;
 import org.phoebus.archive.reader.ValueIterator;
+import org.phoebus.core.vtypes.VTypeHelper;
 import org.phoebus.framework.jobs.Job;
 import org.phoebus.framework.jobs.JobManager;
 import org.phoebus.framework.jobs.JobMonitor;
@@ -52,12 +65,229 @@ public class ArchiveFetchJob implements JobRunnable
     /** Poll period in millisecs */
     private static final int POLL_PERIOD_MS = 1000;
 
-    /** Limit the number of concurrently running jobs */
+    /** Number of samples after which a chunk is merged into the plot */
+    private static final int CHUNK_SIZE = 10000;
+
+    /** Period in millisecs after which a chunk is merged into the plot */
+    private static final int CHUNK_PERIOD_MS = 250;
+
+    /** Limit the number of concurrently running archive requests */
     private static final Semaphore concurrent_requests = new Semaphore(Preferences.concurrent_requests, true);
 
+    /** Cache of archived samples, shared by all jobs */
+    private static final ArchiveCache cache = new ArchiveCache(Preferences.archive_cache_size, Preferences.archive_cache_directory,
+                                                               Preferences.archive_cache_directory_size * 1024L * 1024L,
+                                                               Duration.ofDays(Preferences.archive_cache_max_age));
+
+    /** Batch of requests for several items over the same time range
+     *
+     *  <p>When the data for all items of a model is requested,
+     *  for example when the model is loaded,
+     *  the first job that needs data from an archive which supports
+     *  batch requests fetches the data for all items of the batch
+     *  that use the archive.
+     *  The other jobs then take their data from the batch.
+     *
+     *  <p>Cancelling one job does not cancel a batch request in progress,
+     *  since other jobs still wait for it.
+     *  Once no job is interested in the batch,
+     *  requests in progress are cancelled
+     *  and samples that no job has taken are closed.
+     */
+    public static class Batch
+    {
+        private final Collection<PVItem> items;
+        private final Instant start, end;
+
+        /** Samples by channel name for each archive URL and request type,
+         *  <code>null</code> if archive does not support batch requests or batch failed
+         */
+        private final ConcurrentHashMap<String, CompletableFuture<Map<String, ValueIterator>>> results = new ConcurrentHashMap<>();
+
+        /** Number of jobs that might still take samples from the batch */
+        private final AtomicInteger interested = new AtomicInteger();
+
+        /** Archive readers of batch requests in progress */
+        private final List<ArchiveReader> readers = new CopyOnWriteArrayList<>();
+
+        /** @param items Items for which data will be requested
+         *  @param start Start time
+         *  @param end End time
+         */
+        public Batch(final Collection<PVItem> items, final Instant start, final Instant end)
+        {
+            this.items = items;
+            this.start = start;
+            this.end = end;
+        }
+
+        /** Add a job that will take samples from the batch */
+        void join()
+        {
+            interested.incrementAndGet();
+        }
+
+        /** Remove a job that's cancelled or done
+         *
+         *  <p>When no job is left, requests in progress are cancelled
+         *  and samples that have not been taken are closed.
+         */
+        void leave()
+        {
+            if (interested.decrementAndGet() > 0)
+                return;
+            for (ArchiveReader the_reader : readers)
+                the_reader.cancel();
+            closeUnclaimed();
+        }
+
+        /** Close samples that have not been taken */
+        private void closeUnclaimed()
+        {
+            for (CompletableFuture<Map<String, ValueIterator>> result : results.values())
+            {
+                final Map<String, ValueIterator> samples = result.getNow(null);
+                if (samples == null)
+                    continue;
+                synchronized (samples)
+                {
+                    for (ValueIterator values : samples.values())
+                    {
+                        try
+                        {
+                            values.close();
+                        }
+                        catch (Exception ex)
+                        {
+                            // Ignore
+                        }
+                    }
+                    samples.clear();
+                }
+            }
+        }
+
+        /** Get samples for an item
+         *  @param archive Archive
+         *  @param item Item
+         *  @param bins Number of bins for optimized request
+         *  @param cancelled Has the job been cancelled while waiting for the batch?
+         *  @return Samples or <code>null</code> if item needs to be fetched on its own
+         *  @throws UnknownChannelException if archive does not know the item's channel
+         *  @throws CancellationException when cancelled
+         *  @throws Exception on error
+         */
+        ValueIterator take(final ArchiveDataSource archive, final PVItem item, final int bins,
+                           final BooleanSupplier cancelled) throws Exception
+        {
+            final String key = archive.getUrl() + " " + item.getRequestType();
+            final CompletableFuture<Map<String, ValueIterator>> created = new CompletableFuture<>();
+            final CompletableFuture<Map<String, ValueIterator>> result = results.putIfAbsent(key, created);
+            if (result == null)
+                fetch(archive, item.getRequestType(), bins, created);
+            // Wait for another job's batch request, checking for cancellation
+            final CompletableFuture<Map<String, ValueIterator>> pending = (result == null ? created : result);
+            Map<String, ValueIterator> samples = null;
+            while (true)
+            {
+                if (cancelled.getAsBoolean())
+                    throw new CancellationException("Cancelled while waiting for batch");
+                try
+                {
+                    samples = pending.get(POLL_PERIOD_MS, TimeUnit.MILLISECONDS);
+                    break;
+                }
+                catch (TimeoutException ex)
+                {
+                    // Check cancellation, then keep waiting
+                }
+            }
+            if (samples == null)
+                return null;
+            final ValueIterator values;
+            synchronized (samples)
+            {
+                values = samples.remove(item.getResolvedName());
+            }
+            if (values == null)
+                throw new UnknownChannelException(item.getResolvedName());
+            return values;
+        }
+
+        /** Fetch samples for all items that use the archive
+         *  @param archive Archive
+         *  @param type Request type
+         *  @param bins Number of bins for optimized request
+         *  @param result Result to complete
+         *  @throws InterruptedException when interrupted
+         */
+        private void fetch(final ArchiveDataSource archive, final RequestType type, final int bins,
+                           final CompletableFuture<Map<String, ValueIterator>> result) throws InterruptedException
+        {
+            Map<String, ValueIterator> samples = null;
+            concurrent_requests.acquire();
+            try
+            (
+                final ArchiveReader the_reader = ArchiveReaders.createReader(archive.getUrl());
+            )
+            {
+                if (the_reader.supportsBatchRequests())
+                {
+                    final Set<String> names = new LinkedHashSet<>();
+                    for (PVItem other : items)
+                        if (other.getRequestType() == type  &&
+                            ! MacroHandler.containsMacros(other.getResolvedName()))
+                            for (ArchiveDataSource source : other.getArchiveDataSources())
+                                if (source.getUrl().equals(archive.getUrl()))
+                                    names.add(other.getResolvedName());
+                    logger.log(Level.FINE, () -> "Batch request for " + names.size() + " channels from " + archive.getName());
+                    readers.add(the_reader);
+                    try
+                    {
+                        samples = (type == RequestType.RAW)
+                                ? the_reader.getRawValues(names, start, end)
+                                : the_reader.getOptimizedValues(names, start, end, bins);
+                    }
+                    finally
+                    {
+                        readers.remove(the_reader);
+                    }
+                }
+            }
+            catch (Exception ex)
+            {   // Items are then fetched on their own
+                logger.log(Level.WARNING, "Batch request for " + archive.getName() + " failed", ex);
+                samples = null;
+            }
+            finally
+            {
+                concurrent_requests.release();
+                result.complete(samples);
+                // All jobs might have left while the request was in progress
+                if (interested.get() <= 0)
+                    closeUnclaimed();
+            }
+        }
+
+        /** @param job_start Start time of a job
+         *  @param job_end End time of a job
+         *  @return Does the batch cover the time range?
+         */
+        boolean covers(final Instant job_start, final Instant job_end)
+        {
+            return start.equals(job_start)  &&  end.equals(job_end);
+        }
+    }
+
     /** Item for which to fetch samples */
     private final PVItem item;
 
+    /** Batch that includes this job, or <code>null</code> */
+    private final Batch batch;
+
+    /** Has this job left the batch? */
+    private final AtomicBoolean left_batch = new AtomicBoolean();
+
     /** Start/End time */
     private final Instant start, end;
 
@@ -79,8 +309,11 @@ public class ArchiveFetchJob implements JobRunnable
         private volatile String message = "Queued";
         private volatile boolean cancelled = false;
 
-        /** Archive reader that's currently queried */
-        private AtomicReference<ArchiveReader> reader = new AtomicReference<>();
+        /** Archive readers that are currently queried */
+        private final List<ArchiveReader> readers = new CopyOnWriteArrayList<>();
+
+        /** Number of archives that have been contacted */
+        private final AtomicInteger started = new AtomicInteger();
 
         /** @return Message that somehow indicates progress */
         public String getMessage()
@@ -92,9 +325,9 @@ public class ArchiveFetchJob implements JobRunnable
         public void cancel()
         {
             cancelled = true;
+            leaveBatch();
 
-            final ArchiveReader the_reader = reader.get();
-            if (the_reader != null)
+            for (ArchiveReader the_reader : readers)
                 the_reader.cancel();
         }
 
@@ -115,55 +348,63 @@ public class ArchiveFetchJob implements JobRunnable
             if (bins <= 0)
                 bins = 800;
 
-            final Collection<ArchiveDataSource> archives = item.getArchiveDataSources();
-            final List<ArchiveDataSource> archives_without_channel = new ArrayList<>();
-            int i = 0;
-            for (ArchiveDataSource archive : archives)
+            final List<ArchiveDataSource> archives = new ArrayList<>(item.getArchiveDataSources());
+            final List<ArchiveDataSource> archives_without_channel = new CopyOnWriteArrayList<>();
+
+            // Query all archives concurrently, each streaming its samples
+            final StreamingValueIterator streams[] = new StreamingValueIterator[archives.size()];
+            for (int i=0; i<streams.length; ++i)
             {
-                if (cancelled)
-                    break;
-                final String url = archive.getUrl();
-                // Display "N/total", using '1' for the first sub-archive.
-                message = MessageFormat.format(Messages.ArchiveFetchDetailFmt,
-                                               archive.getName(), ++i, archives.size());
-                try
-                (
-                    final ArchiveReader the_reader = ArchiveReaders.createReader(url);
-                )
+                final ArchiveDataSource archive = archives.get(i);
+                final StreamingValueIterator stream = new StreamingValueIterator();
+                streams[i] = stream;
+                final int the_bins = bins;
+                Activator.thread_pool.submit(() -> fetch(archive, the_bins, stream, archives_without_channel, archives.size()));
+            }
+
+            // Merge samples in time order as they arrive,
+            // publishing chunks to the plot so it can update while data is still arriving.
+            // Chunks that follow the existing samples are appended
+            // in amortized constant time per sample, see PlotSampleColumns#extend.
+            // Where archives overlap, a later archive replaces the samples of
+            // earlier ones within its time range, as in PlotSampleMerger
+            try
+            (
+                final MergingValueIterator merged = new MergingValueIterator(true, streams);
+            )
+            {
+                List<String> sources = new ArrayList<>();
+                List<VType> chunk = new ArrayList<>();
+                long publish = System.currentTimeMillis() + CHUNK_PERIOD_MS;
+                while (!cancelled  &&  merged.hasNext())
                 {
-                    reader.set(the_reader);
-                    try
-                    (
-                        final ValueIterator value_iter = (item.getRequestType() == RequestType.RAW)
-                                            ? the_reader.getRawValues(item.getResolvedName(), start, end)
-                                            : the_reader.getOptimizedValues(item.getResolvedName(), start, end, bins)
-                    )
-                    {
-                        // Get samples into array
-                        final List<VType> result = new ArrayList<>();
-                        while (value_iter.hasNext())
-                            result.add(value_iter.next());
-                        samples += result.size();
-                        item.mergeArchivedSamples(archive.getName(), result);
-                    }
-                    catch (UnknownChannelException e)
+                    final VType value = merged.next();
+                    // Publish when due, but keep samples with the same time stamp
+                    // within one chunk since merging the next chunk would replace them
+                    if (chunk.size() > 0  &&
+                        (chunk.size() >= CHUNK_SIZE  ||  System.currentTimeMillis() >= publish)  &&
+                        VTypeHelper.getTimestamp(value).compareTo(VTypeHelper.getTimestamp(chunk.get(chunk.size()-1))) > 0)
                     {
-                        // Do not immediately notify about unknown channels. First search for the data in all archive
-                        // sources and only report this kind of errors at the end
-                        archives_without_channel.add(archive);
-                    }
-                    finally
-                    {
-                        reader.set(null);
+                        samples += chunk.size();
+                        item.mergeArchivedSamples(sources, chunk);
+                        sources = new ArrayList<>();
+                        chunk = new ArrayList<>();
+                        publish = System.currentTimeMillis() + CHUNK_PERIOD_MS;
                     }
+                    sources.add(archives.get(merged.getIteratorIndex()).getName());
+                    chunk.add(value);
                 }
-                catch (Exception ex)
-                {   // Tell listener unless it's the result of a 'cancel'?
-                    if (! cancelled)
-                        listener.archiveFetchFailed(ArchiveFetchJob.this, archive, ex);
-                    // Continue with the next data source
+                if (!cancelled  &&  chunk.size() > 0)
+                {
+                    samples += chunk.size();
+                    item.mergeArchivedSamples(sources, chunk);
                 }
             }
+            catch (Exception ex)
+            {
+                logger.log(Level.WARNING, "Error merging samples for " + ArchiveFetchJob.this, ex);
+            }
+
             final long end_time = System.currentTimeMillis();
             logger.log(Level.FINE,
                     "Ended {0} with {1} samples in {2} secs",
@@ -180,6 +421,142 @@ public class ArchiveFetchJob implements JobRunnable
             listener.fetchCompleted(ArchiveFetchJob.this);
         }
 
+        /** Fetch samples from one archive
+         *
+         *  <p>Runs concurrently for all archives of the item,
+         *  within the limit of concurrent requests.
+         *  Samples that are in the cache are streamed from there,
+         *  only the gaps are read from the archive.
+         *
+         *  @param archive Archive to query
+         *  @param bins Number of bins for optimized request
+         *  @param stream Stream that receives the samples and is ended when done
+         *  @param archives_without_channel Archives that don't know the channel
+         *  @param total Total number of archives
+         */
+        private void fetch(final ArchiveDataSource archive, final int bins,
+                           final StreamingValueIterator stream,
+                           final List<ArchiveDataSource> archives_without_channel,
+                           final int total)
+        {
+            final ArchiveCache.Key key = new ArchiveCache.Key(archive.getUrl(), item.getResolvedName(),
+                                                              item.getRequestType(), start, end, bins);
+            try
+            {
+                for (ArchiveCache.Piece piece : cache.lookup(key, start, end))
+                {
+                    if (cancelled)
+                        break;
+                    if (piece.isGap())
+                        fetchGap(archive, key, piece, stream, total);
+                    else
+                        for (VType value : piece.samples)
+                            stream.add(value);
+                }
+            }
+            catch (UnknownChannelException e)
+            {
+                // Do not immediately notify about unknown channels. First search for the data in all archive
+                // sources and only report this kind of errors at the end
+                archives_without_channel.add(archive);
+            }
+            catch (Exception ex)
+            {   // Tell listener unless it's the result of a 'cancel'?
+                if (! cancelled)
+                    listener.archiveFetchFailed(ArchiveFetchJob.this, archive, ex);
+                // Samples from other data sources are still merged
+            }
+            finally
+            {
+                stream.end();
+            }
+        }
+
+        /** Read samples for a gap in the cache from the archive
+         *  @param archive Archive to query
+         *  @param key Cache key
+         *  @param gap Time range to read
+         *  @param stream Stream that receives the samples
+         *  @param total Total number of archives
+         *  @throws Exception on error
+         */
+        private void fetchGap(final ArchiveDataSource archive, final ArchiveCache.Key key,
+                              final ArchiveCache.Piece gap, final StreamingValueIterator stream,
+                              final int total) throws Exception
+        {
+            // Data for the complete time range may be part of a batch
+            if (batch != null  &&  batch.covers(gap.start, gap.end))
+            {
+                message = MessageFormat.format(Messages.ArchiveFetchDetailFmt,
+                                               archive.getName(), started.incrementAndGet(), total);
+                final ValueIterator value_iter = batch.take(archive, item, key.getBins(gap.start, gap.end), () -> cancelled);
+                if (value_iter != null)
+                {
+                    try
+                    {
+                        read(value_iter, key, gap, stream);
+                    }
+                    finally
+                    {
+                        value_iter.close();
+                    }
+                    return;
+                }
+                // Else: Fetch on its own
+                started.decrementAndGet();
+            }
+
+            concurrent_requests.acquire();
+            try
+            (
+                final ArchiveReader the_reader = ArchiveReaders.createReader(archive.getUrl());
+            )
+            {
+                readers.add(the_reader);
+                // Display "N/total", using '1' for the first sub-archive.
+                message = MessageFormat.format(Messages.ArchiveFetchDetailFmt,
+                                               archive.getName(), started.incrementAndGet(), total);
+                try
+                (
+                    final ValueIterator value_iter = (item.getRequestType() == RequestType.RAW)
+                                        ? the_reader.getRawValues(item.getResolvedName(), gap.start, gap.end)
+                                        : the_reader.getOptimizedValues(item.getResolvedName(), gap.start, gap.end, key.getBins(gap.start, gap.end))
+                )
+                {
+                    read(value_iter, key, gap, stream);
+                }
+                finally
+                {
+                    readers.remove(the_reader);
+                }
+            }
+            finally
+            {
+                concurrent_requests.release();
+            }
+        }
+
+        /** Read samples from archive into stream and cache
+         *  @param value_iter Samples from the archive
+         *  @param key Cache key
+         *  @param gap Time range that was read
+         *  @param stream Stream that receives the samples
+         *  @throws Exception on error
+         */
+        private void read(final ValueIterator value_iter, final ArchiveCache.Key key,
+                          final ArchiveCache.Piece gap, final StreamingValueIterator stream) throws Exception
+        {
+            final List<VType> samples = new ArrayList<>();
+            while (!cancelled  &&  value_iter.hasNext())
+            {
+                final VType value = value_iter.next();
+                stream.add(value);
+                samples.add(value);
+            }
+            if (! cancelled)
+                cache.add(key, gap.start, gap.end, samples);
+        }
+
         @Override
         public String toString()
         {
@@ -197,11 +574,30 @@ public class ArchiveFetchJob implements JobRunnable
     public ArchiveFetchJob(final PVItem item, final Instant start,
                            final Instant end,
                            final ArchiveFetchJobListener listener)
+    {
+        this(item, start, end, listener, null);
+    }
+
+    /** Schedule a new job that's part of a batch.
+     *
+     *  @param item the item for which the data are fetched
+     *  @param start the lower time boundary for the historic data
+     *  @param end the upper time boundary for the history data
+     *  @param listener the listener notified when the job is complete or an error happens
+     *  @param batch Batch of requests that includes this item, or <code>null</code>
+     */
+    public ArchiveFetchJob(final PVItem item, final Instant start,
+                           final Instant end,
+                           final ArchiveFetchJobListener listener,
+                           final Batch batch)
     {
         this.item = item;
+        this.batch = batch;
         this.start = start;
         this.end = end;
         this.listener = listener;
+        if (batch != null)
+            batch.join();
         this.job = JobManager.schedule(toString(), this);
     }
 
@@ -211,9 +607,31 @@ public class ArchiveFetchJob implements JobRunnable
         return item;
     }
 
+    /** Leave the batch, once, when cancelled or done */
+    private void leaveBatch()
+    {
+        if (batch != null  &&  left_batch.compareAndSet(false, true))
+            batch.leave();
+    }
+
     /** Job's main routine which starts and monitors WorkerThread */
     @Override
     public void run(JobMonitor monitor) throws Exception
+    {
+        try
+        {
+            runWorker(monitor);
+        }
+        finally
+        {
+            leaveBatch();
+        }
+    }
+
+    /** @param monitor Monitor, checked for cancellation
+     *  @throws Exception on error
+     */
+    private void runWorker(final JobMonitor monitor) throws Exception
     {
         if (item == null)
             return;
@@ -239,38 +657,31 @@ public class ArchiveFetchJob implements JobRunnable
         if (monitor.isCanceled())
             return;
 
-        concurrent_requests.acquire();
-        try
-        {
-            monitor.beginTask(Messages.ArchiveFetchStart);
-
-            final WorkerThread worker = new WorkerThread();
-            final Future<?> done = Activator.thread_pool.submit(worker);
-            // Poll worker and progress monitor
-            long start = System.currentTimeMillis();
-            while (!done.isDone())
-            {   // Wait until worker is done, or time out to update info message
-                try
-                {
-                    done.get(POLL_PERIOD_MS, TimeUnit.MILLISECONDS);
-                }
-                catch (Exception ex)
-                {
-                    // Ignore
-                }
-                final long seconds = (System.currentTimeMillis() - start) / 1000;
-                final String info = MessageFormat.format(Messages.ArchiveFetchProgressFmt,
-                                                         worker.getMessage(), seconds);
-                monitor.updateTaskName(info);
-                // Try to cancel the worker in response to user's cancel request.
-                // Continues to cancel the worker until isDone()
-                if (monitor.isCanceled())
-                    worker.cancel();
+        monitor.beginTask(Messages.ArchiveFetchStart);
+
+        // Worker limits its concurrent requests to the archives
+        final WorkerThread worker = new WorkerThread();
+        final Future<?> done = Activator.thread_pool.submit(worker);
+        // Poll worker and progress monitor
+        long start = System.currentTimeMillis();
+        while (!done.isDone())
+        {   // Wait until worker is done, or time out to update info message
+            try
+            {
+                done.get(POLL_PERIOD_MS, TimeUnit.MILLISECONDS);
             }
-        }
-        finally
-        {
-            concurrent_requests.release();
+            catch (Exception ex)
+            {
+                // Ignore
+            }
+            final long seconds = (System.currentTimeMillis() - start) / 1000;
+            final String info = MessageFormat.format(Messages.ArchiveFetchProgressFmt,
+                                                     worker.getMessage(), seconds);
+            monitor.updateTaskName(info);
+            // Try to cancel the worker in response to user's cancel request.
+            // Continues to cancel the worker until isDone()
+            if (monitor.isCanceled())
+                worker.cancel();
         }
     }
 
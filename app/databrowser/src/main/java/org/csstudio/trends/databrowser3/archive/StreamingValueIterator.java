@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.archive;
+
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VType;
+import org.phoebus.archive.reader.ValueIterator;
+import org.phoebus.core.vtypes.VTypeHelper;
+
+/** ValueIterator for samples that another thread fetches from an archive
+ *
+ *  <p>The fetching thread adds samples and finally marks the end.
+ *  Reading blocks until the next sample or the end is available.
+ *  The queue is not bounded, so the fetching thread never waits
+ *  for the reader.
+ *
+ *  <p>Samples are expected in time order.
+ *  A sample older than the previously added one is ignored,
+ *  for example the initial sample that an archive returns from
+ *  before the start of a requested time range when that range
+ *  continues samples from the cache.
+ */
+class StreamingValueIterator implements ValueIterator
+{
+    /** Marker for the end of the samples */
+    private static final VType END = VDouble.of(Double.NaN, Alarm.none(), Time.now(), Display.none());
+
+    private final BlockingQueue<VType> queue = new LinkedBlockingQueue<>();
+
+    /** Time stamp of last sample added to the queue */
+    private Instant last = null;
+
+    /** Next sample, END, or <code>null</code> when not known, yet */
+    private VType next = null;
+
+    /** @param value Sample to add */
+    void add(final VType value)
+    {
+        final Instant time = VTypeHelper.getTimestamp(value);
+        if (last != null  &&  time.isBefore(last))
+            return;
+        last = time;
+        queue.add(value);
+    }
+
+    /** Mark the end of the samples */
+    void end()
+    {
+        queue.add(END);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (next == null)
+        {
+            try
+            {
+                next = queue.take();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                next = END;
+            }
+        }
+        return next != END;
+    }
+
+    @Override
+    public VType next()
+    {
+        if (! hasNext())
+            throw new NoSuchElementException();
+        final VType result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close()
+    {
+        queue.clear();
+        next = END;
+    }
+}
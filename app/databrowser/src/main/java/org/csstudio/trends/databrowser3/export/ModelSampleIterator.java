@@ -59,7 +59,7 @@ public class ModelSampleIterator implements ValueIterator
             if (samples.size() <= 0)
                 index = -1;
             // All data after start time?
-            else if (samples.get(0).getPosition().compareTo(start) >= 0)
+            else if (samples.getPosition(0).compareTo(start) >= 0)
                 index = 0;
             else
             {   // There is data before the start time. Find sample just before start time.
@@ -95,7 +95,7 @@ public class ModelSampleIterator implements ValueIterator
         {
             mid = (low + high) / 2;
             // Compare 'mid' sample to goal
-            final Instant time = samples.get(mid).getPosition();
+            final Instant time = samples.getPosition(mid);
             final int compare = time.compareTo(start);
             if (compare > 0)
             {   // 'mid' too big, search lower half
@@ -7,6 +7,7 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser3.model;
 
+import java.time.Instant;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -25,8 +26,23 @@ public class FormulaInput
     /** The variable name for this input. */
     final private String variable_name;
 
-    /** Index of the sample that next() will return or -1 when 'done' */
-    private int index = -1;
+    /** Time stamp of the last sample returned by next(), or <code>null</code>.
+     *  Used to locate the next sample after new samples were added
+     *  and older samples dropped from the live buffer.
+     */
+    private Instant last = null;
+
+    /** Revision of the input's samples when last locked */
+    private int revision = -1;
+
+    /** Did the input's samples get replaced since the last lock()? */
+    private boolean replaced = true;
+
+    /** Index of the sample that next() will return, valid while locked */
+    private int index = 0;
+
+    /** Number of 'raw' samples, valid while locked */
+    private int raw = 0;
 
     /** Constructor
      *  @param item ModelItem that provides the input data
@@ -50,57 +66,92 @@ public class FormulaInput
         return variable_name;
     }
 
-    /** Reset the sample iterator to the first sample
-     *  @see #next()
-     *  @return First sample or <code>null</code>
+    /** Lock the samples of the input's ModelItem
+     *  and locate the first sample after the one
+     *  last returned by next().
      *  @throws Exception on error
      */
-    public VType first() throws Exception
+    void lock() throws Exception
     {
         final PlotSamples samples = item.getSamples();
         if (! samples.getLock().tryLock(10, TimeUnit.SECONDS))
             throw new TimeoutException("Cannot lock " + samples);
-        try
-        {
-            if (samples.size() > 0)
-                index = 0;
-            else
-                index = -1;
-            return next();
-        }
-        finally
-        {
-            samples.getLock().unlock();
+        final int current = samples.getRevision();
+        replaced = current != revision;
+        revision = current;
+        raw = samples.getRawSize();
+        if (last == null)
+            index = 0;
+        else
+        {   // New samples are typically few and at the end
+            index = raw;
+            while (index > 0  &&  samples.getPosition(index-1).compareTo(last) > 0)
+                --index;
         }
     }
 
-    /** Iterate over the samples of the input's ModelItem
+    /** Un-lock samples after lock() */
+    void unlock()
+    {
+        item.getSamples().getLock().unlock();
+    }
+
+    /** Restart with the first sample
+     *  <p>Must be called while locked
+     */
+    void reset()
+    {
+        last = null;
+        index = 0;
+    }
+
+    /** @return <code>true</code> if samples were replaced
+     *          instead of just adding new samples
+     *          since the previous lock()
+     */
+    boolean isReplaced()
+    {
+        return replaced;
+    }
+
+    /** @param time Time stamp
+     *  @return <code>true</code> if the sample that next() will return
+     *          is not newer than the given time stamp
+     */
+    boolean hasSampleUpTo(final Instant time)
+    {
+        return index < raw  &&
+               item.getSamples().getPosition(index).compareTo(time) <= 0;
+    }
+
+    /** @return Time stamp of first sample or <code>null</code> */
+    Instant getFirstTime()
+    {
+        if (raw <= 0)
+            return null;
+        return item.getSamples().getPosition(0);
+    }
+
+    /** @return <code>true</code> if the last sample
+     *          continues to be valid until 'now'
+     */
+    boolean hasContinuation()
+    {
+        return item.getSamples().size() > raw;
+    }
+
+    /** Iterate over the 'raw' samples of the input's ModelItem,
+     *  not including the continuation of the last sample to 'now'.
+     *  <p>Must be called while locked
      *  @return Next value or <code>null</code>
-     *  @throws Exception on error
      */
-    public VType next() throws Exception
+    VType next()
     {
-        if (index < 0)
+        if (index >= raw)
             return null;
-        final VType result;
-        final PlotSamples samples = item.getSamples();
-        if (! samples.getLock().tryLock(10, TimeUnit.SECONDS))
-            throw new TimeoutException("Cannot lock " + samples);
-        try
-        {
-            if (index < samples.size())
-                result = samples.get(index++).getVType();
-            else
-            {
-                result = null;
-                index = -1;
-            }
-        }
-        finally
-        {
-            samples.getLock().unlock();
-        }
-        return result;
+        final PlotSample sample = item.getSamples().get(index++);
+        last = sample.getPosition();
+        return sample.getVType();
     }
 
     /** Check for new samples.
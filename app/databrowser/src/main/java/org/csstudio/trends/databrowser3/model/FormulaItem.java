@@ -77,6 +77,25 @@ public class FormulaItem extends ModelItem
      */
     private final FormulaSamples samples = new FormulaSamples();
 
+    /** Computed samples, shared with <code>samples</code>.
+     *  Access must lock samples
+     */
+    private List<PlotSample> result = new ArrayList<>();
+
+    /** 'Current' numeric min/val/max of each input
+     *  as of the last computed sample
+     *  @see #formula for locking
+     */
+    private double min[], val[], max[];
+
+    /** Time stamp of last computed sample or <code>null</code> */
+    private Instant last_time = null;
+
+    /** Is a full re-computation required, for example because the formula changed?
+     *  @see #formula for locking
+     */
+    private boolean compute_all = true;
+
     /** Initialize formula
      *  @param name Name of the Formula item
      *  @param expression Expression to evaluate
@@ -144,6 +163,7 @@ public class FormulaItem extends ModelItem
             for (int i=0; i<variables.length; ++i)
                 variables[i] = new VariableNode(inputs[i].getVariableName());
             this.formula = new Formula(expression, variables);
+            compute_all = true;
         }
         finally
         {
@@ -157,35 +177,62 @@ public class FormulaItem extends ModelItem
      *  Iterates over the input samples in a manner of spreadsheet or
      *  staircase-interpolation: An input with a time stamp is valid
      *  until there's a sample with a greater time stamp.
+     *  <p>
+     *  Each input keeps its position, so only samples newer than
+     *  the last computed sample are evaluated, appending to the result.
+     *  All samples are re-computed when the formula changes,
+     *  when the samples of an input are replaced, for example by merging
+     *  archived data, or when an input received samples that are older
+     *  than the last computed sample.
+     *  <p>
+     *  The continuation of each input's last sample to 'now' is not
+     *  evaluated as a separate sample.
+     *  The {@link FormulaSamples} extend the last computed sample to 'now'.
      */
     private void compute()
     {
         if (! samples.lock.isWriteLockedByCurrentThread())
             logger.log(Level.WARNING, "Samples for " + getName() + " are not locked! " + samples.lock, new Exception("Stack detail"));
 
-        final List<PlotSample> result = new ArrayList<>();
         final Display display = Display.none();
-
+        boolean all = compute_all;
+        int locked = 0;
         try
         {
-            // 'Current' value for each input or null when no more
-            // In computation loop, values is actually moved to the _next_
-            // value
-            final VType values[] = new VType[inputs.length];
+            // Lock inputs to get a consistent view of their samples
+            while (locked < inputs.length)
+                inputs[locked++].lock();
 
-            // 'Current' numeric min/val/max of values
-            final double min[] = new double[inputs.length];
-            final double val[] = new double[inputs.length];
-            final double max[] = new double[inputs.length];
+            for (FormulaInput input : inputs)
+                if (input.isReplaced()  ||
+                    (last_time != null  &&  input.hasSampleUpTo(last_time)))
+                {
+                    all = true;
+                    break;
+                }
+
+            if (all)
+            {
+                result = new ArrayList<>();
+                last_time = null;
+                min = new double[inputs.length];
+                val = new double[inputs.length];
+                max = new double[inputs.length];
+                for (int i = 0; i < inputs.length; i++)
+                {
+                    // Initially, none have any data
+                    min[i] = val[i] = max[i] = Double.NaN;
+                    inputs[i].reset();
+                }
+            }
+            final int computed = result.size();
 
-            // Determine first sample for each input
+            // 'Next' value for each input or null when no more
+            final VType values[] = new VType[inputs.length];
             boolean more_input = false;
             for (int i = 0; i < values.length; i++)
             {
-                // Initially, none have any data
-                min[i] = val[i] = max[i] = Double.NaN;
-                // Is there an initial value for any input?
-                values[i] = inputs[i].first();
+                values[i] = inputs[i].next();
                 if (values[i] != null)
                     more_input = true;
             }
@@ -216,12 +263,13 @@ public class FormulaItem extends ModelItem
                 boolean have_min_max = true;
                 for (int i = 0; i < values.length; i++)
                 {
-                    if (values[i] == null) // No more data
-                    {
+                    if (values[i] == null  &&  ! inputs[i].hasContinuation())
+                    {   // No more data
                         min[i] = val[i] = max[i] = Double.NaN;
                         have_min_max = false;
                     }
-                    else if (org.phoebus.core.vtypes.VTypeHelper.getTimestamp(values[i]).compareTo(time) <= 0)
+                    else if (values[i] != null  &&
+                             org.phoebus.core.vtypes.VTypeHelper.getTimestamp(values[i]).compareTo(time) <= 0)
                     {   // Input is valid before-and-up-to 'time'
                         if (values[i] instanceof VStatistics)
                         {
@@ -243,8 +291,9 @@ public class FormulaItem extends ModelItem
                         values[i] = inputs[i].next();
                     }
                     else
-                    {   // values[i].getTime() > time, so leave min/max/val[i]
-                        // as is until 'time' catches up with the next input sample.
+                    {   // values[i].getTime() > time, or last value continues to 'now',
+                        // so leave min/max/val[i] as is until 'time' catches up
+                        // with the next input sample.
                         // Just update the have_min_max flag
                         if (Double.isNaN(min[i])  ||  Double.isNaN(max[i]))
                             have_min_max = false;
@@ -279,15 +328,42 @@ public class FormulaItem extends ModelItem
                         value = VDouble.of(res_val, OK_FORMULA, timestamp, display);
                 }
                 result.add(new PlotSample(Messages.Formula, value));
+                last_time = time;
             }
+
+            if (! all  &&  result.size() > computed)
+            {   // Drop samples before the oldest input sample,
+                // for example when inputs' live buffers overflow
+                Instant first = null;
+                for (FormulaInput input : inputs)
+                {
+                    final Instant input_first = input.getFirstTime();
+                    if (input_first != null  &&  (first == null  ||  input_first.compareTo(first) < 0))
+                        first = input_first;
+                }
+                int drop = 0;
+                while (first != null  &&  drop < result.size()  &&  result.get(drop).getPosition().compareTo(first) < 0)
+                    ++drop;
+                if (drop > 0)
+                    result.subList(0, drop).clear();
+            }
+            compute_all = false;
         }
         catch (Exception ex)
         {
             logger.log(Level.WARNING, "Error computing " + this, ex);
+            // Start over next time
+            compute_all = true;
+        }
+        finally
+        {
+            while (locked > 0)
+                inputs[--locked].unlock();
         }
 
         // Update PlotSamples
-        samples.set(result);
+        if (all)
+            samples.set(result);
     }
 
     /** Re-evaluate the formula in case some of the input samples changed.
@@ -309,7 +385,7 @@ public class FormulaItem extends ModelItem
                     anything_new = true;
                     break;
                 }
-            if (!anything_new)
+            if (!anything_new  &&  !compute_all)
                 return false;
             compute();
         }
@@ -390,6 +466,7 @@ public class FormulaItem extends ModelItem
         this.model = Optional.empty();
         this.inputs = null;
         this.variables = null;
+        this.result = new ArrayList<>();
         this.samples.set(Collections.emptyList());
     }
 }
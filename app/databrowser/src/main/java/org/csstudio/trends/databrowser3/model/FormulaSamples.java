@@ -8,6 +8,7 @@
 package org.csstudio.trends.databrowser3.model;
 
 import java.time.Instant;
+import java.util.List;
 
 import org.epics.vtype.AlarmSeverity;
 import org.phoebus.archive.vtype.VTypeHelper;
@@ -18,10 +19,31 @@ import org.phoebus.archive.vtype.VTypeHelper;
  *  extended to 'now' assuming no new data means
  *  that the last value is still valid.
  *
+ *  <p>The {@link FormulaItem} either replaces all samples,
+ *  which changes the revision,
+ *  or appends to the list of samples.
+ *
  *  @author Kay Kasemir
  */
 public class FormulaSamples extends PlotSampleArray
 {
+    /** @param samples Samples <u>which are NOT copied</u>,
+     *                 replacing all existing samples
+     */
+    @Override
+    public void set(final List<PlotSample> samples)
+    {
+        super.set(samples);
+        revision.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRawSize()
+    {
+        return super.size();
+    }
+
     /** @return Sample count, includes the last sample extended to 'now' */
     @Override
     public int size()
@@ -8,18 +8,20 @@
 package org.csstudio.trends.databrowser3.model;
 
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.csstudio.javafx.rtplot.data.TimeDataSearch;
+import org.csstudio.javafx.rtplot.data.PlotDataPyramid;
+import org.epics.vtype.AlarmSeverity;
 import org.epics.vtype.VType;
 
 /** Holder for 'historic' samples.
  *  <p>
  *  In addition to holding 'all' historic samples, this class
  *  allows for a 'border' time beyond which no samples will
- *  be provided.
+ *  be provided, see {@link #getVisibleSize(Optional)}.
  *  When setting this border to the start of the 'live' samples,
  *  this class will thus assert that the live samples have
  *  precedence because no 'historic' sample is provided
@@ -28,97 +30,257 @@ import org.epics.vtype.VType;
  *  the live data ring buffer rolls around, the 'border' time adjustments
  *  might then uncover historic samples that were previously
  *  hidden below the 'live' time range.
+ *  <p>
+ *  Samples are held in a {@link PlotSampleRope} of {@link PlotSampleColumns}.
+ *  The indexed accessors read those directly,
+ *  {@link #get(int)} creates a {@link PlotSample} on demand.
  *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed HistoricSamples to handle waveform index.
  */
 public class HistoricSamples extends PlotSamples
 {
-    private class HistoricSampleAccess extends PlotSamples
+    // No locking in here, all access is via PVSamples
+
+    /** "All" historic samples */
+    private PlotSampleRope samples = PlotSampleRope.EMPTY;
+
+    /** Visible size for a border time */
+    private static class Border
     {
-        @Override
-        public int size()
+        final Optional<Instant> time;
+        final int visible_size;
+
+        Border(final Optional<Instant> time, final int visible_size)
         {
-            return samples.length;
+            this.time = time;
+            this.visible_size = visible_size;
         }
+    }
 
-        @Override
-        public PlotSample get(int index)
+    /** Most recently computed border, <code>null</code> when samples changed.
+     *  Readers may compute it concurrently, last one wins.
+     */
+    private volatile Border border = null;
+
+    /** Level-of-detail pyramid for columns and waveform index */
+    private static class Pyramid
+    {
+        PlotSampleColumns samples;
+        final int waveform_index;
+        final PlotDataPyramid pyramid = new PlotDataPyramid();
+
+        Pyramid(final PlotSampleColumns samples, final int waveform_index)
         {
-            return samples[index];
+            this.waveform_index = waveform_index;
+            extend(samples);
         }
-    };
 
-    // No locking in here, all access is via PVSamples
+        /** @param samples Samples that start with the samples already in the pyramid */
+        void extend(final PlotSampleColumns samples)
+        {
+            this.samples = samples;
+            final int N = samples.size();
+            for (int i=(int) pyramid.getCount(); i<N; ++i)
+                pyramid.add(samples.getValue(i, waveform_index),
+                            samples.getMin(i, waveform_index),
+                            samples.getMax(i, waveform_index));
+        }
 
-    /** "All" historic samples */
-    private PlotSample samples[] = new PlotSample[0];
+        /** @param columns Columns
+         *  @param waveform_index Waveform index
+         *  @return Can this pyramid be used for the columns, possibly after extending it?
+         */
+        boolean canHandle(final PlotSampleColumns columns, final int waveform_index)
+        {
+            if (this.waveform_index != waveform_index)
+                return false;
+            if (samples == columns  ||  columns.isPrefixOf(samples))
+                return true;
+            if (samples.isPrefixOf(columns))
+            {
+                extend(columns);
+                return true;
+            }
+            return false;
+        }
+    }
 
-    /** If set, samples beyond this time are hidden from access */
-    private Optional<Instant> border_time = Optional.empty();
+    /** Samples for which the pyramids were created. SYNC on this */
+    private PlotSampleRope pyramid_samples = null;
 
-    /** Subset of samples.length that's below border_time
-     *  @see #computeVisibleSize()
+    /** Pyramid for each segment of the samples, created when first needed.
+     *  Segments that keep their columns when new samples are merged
+     *  also keep their pyramid.
+     *  SYNC on this
      */
-    private int visible_size = 0;
+    private Pyramid[] pyramids = new Pyramid[0];
 
     /** Waveform index */
     final private AtomicInteger waveform_index;
 
-    final private TimeDataSearch searcher = new TimeDataSearch();
-
     HistoricSamples(final AtomicInteger waveform_index)
     {
         this.waveform_index = waveform_index;
     }
 
-    /** Define a new 'border' time beyond which no samples
-     *  are returned from the history
-     *  @param border_time New time or <code>empty</code> to access all samples
+    /** Determine how many samples are visible for a 'border' time
+     *  beyond which no samples are returned from the history.
+     *  <p>
+     *  Result is cached, so the history is only searched again
+     *  when the border time or the samples change.
+     *
+     *  @param border_time Border time or <code>empty</code> to access all samples
+     *  @return Number of samples before the border
      */
-    public void setBorderTime(final Optional<Instant> border_time)
-    {   // Anything new?
-        if (this.border_time.equals(border_time))
-            return;
-        // New border, recompute, mark as 'new data'
-        this.border_time = border_time;
-        computeVisibleSize();
-    }
-
-    /** Update visible size */
-    private void computeVisibleSize()
+    public int getVisibleSize(final Optional<Instant> border_time)
     {
+        final Border current = border;
+        if (current != null  &&  current.time.equals(border_time))
+            return current.visible_size;
+        final int visible_size;
         if (border_time.isPresent())
         {
-            final int last_index = searcher.findSampleLessThan(new HistoricSampleAccess(), border_time.get());
+            final int last_index = samples.findSampleLessThan(PlotSampleColumns.toNanos(border_time.get()));
             visible_size = (last_index < 0)   ?   0   :   last_index + 1;
         }
         else
-            visible_size = samples.length;
+            visible_size = samples.size();
+        border = new Border(border_time, visible_size);
+        return visible_size;
     }
 
     /** {@inheritDoc} */
-    @SuppressWarnings("nls")
     @Override
     public PlotSample get(final int i)
     {
-        if (i >= visible_size)
-            throw new IndexOutOfBoundsException("Index " + i + " exceeds visible size " + visible_size);
-        return samples[i];
+        return samples.getSample(waveform_index, i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Instant getPosition(final int i)
+    {
+        return samples.getTime(i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getValue(final int i)
+    {
+        return samples.getValue(i, waveform_index.get());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getStdDev(final int i)
+    {
+        return samples.getStdDev(i, waveform_index.get());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMin(final int i)
+    {
+        return samples.getMin(i, waveform_index.get());
     }
 
     /** {@inheritDoc} */
     @Override
+    public double getMax(final int i)
+    {
+        return samples.getMax(i, waveform_index.get());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int[] getReducedIndices(final int start, final int end, final int pixels)
+    {
+        final Pyramid[] current = getPyramids();
+        // Reduce each segment, using same number of samples per pixel
+        final int[][] parts = new int[current.length][];
+        int total = 0;
+        for (int s=0; s<current.length; ++s)
+        {
+            final int seg_start = Math.max(start, samples.getSegmentStart(s));
+            final int seg_end = Math.min(end, samples.getSegmentEnd(s));
+            if (seg_start >= seg_end)
+                continue;
+            final int seg_pixels = (int) Math.max(1, (long) pixels * (seg_end - seg_start) / (end - start));
+            final int shift = samples.getSegmentFirst(s) - samples.getSegmentStart(s);
+            parts[s] = current[s].pyramid.reduce(seg_start + shift, seg_end + shift, seg_pixels, seg_start);
+            total += parts[s].length;
+        }
+        if (current.length == 1  &&  parts[0] != null)
+            return parts[0];
+        final int[] indices = new int[total];
+        int n = 0;
+        for (int[] part : parts)
+            if (part != null)
+            {
+                System.arraycopy(part, 0, indices, n, part.length);
+                n += part.length;
+            }
+        return indices;
+    }
+
+    /** @return Pyramid for each segment of current samples and waveform index */
+    private synchronized Pyramid[] getPyramids()
+    {
+        // Readers hold the PVSamples read lock, so samples don't change,
+        // but several readers may get here at the same time
+        final int index = waveform_index.get();
+        if (pyramid_samples == samples  &&
+            (pyramids.length == 0  ||  pyramids[0].waveform_index == index))
+            return pyramids;
+        final int N = samples.getSegmentCount();
+        final Pyramid[] update = new Pyramid[N];
+        for (int s=0; s<N; ++s)
+            update[s] = findPyramid(samples.getSegmentColumns(s), index, update, s);
+        pyramid_samples = samples;
+        pyramids = update;
+        return update;
+    }
+
+    /** @param columns Columns
+     *  @param index Waveform index
+     *  @param update Pyramids found so far
+     *  @param count Number of pyramids found so far
+     *  @return Existing pyramid for the columns or new one
+     */
+    private Pyramid findPyramid(final PlotSampleColumns columns, final int index,
+                                final Pyramid[] update, final int count)
+    {
+        for (int i=0; i<count; ++i)
+            if (update[i].canHandle(columns, index))
+                return update[i];
+        for (Pyramid pyramid : pyramids)
+            if (pyramid.canHandle(columns, index))
+                return pyramid;
+        return new Pyramid(columns, index);
+    }
+
+    /** @param i Sample index
+     *  @return Alarm severity of that sample
+     */
+    public AlarmSeverity getSeverity(final int i)
+    {
+        return samples.getSeverity(i);
+    }
+
+    /** @return Number of samples, ignoring the border time */
+    @Override
     public int size()
     {
-        return visible_size;
+        return samples.size();
     }
 
     /**
      * @return the number of samples, ignoring the border time
      */
+    @Override
     public int getRawSize() {
-        return samples.length;
+        return samples.size();
     }
 
     /**
@@ -128,7 +290,7 @@ public class HistoricSamples extends PlotSamples
      * @return the plot sample
      */
     public PlotSample getRawSample(int i) {
-        return samples[i];
+        return samples.getSample(waveform_index, i);
     }
 
     /** Merge newly received archive data into historic samples
@@ -136,28 +298,34 @@ public class HistoricSamples extends PlotSamples
      *  @param result Samples to add/merge
      */
     public void mergeArchivedData(final String source, final List<VType> result)
+    {
+        mergeArchivedData(Collections.nCopies(result.size(), source), result);
+    }
+
+    /** Merge newly received archive data into historic samples
+     *  @param sources Info about data source of each sample
+     *  @param result Samples to add/merge
+     */
+    public void mergeArchivedData(final List<String> sources, final List<VType> result)
     {
         // Anything new at all?
         if (result.size() <= 0)
             return;
-        // Turn IValues into PlotSamples
-        final PlotSample new_samples[] = new PlotSample[result.size()];
-        for (int i=0; i<new_samples.length; ++i)
-            new_samples[i] = new PlotSample(waveform_index, source, result.get(i));
+        // Turn VTypes into columns
+        final PlotSampleColumns new_samples = PlotSampleColumns.of(sources, result);
         // Merge with existing samples
-        final PlotSample merged[] = PlotSampleMerger.merge(samples, new_samples);
+        final PlotSampleRope merged = PlotSampleMerger.merge(samples, new_samples);
         if (merged == samples)
             return;
         samples = merged;
+        border = null;
         have_new_samples.set(true);
-        computeVisibleSize();
     }
 
     /** Delete all samples */
     public void clear()
     {
-        visible_size = 0;
-        samples = new PlotSample[0];
-        border_time = Optional.empty();
+        samples = PlotSampleRope.EMPTY;
+        border = null;
     }
 }
@@ -7,24 +7,117 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser3.model;
 
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.csstudio.javafx.rtplot.data.PlotDataPyramid;
 import org.csstudio.trends.databrowser3.preferences.Preferences;
-import org.phoebus.framework.util.RingBuffer;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VType;
 
 /** Ring buffer for 'live' samples.
  *  <p>
  *  New samples are always added to the end of a ring buffer.
+ *  <p>
+ *  Samples are kept in {@link PlotSampleColumns}.
+ *  There is a single writer, the PV's value callback,
+ *  which adds samples without locking out readers.
+ *  Readers obtain a {@link Snapshot} and access samples
+ *  relative to that snapshot, so the sample index
+ *  does not move while new samples are added.
+ *  <p>
+ *  The ring has some 'slack' beyond its capacity,
+ *  which allows the writer to add samples
+ *  before it overwrites the oldest sample of a snapshot.
+ *  Each read checks the write counter afterwards,
+ *  similar to a {@link java.util.concurrent.locks.StampedLock}
+ *  optimistic read.
+ *  Should a reader be so slow that its snapshot has been overwritten,
+ *  it will receive the oldest sample that's still available.
  *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed LiveSamples to handle waveform index.
  */
 public class LiveSamples extends PlotSamples
 {
-    // No locking in here, all access is via PVSamples
+    /** Ring of samples with fixed capacity.
+     *  Replaced as a whole when the capacity changes or samples are cleared,
+     *  so existing snapshots remain valid.
+     */
+    private static class Ring
+    {
+        /** Number of samples provided to readers */
+        final int capacity;
+
+        /** Columns for capacity plus slack */
+        final PlotSampleColumns columns;
+
+        /** Number of samples ever added to the ring.
+         *  Sample with absolute index 'a' is in slot a % columns.size().
+         */
+        volatile long written = 0;
+
+        /** Level-of-detail pyramid, updated by readers. SYNC on pyramid */
+        final PlotDataPyramid pyramid = new PlotDataPyramid();
+
+        /** Absolute index of the pyramid's sample number 0 */
+        long pyramid_base = 0;
+
+        /** Waveform index used for the pyramid */
+        int pyramid_waveform_index = 0;
+
+        Ring(final int capacity)
+        {
+            this.capacity = capacity;
+            columns = PlotSampleColumns.createRing(capacity + Math.max(100, capacity / 10));
+        }
+
+        int slot(final long a)
+        {
+            return (int) (a % columns.size());
+        }
+
+        /** To be called after reading a sample
+         *  @param a Absolute index of sample
+         *  @return <code>true</code> if that sample was not overwritten
+         */
+        boolean isValid(final long a)
+        {
+            // Order the preceding reads of the sample before the check
+            VarHandle.acquireFence();
+            return written - a < columns.size();
+        }
+
+        /** @return Absolute index of oldest sample that's still safe to read */
+        long oldest()
+        {
+            return Math.max(0, written - capacity);
+        }
+    }
+
+    /** Consistent view of the ring buffer */
+    static class Snapshot
+    {
+        final Ring ring;
 
-    private RingBuffer<PlotSample> samples =
-        new RingBuffer<PlotSample>(Preferences.live_buffer_size);
+        /** Absolute index of first sample */
+        final long start;
+
+        /** Number of samples */
+        final int size;
+
+        Snapshot(final Ring ring)
+        {
+            this.ring = ring;
+            final long end = ring.written;
+            size = (int) Math.min(end, ring.capacity);
+            start = end - size;
+        }
+    }
+
+    /** Current ring. Writes are synchronized on 'this' */
+    private volatile Ring ring = new Ring(Preferences.live_buffer_size);
 
     /** Waveform index */
     final private AtomicInteger waveform_index;
@@ -37,7 +130,7 @@ public class LiveSamples extends PlotSamples
     /** @return Maximum number of samples in ring buffer */
     public int getCapacity()
     {
-        return samples.getCapacity();
+        return ring.capacity;
     }
 
     /** Set new capacity.
@@ -46,37 +139,257 @@ public class LiveSamples extends PlotSamples
      *  @param new_capacity New sample count capacity
      *  @throws Exception on out-of-memory error
      */
-    public void setCapacity(int new_capacity) throws Exception
+    public synchronized void setCapacity(int new_capacity) throws Exception
     {
         if (new_capacity < 10)
             new_capacity = 10;
-        samples.setCapacity(new_capacity);
+        final Snapshot old = snapshot();
+        final Ring new_ring;
+        try
+        {
+            new_ring = new Ring(new_capacity);
+        }
+        catch (OutOfMemoryError err)
+        {
+            throw new Exception("Out of memory: " + err.getMessage()); //$NON-NLS-1$
+        }
+        // Copy newest samples. No concurrent writes to the old ring.
+        final int copy = Math.min(old.size, new_capacity);
+        for (int i=old.size-copy; i<old.size; ++i)
+        {
+            final int slot = old.ring.slot(old.start + i);
+            new_ring.columns.set(new_ring.slot(new_ring.written),
+                                 old.ring.columns.getSource(slot),
+                                 old.ring.columns.getVType(slot));
+            ++new_ring.written;
+        }
+        ring = new_ring;
+        have_new_samples.set(true);
+    }
+
+    /** @return Snapshot of current samples */
+    Snapshot snapshot()
+    {
+        return new Snapshot(ring);
     }
 
-    /** @param sample Sample to add to ring buffer */
-    void add(final PlotSample sample)
+    /** @return <code>true</code> if there are no samples */
+    boolean isEmpty()
     {
-        sample.setWaveformIndex(waveform_index);
-        samples.add(sample);
+        return ring.written <= 0;
+    }
+
+    /** Add sample to ring buffer.
+     *  <p>
+     *  Meant to be called by only one thread at a time,
+     *  the PV's value callback, and synchronized
+     *  with changes to the capacity.
+     *  @param source Source of the sample
+     *  @param value Value of the sample
+     */
+    synchronized void add(final String source, final VType value)
+    {
+        final Ring current = ring;
+        final long a = current.written;
+        current.columns.set(current.slot(a), source, value);
+        // Publish the sample
+        current.written = a + 1;
         have_new_samples.set(true);
     }
 
+    /** @param snapshot Snapshot
+     *  @param i Index 0 .. snapshot.size-1
+     *  @return Time stamp of sample
+     */
+    Instant getPosition(final Snapshot snapshot, final int i)
+    {
+        final Ring r = snapshot.ring;
+        long a = snapshot.start + i;
+        while (true)
+        {
+            final long nanos = r.columns.getNanos(r.slot(a));
+            if (r.isValid(a))
+                return Instant.ofEpochSecond(Math.floorDiv(nanos, 1000000000L),
+                                             Math.floorMod(nanos, 1000000000L));
+            a = r.oldest();
+        }
+    }
+
+    /** @param snapshot Snapshot
+     *  @param i Index 0 .. snapshot.size-1
+     *  @return Value of sample
+     */
+    double getValue(final Snapshot snapshot, final int i)
+    {
+        final Ring r = snapshot.ring;
+        long a = snapshot.start + i;
+        while (true)
+        {
+            final double value = r.columns.getValue(r.slot(a), waveform_index.get());
+            if (r.isValid(a))
+                return value;
+            a = r.oldest();
+        }
+    }
+
+    /** @param snapshot Snapshot
+     *  @param i Index 0 .. snapshot.size-1
+     *  @return Standard deviation of sample
+     */
+    double getStdDev(final Snapshot snapshot, final int i)
+    {
+        final Ring r = snapshot.ring;
+        long a = snapshot.start + i;
+        while (true)
+        {
+            final double value = r.columns.getStdDev(r.slot(a), waveform_index.get());
+            if (r.isValid(a))
+                return value;
+            a = r.oldest();
+        }
+    }
+
+    /** @param snapshot Snapshot
+     *  @param i Index 0 .. snapshot.size-1
+     *  @return Minimum of sample
+     */
+    double getMin(final Snapshot snapshot, final int i)
+    {
+        final Ring r = snapshot.ring;
+        long a = snapshot.start + i;
+        while (true)
+        {
+            final double value = r.columns.getMin(r.slot(a), waveform_index.get());
+            if (r.isValid(a))
+                return value;
+            a = r.oldest();
+        }
+    }
+
+    /** @param snapshot Snapshot
+     *  @param i Index 0 .. snapshot.size-1
+     *  @return Maximum of sample
+     */
+    double getMax(final Snapshot snapshot, final int i)
+    {
+        final Ring r = snapshot.ring;
+        long a = snapshot.start + i;
+        while (true)
+        {
+            final double value = r.columns.getMax(r.slot(a), waveform_index.get());
+            if (r.isValid(a))
+                return value;
+            a = r.oldest();
+        }
+    }
+
+    /** @param snapshot Snapshot
+     *  @param i Index 0 .. snapshot.size-1
+     *  @return Alarm severity of sample
+     */
+    AlarmSeverity getSeverity(final Snapshot snapshot, final int i)
+    {
+        final Ring r = snapshot.ring;
+        long a = snapshot.start + i;
+        while (true)
+        {
+            final AlarmSeverity severity = r.columns.getSeverity(r.slot(a));
+            if (r.isValid(a))
+                return severity;
+            a = r.oldest();
+        }
+    }
+
+    /** @param snapshot Snapshot
+     *  @param i Index 0 .. snapshot.size-1
+     *  @return Sample, independent from the ring buffer
+     */
+    PlotSample get(final Snapshot snapshot, final int i)
+    {
+        final Ring r = snapshot.ring;
+        long a = snapshot.start + i;
+        while (true)
+        {
+            final int slot = r.slot(a);
+            final String source = r.columns.getSource(slot);
+            final VType value = r.columns.getVType(slot);
+            if (r.isValid(a))
+                return new PlotSample(waveform_index, source, value);
+            a = r.oldest();
+        }
+    }
+
+    /** @param snapshot Snapshot
+     *  @param start Index of first sample 0 .. snapshot.size-1
+     *  @param end Index after last sample
+     *  @param pixels Number of horizontal pixels
+     *  @param index Index to use for the start sample
+     *  @return Reduced sample indices or <code>null</code>
+     *  @see PlotDataPyramid#reduce(long, long, int, int)
+     */
+    int[] getReducedIndices(final Snapshot snapshot, final int start, final int end, final int pixels, final int index)
+    {
+        final Ring r = snapshot.ring;
+        final int waveform = waveform_index.get();
+        synchronized (r.pyramid)
+        {
+            final PlotDataPyramid pyramid = r.pyramid;
+            // Restart when waveform index changed or
+            // the pyramid fell behind the oldest sample
+            if (waveform != r.pyramid_waveform_index  ||
+                r.pyramid_base + pyramid.getCount() < snapshot.start)
+            {
+                pyramid.clear();
+                r.pyramid_base = snapshot.start;
+                r.pyramid_waveform_index = waveform;
+            }
+            // Add samples that were written since the last call
+            final long end_of_snapshot = snapshot.start + snapshot.size;
+            for (long a = r.pyramid_base + pyramid.getCount();  a < end_of_snapshot;  ++a)
+            {
+                final int slot = r.slot(a);
+                final double value = r.columns.getValue(slot, waveform);
+                final double min = r.columns.getMin(slot, waveform);
+                final double max = r.columns.getMax(slot, waveform);
+                if (! r.isValid(a))
+                {   // Too slow, sample has been overwritten
+                    pyramid.clear();
+                    r.pyramid_base = r.oldest();
+                    return null;
+                }
+                pyramid.add(value, min, max);
+            }
+            pyramid.dropBefore(snapshot.start - r.pyramid_base);
+            return pyramid.reduce(snapshot.start + start - r.pyramid_base,
+                                  snapshot.start + end - r.pyramid_base,
+                                  pixels, index);
+        }
+    }
+
     @Override
     public int size()
     {
-        return samples.size();
+        return snapshot().size;
     }
 
+    /** Access to a sample via a new snapshot.
+     *  Use {@link #get(Snapshot, int)} to read several samples.
+     *  @param i Index
+     *  @return Sample
+     */
     @Override
     public PlotSample get(final int i)
     {
-        return samples.get(i);
+        final Snapshot snapshot = snapshot();
+        if (i < 0  ||  i >= snapshot.size)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return get(snapshot, i);
     }
 
     /** Delete all samples */
-    public void clear()
+    public synchronized void clear()
     {
-        samples.clear();
+        ring = new Ring(ring.capacity);
         have_new_samples.set(true);
     }
 }
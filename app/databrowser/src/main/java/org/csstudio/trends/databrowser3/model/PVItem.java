@@ -11,6 +11,7 @@ import static org.csstudio.trends.databrowser3.Activator.logger;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -447,13 +448,23 @@ public class PVItem extends ModelItem
      */
     public void mergeArchivedSamples(final String server_name,
             final List<VType> new_samples)
+    {
+        mergeArchivedSamples(Collections.nCopies(new_samples.size(), server_name), new_samples);
+    }
+
+    /** Add data retrieved from archives to the 'historic' section
+     *  @param server_names Archive server that provided each sample
+     *  @param new_samples Historic data
+     */
+    public void mergeArchivedSamples(final List<String> server_names,
+            final List<VType> new_samples)
     {
         final boolean need_refresh;
         if (! samples.lockForWriting())
             return;
         try
         {
-            samples.mergeArchivedData(server_name, new_samples);
+            samples.mergeArchivedData(server_names, new_samples);
             need_refresh = automaticRefresh && model.isPresent() &&
                     samples.isHistoryRefreshNeeded(model.get().getTimerange());
         }
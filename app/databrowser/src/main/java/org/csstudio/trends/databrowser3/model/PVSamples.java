@@ -10,11 +10,14 @@ package org.csstudio.trends.databrowser3.model;
 import static org.csstudio.trends.databrowser3.Activator.logger;
 
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 
 import org.csstudio.trends.databrowser3.Messages;
@@ -48,9 +51,14 @@ public class PVSamples extends PlotSamples
      * PVSamples.size(), PVSamples.get()
      * and caller should take the PVSamples lock.
      *
-     * Write access goes via
-     * PVSamples.add*(), PVSamples.mergeArchivedData(),
+     * Write access to the history goes via
+     * PVSamples.mergeArchivedData(), PVSamples.clear(),
      * which take the write lock.
+     *
+     * Live samples are added without taking the write lock.
+     * When a reader takes the PVSamples lock, it obtains a 'View'
+     * with a snapshot of the live samples and the matching
+     * size of the history, which remain fixed while the lock is held.
      */
     /** Historic samples */
     final private HistoricSamples history;
@@ -58,8 +66,96 @@ public class PVSamples extends PlotSamples
     /** Live samples. Should start after end of historic samples */
     final private LiveSamples live;
 
+    /** Samples seen by one reader */
+    private static class View
+    {
+        final LiveSamples.Snapshot live;
+
+        /** Number of historic samples before start of live samples */
+        final int history_size;
+
+        /** Nesting level of PVSamples lock */
+        int holds = 1;
+
+        View(final LiveSamples.Snapshot live, final int history_size)
+        {
+            this.live = live;
+            this.history_size = history_size;
+        }
+
+        int getRawSize()
+        {
+            return history_size + live.size;
+        }
+    }
+
+    /** View of a thread that holds the lock */
+    private final ThreadLocal<View> views = new ThreadLocal<>();
+
+    /** Read lock which also establishes the reader's {@link View} */
+    private class ViewLock implements Lock
+    {
+        private final Lock read = lock.readLock();
+
+        @Override
+        public void lock()
+        {
+            read.lock();
+            enterView();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException
+        {
+            read.lockInterruptibly();
+            enterView();
+        }
+
+        @Override
+        public boolean tryLock()
+        {
+            if (! read.tryLock())
+                return false;
+            enterView();
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException
+        {
+            if (! read.tryLock(time, unit))
+                return false;
+            enterView();
+            return true;
+        }
+
+        @Override
+        public void unlock()
+        {
+            leaveView();
+            read.unlock();
+        }
+
+        @Override
+        public Condition newCondition()
+        {
+            return read.newCondition();
+        }
+
+        @Override
+        public String toString()
+        {
+            return read.toString();
+        }
+    }
+
+    private final Lock view_lock = new ViewLock();
+
     private boolean emptyHistoryOnAdd = false;
-    private int samplesAddedSinceLastRefresh = 0;
+    /** Live samples added since the last history refresh.
+     *  Incremented on the PV thread, read and reset when checking for a refresh
+     */
+    private final AtomicInteger samplesAddedSinceLastRefresh = new AtomicInteger();
 
     PVSamples(final AtomicInteger waveform_index)
     {
@@ -67,6 +163,52 @@ public class PVSamples extends PlotSamples
         live = new LiveSamples(waveform_index);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Lock getLock()
+    {
+        return view_lock;
+    }
+
+    /** @return New view of current samples */
+    private View createView()
+    {
+        final LiveSamples.Snapshot snapshot = live.snapshot();
+        // History ends before the start of 'live' samples.
+        // HistoricSamples caches the visible size, so this only searches
+        // the history when the history changed or the oldest live sample
+        // changed because the ring buffer wrapped around.
+        final Optional<Instant> border = snapshot.size > 0
+                                       ? Optional.of(live.getPosition(snapshot, 0))
+                                       : Optional.empty();
+        return new View(snapshot, history.getVisibleSize(border));
+    }
+
+    private void enterView()
+    {
+        final View view = views.get();
+        if (view == null)
+            views.set(createView());
+        else
+            ++view.holds;
+    }
+
+    private void leaveView()
+    {
+        final View view = views.get();
+        if (view != null  &&  --view.holds <= 0)
+            views.remove();
+    }
+
+    /** @return View of current thread, or new view if thread doesn't hold the read lock */
+    private View getView()
+    {
+        final View view = views.get();
+        if (view != null)
+            return view;
+        return createView();
+    }
+
     /** @return Maximum number of live samples in ring buffer */
     public int getLiveCapacity()
     {
@@ -87,22 +229,21 @@ public class PVSamples extends PlotSamples
     @Override
     public int size()
     {
-        final int raw = getRawSize();
+        final View view = getView();
+        final int raw = view.getRawSize();
         if (raw <= 0)
             return raw;
-        final PlotSample last = get(raw-1);
-        if (org.phoebus.core.vtypes.VTypeHelper.getSeverity(last.getVType()) == AlarmSeverity.UNDEFINED)
+        if (getRawSeverity(view, raw-1) == AlarmSeverity.UNDEFINED)
             return raw;
         // Last sample is valid, so it should still apply 'now'
         return raw+1;
     }
 
-    /** @return Size of the actual historic and live samples
-     *          without the continuation to 'now'
-     */
-    private int getRawSize()
+    /** {@inheritDoc} */
+    @Override
+    public int getRawSize()
     {
-        return history.size() + live.size();
+        return getView().getRawSize();
     }
 
     /** @param index 0... getSize()-1
@@ -115,13 +256,14 @@ public class PVSamples extends PlotSamples
         if (lock.getReadHoldCount() <= 0  && ! lock.isWriteLockedByCurrentThread())
             logger.log(Level.WARNING, "Missing lock", new Exception("Stack Trace"));
 
+        final View view = getView();
         // If the data point is 'real'/raw then return it
-        final int raw_count = getRawSize();
+        final int raw_count = view.getRawSize();
         if (index < raw_count)
-            return getRawSample(index);
+            return getRawSample(view, index);
         // Else, create a 'virtual' point by transforming its
         // timestamp to 'now' to display the currently implied value
-        final PlotSample sample = getRawSample(raw_count-1);
+        final PlotSample sample = getRawSample(view, raw_count-1);
         if (Instant.now().compareTo(sample.getPosition()) < 0)
             return sample;
         else
@@ -129,15 +271,127 @@ public class PVSamples extends PlotSamples
     }
 
     /** Get 'raw' sample, no continuation until 'now'
+     *  @param view View
      *  @param index 0... getRawSize()-1
      *  @return Sample from historic or live sample subsection
      */
-    private PlotSample getRawSample(final int index)
+    private PlotSample getRawSample(final View view, final int index)
     {
-        final int num_old = history.size();
-        if (index < num_old)
+        if (index < view.history_size)
             return history.get(index);
-        return live.get(index - num_old);
+        return live.get(view.live, index - view.history_size);
+    }
+
+    /** @param view View
+     *  @param index 0... getRawSize()-1
+     *  @return Severity of 'raw' sample
+     */
+    private AlarmSeverity getRawSeverity(final View view, final int index)
+    {
+        if (index < view.history_size)
+            return history.getSeverity(index);
+        return live.getSeverity(view.live, index - view.history_size);
+    }
+
+    // Indexed access reads samples directly from their columns.
+    // Index beyond the raw samples is the continuation of the last sample to 'now'.
+
+    /** {@inheritDoc} */
+    @Override
+    public Instant getPosition(final int index)
+    {
+        final View view = getView();
+        final int raw_count = view.getRawSize();
+        if (index < raw_count)
+            return getRawPosition(view, index);
+        final Instant last = getRawPosition(view, raw_count-1);
+        final Instant now = Instant.now();
+        if (now.compareTo(last) < 0)
+            return last;
+        return now;
+    }
+
+    /** @param view View
+     *  @param index 0... getRawSize()-1
+     *  @return Position of 'raw' sample
+     */
+    private Instant getRawPosition(final View view, final int index)
+    {
+        if (index < view.history_size)
+            return history.getPosition(index);
+        return live.getPosition(view.live, index - view.history_size);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getValue(final int index)
+    {
+        final View view = getView();
+        final int raw = Math.min(index, view.getRawSize()-1);
+        if (raw < view.history_size)
+            return history.getValue(raw);
+        return live.getValue(view.live, raw - view.history_size);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getStdDev(final int index)
+    {
+        final View view = getView();
+        final int raw = Math.min(index, view.getRawSize()-1);
+        if (raw < view.history_size)
+            return history.getStdDev(raw);
+        return live.getStdDev(view.live, raw - view.history_size);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMin(final int index)
+    {
+        final View view = getView();
+        final int raw = Math.min(index, view.getRawSize()-1);
+        if (raw < view.history_size)
+            return history.getMin(raw);
+        return live.getMin(view.live, raw - view.history_size);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMax(final int index)
+    {
+        final View view = getView();
+        final int raw = Math.min(index, view.getRawSize()-1);
+        if (raw < view.history_size)
+            return history.getMax(raw);
+        return live.getMax(view.live, raw - view.history_size);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int[] getReducedIndices(final int start, final int end, final int pixels)
+    {
+        final View view = getView();
+        final int raw = view.getRawSize();
+        final int hist_end = Math.min(end, view.history_size);
+        final int[] hist = start < hist_end
+                         ? history.getReducedIndices(start, hist_end, pixels)
+                         : new int[0];
+        final int live_start = Math.max(start, view.history_size);
+        final int live_end = Math.min(end, raw);
+        final int[] lv = live_start < live_end
+                       ? live.getReducedIndices(view.live, live_start - view.history_size, live_end - view.history_size,
+                                                pixels, live_start)
+                       : new int[0];
+        if (hist == null  ||  lv == null)
+            return null;
+        // Continuation to 'now' is a single sample
+        final int now = end > raw ? 1 : 0;
+        final int[] result = new int[hist.length + lv.length + now];
+        System.arraycopy(hist, 0, result, 0, hist.length);
+        System.arraycopy(lv, 0, result, hist.length, lv.length);
+        if (now > 0)
+            result[result.length-1] = raw;
+        return result;
     }
 
     /** Test if samples changed since the last time
@@ -170,6 +424,16 @@ public class PVSamples extends PlotSamples
      */
     public void mergeArchivedData(final String source,
             final List<VType> result)
+    {
+        mergeArchivedData(Collections.nCopies(result.size(), source), result);
+    }
+
+    /** Add data retrieved from archives to the 'historic' section
+     *  @param sources Source of each sample
+     *  @param result Historic data
+     */
+    public void mergeArchivedData(final List<String> sources,
+            final List<VType> result)
     {
         if (! lockForWriting())
             return;
@@ -180,7 +444,8 @@ public class PVSamples extends PlotSamples
                 emptyHistoryOnAdd = false;
                 history.clear();
             }
-            history.mergeArchivedData(source, result);
+            history.mergeArchivedData(sources, result);
+            revision.incrementAndGet();
         }
         finally
         {
@@ -195,7 +460,7 @@ public class PVSamples extends PlotSamples
     {
         if (! Time.timeOf(value).isValid())
             value = VTypeHelper.transformTimestampToNow(value);
-        addLiveSample(new PlotSample(Messages.LiveData, value));
+        addLiveSample(Messages.LiveData, value);
     }
 
     /** Add another 'live' sample
@@ -203,25 +468,26 @@ public class PVSamples extends PlotSamples
      */
     public void addLiveSample(final PlotSample sample)
     {
-        if (! lockForWriting())
+        addLiveSample(sample.getSource(), sample.getVType());
+    }
+
+    /** Add another 'live' sample
+     *
+     *  <p>Does not take the write lock.
+     *  Readers holding the lock continue to see
+     *  their snapshot of the live samples.
+     *
+     *  @param source Source of the sample
+     *  @param value 'Live' sample
+     */
+    private void addLiveSample(final String source, final VType value)
+    {
+        // Skip the initial UNDEFINED/Disconnected sample sent by PVManager
+        if (live.isEmpty()  &&
+            org.phoebus.core.vtypes.VTypeHelper.getSeverity(value) == AlarmSeverity.UNDEFINED)
             return;
-        try
-        {
-            // Skip the initial UNDEFINED/Disconnected sample sent by PVManager
-            if (live.size() == 0  &&
-                org.phoebus.core.vtypes.VTypeHelper.getSeverity(sample.getVType()) == AlarmSeverity.UNDEFINED)
-                return;
-            live.add(sample);
-            // History ends before the start of 'live' samples.
-            // Adding a live sample might have moved the ring buffer,
-            // so need to update whenever live data is extended.
-            history.setBorderTime(Optional.of(live.get(0).getPosition()));
-        }
-        finally
-        {
-            unlockForWriting();
-        }
-        samplesAddedSinceLastRefresh++;
+        live.add(source, value);
+        samplesAddedSinceLastRefresh.incrementAndGet();
     }
 
     /** Delete all samples */
@@ -233,6 +499,7 @@ public class PVSamples extends PlotSamples
         {
             history.clear();
             live.clear();
+            revision.incrementAndGet();
         }
         finally
         {
@@ -267,34 +534,36 @@ public class PVSamples extends PlotSamples
         final TimeInterval abs = interval.toAbsoluteInterval();
         try
         {
+            final LiveSamples.Snapshot snapshot = getView().live;
             //if already waiting for history to be loaded, wait on
             if (emptyHistoryOnAdd) return false;
             //if the live samples have more than 15% of capacity left before old data is erased,
             //refresh is not yet needed
-            if (samplesAddedSinceLastRefresh < live.getCapacity()*0.85) return false;
+            final int added = samplesAddedSinceLastRefresh.get();
+            if (added < live.getCapacity()*0.85) return false;
             //if live data hasn't reached capacity, do not refresh anything
-            if (live.size() < live.getCapacity() || live.size() == 0) return false;
+            if (snapshot.size < live.getCapacity() || snapshot.size == 0) return false;
             //if there is no history data, there is nothing to refresh anyway
             if (history.getRawSize() == 0) return false;
-            PlotSample first = live.get(0);
+            final Instant first = live.getPosition(snapshot, 0);
             //if the first time in the live data is smaller than the visible start time,
             //the buffer is large enough to contain all the "currently" visible data
-            if (first.getPosition().compareTo(abs.getStart()) <= 0) return false;
-            PlotSample last = live.get(live.size()-1);
+            if (first.compareTo(abs.getStart()) <= 0) return false;
+            final Instant last = live.getPosition(snapshot, snapshot.size-1);
             //if the las sample is greater than the current end time than we are not
             //looking at the live data
-            if (last.getPosition().compareTo(abs.getEnd()) > 0) return false;
-            PlotSample historyLast = history.getRawSample(history.getRawSize()-1);
+            if (last.compareTo(abs.getEnd()) > 0) return false;
+            final Instant historyLast = history.getPosition(history.getRawSize()-1);
             //if the last raw history data is smaller than the first live sample, do refresh
-            if (historyLast.getPosition().compareTo(first.getPosition()) < 0) {
-                samplesAddedSinceLastRefresh = 0;
+            if (historyLast.compareTo(first) < 0) {
+                samplesAddedSinceLastRefresh.getAndSet(0);
                 emptyHistoryOnAdd = true;
                 return true;
             }
             //maybe we are looking at live data with a window extending into the future:
             //in such case check the number of samples that arrived since the previous refresh
-            if (samplesAddedSinceLastRefresh > live.getCapacity()) {
-                samplesAddedSinceLastRefresh = 0;
+            if (added > live.getCapacity()) {
+                samplesAddedSinceLastRefresh.getAndSet(0);
                 emptyHistoryOnAdd = true;
                 return true;
             }
@@ -324,7 +593,7 @@ public class PVSamples extends PlotSamples
             try
             {
                 final int count = size();
-                if (count != getRawSize())
+                if (count != getView().getRawSize())
                 {
                     buf.append("\nContinuation to 'now':\n");
                     buf.append("     " + get(count-1));
@@ -34,13 +34,16 @@ public class PlotSample implements PlotDataItem<Instant>
 {
     final private static AtomicInteger default_waveform_index = new AtomicInteger(0);
 
-    /** Value contained in this sample */
+    /** Value contained in this sample.
+     *  <code>null</code> when a derived class creates it on demand,
+     *  see {@link #getVType()}
+     */
     final private VType value;
 
     /** Source of the data */
     final private String source;
 
-    /** Info string.
+    /** Info string, computed on first access unless provided.
      *  @see #getInfo()
      */
     private String info;
@@ -64,20 +67,27 @@ public class PlotSample implements PlotDataItem<Instant>
         this.waveform_index = waveform_index;
         this.value = value;
         this.source = source;
-        if (info == null)
-        {
-            this.info = decodeAlarm(value);
-            // For string PV add the text to info
-            if (value instanceof VString) {
-                this.info = (((VString) value).getValue() + " " + this.info).trim();
-            }
-            else if (value instanceof VEnum) {
-                this.info = (((VEnum) value).getValue() + " " + this.info).trim();
-            }
-                
-        }
-        else
-            this.info = info;
+        this.info = info;
+    }
+
+    /** Initialize for derived class which provides the value on demand
+     *  @param waveform_index Waveform index
+     *  @param source Info about the source of this sample
+     */
+    PlotSample(final AtomicInteger waveform_index, final String source)
+    {
+        this(waveform_index, source, null, null);
+    }
+
+    private static String decodeInfo(final VType value)
+    {
+        final String info = decodeAlarm(value);
+        // For string PV add the text to info
+        if (value instanceof VString)
+            return (((VString) value).getValue() + " " + info).trim();
+        else if (value instanceof VEnum)
+            return (((VEnum) value).getValue() + " " + info).trim();
+        return info;
     }
 
     private static String decodeAlarm(VType value)
@@ -141,6 +151,12 @@ public class PlotSample implements PlotDataItem<Instant>
         this.waveform_index = index;
     }
 
+    /** @return Waveform index to plot */
+    int getWaveformIndex()
+    {
+        return waveform_index.get();
+    }
+
     /** @return Source of the data */
     public String getSource()
     {
@@ -160,7 +176,7 @@ public class PlotSample implements PlotDataItem<Instant>
         // because that actually takes quite some time.
         // We just plot what we have, and that includes
         // the case where the time stamp is invalid.
-        final Time time = Time.timeOf(value);
+        final Time time = Time.timeOf(getVType());
         if (time != null)
             return time.getTimestamp();
         return Instant.now();
@@ -177,7 +193,7 @@ public class PlotSample implements PlotDataItem<Instant>
     @Override
     public double getValue()
     {
-        return org.phoebus.core.vtypes.VTypeHelper.toDouble(value, waveform_index.get());
+        return org.phoebus.core.vtypes.VTypeHelper.toDouble(getVType(), waveform_index.get());
     }
 
     /** @return {@link VStatistics} or <code>null</code> */
@@ -191,6 +207,7 @@ public class PlotSample implements PlotDataItem<Instant>
         // is not 0.
         if (waveform_index.get() != 0)
             return null;
+        final VType value = getVType();
         if (value instanceof VStatistics)
             return (VStatistics) value;
         return null;
@@ -224,6 +241,8 @@ public class PlotSample implements PlotDataItem<Instant>
     @Override
     public String getInfo()
     {
+        if (info == null)
+            info = decodeInfo(getVType());
         return info;
     }
 
@@ -235,6 +254,6 @@ public class PlotSample implements PlotDataItem<Instant>
     @Override
     public String toString()
     {
-        return VTypeHelper.toString(value);
+        return VTypeHelper.toString(getVType());
     }
 }
@@ -0,0 +1,662 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.model;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VFloat;
+import org.epics.vtype.VInt;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VType;
+
+/** Column-oriented storage of archived samples
+ *  <p>
+ *  Instead of one {@link PlotSample} with a {@link VType} per sample,
+ *  the time stamps, values and alarm information are held in
+ *  parallel primitive arrays.
+ *  The plot reads those primitives via {@link HistoricSamples}.
+ *  A {@link VType} is only created when a {@link PlotSample}
+ *  is requested, for example by the sample view or the export.
+ *  <p>
+ *  Scalar numbers and statistics are decomposed into the columns.
+ *  Arrays, strings, enums etc. are kept as the original {@link VType}.
+ *  <p>
+ *  Columns for archived data are filled when created, then only read.
+ *  Merging new data creates a new instance,
+ *  see {@link PlotSampleMerger#merge(PlotSampleColumns, PlotSampleColumns)}.
+ *  When new data is appended, as for samples streamed from the archive,
+ *  the new instance may share the arrays of the existing one
+ *  and fill their spare capacity, see {@link #extend(PlotSampleColumns)}.
+ *  Samples that an instance already holds are never modified.
+ *  {@link LiveSamples} uses columns as a ring buffer,
+ *  overwriting elements via {@link #set(int, String, VType)}.
+ */
+@SuppressWarnings("nls")
+public class PlotSampleColumns
+{
+    // Kind of sample
+    /** Original {@link VType} kept in 'objects' */
+    private static final byte OBJECT = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte FLOAT = 2;
+    private static final byte INT = 3;
+    private static final byte STATISTICS = 4;
+
+    private static final AlarmSeverity[] SEVERITIES = AlarmSeverity.values();
+    private static final AlarmStatus[] STATI = AlarmStatus.values();
+
+    /** Columns without samples */
+    static final PlotSampleColumns EMPTY = new PlotSampleColumns(0, false, false);
+
+    /** Number of samples in the columns */
+    private int size = 0;
+
+    /** Time stamps as nanoseconds since epoch */
+    private final long[] nanos;
+
+    /** Value, average for statistics, NaN for samples kept as {@link VType} */
+    private final double[] value;
+
+    /** Minimum, maximum, standard deviation and count of statistics samples,
+     *  <code>null</code> if no sample has statistics
+     */
+    private final double[] min, max, stddev;
+    private final int[] count;
+
+    /** Ordinal of {@link AlarmSeverity} */
+    private final byte[] severity;
+
+    /** Ordinal of {@link AlarmStatus} */
+    private final byte[] status;
+
+    /** OBJECT, DOUBLE, ... */
+    private final byte[] kind;
+
+    /** Alarm message. Typically shared by many samples */
+    private final String[] message;
+
+    /** Display info. Typically shared by many samples */
+    private final Display[] display;
+
+    /** Data source. Shared by all samples from the same fetch */
+    private final String[] source;
+
+    /** Values of kind OBJECT, <code>null</code> if there are none */
+    private final VType[] objects;
+
+    /** Columns that extend each other, sharing the first samples */
+    private static class Lineage
+    {
+        /** Size of the longest columns in the lineage,
+         *  the only one that may be extended in place
+         */
+        int size;
+    }
+
+    /** Lineage of these columns */
+    private final Lineage lineage;
+
+    /** {@link PlotSample} for an element of the columns
+     *
+     *  <p>Cheap to create since it only refers to the column index.
+     *  The {@link VType} is created on first access.
+     */
+    private class ColumnSample extends PlotSample
+    {
+        private final int index;
+        private VType vtype = null;
+
+        ColumnSample(final AtomicInteger waveform_index, final int index)
+        {
+            super(waveform_index, source[index]);
+            this.index = index;
+        }
+
+        @Override
+        public VType getVType()
+        {
+            if (vtype == null)
+                vtype = PlotSampleColumns.this.getVType(index);
+            return vtype;
+        }
+
+        @Override
+        public Instant getPosition()
+        {
+            return getTime(index);
+        }
+
+        @Override
+        public double getValue()
+        {
+            return PlotSampleColumns.this.getValue(index, getWaveformIndex());
+        }
+
+        @Override
+        public double getStdDev()
+        {
+            return PlotSampleColumns.this.getStdDev(index, getWaveformIndex());
+        }
+
+        @Override
+        public double getMin()
+        {
+            return PlotSampleColumns.this.getMin(index, getWaveformIndex());
+        }
+
+        @Override
+        public double getMax()
+        {
+            return PlotSampleColumns.this.getMax(index, getWaveformIndex());
+        }
+    }
+
+    /** Create empty columns, to be filled via {@link #append}
+     *  @param capacity Number of samples
+     *  @param with_stats Allocate columns for statistics?
+     *  @param with_objects Allocate column for samples kept as {@link VType}?
+     */
+    PlotSampleColumns(final int capacity, final boolean with_stats, final boolean with_objects)
+    {
+        nanos = new long[capacity];
+        value = new double[capacity];
+        if (with_stats)
+        {
+            min = new double[capacity];
+            max = new double[capacity];
+            stddev = new double[capacity];
+            count = new int[capacity];
+        }
+        else
+        {
+            min = max = stddev = null;
+            count = null;
+        }
+        severity = new byte[capacity];
+        status = new byte[capacity];
+        kind = new byte[capacity];
+        message = new String[capacity];
+        display = new Display[capacity];
+        source = new String[capacity];
+        objects = with_objects ? new VType[capacity] : null;
+        lineage = new Lineage();
+    }
+
+    /** @param value {@link VType}
+     *  @return Kind of sample as which the value can be stored
+     */
+    private static byte kindOf(final VType value)
+    {
+        // Decomposed samples are re-created with a plain Time.of(instant)
+        final Time time = Time.timeOf(value);
+        if (time == null  ||  !time.isValid()  ||  time.getUserTag() != null)
+            return OBJECT;
+        if (value instanceof VStatistics)
+            return STATISTICS;
+        if (value instanceof VDouble)
+            return DOUBLE;
+        if (value instanceof VFloat)
+            return FLOAT;
+        if (value instanceof VInt)
+            return INT;
+        return OBJECT;
+    }
+
+    /** Create columns for archived data
+     *  @param source Source of the samples
+     *  @param values Samples, ordered by time
+     *  @return {@link PlotSampleColumns}
+     */
+    public static PlotSampleColumns of(final String source, final List<VType> values)
+    {
+        return of(Collections.nCopies(values.size(), source), values);
+    }
+
+    /** Create columns for archived data
+     *  @param sources Source of each sample
+     *  @param values Samples, ordered by time
+     *  @return {@link PlotSampleColumns}
+     */
+    public static PlotSampleColumns of(final List<String> sources, final List<VType> values)
+    {
+        final int N = values.size();
+        if (N <= 0)
+            return EMPTY;
+        boolean with_stats = false, with_objects = false;
+        final byte[] kinds = new byte[N];
+        for (int i=0; i<N; ++i)
+        {
+            kinds[i] = kindOf(values.get(i));
+            if (kinds[i] == STATISTICS)
+                with_stats = true;
+            else if (kinds[i] == OBJECT)
+                with_objects = true;
+        }
+
+        final PlotSampleColumns columns = new PlotSampleColumns(N, with_stats, with_objects);
+        for (int i=0; i<N; ++i)
+            columns.add(sources.get(i), values.get(i), kinds[i]);
+        return columns;
+    }
+
+    /** Create columns of fixed size to be used as a ring buffer
+     *  @param capacity Number of samples
+     *  @return {@link PlotSampleColumns} that can hold any kind of sample
+     */
+    static PlotSampleColumns createRing(final int capacity)
+    {
+        final PlotSampleColumns columns = new PlotSampleColumns(capacity, true, true);
+        columns.size = capacity;
+        return columns;
+    }
+
+    /** Replace a sample
+     *  <p>
+     *  Only to be used on columns created via {@link #createRing(int)}
+     *  @param i Sample index
+     *  @param src Source of the sample
+     *  @param vtype Value of the sample
+     */
+    void set(final int i, final String src, final VType vtype)
+    {
+        set(i, src, vtype, kindOf(vtype));
+        if (kind[i] != OBJECT)
+            objects[i] = null;
+    }
+
+    /** @param src Source of the sample
+     *  @param vtype Value of the sample
+     *  @param sample_kind Kind of sample
+     */
+    private void add(final String src, final VType vtype, final byte sample_kind)
+    {
+        set(size++, src, vtype, sample_kind);
+        lineage.size = size;
+    }
+
+    /** @param i Sample index
+     *  @param src Source of the sample
+     *  @param vtype Value of the sample
+     *  @param sample_kind Kind of sample
+     */
+    private void set(final int i, final String src, final VType vtype, final byte sample_kind)
+    {
+        final Time time = Time.timeOf(vtype);
+        final Instant stamp = time == null ? Instant.now() : time.getTimestamp();
+        nanos[i] = toNanos(stamp);
+        severity[i] = (byte) org.phoebus.core.vtypes.VTypeHelper.getSeverity(vtype).ordinal();
+        final Alarm alarm = Alarm.alarmOf(vtype);
+        status[i] = (byte) (alarm == null ? AlarmStatus.NONE : alarm.getStatus()).ordinal();
+        message[i] = alarm == null ? "" : alarm.getName();
+        display[i] = Display.displayOf(vtype);
+        source[i] = src;
+        kind[i] = sample_kind;
+        switch (sample_kind)
+        {
+        case STATISTICS:
+            final VStatistics stats = (VStatistics) vtype;
+            value[i] = stats.getAverage();
+            min[i] = stats.getMin();
+            max[i] = stats.getMax();
+            stddev[i] = stats.getStdDev();
+            count[i] = stats.getNSamples();
+            return;
+        case DOUBLE:
+        case FLOAT:
+        case INT:
+            value[i] = org.phoebus.core.vtypes.VTypeHelper.toDouble(vtype);
+            break;
+        default:
+            value[i] = Double.NaN;
+            objects[i] = vtype;
+        }
+        if (min != null)
+        {
+            min[i] = max[i] = stddev[i] = Double.NaN;
+            count[i] = 0;
+        }
+    }
+
+    /** Append a section of other columns
+     *  <p>
+     *  Only to be called while assembling new columns,
+     *  which must have been created with sufficient capacity
+     *  and statistics resp. object columns if the source has them.
+     *
+     *  @param other Columns to copy from
+     *  @param start Index of first sample to copy
+     *  @param end Index after last sample to copy
+     */
+    void append(final PlotSampleColumns other, final int start, final int end)
+    {
+        final int N = end - start;
+        if (N <= 0)
+            return;
+        System.arraycopy(other.nanos, start, nanos, size, N);
+        System.arraycopy(other.value, start, value, size, N);
+        if (other.min != null)
+        {
+            System.arraycopy(other.min, start, min, size, N);
+            System.arraycopy(other.max, start, max, size, N);
+            System.arraycopy(other.stddev, start, stddev, size, N);
+            System.arraycopy(other.count, start, count, size, N);
+        }
+        else if (min != null)
+            for (int i=size; i<size+N; ++i)
+            {
+                min[i] = max[i] = stddev[i] = Double.NaN;
+                count[i] = 0;
+            }
+        System.arraycopy(other.severity, start, severity, size, N);
+        System.arraycopy(other.status, start, status, size, N);
+        System.arraycopy(other.kind, start, kind, size, N);
+        System.arraycopy(other.message, start, message, size, N);
+        System.arraycopy(other.display, start, display, size, N);
+        System.arraycopy(other.source, start, source, size, N);
+        if (other.objects != null)
+            System.arraycopy(other.objects, start, objects, size, N);
+        size += N;
+        lineage.size = size;
+    }
+
+    /** Append samples
+     *  <p>
+     *  These columns remain unchanged.
+     *  The result shares their arrays if they have room for the new samples,
+     *  otherwise it copies into arrays with spare capacity.
+     *  Appending chunk after chunk thus takes linear time overall.
+     *
+     *  @param add Samples, all after the last sample of these columns
+     *  @return Columns that hold the samples of both
+     */
+    PlotSampleColumns extend(final PlotSampleColumns add)
+    {
+        if (size <= 0)
+            return add;
+        final int needed = size + add.size;
+        final boolean tip = lineage.size == size;
+        final PlotSampleColumns result;
+        if (tip  &&  needed <= nanos.length  &&
+            (add.min == null  ||  min != null)  &&
+            (add.objects == null  ||  objects != null))
+            result = new PlotSampleColumns(this, lineage);
+        else
+        {
+            final PlotSampleColumns grown = new PlotSampleColumns(Math.max(needed, size + size/2),
+                                                                  hasStatistics() || add.hasStatistics(),
+                                                                  hasObjects() || add.hasObjects());
+            grown.append(this, 0, size);
+            // Stay in the lineage unless there already is a longer branch
+            result = tip ? new PlotSampleColumns(grown, lineage) : grown;
+        }
+        result.append(add, 0, add.size);
+        return result;
+    }
+
+    /** Create columns that share the arrays of other columns
+     *  @param other Columns with the arrays to use
+     *  @param lineage Lineage of the new columns
+     */
+    private PlotSampleColumns(final PlotSampleColumns other, final Lineage lineage)
+    {
+        size = other.size;
+        nanos = other.nanos;
+        value = other.value;
+        min = other.min;
+        max = other.max;
+        stddev = other.stddev;
+        count = other.count;
+        severity = other.severity;
+        status = other.status;
+        kind = other.kind;
+        message = other.message;
+        display = other.display;
+        source = other.source;
+        objects = other.objects;
+        this.lineage = lineage;
+    }
+
+    /** @param other Other columns
+     *  @return <code>true</code> if the other columns start with all samples of these columns,
+     *          because they were created by extending them
+     */
+    boolean isPrefixOf(final PlotSampleColumns other)
+    {
+        return lineage == other.lineage  &&  size <= other.size;
+    }
+
+    /** @return Do the columns hold statistics? */
+    boolean hasStatistics()
+    {
+        return min != null;
+    }
+
+    /** @return Do the columns hold samples kept as {@link VType}? */
+    boolean hasObjects()
+    {
+        return objects != null;
+    }
+
+    /** @param time Time stamp
+     *  @return Nanoseconds since epoch
+     */
+    static long toNanos(final Instant time)
+    {
+        return time.getEpochSecond() * 1000000000L + time.getNano();
+    }
+
+    /** @return Number of samples */
+    public int size()
+    {
+        return size;
+    }
+
+    /** @param i Sample index
+     *  @return Time stamp in nanoseconds since epoch
+     */
+    public long getNanos(final int i)
+    {
+        return nanos[i];
+    }
+
+    /** @param i Sample index
+     *  @return Time stamp
+     */
+    public Instant getTime(final int i)
+    {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos[i], 1000000000L),
+                                     Math.floorMod(nanos[i], 1000000000L));
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Element of array samples to use
+     *  @return Value, average for statistics
+     */
+    public double getValue(final int i, final int waveform_index)
+    {
+        if (kind[i] == OBJECT)
+            return org.phoebus.core.vtypes.VTypeHelper.toDouble(objects[i], waveform_index);
+        return value[i];
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Element of array samples to use
+     *  @return {@link VStatistics} kept as object, otherwise <code>null</code>
+     */
+    private VStatistics getStatistics(final int i, final int waveform_index)
+    {
+        // As in PlotSample, statistics only apply to the first element
+        if (waveform_index == 0  &&  kind[i] == OBJECT  &&  objects[i] instanceof VStatistics)
+            return (VStatistics) objects[i];
+        return null;
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Element of array samples to use
+     *  @return Minimum or {@link Double#NaN}
+     */
+    public double getMin(final int i, final int waveform_index)
+    {
+        final VStatistics stats = getStatistics(i, waveform_index);
+        if (stats != null)
+            return stats.getMin();
+        if (waveform_index != 0  ||  min == null)
+            return Double.NaN;
+        return min[i];
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Element of array samples to use
+     *  @return Maximum or {@link Double#NaN}
+     */
+    public double getMax(final int i, final int waveform_index)
+    {
+        final VStatistics stats = getStatistics(i, waveform_index);
+        if (stats != null)
+            return stats.getMax();
+        if (waveform_index != 0  ||  max == null)
+            return Double.NaN;
+        return max[i];
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Element of array samples to use
+     *  @return Standard deviation or {@link Double#NaN}
+     */
+    public double getStdDev(final int i, final int waveform_index)
+    {
+        final VStatistics stats = getStatistics(i, waveform_index);
+        if (stats != null)
+            return stats.getStdDev();
+        if (waveform_index != 0  ||  stddev == null)
+            return Double.NaN;
+        return stddev[i];
+    }
+
+    /** @param i Sample index
+     *  @return Alarm severity
+     */
+    public AlarmSeverity getSeverity(final int i)
+    {
+        return SEVERITIES[severity[i]];
+    }
+
+    /** @param i Sample index
+     *  @return Source of the sample
+     */
+    public String getSource(final int i)
+    {
+        return source[i];
+    }
+
+    /** Create the {@link VType} for a sample
+     *  @param i Sample index
+     *  @return {@link VType}
+     */
+    public VType getVType(final int i)
+    {
+        if (kind[i] == OBJECT)
+            return objects[i];
+        final Alarm alarm = Alarm.of(SEVERITIES[severity[i]], STATI[status[i]], message[i]);
+        final Time time = Time.of(getTime(i));
+        switch (kind[i])
+        {
+        case STATISTICS:
+            return VStatistics.of(value[i], stddev[i], min[i], max[i], count[i], alarm, time, display[i]);
+        case FLOAT:
+            return VFloat.of((float) value[i], alarm, time, display[i]);
+        case INT:
+            return VInt.of((int) value[i], alarm, time, display[i]);
+        default:
+            return VDouble.of(value[i], alarm, time, display[i]);
+        }
+    }
+
+    /** @param waveform_index Waveform index
+     *  @param i Sample index
+     *  @return {@link PlotSample} for the sample, creating its {@link VType} on demand
+     */
+    PlotSample getSample(final AtomicInteger waveform_index, final int i)
+    {
+        return new ColumnSample(waveform_index, i);
+    }
+
+    /** Find the last sample before a time
+     *  @param time Time stamp in nanoseconds since epoch
+     *  @return Index of last sample with time stamp before given time, or -1
+     */
+    public int findSampleLessThan(final long time)
+    {
+        return findSampleLessThan(time, 0, size);
+    }
+
+    /** Find the last sample before a time within a range of samples
+     *  @param time Time stamp in nanoseconds since epoch
+     *  @param start Index of first sample to search
+     *  @param end Index after last sample to search
+     *  @return Index of last sample with time stamp before given time, or <code>start-1</code>
+     */
+    int findSampleLessThan(final long time, final int start, final int end)
+    {
+        int low = start, high = end-1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (nanos[mid] < time)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+
+    /** Find the first sample after a time
+     *  @param time Time stamp in nanoseconds since epoch
+     *  @return Index of first sample with time stamp after given time, or -1
+     */
+    public int findSampleGreaterThan(final long time)
+    {
+        final int i = findSampleGreaterThan(time, 0, size);
+        return i < size ? i : -1;
+    }
+
+    /** Find the first sample after a time within a range of samples
+     *  @param time Time stamp in nanoseconds since epoch
+     *  @param start Index of first sample to search
+     *  @param end Index after last sample to search
+     *  @return Index of first sample with time stamp after given time, or <code>end</code>
+     */
+    int findSampleGreaterThan(final long time, final int start, final int end)
+    {
+        int low = start, high = end-1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (nanos[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PlotSampleColumns, " + size + " samples";
+    }
+}
@@ -109,4 +109,82 @@ public class PlotSampleMerger
 
         throw new Error("Cannot handle this case");  //$NON-NLS-1$
     }
+
+    /** Add newly received samples to existing columns of samples.
+     *
+     *  <p>Same as {@link #merge(PlotSample[], PlotSample[])},
+     *  using the time stamps of the columns.
+     *
+     *  @param old Existing data
+     *  @param add Newly received data
+     *  @return Columns that combine new and old data
+     */
+    static public PlotSampleColumns merge(final PlotSampleColumns old, final PlotSampleColumns add)
+    {
+        // If one is empty, return the other as is:
+        if (old == null  ||  old.size() <= 0)
+            return add;
+        if (add == null  ||  add.size() <= 0)
+            return old;
+        final int No = old.size();
+        final int Na = add.size();
+        final long old_start = old.getNanos(0);
+        final long add_start = add.getNanos(0);
+        final long add_end = add.getNanos(Na-1);
+
+        // Result is old[0 .. Nl-1], add[], old[r .. No-1].
+        // If new samples start before old samples, there's no 'left' section.
+        // Otherwise keep old samples before start of new samples.
+        final int Nl = (add_start <= old_start)
+                     ? 0
+                     : old.findSampleLessThan(add_start) + 1;
+        // Keep old samples after end of new samples
+        final int r = old.findSampleGreaterThan(add_end);
+        final int Nr = (r < 0) ? 0 : No-r;
+        if (Nl == 0  &&  Nr == 0)
+            return add;
+        // All new samples follow the old ones, as when streaming from the archive
+        if (Nl == No)
+            return old.extend(add);
+
+        final PlotSampleColumns result = new PlotSampleColumns(Nl + Na + Nr,
+                                                               old.hasStatistics() || add.hasStatistics(),
+                                                               old.hasObjects() || add.hasObjects());
+        result.append(old, 0, Nl);
+        result.append(add, 0, Na);
+        if (Nr > 0)
+            result.append(old, r, No);
+        return result;
+    }
+
+    /** Add newly received samples to existing samples.
+     *
+     *  <p>Same as {@link #merge(PlotSampleColumns, PlotSampleColumns)},
+     *  but without copying the samples:
+     *  The new columns are spliced into the segments of the existing samples.
+     *
+     *  @param old Existing data
+     *  @param add Newly received data
+     *  @return Rope that combines new and old data
+     */
+    static public PlotSampleRope merge(final PlotSampleRope old, final PlotSampleColumns add)
+    {
+        if (add == null  ||  add.size() <= 0)
+            return old;
+        if (old == null  ||  old.size() <= 0)
+            return PlotSampleRope.of(add);
+        final int No = old.size();
+        final int Na = add.size();
+        final long add_start = add.getNanos(0);
+        final long add_end = add.getNanos(Na-1);
+
+        // Result is old[0 .. Nl-1], add[], old[r .. No-1]
+        final int Nl = (add_start <= old.getNanos(0))
+                     ? 0
+                     : old.findSampleLessThan(add_start) + 1;
+        final int r = old.findSampleGreaterThan(add_end);
+        if (Nl == 0  &&  r < 0)
+            return PlotSampleRope.of(add);
+        return old.splice(Nl, add, r < 0 ? No : r);
+    }
 }
@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.VType;
+
+/** Archived samples held in segments
+ *  <p>
+ *  A 'rope' of time-ordered segments.
+ *  Each segment is a range of samples in some {@link PlotSampleColumns},
+ *  which are never modified once they hold samples.
+ *  An index of segment offsets locates the segment of a sample.
+ *  <p>
+ *  Merging new samples via {@link PlotSampleMerger#merge(PlotSampleRope, PlotSampleColumns)}
+ *  splices the new columns between the trimmed segments of the existing samples,
+ *  without copying any samples.
+ *  When there are too many segments, or the segments only use a small part
+ *  of their columns, the samples are copied into one segment.
+ */
+@SuppressWarnings("nls")
+public class PlotSampleRope
+{
+    /** Maximum number of segments before samples are compacted */
+    static final int MAX_SEGMENTS = 64;
+
+    /** Rope without samples */
+    static final PlotSampleRope EMPTY = new PlotSampleRope(new PlotSampleColumns[0], new int[0], new int[] { 0 });
+
+    /** Columns of each segment */
+    private final PlotSampleColumns[] columns;
+
+    /** Index of the first sample of each segment within its columns */
+    private final int[] first;
+
+    /** Index of the first sample of each segment within the rope,
+     *  followed by the total number of samples
+     */
+    private final int[] offset;
+
+    /** Segment of the most recently accessed sample.
+     *  Speeds up sequential access.
+     *  Readers may update it concurrently, so it's validated on each use.
+     */
+    private int recent = 0;
+
+    /** Helper for assembling a rope */
+    private static class Builder
+    {
+        private PlotSampleColumns[] columns = new PlotSampleColumns[4];
+        private int[] first = new int[4];
+        private int[] end = new int[4];
+        private int segments = 0;
+
+        /** @param add Columns of the segment
+         *  @param from Index of first sample in columns
+         *  @param to Index after the last sample in columns
+         */
+        void add(final PlotSampleColumns add, final int from, final int to)
+        {
+            if (from >= to)
+                return;
+            // Continue previous segment?
+            if (segments > 0  &&  columns[segments-1] == add  &&  end[segments-1] == from)
+            {
+                end[segments-1] = to;
+                return;
+            }
+            if (segments >= columns.length)
+            {
+                columns = Arrays.copyOf(columns, segments * 2);
+                first = Arrays.copyOf(first, segments * 2);
+                end = Arrays.copyOf(end, segments * 2);
+            }
+            columns[segments] = add;
+            first[segments] = from;
+            end[segments] = to;
+            ++segments;
+        }
+
+        /** @param rope Rope
+         *  @param start Index of first sample in rope to add
+         *  @param stop Index after last sample in rope to add
+         */
+        void add(final PlotSampleRope rope, final int start, final int stop)
+        {
+            for (int s=0; s<rope.columns.length; ++s)
+            {
+                final int from = Math.max(start, rope.offset[s]);
+                final int to = Math.min(stop, rope.offset[s+1]);
+                final int shift = rope.first[s] - rope.offset[s];
+                add(rope.columns[s], from + shift, to + shift);
+            }
+        }
+
+        /** Add samples that follow all segments so far,
+         *  extending the columns of the last segment if it uses them to the end.
+         *  Chunks of samples streamed from the archive thus end up in one segment.
+         *  @param add Columns to append
+         */
+        void append(final PlotSampleColumns add)
+        {
+            final int last = segments - 1;
+            if (last >= 0  &&  end[last] == columns[last].size())
+            {
+                columns[last] = columns[last].extend(add);
+                end[last] = columns[last].size();
+            }
+            else
+                add(add, 0, add.size());
+        }
+
+        PlotSampleRope build()
+        {
+            int size = 0, retained = 0;
+            for (int s=0; s<segments; ++s)
+            {
+                size += end[s] - first[s];
+                if (! isListed(columns[s], s))
+                    retained += columns[s].size();
+            }
+            if (segments > MAX_SEGMENTS  ||  retained > 2*size)
+                return compact(size);
+
+            final int[] offset = new int[segments+1];
+            for (int s=0; s<segments; ++s)
+                offset[s+1] = offset[s] + end[s] - first[s];
+            return new PlotSampleRope(Arrays.copyOf(columns, segments), Arrays.copyOf(first, segments), offset);
+        }
+
+        /** @param check Columns to check
+         *  @param count Number of segments to check
+         *  @return Is 'check' used by one of the segments?
+         */
+        private boolean isListed(final PlotSampleColumns check, final int count)
+        {
+            for (int s=0; s<count; ++s)
+                if (columns[s] == check)
+                    return true;
+            return false;
+        }
+
+        /** @param size Total number of samples
+         *  @return Rope with all samples in one segment
+         */
+        private PlotSampleRope compact(final int size)
+        {
+            boolean with_stats = false, with_objects = false;
+            for (int s=0; s<segments; ++s)
+            {
+                with_stats |= columns[s].hasStatistics();
+                with_objects |= columns[s].hasObjects();
+            }
+            final PlotSampleColumns compacted = new PlotSampleColumns(size, with_stats, with_objects);
+            for (int s=0; s<segments; ++s)
+                compacted.append(columns[s], first[s], end[s]);
+            return of(compacted);
+        }
+    }
+
+    private PlotSampleRope(final PlotSampleColumns[] columns, final int[] first, final int[] offset)
+    {
+        this.columns = columns;
+        this.first = first;
+        this.offset = offset;
+    }
+
+    /** @param columns Samples
+     *  @return Rope with just those samples
+     */
+    public static PlotSampleRope of(final PlotSampleColumns columns)
+    {
+        if (columns.size() <= 0)
+            return EMPTY;
+        return new PlotSampleRope(new PlotSampleColumns[] { columns }, new int[] { 0 }, new int[] { 0, columns.size() });
+    }
+
+    /** Create rope with samples replaced by new samples
+     *  @param left Number of samples to keep at the start
+     *  @param add New samples to add after those
+     *  @param right Index of first sample to keep after the new samples
+     *  @return Rope with samples 0 .. left-1, then 'add', then right .. size-1
+     */
+    PlotSampleRope splice(final int left, final PlotSampleColumns add, final int right)
+    {
+        final Builder builder = new Builder();
+        builder.add(this, 0, left);
+        builder.append(add);
+        builder.add(this, right, size());
+        return builder.build();
+    }
+
+    /** @return Number of samples */
+    public int size()
+    {
+        return offset[columns.length];
+    }
+
+    /** @return Number of segments */
+    int getSegmentCount()
+    {
+        return columns.length;
+    }
+
+    /** @param s Segment index
+     *  @return Columns of that segment
+     */
+    PlotSampleColumns getSegmentColumns(final int s)
+    {
+        return columns[s];
+    }
+
+    /** @param s Segment index
+     *  @return Index of first sample of the segment within its columns
+     */
+    int getSegmentFirst(final int s)
+    {
+        return first[s];
+    }
+
+    /** @param s Segment index
+     *  @return Index of first sample of the segment within the rope
+     */
+    int getSegmentStart(final int s)
+    {
+        return offset[s];
+    }
+
+    /** @param s Segment index
+     *  @return Index after the last sample of the segment within the rope
+     */
+    int getSegmentEnd(final int s)
+    {
+        return offset[s+1];
+    }
+
+    /** @param i Sample index
+     *  @return Segment that holds the sample
+     */
+    private int segment(final int i)
+    {
+        final int hint = recent;
+        if (hint < columns.length  &&  offset[hint] <= i  &&  i < offset[hint+1])
+            return hint;
+        // Last segment that starts at or before i
+        int low = 0, high = columns.length-1;
+        while (low < high)
+        {
+            final int mid = (low + high + 1) >>> 1;
+            if (offset[mid] <= i)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        recent = low;
+        return low;
+    }
+
+    /** @param s Segment index
+     *  @param i Sample index within the rope
+     *  @return Sample index within the columns of the segment
+     */
+    private int index(final int s, final int i)
+    {
+        return first[s] + i - offset[s];
+    }
+
+    /** @param i Sample index
+     *  @return Time stamp in nanoseconds since epoch
+     */
+    public long getNanos(final int i)
+    {
+        final int s = segment(i);
+        return columns[s].getNanos(index(s, i));
+    }
+
+    /** @param i Sample index
+     *  @return Time stamp
+     */
+    public Instant getTime(final int i)
+    {
+        final int s = segment(i);
+        return columns[s].getTime(index(s, i));
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Index of element in arrays
+     *  @return Value, NaN for samples without numeric value
+     */
+    public double getValue(final int i, final int waveform_index)
+    {
+        final int s = segment(i);
+        return columns[s].getValue(index(s, i), waveform_index);
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Index of element in arrays
+     *  @return Minimum, NaN if the sample has no statistics
+     */
+    public double getMin(final int i, final int waveform_index)
+    {
+        final int s = segment(i);
+        return columns[s].getMin(index(s, i), waveform_index);
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Index of element in arrays
+     *  @return Maximum, NaN if the sample has no statistics
+     */
+    public double getMax(final int i, final int waveform_index)
+    {
+        final int s = segment(i);
+        return columns[s].getMax(index(s, i), waveform_index);
+    }
+
+    /** @param i Sample index
+     *  @param waveform_index Index of element in arrays
+     *  @return Standard deviation, NaN if the sample has no statistics
+     */
+    public double getStdDev(final int i, final int waveform_index)
+    {
+        final int s = segment(i);
+        return columns[s].getStdDev(index(s, i), waveform_index);
+    }
+
+    /** @param i Sample index
+     *  @return Alarm severity of the sample
+     */
+    public AlarmSeverity getSeverity(final int i)
+    {
+        final int s = segment(i);
+        return columns[s].getSeverity(index(s, i));
+    }
+
+    /** @param i Sample index
+     *  @return Source of the sample
+     */
+    public String getSource(final int i)
+    {
+        final int s = segment(i);
+        return columns[s].getSource(index(s, i));
+    }
+
+    /** @param i Sample index
+     *  @return {@link VType} of the sample
+     */
+    public VType getVType(final int i)
+    {
+        final int s = segment(i);
+        return columns[s].getVType(index(s, i));
+    }
+
+    /** @param waveform_index Waveform index
+     *  @param i Sample index
+     *  @return {@link PlotSample} for the sample, creating its {@link VType} on demand
+     */
+    PlotSample getSample(final AtomicInteger waveform_index, final int i)
+    {
+        final int s = segment(i);
+        return columns[s].getSample(waveform_index, index(s, i));
+    }
+
+    /** Find the last sample before a time
+     *  @param time Time stamp in nanoseconds since epoch
+     *  @return Index of last sample with time stamp before given time, or -1
+     */
+    public int findSampleLessThan(final long time)
+    {
+        // Last segment that starts before the time
+        int low = 0, high = columns.length-1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (columns[mid].getNanos(first[mid]) < time)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        if (high < 0)
+            return -1;
+        final int s = high;
+        final int end = first[s] + offset[s+1] - offset[s];
+        return offset[s] + columns[s].findSampleLessThan(time, first[s], end) - first[s];
+    }
+
+    /** Find the first sample after a time
+     *  @param time Time stamp in nanoseconds since epoch
+     *  @return Index of first sample with time stamp after given time, or -1
+     */
+    public int findSampleGreaterThan(final long time)
+    {
+        // First segment that ends after the time
+        int low = 0, high = columns.length-1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (columns[mid].getNanos(first[mid] + offset[mid+1] - offset[mid] - 1) <= time)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        if (low >= columns.length)
+            return -1;
+        final int s = low;
+        final int end = first[s] + offset[s+1] - offset[s];
+        return offset[s] + columns[s].findSampleGreaterThan(time, first[s], end) - first[s];
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PlotSampleRope, " + size() + " samples in " + columns.length + " segments";
+    }
+}
@@ -13,6 +13,7 @@ import java.time.Instant;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -35,6 +36,11 @@ abstract public class PlotSamples implements PlotDataProvider<Instant>
      */
     final protected AtomicBoolean have_new_samples = new AtomicBoolean();
 
+    /** To be incremented when existing samples are replaced
+     *  @see #getRevision()
+     */
+    final protected AtomicInteger revision = new AtomicInteger();
+
     /** @return Locked for writing? */
     public boolean lockForWriting()
     {
@@ -73,6 +79,22 @@ abstract public class PlotSamples implements PlotDataProvider<Instant>
     @Override
     abstract public PlotSample get(int index);
 
+    /** @return Number of samples, not including a continuation of the last sample to 'now' */
+    public int getRawSize()
+    {
+        return size();
+    }
+
+    /** The revision changes when existing samples are replaced,
+     *  for example by merging archived data,
+     *  but not when new samples are appended.
+     *  @return Revision of the samples
+     */
+    public int getRevision()
+    {
+        return revision.get();
+    }
+
     /** Test if samples changed since the last time
      *  <code>testAndClearNewSamplesFlag</code> was called.
      *  @return <code>true</code> if there were new samples
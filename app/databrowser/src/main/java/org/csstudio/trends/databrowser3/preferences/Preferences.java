@@ -56,6 +56,14 @@ public class Preferences
     /** Setting */
     @Preference public static int concurrent_requests;
     /** Setting */
+    @Preference public static int archive_cache_size;
+    /** Setting */
+    @Preference public static String archive_cache_directory;
+    /** Setting */
+    @Preference public static int archive_cache_directory_size;
+    /** Setting */
+    @Preference public static int archive_cache_max_age;
+    /** Setting */
     @Preference public static ArchiveRescale archive_rescale;
     /** Setting */
     public static List<ArchiveDataSource> archive_urls;
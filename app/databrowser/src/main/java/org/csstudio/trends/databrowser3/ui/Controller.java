@@ -679,8 +679,14 @@ public class Controller
     private void getArchivedData()
     {
         final TimeInterval interval = model.getTimerange().toAbsoluteInterval();
+        // Allow archives to handle the requests for all items in one batch
+        final List<PVItem> pv_items = new ArrayList<>();
         for (ModelItem item : model.getItems())
-            getArchivedData(item, interval.getStart(), interval.getEnd());
+            if (item instanceof PVItem)
+                pv_items.add((PVItem) item);
+        final ArchiveFetchJob.Batch batch = new ArchiveFetchJob.Batch(pv_items, interval.getStart(), interval.getEnd());
+        for (ModelItem item : model.getItems())
+            getArchivedData(item, interval.getStart(), interval.getEnd(), batch);
     }
 
     /** Initiate archive data retrieval for a specific model item
@@ -689,16 +695,18 @@ public class Controller
     private void getArchivedData(final ModelItem item)
     {
         final TimeInterval interval = model.getTimerange().toAbsoluteInterval();
-        getArchivedData(item, interval.getStart(), interval.getEnd());
+        getArchivedData(item, interval.getStart(), interval.getEnd(), null);
     }
 
     /** Initiate archive data retrieval for a specific model item
      *  @param item Model item. NOP for non-PVItem
      *  @param start Start time
      *  @param end End time
+     *  @param batch Batch of requests for several items, or <code>null</code>
      */
     private void getArchivedData(final ModelItem item,
-                                 final Instant start, final Instant end)
+                                 final Instant start, final Instant end,
+                                 final ArchiveFetchJob.Batch batch)
     {
         if (! isRunning())
             return;
@@ -724,7 +732,7 @@ public class Controller
             }
 
             // Track new job
-            final ArchiveFetchJob new_job = new ArchiveFetchJob(pv_item, start, end, archive_fetch_job_listener);
+            final ArchiveFetchJob new_job = new ArchiveFetchJob(pv_item, start, end, archive_fetch_job_listener, batch);
             archive_fetch_jobs.add(new_job);
         }
     }
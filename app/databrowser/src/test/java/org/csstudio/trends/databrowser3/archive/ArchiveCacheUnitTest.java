@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.csstudio.trends.databrowser3.archive.ArchiveCache.Key;
+import org.csstudio.trends.databrowser3.archive.ArchiveCache.Piece;
+import org.csstudio.trends.databrowser3.model.RequestType;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test for {@link ArchiveCache}
+ */
+@SuppressWarnings("nls")
+public class ArchiveCacheUnitTest
+{
+    private static Instant time(final int secs)
+    {
+        return Instant.ofEpochSecond(secs);
+    }
+
+    /** @return Samples with value = time stamp for each second from start to end */
+    private static List<VType> samples(final int start, final int end)
+    {
+        final List<VType> samples = new ArrayList<>();
+        for (int secs=start; secs<=end; ++secs)
+            samples.add(VDouble.of(secs, Alarm.none(), Time.of(time(secs)), Display.none()));
+        return samples;
+    }
+
+    private static Key key(final String channel)
+    {
+        return new Key("test://archive", channel, RequestType.RAW, time(0), time(1000), 100);
+    }
+
+    @Test
+    public void testCoverage()
+    {
+        final ArchiveCache cache = new ArchiveCache(1000, "", 0, Duration.ZERO);
+        final Key key = key("x");
+
+        // Nothing cached
+        List<Piece> pieces = cache.lookup(key, time(100), time(200));
+        assertEquals(1, pieces.size());
+        assertTrue(pieces.get(0).isGap());
+
+        // Cache 100..200, then request 150..250
+        cache.add(key, time(100), time(200), samples(100, 200));
+        pieces = cache.lookup(key, time(150), time(250));
+        assertEquals(2, pieces.size());
+        assertFalse(pieces.get(0).isGap());
+        // Like a raw archive request, first piece includes the sample before the start
+        assertEquals(time(149), Time.timeOf(pieces.get(0).samples.get(0)).getTimestamp());
+        assertEquals(52, pieces.get(0).samples.size());
+        assertTrue(pieces.get(1).isGap());
+        assertEquals(time(200), pieces.get(1).start);
+        assertEquals(time(250), pieces.get(1).end);
+
+        // Cache 300..400, request 50..450 has gaps before, between, after
+        cache.add(key, time(300), time(400), samples(300, 400));
+        pieces = cache.lookup(key, time(50), time(450));
+        assertEquals(5, pieces.size());
+        assertTrue(pieces.get(0).isGap());
+        assertFalse(pieces.get(1).isGap());
+        assertTrue(pieces.get(2).isGap());
+        assertEquals(time(200), pieces.get(2).start);
+        assertEquals(time(300), pieces.get(2).end);
+        assertFalse(pieces.get(3).isGap());
+        assertTrue(pieces.get(4).isGap());
+
+        // Filling the gap combines the segments
+        cache.add(key, time(200), time(300), samples(200, 300));
+        pieces = cache.lookup(key, time(100), time(400));
+        assertEquals(1, pieces.size());
+        assertFalse(pieces.get(0).isGap());
+        assertEquals(301, pieces.get(0).samples.size());
+        assertEquals(301, cache.getSampleCount());
+
+        // Different request type has its own entry
+        final Key optimized = new Key("test://archive", "x", RequestType.OPTIMIZED, time(0), time(1000), 100);
+        assertTrue(cache.lookup(optimized, time(100), time(400)).get(0).isGap());
+        // Bins for a gap use the resolution of the original request
+        assertEquals(10, optimized.getBins(time(100), time(200)));
+    }
+
+    @Test
+    public void testRecentDataNotCovered()
+    {
+        final ArchiveCache cache = new ArchiveCache(1000, "", 0, Duration.ZERO);
+        final Key key = key("x");
+        final Instant now = Instant.now();
+        cache.add(key, now.minusSeconds(3600), now, List.of());
+        final List<Piece> pieces = cache.lookup(key, now.minusSeconds(3600), now);
+        assertEquals(2, pieces.size());
+        assertTrue(pieces.get(1).isGap());
+        final Instant settled = now.minus(ArchiveCache.SETTLE_TIME);
+        assertFalse(pieces.get(1).start.isBefore(settled));
+        assertTrue(pieces.get(1).start.isBefore(settled.plusSeconds(10)));
+    }
+
+    @Test
+    public void testEvictionAndSpill() throws Exception
+    {
+        final File dir = Files.createTempDirectory("archive_cache").toFile();
+        try
+        {
+            final ArchiveCache cache = new ArchiveCache(150, dir.getAbsolutePath(), 0, Duration.ZERO);
+            cache.add(key("a"), time(100), time(199), samples(100, 199));
+            // Adding 'b' evicts the least recently used 'a'
+            final List<VType> stats = List.of(VStatistics.of(1.0, 0.1, 0.5, 1.5, 10, Alarm.none(), Time.of(time(150)), Display.none()));
+            cache.add(key("b"), time(100), time(199), stats);
+            cache.add(key("b"), time(200), time(299), samples(200, 299));
+            assertEquals(101, cache.getSampleCount());
+            assertEquals(1, dir.list().length);
+
+            // Cache that's created later, as after a restart, reads the spilled 'a'
+            final ArchiveCache restarted = new ArchiveCache(150, dir.getAbsolutePath(), 0, Duration.ZERO);
+            final List<Piece> pieces = restarted.lookup(key("a"), time(100), time(199));
+            assertEquals(1, pieces.size());
+            assertEquals(100, pieces.get(0).samples.size());
+            final VDouble value = (VDouble) pieces.get(0).samples.get(10);
+            assertEquals(110.0, value.getValue());
+            assertEquals(time(110), value.getTime().getTimestamp());
+        }
+        finally
+        {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testSpillLimits() throws Exception
+    {
+        final File dir = Files.createTempDirectory("archive_cache").toFile();
+        try
+        {
+            // Keep one channel in memory, spill the others
+            ArchiveCache cache = new ArchiveCache(150, dir.getAbsolutePath(), 0, Duration.ZERO);
+            cache.add(key("a"), time(100), time(199), samples(100, 199));
+            cache.add(key("b"), time(100), time(199), samples(100, 199));
+            cache.add(key("x"), time(100), time(199), samples(100, 199));
+            assertEquals(2, dir.list().length);
+            final long size = dir.listFiles()[0].length();
+            for (File file : dir.listFiles())
+                file.setLastModified(System.currentTimeMillis() - 60000);
+
+            // Directory limited to two files drops the oldest
+            cache = new ArchiveCache(150, dir.getAbsolutePath(), 2 * size + size / 2, Duration.ZERO);
+            cache.add(key("c"), time(100), time(199), samples(100, 199));
+            cache.add(key("x"), time(100), time(199), samples(100, 199));
+            assertEquals(2, dir.list().length);
+            // .. and still reads back what was just spilled
+            assertEquals(100, cache.lookup(key("c"), time(100), time(199)).get(0).samples.size());
+
+            // Files beyond the maximum age are removed on start
+            for (File file : dir.listFiles())
+                file.setLastModified(System.currentTimeMillis() - Duration.ofDays(2).toMillis());
+            cache = new ArchiveCache(150, dir.getAbsolutePath(), 0, Duration.ofDays(1));
+            assertEquals(0, dir.list().length);
+            assertTrue(cache.lookup(key("c"), time(100), time(199)).get(0).isGap());
+
+            // Clearing the cache removes spilled files
+            cache.add(key("d"), time(100), time(199), samples(100, 199));
+            cache.add(key("x"), time(100), time(199), samples(100, 199));
+            assertEquals(1, dir.list().length);
+            cache.clear();
+            assertEquals(0, dir.list().length);
+            assertEquals(0, cache.getSampleCount());
+            assertTrue(cache.lookup(key("d"), time(100), time(199)).get(0).isGap());
+        }
+        finally
+        {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+}
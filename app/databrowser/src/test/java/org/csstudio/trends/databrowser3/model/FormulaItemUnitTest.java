@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.Test;
+import org.phoebus.core.vtypes.VTypeHelper;
+
+/** JUnit test for incremental computation of {@link FormulaItem}
+ */
+@SuppressWarnings("nls")
+public class FormulaItemUnitTest
+{
+    /** @param samples Samples
+     *  @return Values of the 'raw' samples
+     */
+    private static List<Double> getValues(final PlotSamples samples)
+    {
+        final List<Double> values = new ArrayList<>();
+        samples.getLock().lock();
+        try
+        {
+            for (int i=0; i<samples.getRawSize(); ++i)
+                values.add(VTypeHelper.toDouble(samples.get(i).getVType()));
+        }
+        finally
+        {
+            samples.getLock().unlock();
+        }
+        return values;
+    }
+
+    /** @param a Input 'a'
+     *  @param b Input 'b'
+     *  @return Values of a newly created formula, computed from scratch
+     */
+    private static List<Double> compute(final PVItem a, final PVItem b) throws Exception
+    {
+        final FormulaItem formula = new FormulaItem("f", "a+b",
+            new FormulaInput[] { new FormulaInput(a, "a"), new FormulaInput(b, "b") });
+        return getValues(formula.getSamples());
+    }
+
+    @Test
+    public void testIncremental() throws Exception
+    {
+        final PVItem a = new PVItem("a", 0.0);
+        final PVItem b = new PVItem("b", 0.0);
+        a.getSamples().addLiveSample(TestHelper.makeValue(1));
+        b.getSamples().addLiveSample(TestHelper.makeValue(2));
+
+        final FormulaItem formula = new FormulaItem("f", "a+b",
+            new FormulaInput[] { new FormulaInput(a, "a"), new FormulaInput(b, "b") });
+        // a is NaN until b arrives
+        List<Double> values = getValues(formula.getSamples());
+        assertEquals(2, values.size());
+        assertTrue(Double.isNaN(values.get(0)));
+        assertEquals(3.0, values.get(1));
+        final int revision = formula.getSamples().getRevision();
+
+        // New samples are appended
+        a.getSamples().addLiveSample(TestHelper.makeValue(3));
+        b.getSamples().addLiveSample(TestHelper.makeValue(5));
+        assertTrue(formula.reevaluate());
+        values = getValues(formula.getSamples());
+        assertEquals(List.of(5.0, 8.0), values.subList(2, 4));
+        assertEquals(compute(a, b), values);
+        assertEquals(revision, formula.getSamples().getRevision());
+
+        // Late sample, older than the last computed sample, requires full computation
+        a.getSamples().addLiveSample(TestHelper.makeValue(4));
+        assertTrue(formula.reevaluate());
+        values = getValues(formula.getSamples());
+        assertEquals(compute(a, b), values);
+        assertEquals(9.0, values.get(values.size()-1));
+        assertTrue(revision != formula.getSamples().getRevision());
+
+        // Merging archived data requires full computation
+        final List<VType> history = List.of(TestHelper.makeValue(0));
+        b.getSamples().mergeArchivedData("Test", history);
+        assertTrue(formula.reevaluate());
+        assertEquals(compute(a, b), getValues(formula.getSamples()));
+
+        // Nothing new
+        a.getSamples().testAndClearNewSamplesFlag();
+        b.getSamples().testAndClearNewSamplesFlag();
+        assertFalse(formula.reevaluate());
+    }
+}
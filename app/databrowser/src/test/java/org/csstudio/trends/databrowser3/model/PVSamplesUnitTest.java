@@ -17,6 +17,7 @@ import org.phoebus.pv.TimeHelper;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -74,6 +75,137 @@ public class PVSamplesUnitTest
         System.out.println(samples);
     }
 
+    /** Readers holding the lock see a snapshot of the live samples
+     *  while new samples are added.
+     */
+    @Test
+    public void testLiveSnapshot() throws Exception
+    {
+        final AtomicInteger waveform_index = new AtomicInteger(0);
+        final PVSamples samples = new PVSamples(waveform_index);
+        samples.setLiveCapacity(10);
+        for (int i=0; i<10; ++i)
+            samples.addLiveSample(TestHelper.makeValue(i));
+
+        samples.getLock().lock();
+        try
+        {
+            // 10 live samples plus continuation to 'now'
+            assertEquals(11, samples.size());
+            assertEquals(0.0, samples.getValue(0));
+
+            // Adding samples from another thread doesn't take the write lock..
+            final Thread writer = new Thread(() ->
+            {
+                for (int i=10; i<15; ++i)
+                    samples.addLiveSample(TestHelper.makeValue(i));
+            });
+            writer.start();
+            writer.join(5000);
+            assertThat(writer.isAlive(), equalTo(false));
+
+            // .. and this reader still sees its snapshot
+            assertEquals(11, samples.size());
+            assertEquals(0.0, samples.getValue(0));
+            assertEquals(9.0, samples.getValue(9));
+        }
+        finally
+        {
+            samples.getLock().unlock();
+        }
+
+        // New lock provides new snapshot where ring buffer moved on
+        samples.getLock().lock();
+        try
+        {
+            assertEquals(11, samples.size());
+            assertEquals(5.0, samples.getValue(0));
+            assertEquals(14.0, samples.getValue(9));
+            assertEquals(Instant.ofEpochMilli(14), samples.get(9).getPosition());
+        }
+        finally
+        {
+            samples.getLock().unlock();
+        }
+    }
+
+    /** Reduced indices cover history, live samples and continuation */
+    @Test
+    public void testReducedIndices() throws Exception
+    {
+        final AtomicInteger waveform_index = new AtomicInteger(0);
+        final PVSamples samples = new PVSamples(waveform_index);
+        samples.setLiveCapacity(5000);
+        final List<VType> history = new ArrayList<>();
+        for (int i=0; i<20000; ++i)
+            history.add(TestHelper.makeValue(i));
+        samples.mergeArchivedData("Test", history);
+        for (int i=20000; i<30000; ++i)
+            samples.addLiveSample(TestHelper.makeValue(i));
+
+        samples.getLock().lock();
+        try
+        {
+            // 20000 history, 5000 live, continuation
+            final int N = samples.size();
+            assertEquals(25001, N);
+            final int[] indices = samples.getReducedIndices(0, N, 100);
+            System.out.println("Reduced " + N + " samples to " + indices.length);
+            assertThat(indices.length < N / 10, equalTo(true));
+            assertEquals(0, indices[0]);
+            assertEquals(N-1, indices[indices.length-1]);
+            for (int k=1; k<indices.length; ++k)
+                assertThat(indices[k-1] < indices[k], equalTo(true));
+            // Last history sample and first live sample are included
+            assertThat(Arrays.binarySearch(indices, 19999) >= 0, equalTo(true));
+            assertThat(Arrays.binarySearch(indices, 20000) >= 0, equalTo(true));
+        }
+        finally
+        {
+            samples.getLock().unlock();
+        }
+    }
+
+    /** Reduced indices cover history merged in several segments */
+    @Test
+    public void testReducedIndicesOfSegments() throws Exception
+    {
+        final AtomicInteger waveform_index = new AtomicInteger(0);
+        final PVSamples samples = new PVSamples(waveform_index);
+        final List<VType> history = new ArrayList<>();
+        for (int i=0; i<30000; ++i)
+            history.add(TestHelper.makeValue(i));
+        samples.mergeArchivedData("Test", history);
+        // Replace a section in the middle
+        history.clear();
+        for (int i=10000; i<20000; i+=2)
+            history.add(TestHelper.makeValue(i));
+        samples.mergeArchivedData("Test", history);
+
+        samples.getLock().lock();
+        try
+        {
+            // 10000 + 5000 + 10001 history, continuation
+            final int N = samples.size();
+            assertEquals(25002, N);
+            final int[] indices = samples.getReducedIndices(0, N, 100);
+            assertThat(indices.length < N / 10, equalTo(true));
+            assertEquals(0, indices[0]);
+            assertEquals(N-1, indices[indices.length-1]);
+            for (int k=1; k<indices.length; ++k)
+                assertThat(indices[k-1] < indices[k], equalTo(true));
+            // Samples at the segment boundaries are included
+            assertThat(Arrays.binarySearch(indices, 9999) >= 0, equalTo(true));
+            assertThat(Arrays.binarySearch(indices, 10000) >= 0, equalTo(true));
+            assertThat(Arrays.binarySearch(indices, 14999) >= 0, equalTo(true));
+            assertThat(Arrays.binarySearch(indices, 15000) >= 0, equalTo(true));
+        }
+        finally
+        {
+            samples.getLock().unlock();
+        }
+    }
+
     /** When 'monitoring' a PV, IOCs will send data with zero time stamps
      *  for records that have never been processed.
      *  Check that time stamps are patched to host time.
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VInt;
+import org.epics.vtype.VStatistics;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test for {@link PlotSampleColumns}
+ *  and merging them via {@link PlotSampleMerger}
+ */
+@SuppressWarnings("nls")
+public class PlotSampleColumnsTest
+{
+    private static VType makeInt(final int secs)
+    {
+        return VInt.of(secs, Alarm.none(), Time.of(Instant.ofEpochSecond(secs)), Display.none());
+    }
+
+    private static PlotSampleColumns makeColumns(final int... secs)
+    {
+        final VType[] values = new VType[secs.length];
+        for (int i=0; i<secs.length; ++i)
+            values[i] = makeInt(secs[i]);
+        return PlotSampleColumns.of("Test", List.of(values));
+    }
+
+    private static int valueOf(final PlotSampleColumns columns, final int i)
+    {
+        return ((VInt) columns.getVType(i)).getValue();
+    }
+
+    @Test
+    public void testValues()
+    {
+        final Instant time = Instant.ofEpochSecond(1000, 123456789);
+        final Alarm alarm = Alarm.of(AlarmSeverity.MINOR, AlarmStatus.RECORD, "HIGH");
+        final List<VType> values = List.of(
+            VDouble.of(3.14, alarm, Time.of(time), Display.none()),
+            VStatistics.of(2.0, 0.5, 1.0, 3.0, 10, Alarm.none(), Time.of(time.plusSeconds(1)), Display.none()),
+            VString.of("Text", Alarm.none(), Time.of(time.plusSeconds(2))));
+        final PlotSampleColumns columns = PlotSampleColumns.of("Test", values);
+
+        assertEquals(3, columns.size());
+        assertEquals(time, columns.getTime(0));
+        assertEquals(3.14, columns.getValue(0, 0));
+        assertTrue(Double.isNaN(columns.getMin(0, 0)));
+        assertEquals(AlarmSeverity.MINOR, columns.getSeverity(0));
+
+        assertEquals(2.0, columns.getValue(1, 0));
+        assertEquals(1.0, columns.getMin(1, 0));
+        assertEquals(3.0, columns.getMax(1, 0));
+        assertEquals(0.5, columns.getStdDev(1, 0));
+        // Statistics only apply to the first waveform element
+        assertTrue(Double.isNaN(columns.getMin(1, 1)));
+
+        assertTrue(Double.isNaN(columns.getValue(2, 0)));
+
+        // VType re-created from the columns
+        final VDouble number = (VDouble) columns.getVType(0);
+        assertEquals(3.14, number.getValue());
+        assertEquals(time, number.getTime().getTimestamp());
+        assertEquals(alarm, number.getAlarm());
+        final VStatistics stats = (VStatistics) columns.getVType(1);
+        assertEquals(10, stats.getNSamples());
+        // Non-numeric VType is kept as is
+        assertSame(values.get(2), columns.getVType(2));
+
+        // PlotSample for the sample view
+        final PlotSample sample = columns.getSample(new AtomicInteger(0), 0);
+        assertEquals(time, sample.getPosition());
+        assertEquals("MINOR / HIGH", sample.getInfo());
+        assertEquals("Text", columns.getSample(new AtomicInteger(0), 2).getInfo());
+    }
+
+    @Test
+    public void testSearch()
+    {
+        final PlotSampleColumns columns = makeColumns(980, 990, 1000, 1100);
+        final long t1000 = PlotSampleColumns.toNanos(Instant.ofEpochSecond(1000));
+        assertEquals(1, columns.findSampleLessThan(t1000));
+        assertEquals(3, columns.findSampleGreaterThan(t1000));
+        assertEquals(-1, columns.findSampleLessThan(t1000 - 20_000_000_000L));
+        assertEquals(-1, columns.findSampleGreaterThan(t1000 + 100_000_000_000L));
+    }
+
+    @Test
+    public void testMerge()
+    {
+        // New data after old data
+        PlotSampleColumns merged = PlotSampleMerger.merge(makeColumns(980, 990, 1000), makeColumns(1100, 1200));
+        assertEquals(5, merged.size());
+
+        // New data before old data
+        merged = PlotSampleMerger.merge(makeColumns(1100, 1200), makeColumns(980, 990, 1000));
+        assertEquals(5, merged.size());
+        assertEquals(980, valueOf(merged, 0));
+        assertEquals(1200, valueOf(merged, 4));
+
+        // New data replaces all of old data
+        final PlotSampleColumns add = makeColumns(980, 1200);
+        assertSame(add, PlotSampleMerger.merge(makeColumns(990, 1000, 1100), add));
+
+        // New data overlaps start of old data
+        merged = PlotSampleMerger.merge(makeColumns(990, 1000, 1200), makeColumns(980, 1100));
+        assertEquals(3, merged.size());
+        assertEquals(980, valueOf(merged, 0));
+        assertEquals(1100, valueOf(merged, 1));
+        assertEquals(1200, valueOf(merged, 2));
+
+        // New data within old data
+        merged = PlotSampleMerger.merge(makeColumns(980, 990, 1000, 1100, 1200), makeColumns(995, 1050));
+        assertEquals(6, merged.size());
+        assertEquals(990, valueOf(merged, 1));
+        assertEquals(995, valueOf(merged, 2));
+        assertEquals(1050, valueOf(merged, 3));
+        assertEquals(1100, valueOf(merged, 4));
+        assertEquals(1200, valueOf(merged, 5));
+    }
+
+    @Test
+    public void testMergeMixed()
+    {
+        // Old columns have no statistics, new ones do
+        final Time time = Time.of(Instant.ofEpochSecond(2000));
+        final PlotSampleColumns stats = PlotSampleColumns.of("Test",
+            List.of(VStatistics.of(2.0, 0.5, 1.0, 3.0, 10, Alarm.none(), time, Display.none())));
+        final PlotSampleColumns merged = PlotSampleMerger.merge(makeColumns(980, 990), stats);
+        assertEquals(3, merged.size());
+        assertTrue(Double.isNaN(merged.getMin(0, 0)));
+        assertEquals(1.0, merged.getMin(2, 0));
+    }
+
+    /** Appending chunks shares arrays and leaves earlier columns unchanged */
+    @Test
+    public void testAppendChunks()
+    {
+        PlotSampleColumns samples = makeColumns(1, 2, 3);
+        final PlotSampleColumns first = samples;
+        for (int chunk=1; chunk<100; ++chunk)
+        {
+            final PlotSampleColumns previous = samples;
+            samples = PlotSampleMerger.merge(samples, makeColumns(chunk*10, chunk*10+1));
+            assertEquals(previous.size() + 2, samples.size());
+            assertTrue(previous.isPrefixOf(samples));
+        }
+        assertEquals(3 + 99*2, samples.size());
+        assertEquals(3, first.size());
+        assertTrue(first.isPrefixOf(samples));
+        for (int i=1; i<samples.size(); ++i)
+            assertTrue(samples.getNanos(i-1) < samples.getNanos(i));
+        assertEquals(991, valueOf(samples, samples.size()-1));
+
+        // Branching off an earlier state doesn't modify the later one
+        final PlotSampleColumns branch = PlotSampleMerger.merge(first, makeColumns(5));
+        assertEquals(4, branch.size());
+        assertEquals(5, valueOf(branch, 3));
+        assertEquals(10, valueOf(samples, 3));
+        assertTrue(! branch.isPrefixOf(samples));
+        assertTrue(! samples.isPrefixOf(branch));
+
+        // Merging into the middle creates unrelated columns
+        final PlotSampleColumns replaced = PlotSampleMerger.merge(samples, makeColumns(15));
+        assertTrue(! samples.isPrefixOf(replaced));
+    }
+}
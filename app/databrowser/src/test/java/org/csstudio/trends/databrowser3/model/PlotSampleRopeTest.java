@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser3.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VInt;
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test for {@link PlotSampleRope}
+ *  and merging into it via {@link PlotSampleMerger}
+ */
+@SuppressWarnings("nls")
+public class PlotSampleRopeTest
+{
+    /** @param first First time stamp in seconds
+     *  @param count Number of samples, one per second
+     *  @param value Value of all samples
+     *  @return Columns
+     */
+    private static PlotSampleColumns makeColumns(final int first, final int count, final int value)
+    {
+        final List<VType> values = new ArrayList<>();
+        for (int i=0; i<count; ++i)
+            values.add(VInt.of(value, Alarm.none(), Time.of(Instant.ofEpochSecond(first + i)), Display.none()));
+        return PlotSampleColumns.of("Test", values);
+    }
+
+    private static void assertSameSamples(final PlotSampleColumns expected, final PlotSampleRope rope)
+    {
+        assertEquals(expected.size(), rope.size());
+        for (int i=0; i<expected.size(); ++i)
+        {
+            assertEquals(expected.getNanos(i), rope.getNanos(i));
+            assertEquals(expected.getValue(i, 0), rope.getValue(i, 0));
+        }
+    }
+
+    @Test
+    public void testSplice()
+    {
+        PlotSampleRope rope = PlotSampleMerger.merge(PlotSampleRope.EMPTY, makeColumns(100, 100, 1));
+        assertEquals(1, rope.getSegmentCount());
+
+        // Replace the middle
+        final PlotSampleColumns middle = makeColumns(120, 10, 2);
+        rope = PlotSampleMerger.merge(rope, middle);
+        assertEquals(100, rope.size());
+        assertEquals(3, rope.getSegmentCount());
+        assertSame(middle, rope.getSegmentColumns(1));
+        assertEquals(1.0, rope.getValue(19, 0));
+        assertEquals(2.0, rope.getValue(20, 0));
+        assertEquals(2.0, rope.getValue(29, 0));
+        assertEquals(1.0, rope.getValue(30, 0));
+
+        // Add before and after
+        rope = PlotSampleMerger.merge(rope, makeColumns(50, 10, 3));
+        rope = PlotSampleMerger.merge(rope, makeColumns(300, 10, 4));
+        assertEquals(120, rope.size());
+        assertEquals(3.0, rope.getValue(0, 0));
+        assertEquals(4.0, rope.getValue(119, 0));
+
+        // Search across segments
+        assertEquals(-1, rope.findSampleLessThan(PlotSampleColumns.toNanos(Instant.ofEpochSecond(50))));
+        assertEquals(9, rope.findSampleLessThan(PlotSampleColumns.toNanos(Instant.ofEpochSecond(100))));
+        assertEquals(30, rope.findSampleLessThan(PlotSampleColumns.toNanos(Instant.ofEpochSecond(121))));
+        assertEquals(32, rope.findSampleGreaterThan(PlotSampleColumns.toNanos(Instant.ofEpochSecond(121))));
+        assertEquals(110, rope.findSampleGreaterThan(PlotSampleColumns.toNanos(Instant.ofEpochSecond(250))));
+        assertEquals(-1, rope.findSampleGreaterThan(PlotSampleColumns.toNanos(Instant.ofEpochSecond(309))));
+
+        // Replace all
+        rope = PlotSampleMerger.merge(rope, makeColumns(0, 1000, 5));
+        assertEquals(1, rope.getSegmentCount());
+        assertEquals(1000, rope.size());
+    }
+
+    @Test
+    public void testAppendChunks()
+    {
+        // Streamed chunks that precede existing samples end up in one segment
+        PlotSampleRope rope = PlotSampleRope.of(makeColumns(100000, 100, 1));
+        for (int chunk=0; chunk<1000; ++chunk)
+            rope = PlotSampleMerger.merge(rope, makeColumns(chunk*10, 10, 2));
+        assertEquals(10000 + 100, rope.size());
+        assertEquals(2, rope.getSegmentCount());
+    }
+
+    /** Compare random merges with merging columns */
+    @Test
+    public void testRandomMerges()
+    {
+        final Random random = new Random(42);
+        PlotSampleColumns expected = PlotSampleColumns.EMPTY;
+        PlotSampleRope rope = PlotSampleRope.EMPTY;
+        for (int run=0; run<500; ++run)
+        {
+            final PlotSampleColumns add = makeColumns(random.nextInt(10000), 1 + random.nextInt(200), run);
+            expected = PlotSampleMerger.merge(expected, add);
+            rope = PlotSampleMerger.merge(rope, add);
+            assertTrue(rope.getSegmentCount() <= PlotSampleRope.MAX_SEGMENTS);
+        }
+        System.out.println(rope);
+        assertSameSamples(expected, rope);
+
+        // Time search matches
+        for (int i=0; i<1000; ++i)
+        {
+            final long time = PlotSampleColumns.toNanos(Instant.ofEpochSecond(random.nextInt(11000)));
+            assertEquals(expected.findSampleLessThan(time), rope.findSampleLessThan(time));
+            assertEquals(expected.findSampleGreaterThan(time), rope.findSampleGreaterThan(time));
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2023 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,6 +28,10 @@ public class Preferences
     /** Preference setting */
     @Preference public static int read_timeout, cache_timeout, max_reparse_iterations;
     /** Preference setting */
+    @Preference public static int model_cache_size;
+    /** Preference setting */
+    @Preference public static boolean parallel_widget_reading;
+    /** Preference setting */
     @Preference public static double legacy_font_calibration;
     /** Preference setting */
     @Preference public static boolean with_comments;
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.csstudio.display.builder.model.persist;
+
+import static org.csstudio.display.builder.model.ModelPlugin.logger;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.csstudio.display.builder.model.Preferences;
+import org.csstudio.display.builder.model.util.ModelResourceUtil;
+import org.phoebus.framework.persistence.XMLUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/** Cache of parsed display files
+ *
+ *  <p>Embedded displays, navigation tabs and template instances
+ *  tend to open the same display file over and over.
+ *  The cache keeps the parsed XML document of each display file
+ *  as an immutable prototype and hands out deep copies,
+ *  so the file is only read and parsed once.
+ *
+ *  <p>The DOM is cached instead of the {@link org.csstudio.display.builder.model.DisplayModel}
+ *  because the model has no deep-copy, and the widget configurators
+ *  handle legacy files by updating the XML that they read.
+ *  Copying the DOM is still much cheaper than reading and parsing the file.
+ *
+ *  <p>Entries are checked before each use:
+ *  Files by modification time and size,
+ *  web resources by their 'ETag' or 'Last-Modified' header.
+ *  Web resources without either header are not cached.
+ *  Very large files are also not cached but streamed,
+ *  see {@link ModelReader#createStreamingReader(InputStream, String)}.
+ */
+@SuppressWarnings("nls")
+public class DisplayModelCache
+{
+    /** Parsed display file */
+    private static class Entry
+    {
+        /** Modification time, ETag, .. of the file when it was parsed */
+        final String stamp;
+
+        /** Parsed document. Never changed, only copied */
+        final Document prototype;
+
+        Entry(final String stamp, final Document prototype)
+        {
+            this.stamp = stamp;
+            this.prototype = prototype;
+        }
+    }
+
+    /** Files larger than this are not cached [bytes] */
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    /** Entries by resolved display name, least recently used first. SYNC on access */
+    private static final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest)
+        {
+            return size() > Preferences.model_cache_size;
+        }
+    };
+
+    /** @return Is the cache enabled? */
+    public static boolean isEnabled()
+    {
+        return Preferences.model_cache_size > 0;
+    }
+
+    /** Get XML of a display file
+     *
+     *  <p>Caller may modify the returned XML,
+     *  for example via a {@link ModelReader}.
+     *
+     *  @param display_file Resolved display file name
+     *  @return Root element of a copy of the display file's XML,
+     *          <code>null</code> if the file is not cached and caller needs to read it
+     *  @throws Exception on error
+     */
+    public static Element getDisplayRoot(final String display_file) throws Exception
+    {
+        // Determine stamp before reading, so a change while reading
+        // results in reading the file again next time
+        final String stamp = isEnabled() ? getStamp(display_file) : null;
+        if (stamp == null)
+            return null;
+
+        Entry entry;
+        synchronized (cache)
+        {
+            entry = cache.get(display_file);
+        }
+        if (entry == null  ||  !entry.stamp.equals(stamp))
+        {
+            logger.log(Level.FINE, () -> "Parsing " + display_file);
+            entry = new Entry(stamp, readDocument(display_file));
+            synchronized (cache)
+            {
+                cache.put(display_file, entry);
+            }
+        }
+        else
+            logger.log(Level.FINE, () -> "Using cached " + display_file);
+
+        // DOM implementation is not thread-safe, even for read access
+        final Document copy;
+        synchronized (entry.prototype)
+        {
+            copy = (Document) entry.prototype.cloneNode(true);
+            copyLineNumbers(entry.prototype.getDocumentElement(), copy.getDocumentElement());
+        }
+        return copy.getDocumentElement();
+    }
+
+    /** Remove all entries, forcing displays to be read again */
+    public static void clear()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+    }
+
+    /** @param display_file Display file
+     *  @return Parsed XML document
+     *  @throws Exception on error
+     */
+    private static Document readDocument(final String display_file) throws Exception
+    {
+        // Read web resources directly, not via the time-based URL cache,
+        // since that might still hold the content from before the change
+        final InputStream stream = display_file.startsWith("http")
+            ? ModelResourceUtil.openURL(display_file, Preferences.read_timeout)
+            : ModelResourceUtil.openResourceStream(display_file);
+        return XMLUtil.openXMLDocument(stream, XMLTags.DISPLAY).getOwnerDocument();
+    }
+
+    /** @param display_file Display file
+     *  @return Stamp that changes when the file changes, or <code>null</code> if unknown
+     */
+    private static String getStamp(final String display_file)
+    {
+        try
+        {
+            if (display_file.startsWith("http"))
+                return getWebStamp(display_file);
+
+            final File file;
+            if (display_file.startsWith("file:/")  ||  display_file.startsWith(ModelResourceUtil.EXAMPLES_SCHEMA + ":"))
+                file = ModelResourceUtil.getFile(new URI(display_file.replace(" ", "%20")));
+            else if (display_file.startsWith("platform:/plugin/"))
+                file = null;
+            else
+                file = new File(display_file);
+
+            if (file == null)
+            {   // Examples or plugin resources inside a jar don't change
+                if (display_file.startsWith("file:/"))
+                    return null;
+                return "resource";
+            }
+            if (! file.canRead()  ||  file.length() > MAX_FILE_SIZE)
+                return null;
+            return file.lastModified() + ":" + file.length();
+        }
+        catch (Exception ex)
+        {
+            logger.log(Level.FINE, "Cannot check " + display_file + " for changes", ex);
+            return null;
+        }
+    }
+
+    /** @param display_file URL of display file
+     *  @return 'ETag' or 'Last-Modified' from HTTP header, or <code>null</code>
+     *  @throws Exception on error
+     */
+    private static String getWebStamp(final String display_file) throws Exception
+    {
+        final URLConnection connection = new URL(display_file.replace(" ", "%20")).openConnection();
+        connection.setConnectTimeout(Preferences.read_timeout);
+        connection.setReadTimeout(Preferences.read_timeout);
+        if (! (connection instanceof HttpURLConnection))
+            return null;
+        final HttpURLConnection http = (HttpURLConnection) connection;
+        try
+        {
+            http.setRequestMethod("HEAD");
+            if (http.getResponseCode() != HttpURLConnection.HTTP_OK  ||
+                http.getContentLengthLong() > MAX_FILE_SIZE)
+                return null;
+            final String etag = http.getHeaderField("ETag");
+            if (etag != null)
+                return etag;
+            return http.getHeaderField("Last-Modified");
+        }
+        finally
+        {
+            http.disconnect();
+        }
+    }
+
+    /** Copy line numbers, which are not included when cloning a DOM node
+     *  @param original Original node
+     *  @param copy Copy of that node
+     */
+    private static void copyLineNumbers(final Node original, final Node copy)
+    {
+        final Object line = original.getUserData(PositionalXMLReader.LINE_NUMBER);
+        if (line != null)
+            copy.setUserData(PositionalXMLReader.LINE_NUMBER, line, null);
+        Node o = original.getFirstChild(), c = copy.getFirstChild();
+        while (o != null  &&  c != null)
+        {
+            if (o.getNodeType() == Node.ELEMENT_NODE)
+                copyLineNumbers(o, c);
+            o = o.getNextSibling();
+            c = c.getNextSibling();
+        }
+    }
+}
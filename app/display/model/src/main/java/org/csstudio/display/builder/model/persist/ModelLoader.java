@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2019 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,7 @@ import org.csstudio.display.builder.model.DisplayModel;
 import org.csstudio.display.builder.model.WidgetClassSupport;
 import org.csstudio.display.builder.model.spi.DisplayAutoConverter;
 import org.csstudio.display.builder.model.util.ModelResourceUtil;
+import org.w3c.dom.Element;
 
 /** Helper for loading a display model
  *
@@ -74,6 +75,9 @@ public class ModelLoader
      */
     public static DisplayModel loadModel(final String display_file) throws Exception
     {
+        final Element root = DisplayModelCache.getDisplayRoot(display_file);
+        if (root != null)
+            return loadModel(new ModelReader(root, display_file), display_file);
         return loadModel(ModelResourceUtil.openResourceStream(display_file), display_file);
     }
 
@@ -87,7 +91,11 @@ public class ModelLoader
      */
     public static DisplayModel loadModel(final InputStream stream, final String display_file) throws Exception
     {
-        final ModelReader reader = new ModelReader(stream, display_file);
+        return loadModel(ModelReader.createStreamingReader(stream, display_file), display_file);
+    }
+
+    private static DisplayModel loadModel(final ModelReader reader, final String display_file) throws Exception
+    {
         final DisplayModel model = reader.readModel();
         model.setUserData(DisplayModel.USER_DATA_INPUT_FILE, display_file);
 
@@ -98,5 +106,5 @@ public class ModelLoader
             WidgetClassesService.getWidgetClasses().apply(model);
         }
         return model;
-  }
+    }
 }
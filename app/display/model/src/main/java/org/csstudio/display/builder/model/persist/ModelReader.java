@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2022 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,11 +12,25 @@ import static org.csstudio.display.builder.model.ModelPlugin.logger;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
 import org.csstudio.display.builder.model.ChildrenProperty;
 import org.csstudio.display.builder.model.DisplayModel;
 import org.csstudio.display.builder.model.Preferences;
@@ -28,7 +42,9 @@ import org.csstudio.display.builder.model.WidgetDescriptor;
 import org.csstudio.display.builder.model.WidgetFactory;
 import org.csstudio.display.builder.model.WidgetFactory.WidgetTypeException;
 import org.csstudio.display.builder.model.widgets.PlaceholderWidget;
+import org.phoebus.framework.jobs.NamedThreadFactory;
 import org.phoebus.framework.persistence.XMLUtil;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /** Read model from XML.
@@ -70,6 +86,16 @@ import org.w3c.dom.Element;
  *  use widget.getProperty("x").readFromXML(reader).
  *  .. but widget can provide a custom WidgetConfigurator
  *  and handle legacy properties in a different way.
+ *
+ *  Streaming large displays
+ *  ========================
+ *  For displays with many widgets, for example converted EDM screens,
+ *  the DOM of the complete file is big and takes long to build.
+ *  The streaming reader uses StAX to read the file in one pass.
+ *  Only the XML of one top-level widget at a time is turned into a DOM,
+ *  which is then handed to the widget configurators as before.
+ *  Top-level widgets that contain other widgets can be configured
+ *  in parallel while the rest of the file is read.
  *  </pre>
  *
  *  @author Kay Kasemir
@@ -77,11 +103,56 @@ import org.w3c.dom.Element;
 @SuppressWarnings("nls")
 public class ModelReader
 {
+    /** Thread pool for reading top-level widgets in parallel
+     *
+     *  <p>One thread per CPU core, shared by all readers.
+     *  When all threads are busy and a few widgets are queued,
+     *  the streaming reader configures the next widget itself,
+     *  which limits the widget DOMs that wait in memory.
+     */
+    private static final ExecutorService widget_readers = createWidgetReaders();
+
+    private static ExecutorService createWidgetReaders()
+    {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                10L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(threads),
+                new NamedThreadFactory("DisplayModelReader"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     private final Element root;
     private final Version version;
     private final String xml_file;
     private int widget_errors_during_parse;
 
+    /** Widget types that are not known, shared with readers for top-level widgets */
+    private final Set<String> unknown_widget_type;
+
+    /** Top-level widgets read while streaming the XML,
+     *  <code>null</code> when reading widgets from the DOM
+     */
+    private List<Future<StreamedWidgets>> streamed_widgets = null;
+
+    /** Have the streamed widgets been added to a model? */
+    private boolean streamed_widgets_added = false;
+
+    /** Widgets read from the XML of one top-level widget */
+    private static class StreamedWidgets
+    {
+        final List<Widget> widgets;
+        final int errors;
+
+        StreamedWidgets(final List<Widget> widgets, final int errors)
+        {
+            this.widgets = widgets;
+            this.errors = errors;
+        }
+    }
+
     /** Parse display from XML
      *  @param xml XML text
      *  @return DisplayModel
@@ -110,10 +181,7 @@ public class ModelReader
      */
     public ModelReader(final InputStream stream, final String xml_file) throws Exception
     {
-        root = XMLUtil.openXMLDocument(stream, XMLTags.DISPLAY);
-        version = readVersion(root);
-        widget_errors_during_parse = 0;
-        this.xml_file = xml_file;
+        this(XMLUtil.openXMLDocument(stream, XMLTags.DISPLAY), xml_file);
     }
 
     /** Create reader.
@@ -127,6 +195,230 @@ public class ModelReader
         version = readVersion(root);
         widget_errors_during_parse = 0;
         this.xml_file = xml_file;
+        unknown_widget_type = ConcurrentHashMap.newKeySet();
+    }
+
+    /** Create reader for the widgets of one top-level widget
+     *  @param display_reader Reader for the display
+     */
+    private ModelReader(final ModelReader display_reader)
+    {
+        root = display_reader.root;
+        version = display_reader.version;
+        widget_errors_during_parse = 0;
+        xml_file = display_reader.xml_file;
+        unknown_widget_type = display_reader.unknown_widget_type;
+    }
+
+    /** Create reader that streams the XML
+     *
+     *  <p>Widgets are created while the XML is read,
+     *  without first building the DOM of the complete file.
+     *  {@link #readModel()} then returns the same model
+     *  as a reader that parses the complete DOM,
+     *  but may only be called once.
+     *
+     *  <p>Legacy displays before version 2 are still read into
+     *  a complete DOM, because their configurators
+     *  may move or add sibling widgets in the XML.
+     *
+     *  @param stream Input stream to read, will be closed
+     *  @param xml_file Name of input file. Can be null if not applicable
+     *  @return {@link ModelReader}
+     *  @throws Exception on error
+     */
+    public static ModelReader createStreamingReader(final InputStream stream, final String xml_file) throws Exception
+    {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        // Display files may be loaded from URLs, don't resolve DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader xml = null;
+        ModelReader reader = null;
+        try
+        {
+            xml = factory.createXMLStreamReader(stream);
+            // Skip prolog, comments, .. up to the root element
+            int event = xml.getEventType();
+            while (event != XMLStreamConstants.START_ELEMENT  &&  xml.hasNext())
+                event = xml.next();
+            if (event != XMLStreamConstants.START_ELEMENT)
+                throw new Exception("Missing document root");
+
+            final DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            final Document doc = builder.newDocument();
+            final Element display = createElement(xml, doc);
+            doc.appendChild(display);
+            if (! XMLTags.DISPLAY.equals(display.getNodeName()))
+                throw new Exception("Wrong document type. Expected <" +
+                                    XMLTags.DISPLAY + "> but found <" +
+                                    display.getNodeName() + ">");
+
+            reader = new ModelReader(display, xml_file);
+            if (reader.getVersion().getMajor() < 2)
+            {
+                readContent(xml, doc, display);
+                return reader;
+            }
+
+            // Add display properties to DOM,
+            // read each top-level widget from a separate DOM
+            reader.streamed_widgets = new ArrayList<>();
+            final StringBuilder text = new StringBuilder();
+            while (xml.hasNext())
+            {
+                event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT)
+                {
+                    addText(display, text);
+                    if (XMLTags.WIDGET.equals(getName(xml)))
+                        reader.streamed_widgets.add(reader.readTopLevelWidget(xml, builder.newDocument()));
+                    else
+                    {
+                        final Element element = createElement(xml, doc);
+                        readContent(xml, doc, element);
+                        display.appendChild(element);
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT)
+                {
+                    addText(display, text);
+                    break;
+                }
+                else if (isText(event))
+                    text.append(xml.getText());
+            }
+            return reader;
+        }
+        catch (Exception ex)
+        {
+            if (reader != null)
+                reader.cancelStreamedWidgets();
+            throw ex;
+        }
+        finally
+        {
+            if (xml != null)
+                xml.close();
+            stream.close();
+        }
+    }
+
+    /** Read one top-level widget
+     *
+     *  <p>Widget that contains other widgets is read in parallel,
+     *  or by the calling thread when all widget reader threads are busy.
+     *
+     *  @param xml Stream positioned on the widget's start element
+     *  @param doc Empty document for the widget
+     *  @return Widgets read from the XML
+     *  @throws Exception on error
+     */
+    private Future<StreamedWidgets> readTopLevelWidget(final XMLStreamReader xml, final Document doc) throws Exception
+    {
+        // Place widget in a copy of the display element,
+        // so configurators find the parent that they expect
+        final Element parent = doc.createElement(XMLTags.DISPLAY);
+        doc.appendChild(parent);
+        final Element widget_xml = createElement(xml, doc);
+        readContent(xml, doc, widget_xml);
+        parent.appendChild(widget_xml);
+
+        final ModelReader reader = new ModelReader(this);
+        final Callable<StreamedWidgets> read = () ->
+        {
+            final List<Widget> widgets = reader.readWidgetList(parent);
+            return new StreamedWidgets(widgets, reader.widget_errors_during_parse);
+        };
+        if (Preferences.parallel_widget_reading  &&
+            XMLUtil.getChildElement(widget_xml, XMLTags.WIDGET) != null)
+            return widget_readers.submit(read);
+        return CompletableFuture.completedFuture(read.call());
+    }
+
+    /** @param xml Stream positioned on a start element
+     *  @param doc Document used to create the element
+     *  @return Element with attributes, but no content, yet
+     */
+    private static Element createElement(final XMLStreamReader xml, final Document doc)
+    {
+        final Element element = doc.createElement(getName(xml));
+        for (int i=0; i<xml.getAttributeCount(); ++i)
+        {
+            final String prefix = xml.getAttributePrefix(i);
+            final String name = xml.getAttributeLocalName(i);
+            element.setAttribute(prefix == null || prefix.isEmpty() ? name : prefix + ":" + name,
+                                 xml.getAttributeValue(i));
+        }
+        element.setUserData(PositionalXMLReader.LINE_NUMBER, Integer.valueOf(xml.getLocation().getLineNumber()), null);
+        return element;
+    }
+
+    /** @param xml Stream positioned on a start element
+     *  @return Name of the element
+     */
+    private static String getName(final XMLStreamReader xml)
+    {
+        final String prefix = xml.getPrefix();
+        if (prefix == null  ||  prefix.isEmpty())
+            return xml.getLocalName();
+        return prefix + ":" + xml.getLocalName();
+    }
+
+    /** Read content of element, i.e. text and child elements,
+     *  resulting in the same DOM as the {@link PositionalXMLReader}
+     *
+     *  @param xml Stream positioned on the element's start, will be on its end
+     *  @param doc Document used to create nodes
+     *  @param element Element to which content is added
+     *  @throws Exception on error
+     */
+    private static void readContent(final XMLStreamReader xml, final Document doc, final Element element) throws Exception
+    {
+        final StringBuilder text = new StringBuilder();
+        while (xml.hasNext())
+        {
+            final int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                addText(element, text);
+                final Element child = createElement(xml, doc);
+                readContent(xml, doc, child);
+                element.appendChild(child);
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                addText(element, text);
+                return;
+            }
+            else if (isText(event))
+                text.append(xml.getText());
+        }
+        throw new Exception("Missing end of <" + element.getNodeName() + ">");
+    }
+
+    /** @param event StAX event
+     *  @return Is it text content?
+     */
+    private static boolean isText(final int event)
+    {
+        return event == XMLStreamConstants.CHARACTERS  ||
+               event == XMLStreamConstants.CDATA       ||
+               event == XMLStreamConstants.SPACE;
+    }
+
+    /** Add accumulated text to element
+     *  @param element Element
+     *  @param text Text, will be cleared
+     */
+    private static void addText(final Element element, final StringBuilder text)
+    {
+        if (text.length() > 0)
+        {
+            element.appendChild(element.getOwnerDocument().createTextNode(text.toString()));
+            text.setLength(0);
+        }
     }
 
     /** @return XML root element for custom access */
@@ -168,14 +460,56 @@ public class ModelReader
             ++widget_errors_during_parse;
 
         // Read widgets of model
-        readWidgets(model.runtimeChildren(), root);
+        if (streamed_widgets == null)
+            readWidgets(model.runtimeChildren(), root);
+        else
+            addStreamedWidgets(model.runtimeChildren());
         if (widget_errors_during_parse > 0)
             logger.log(Level.SEVERE, "There were " + widget_errors_during_parse + " error(s) during loading display from " + (xml_file != null ? xml_file : "stream"));
         model.setReaderResult(this);
         return model;
     }
 
-    final private Set<String> unknown_widget_type = new HashSet<>();
+    /** Add top-level widgets that were read while streaming the XML
+     *  @param children 'children' property of the display
+     *  @throws Exception on error
+     */
+    private void addStreamedWidgets(final ChildrenProperty children) throws Exception
+    {
+        if (streamed_widgets_added)
+            throw new IllegalStateException("Streamed model can only be read once");
+        streamed_widgets_added = true;
+        try
+        {
+            for (Future<StreamedWidgets> future : streamed_widgets)
+            {
+                final StreamedWidgets streamed = future.get();
+                for (Widget child : streamed.widgets)
+                    children.addChild(child);
+                widget_errors_during_parse += streamed.errors;
+            }
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof Exception)
+                throw (Exception) ex.getCause();
+            throw ex;
+        }
+        finally
+        {
+            cancelStreamedWidgets();
+        }
+    }
+
+    /** Cancel reading top-level widgets that are still queued or running */
+    private void cancelStreamedWidgets()
+    {
+        if (streamed_widgets == null)
+            return;
+        for (Future<StreamedWidgets> future : streamed_widgets)
+            future.cancel(true);
+        streamed_widgets.clear();
+    }
 
     /** Read all '&lt;widget>..' child entries
      *
@@ -186,6 +520,20 @@ public class ModelReader
      *  @param parent_xml XML of the parent widget from which child entries are read
      */
     public void readWidgets(final ChildrenProperty children, final Element parent_xml)
+    {
+        for (Widget child : readWidgetList(parent_xml))
+            children.addChild(child);
+    }
+
+    /** Read all '&lt;widget>..' child entries
+     *
+     *  <p>Continues to read the same parent_xml
+     *  if one of the widget configurators throws a ParseAgainException
+     *
+     *  @param parent_xml XML of the parent widget from which child entries are read
+     *  @return Widgets
+     */
+    private List<Widget> readWidgetList(final Element parent_xml)
     {
         // Save the number of errors we had so far
         int saved_widget_errors_during_parse = widget_errors_during_parse;
@@ -195,12 +543,9 @@ public class ModelReader
             final List<Widget> widgets = readWidgetsAllowingRetry(parent_xml);
             if (widgets != null)
             {
-                for (Widget child : widgets)
-                    children.addChild(child);
-
                 // Update the number of errors
                 widget_errors_during_parse += saved_widget_errors_during_parse;
-                return;
+                return widgets;
             }
         }
 
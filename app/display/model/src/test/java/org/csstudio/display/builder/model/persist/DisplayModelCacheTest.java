@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.csstudio.display.builder.model.persist;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.csstudio.display.builder.model.DisplayModel;
+import org.junit.jupiter.api.Test;
+import org.phoebus.framework.persistence.XMLUtil;
+import org.w3c.dom.Element;
+
+/** JUnit test of the {@link DisplayModelCache}
+ */
+@SuppressWarnings("nls")
+public class DisplayModelCacheTest
+{
+    private static void write(final File file, final String name) throws Exception
+    {
+        Files.writeString(file.toPath(),
+                          "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                          "<display version=\"2.0.0\">\n" +
+                          "  <name>" + name + "</name>\n" +
+                          "  <widget type=\"label\" version=\"2.0.0\">\n" +
+                          "    <name>Label</name>\n" +
+                          "  </widget>\n" +
+                          "</display>\n");
+    }
+
+    @Test
+    public void testCache() throws Exception
+    {
+        final File file = File.createTempFile("cache_test", ".bob");
+        file.deleteOnExit();
+        write(file, "First");
+
+        // Each call returns a separate copy
+        final Element first = DisplayModelCache.getDisplayRoot(file.getPath());
+        final Element second = DisplayModelCache.getDisplayRoot(file.getPath());
+        assertThat(second, not(sameInstance(first)));
+
+        // Modifying one copy doesn't affect the cache
+        first.removeChild(XMLUtil.getChildElement(first, XMLTags.WIDGET));
+        DisplayModel model = new ModelReader(DisplayModelCache.getDisplayRoot(file.getPath()), file.getPath()).readModel();
+        assertThat(model.getDisplayName(), equalTo("First"));
+        assertThat(model.getChildren().size(), equalTo(1));
+
+        // Change to the file is detected
+        write(file, "Second");
+        file.setLastModified(file.lastModified() + 2000);
+        model = new ModelReader(DisplayModelCache.getDisplayRoot(file.getPath()), file.getPath()).readModel();
+        assertThat(model.getDisplayName(), equalTo("Second"));
+
+        file.delete();
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.csstudio.display.builder.model.persist;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.csstudio.display.builder.model.DisplayModel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.phoebus.framework.persistence.XMLUtil;
+
+/** JUnit test of the streaming {@link ModelReader}
+ */
+@SuppressWarnings("nls")
+public class StreamingModelReaderTest
+{
+    @BeforeAll
+    public static void setup()
+    {
+        ModelWriter.with_comments = false;
+        ModelWriter.enable_saved_on_comment = false;
+    }
+
+    private static InputStream open(final String name) throws Exception
+    {
+        if (name.startsWith("/examples"))
+            return StreamingModelReaderTest.class.getResourceAsStream(name);
+        return new FileInputStream(name);
+    }
+
+    private static String toXML(final DisplayModel model) throws Exception
+    {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (final ModelWriter writer = new ModelWriter(buf))
+        {
+            writer.writeModel(model);
+        }
+        return buf.toString(XMLUtil.ENCODING);
+    }
+
+    /** Check that streaming reader gives same model as DOM reader */
+    @Test
+    public void testSameModel() throws Exception
+    {
+        for (String name : new String[] { "/examples/01_main.bob",
+                                          "/examples/03_properties.bob",
+                                          "/examples/07_templates.bob",
+                                          "/examples/09_rules.bob",
+                                          "src/test/resources/opiFiles/SimplePanel.opi" })
+        {
+            final ModelReader dom_reader = new ModelReader(open(name), name);
+            final DisplayModel dom = dom_reader.readModel();
+            final ModelReader reader = ModelReader.createStreamingReader(open(name), name);
+            final DisplayModel streamed = reader.readModel();
+
+            System.out.println(name + ": " + streamed.getChildren().size() + " top-level widgets");
+            assertThat(streamed.getChildren().size(), equalTo(dom.getChildren().size()));
+            assertThat(toXML(streamed), equalTo(toXML(dom)));
+            assertThat(reader.getNumberOfWidgetErrors(), equalTo(dom_reader.getNumberOfWidgetErrors()));
+        }
+    }
+
+    /** Check that external entities are not resolved */
+    @Test
+    public void testExternalEntity() throws Exception
+    {
+        final File secret = File.createTempFile("secret", ".txt");
+        secret.deleteOnExit();
+        Files.writeString(secret.toPath(), "Secret");
+
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                           "<!DOCTYPE display [ <!ENTITY secret SYSTEM \"" + secret.toURI() + "\"> ]>\n" +
+                           "<display version=\"2.0.0\">\n" +
+                           "  <name>&secret;</name>\n" +
+                           "</display>\n";
+        try
+        {
+            final ModelReader reader = ModelReader.createStreamingReader(new ByteArrayInputStream(xml.getBytes(XMLUtil.ENCODING)), null);
+            assertThat(toXML(reader.readModel()), not(containsString("Secret")));
+        }
+        catch (Exception ex)
+        {
+            // Rejecting the entity is also fine
+            System.out.println("Rejected: " + ex.getMessage());
+        }
+    }
+
+    /** Check that an error after the first top-level widgets is reported */
+    @Test
+    public void testError() throws Exception
+    {
+        final StringBuilder xml = new StringBuilder("<display version=\"2.0.0\">\n");
+        for (int i=0; i<100; ++i)
+            xml.append("  <widget type=\"group\" version=\"2.0.0\"><name>G" + i + "</name>" +
+                       "<widget type=\"label\" version=\"2.0.0\"><name>L" + i + "</name></widget></widget>\n");
+        xml.append("  <widget type=\"label\" version=\"2.0.0\">\n");
+        final InputStream stream = new ByteArrayInputStream(xml.toString().getBytes(XMLUtil.ENCODING));
+        assertThrows(Exception.class, () -> ModelReader.createStreamingReader(stream, null));
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2019 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,8 +29,10 @@ import org.csstudio.display.builder.representation.javafx.JFXRepresentation;
 
 import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
 import javafx.scene.Node;
 import javafx.scene.Parent;
+import javafx.scene.Scene;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.MouseEvent;
@@ -343,6 +345,29 @@ abstract public class JFXBaseRepresentation<JFX extends Node, MW extends Widget>
         }
     }
 
+    /** {@inheritDoc}
+     *
+     *  <p>Widget is hidden when a parent is not visible,
+     *  for example in a tab that's not selected,
+     *  or when it is outside of the window.
+     *  The widget's own visibility is not checked
+     *  so that updates which show the widget are not delayed.
+     */
+    @Override
+    public boolean isShowing()
+    {
+        if (jfx_node == null)
+            return true;
+        final Scene scene = jfx_node.getScene();
+        if (scene == null)
+            return false;
+        for (Node parent = jfx_node.getParent();  parent != null;  parent = parent.getParent())
+            if (! parent.isVisible())
+                return false;
+        final Bounds bounds = jfx_node.localToScene(jfx_node.getBoundsInLocal());
+        return bounds.intersects(0, 0, scene.getWidth(), scene.getHeight());
+    }
+
     @Override
     public void updateOrder()
     {
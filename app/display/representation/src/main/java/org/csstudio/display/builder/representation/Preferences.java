@@ -19,7 +19,7 @@ public class Preferences
 {
     /** Preference setting */
     @Preference public static int performance_log_period_secs, performance_log_threshold_ms,
-                      update_accumulation_time, update_delay, plot_update_delay, image_update_delay,
+                      update_accumulation_time, update_delay, update_budget_ms, plot_update_delay, image_update_delay,
                       tooltip_length, embedded_timeout;
 
     static
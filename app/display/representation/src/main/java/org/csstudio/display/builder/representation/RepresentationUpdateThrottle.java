@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2016 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,12 +10,15 @@ package org.csstudio.display.builder.representation;
 import static org.csstudio.display.builder.representation.ToolkitRepresentation.logger;
 
 import java.time.Instant;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 
 /** Handle throttled updates on UI thread.
@@ -33,6 +36,12 @@ import java.util.logging.Level;
  *  <p>Once there are no more updates, the thread waits until
  *  woken up again by the next requested update.
  *
+ *  <p>Repeated requests from a representation that is already pending
+ *  are coalesced without locking.
+ *  Each run on the UI thread updates the representations that are showing
+ *  before those which are hidden, and stops after a time budget.
+ *  What's left is handled in the next run.
+ *
  *  @author Kay Kasemir
  */
 @SuppressWarnings("nls")
@@ -53,6 +62,12 @@ public class RepresentationUpdateThrottle
     /** Pause between updates to prevent flooding the UI thread */
     private static final long update_delay = Preferences.update_delay;
 
+    /** Time in nanoseconds that one run may spend on the UI thread */
+    private static final long update_budget_ns = TimeUnit.MILLISECONDS.toNanos(Preferences.update_budget_ms);
+
+    /** Hidden representations that waited longer than this are updated like visible ones */
+    private static final long max_hidden_delay_ns = TimeUnit.MILLISECONDS.toNanos(10 * update_delay);
+
     /** Executor for UI thread */
     private final Executor gui_executor;
 
@@ -65,13 +80,27 @@ public class RepresentationUpdateThrottle
     /** Flag that informs throttle_thread to run or exit */
     protected volatile boolean run = true;
 
-    /** Representations that requested an update.
-     *
-     *  <p>Ordered by time when representations requested an update
-     *
-     *  SYNC on access
+    /** Representations that requested an update,
+     *  mapped to the nano time of the request
      */
-    private final Set<WidgetRepresentation<?, ?, ?>> updateable = new LinkedHashSet<>();
+    private final ConcurrentHashMap<WidgetRepresentation<?, ?, ?>, Long> pending = new ConcurrentHashMap<>();
+
+    /** Pending representations, ordered by time when they requested an update */
+    private final ConcurrentLinkedQueue<WidgetRepresentation<?, ?, ?>> requests = new ConcurrentLinkedQueue<>();
+
+    /** Pending representations that the last run on the UI thread did not get to.
+     *  Set on UI thread, read by throttle_thread after the run.
+     */
+    private volatile List<WidgetRepresentation<?, ?, ?>> leftover = List.of();
+
+    /** Name of the display, used for logging */
+    private volatile String display_name = "";
+
+    /** Statistics of the current log period, only accessed on UI thread */
+    private long latency_sum_ns = 0, latency_max_ns = 0, latency_count = 0;
+
+    /** Average and maximum update latency in ms of the last log period */
+    private volatile long latency_ms = 0, max_latency_ms = 0;
 
     /** @param gui_executor Executor for UI thread */
     public RepresentationUpdateThrottle(final Executor gui_executor)
@@ -85,6 +114,12 @@ public class RepresentationUpdateThrottle
         throttle_thread.start();
     }
 
+    /** @param name Name of the display, used for logging */
+    public void setDisplayName(final String name)
+    {
+        display_name = name;
+    }
+
     /** Called by toolkit representation to request an update.
      *
      *  <p>That representation's <code>updateChanges()</code> will be called
@@ -93,10 +128,11 @@ public class RepresentationUpdateThrottle
      */
     public void scheduleUpdate(final WidgetRepresentation<?, ?, ?> representation)
     {
-        synchronized (updateable)
+        // Representation that's already pending will see the latest changes
+        if (pending.putIfAbsent(representation, System.nanoTime()) == null)
         {
-            updateable.add(representation);
-            updateable.notifyAll();
+            requests.add(representation);
+            LockSupport.unpark(throttle_thread);
         }
     }
 
@@ -104,10 +140,23 @@ public class RepresentationUpdateThrottle
     public void enable(final boolean enable)
     {
         enabled = enable;
-        synchronized (updateable)
-        {
-            updateable.notifyAll();
-        }
+        LockSupport.unpark(throttle_thread);
+    }
+
+    /** @return Average time in ms from requesting an update until it was performed,
+     *          for the last log period
+     */
+    public long getUpdateLatency()
+    {
+        return latency_ms;
+    }
+
+    /** @return Maximum time in ms from requesting an update until it was performed,
+     *          for the last log period
+     */
+    public long getMaxUpdateLatency()
+    {
+        return max_latency_ms;
     }
 
     private void doRun()
@@ -122,29 +171,19 @@ public class RepresentationUpdateThrottle
             while (run)
             {
                 // Wait for requested updates
-                synchronized (updateable)
-                {
-                    while (run  &&  updateable.isEmpty())
-                        updateable.wait();
-                }
+                while (run  &&  requests.isEmpty()  &&  leftover.isEmpty())
+                    LockSupport.park(this);
                 if (! run)
                     return;
                 // Wait a little longer to allow more updates to accumulate
                 Thread.sleep(update_accumulation_time);
                 if (! enabled)
                     continue;
-                // Obtain safe copy, clear what had been accumulated
-                final WidgetRepresentation<?, ?, ?>[] representations;
-                synchronized (updateable)
-                {
-                    // Creating a direct copy, i.e. another new LinkedHashSet<>(updateable),
-                    // would be expensive, since we only need a _list_ of what's to update.
-                    // Could use type-safe
-                    //    new ArrayList<WidgetRepresentation<Pane, Node>>(updateable)
-                    // but that calls toArray() internally, so doing that directly
-                    representations = updateable.toArray(new WidgetRepresentation[updateable.size()]);
-                    updateable.clear();
-                }
+                // Collect what's left from last time and what has been requested since
+                final List<WidgetRepresentation<?, ?, ?>> representations = new ArrayList<>(leftover);
+                WidgetRepresentation<?, ?, ?> representation;
+                while ((representation = requests.poll()) != null)
+                    representations.add(representation);
 
                 // Perform requested updates on UI thread
                 // Using CountDownLatch because that allows while (await, run).
@@ -173,7 +212,10 @@ public class RepresentationUpdateThrottle
                 {
                     if (update_ms > performance_log_threshold_ms)
                         logger.log(Level.FINE, "Averange update duration: {0} ms", update_ms);
+                    logger.log(Level.FINE, "{0}: Update latency {1} ms, max. {2} ms, {3} updates pending",
+                               new Object[] { display_name, latency_ms, max_latency_ms, pending.size() });
                     next_update_log = now.plusSeconds(performance_log_period_secs);
+                    gui_executor.execute(this::updateLatency);
                 }
             }
         }
@@ -188,41 +230,98 @@ public class RepresentationUpdateThrottle
     }
 
     /** Perform updates in UI thread.
+     *
+     *  <p>Updates representations that are showing first,
+     *  then the hidden ones, until the time budget is used up.
+     *
      *  @param representations Representations that need to be updated
      *  @param done Must be signaled when representations have been updated
      */
-    private void updateInUI(final WidgetRepresentation<?, ?, ?>[] representations,
+    private void updateInUI(final List<WidgetRepresentation<?, ?, ?>> representations,
                             final CountDownLatch done)
     {
         gui_executor.execute(() ->
         {
+            final long start = System.nanoTime();
+            final long overdue = start - max_hidden_delay_ns;
+            final List<WidgetRepresentation<?, ?, ?>> hidden = new ArrayList<>();
+            final List<WidgetRepresentation<?, ?, ?>> later = new ArrayList<>();
+            boolean within_budget = true;
             for (final WidgetRepresentation<?, ?, ?> representation : representations)
             {
                 if (! run)
                     break;
-                try
+                if (! within_budget)
+                    later.add(representation);
+                else
                 {
-                    // Skip updates when representation has been disposed
-                    if (representation.model_widget != null)
-                        representation.updateChanges();
+                    final Long requested = pending.get(representation);
+                    if (requested != null  &&  requested - overdue > 0  &&
+                        representation.model_widget != null  &&  ! representation.isShowing())
+                        hidden.add(representation);
+                    else
+                    {
+                        update(representation);
+                        within_budget = System.nanoTime() - start < update_budget_ns;
+                    }
                 }
-                catch (final Throwable ex)
+            }
+            for (final WidgetRepresentation<?, ?, ?> representation : hidden)
+            {
+                if (! run)
+                    break;
+                if (! within_budget)
+                    later.add(representation);
+                else
                 {
-                    logger.log(Level.SEVERE, "Representation update failed", ex);
+                    update(representation);
+                    within_budget = System.nanoTime() - start < update_budget_ns;
                 }
             }
+            leftover = later;
             done.countDown();
         });
     }
 
+    /** Update one representation, called on UI thread
+     *  @param representation Representation to update
+     */
+    private void update(final WidgetRepresentation<?, ?, ?> representation)
+    {
+        // Allow new requests while updating
+        final Long requested = pending.remove(representation);
+        try
+        {
+            // Skip updates when representation has been disposed
+            if (representation.model_widget != null)
+                representation.updateChanges();
+        }
+        catch (final Throwable ex)
+        {
+            logger.log(Level.SEVERE, "Representation update failed", ex);
+        }
+        if (requested != null)
+        {
+            final long latency = System.nanoTime() - requested;
+            latency_sum_ns += latency;
+            latency_max_ns = Math.max(latency_max_ns, latency);
+            ++latency_count;
+        }
+    }
+
+    /** Publish latency of the current log period and start the next, called on UI thread */
+    private void updateLatency()
+    {
+        latency_ms = latency_count > 0 ? TimeUnit.NANOSECONDS.toMillis(latency_sum_ns / latency_count) : 0;
+        max_latency_ms = TimeUnit.NANOSECONDS.toMillis(latency_max_ns);
+        latency_sum_ns = latency_max_ns = latency_count = 0;
+    }
+
     /** Shutdown the throttle thread and wait for it to exit */
     public void shutdown()
     {
         run = false;
-        synchronized (updateable)
-        {
-            updateable.notifyAll();
-        }
+        LockSupport.unpark(throttle_thread);
         try
         {
             throttle_thread.join(2000);
@@ -272,6 +272,7 @@ abstract public class ToolkitRepresentation<TWP extends Object, TW> implements E
 
         if (model.isTopDisplayModel()) {
             this.model = model;
+            throttle.setDisplayName(model.getDisplayName());
             // Register ourselves
             phaser = new Phaser(1);
         }
@@ -448,6 +449,13 @@ abstract public class ToolkitRepresentation<TWP extends Object, TW> implements E
         throttle.scheduleUpdate(representation);
     }
 
+    /**
+     * @return Throttle for updates, which provides statistics
+     */
+    public RepresentationUpdateThrottle getUpdateThrottle() {
+        return throttle;
+    }
+
     /**
      * @param enable Enable updates, or pause?
      */
@@ -69,6 +69,19 @@ abstract public class WidgetRepresentation<TWP, TW, MW extends Widget>
      */
     abstract public void updateChanges();
 
+    /** Check if the representation is showing.
+     *
+     *  <p>Invoked on the UI thread by the update throttle,
+     *  which updates representations that are showing
+     *  before hidden ones.
+     *
+     *  @return <code>true</code> unless the widget is known to be hidden or off screen
+     */
+    public boolean isShowing()
+    {
+        return true;
+    }
+
     /** Update the order of widget to match model.
      *
      * <p>Invoked by toolkit when the widget's order changes
@@ -11,9 +11,16 @@ import org.csstudio.display.builder.model.Widget;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -21,7 +28,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 /** JUnit test of {@link UpdateThrottleTest}
  *
  *  <p>More of a demo because there is limited control
- *  over the timing of threads
+ *  over the timing of threads.
+ *  Checks of the update budget and order
+ *  use bounds that hold for a slow machine
  *
  *  @author Kay Kasemir
  */
@@ -125,4 +134,271 @@ public class UpdateThrottleTest
 
         throttle.shutdown();
     }
+
+    /** Marks the start of a run on the UI thread in the log */
+    private static final String RUN = "-- Run --";
+
+    /** Time in ms that each update takes in the following tests */
+    private static final int WORK_MS = 10;
+
+    /** Representation that takes some time to update and logs its updates */
+    private static class TimedRepresentation extends WidgetRepresentation<Object, Object, Widget>
+    {
+        private final String name;
+        private final boolean showing;
+        private final RepresentationUpdateThrottle throttle;
+        private final List<String> log;
+        /** Request another update on each update? */
+        public volatile boolean reschedule = false;
+
+        public TimedRepresentation(final String name, final boolean showing,
+                                   final RepresentationUpdateThrottle throttle, final List<String> log)
+        {
+            this.name = name;
+            this.showing = showing;
+            this.throttle = throttle;
+            this.log = log;
+            model_widget = new Widget("Demo");
+        }
+
+        @Override
+        public boolean isShowing()
+        {
+            return showing;
+        }
+
+        @Override
+        public Object createComponents(Object parent)
+        {
+            return null;
+        }
+
+        @Override
+        public void updateChanges()
+        {
+            try
+            {
+                TimeUnit.MILLISECONDS.sleep(WORK_MS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            log.add(name);
+            if (reschedule)
+                throttle.scheduleUpdate(this);
+        }
+
+        @Override
+        public void dispose()
+        {
+            // NOP
+        }
+
+        @Override
+        public void updateOrder()
+        {
+            // NOP
+        }
+    }
+
+    /** @param ui Executor for the 'UI' thread
+     *  @param log Log that receives a RUN marker for each run on the UI thread
+     *  @return Throttle
+     */
+    private static RepresentationUpdateThrottle createThrottle(final ExecutorService ui, final List<String> log)
+    {
+        return new RepresentationUpdateThrottle(command -> ui.execute(() ->
+        {
+            log.add(RUN);
+            command.run();
+        }));
+    }
+
+    /** @param log Log
+     *  @return Updates in the log, without the RUN markers
+     */
+    private static List<String> getUpdates(final List<String> log)
+    {
+        final List<String> updates = new ArrayList<>();
+        synchronized (log)
+        {
+            for (String entry : log)
+                if (entry != RUN)
+                    updates.add(entry);
+        }
+        return updates;
+    }
+
+    /** @param log Log
+     *  @return Updates of each run on the UI thread
+     */
+    private static List<List<String>> getRuns(final List<String> log)
+    {
+        final List<List<String>> runs = new ArrayList<>();
+        synchronized (log)
+        {
+            for (String entry : log)
+                if (entry == RUN)
+                    runs.add(new ArrayList<>());
+                else
+                    runs.get(runs.size() - 1).add(entry);
+        }
+        return runs;
+    }
+
+    /** @param condition Condition to await, checked for up to 10 seconds */
+    private static void await(final BooleanSupplier condition) throws Exception
+    {
+        final long end = System.currentTimeMillis() + 10000;
+        while (! condition.getAsBoolean())
+        {
+            if (System.currentTimeMillis() > end)
+                throw new AssertionError("Timeout");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    @Test
+    public void testUpdateBudget() throws Exception
+    {
+        final List<String> log = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService ui = Executors.newSingleThreadExecutor();
+        final RepresentationUpdateThrottle throttle = createThrottle(ui, log);
+
+        // More updates than fit into one run
+        final int N = 20;
+        for (int i=0; i<N; ++i)
+            throttle.scheduleUpdate(new TimedRepresentation("W" + i, true, throttle, log));
+        await(() -> getUpdates(log).size() >= N);
+
+        // Each run stops after the update that used up the budget
+        final int max_per_run = Preferences.update_budget_ms / WORK_MS + 1;
+        final List<List<String>> runs = getRuns(log);
+        System.out.println("Budget " + Preferences.update_budget_ms + " ms: " + runs);
+        for (List<String> run : runs)
+            assertThat(run.size() <= max_per_run, equalTo(true));
+        assertThat(runs.size() >= N / max_per_run, equalTo(true));
+
+        throttle.shutdown();
+        ui.shutdown();
+    }
+
+    @Test
+    public void testLeftover() throws Exception
+    {
+        final List<String> log = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService ui = Executors.newSingleThreadExecutor();
+        final RepresentationUpdateThrottle throttle = createThrottle(ui, log);
+
+        final int N = 20;
+        final List<TimedRepresentation> widgets = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        for (int i=0; i<N; ++i)
+        {
+            final TimedRepresentation widget = new TimedRepresentation("W" + i, true, throttle, log);
+            widgets.add(widget);
+            names.add(widget.name);
+            throttle.scheduleUpdate(widget);
+        }
+        await(() -> getUpdates(log).size() >= N);
+
+        // What one run did not get to is carried over to the next,
+        // so each representation was updated once, in the order of the requests
+        assertThat(getUpdates(log), equalTo(names));
+        assertThat(getRuns(log).size() > 1, equalTo(true));
+
+        // Request updates for all, then again while some are still left over
+        log.clear();
+        for (TimedRepresentation widget : widgets)
+            throttle.scheduleUpdate(widget);
+        await(() -> getUpdates(log).size() >= 1);
+        for (TimedRepresentation widget : widgets)
+            throttle.scheduleUpdate(widget);
+        final int updated = getUpdates(log).size();
+        await(() -> getUpdates(log).size() >= N);
+        TimeUnit.MILLISECONDS.sleep(2 * Preferences.update_delay);
+
+        // Requests for representations that are left over are coalesced.
+        // Only those updated before the second request are updated again,
+        // plus the one that the UI thread may have been updating at the time.
+        final Map<String, Integer> counts = new HashMap<>();
+        for (String name : getUpdates(log))
+            counts.merge(name, 1, Integer::sum);
+        System.out.println(updated + " updated before the second request: " + counts);
+        assertThat(counts.keySet().size(), equalTo(N));
+        int twice = 0;
+        for (int count : counts.values())
+        {
+            assertThat(count <= 2, equalTo(true));
+            if (count == 2)
+                ++twice;
+        }
+        assertThat(twice <= updated + 1, equalTo(true));
+
+        throttle.shutdown();
+        ui.shutdown();
+    }
+
+    @Test
+    public void testVisibleFirst() throws Exception
+    {
+        final List<String> log = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService ui = Executors.newSingleThreadExecutor();
+        final RepresentationUpdateThrottle throttle = createThrottle(ui, log);
+
+        // Hidden representations request updates before the visible ones
+        final int N = 5;
+        for (int i=0; i<N; ++i)
+            throttle.scheduleUpdate(new TimedRepresentation("Hidden" + i, false, throttle, log));
+        for (int i=0; i<N; ++i)
+            throttle.scheduleUpdate(new TimedRepresentation("Visible" + i, true, throttle, log));
+        await(() -> getUpdates(log).size() >= 2*N);
+
+        // Visible ones are still updated first, then the hidden ones in order
+        final List<String> updates = getUpdates(log);
+        System.out.println(getRuns(log));
+        for (int i=0; i<N; ++i)
+        {
+            assertThat(updates.get(i), equalTo("Visible" + i));
+            assertThat(updates.get(N + i), equalTo("Hidden" + i));
+        }
+
+        throttle.shutdown();
+        ui.shutdown();
+    }
+
+    @Test
+    public void testHiddenNotStarved() throws Exception
+    {
+        final List<String> log = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService ui = Executors.newSingleThreadExecutor();
+        final RepresentationUpdateThrottle throttle = createThrottle(ui, log);
+
+        // Visible representations that always request more updates
+        // than fit into the budget of a run
+        final List<TimedRepresentation> visible = new ArrayList<>();
+        for (int i=0; i<5; ++i)
+        {
+            final TimedRepresentation widget = new TimedRepresentation("Visible" + i, true, throttle, log);
+            widget.reschedule = true;
+            visible.add(widget);
+            throttle.scheduleUpdate(widget);
+        }
+        throttle.scheduleUpdate(new TimedRepresentation("Hidden", false, throttle, log));
+
+        // Hidden one is updated once its request is overdue
+        await(() -> getUpdates(log).contains("Hidden"));
+        for (TimedRepresentation widget : visible)
+            widget.reschedule = false;
+
+        final List<String> updates = getUpdates(log);
+        final int hidden = updates.indexOf("Hidden");
+        System.out.println("Hidden updated after " + hidden + " visible updates");
+        assertThat(hidden >= 5, equalTo(true));
+        assertThat(updates.lastIndexOf("Hidden"), equalTo(hidden));
+
+        throttle.shutdown();
+        ui.shutdown();
+    }
 }
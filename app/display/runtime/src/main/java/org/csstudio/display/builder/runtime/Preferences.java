@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2020 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,6 +32,8 @@ public class Preferences
     /** Preference setting */
     @Preference public static String probe_display;
     /** Preference setting */
+    @Preference public static boolean compile_rules;
+    /** Preference setting */
     public static final List<TextPatch> pv_name_patches = new ArrayList<>();
 
     static
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017-2023 Oak Ridge National Laboratory.
+ * Copyright (c) 2017-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,6 +24,7 @@ import java.util.logging.Level;
 import org.csstudio.display.builder.model.DisplayModel;
 import org.csstudio.display.builder.model.Preferences;
 import org.csstudio.display.builder.model.Widget;
+import org.csstudio.display.builder.model.persist.DisplayModelCache;
 import org.csstudio.display.builder.model.persist.ModelLoader;
 import org.csstudio.display.builder.model.util.ModelResourceUtil;
 import org.csstudio.display.builder.representation.ToolkitListener;
@@ -384,6 +385,7 @@ public class DisplayRuntimeInstance implements AppInstance
     public void reload()
     {
         ModelResourceUtil.clearURLCache();
+        DisplayModelCache.clear();
         loadDisplayFile(getDisplayInfo());
     }
 
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.csstudio.display.builder.runtime.pv;
+
+import static org.csstudio.display.builder.runtime.WidgetRuntime.logger;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+import org.csstudio.display.builder.runtime.Preferences;
+import org.epics.vtype.VType;
+import org.phoebus.framework.jobs.NamedThreadFactory;
+import org.phoebus.pv.PV;
+
+import io.reactivex.rxjava3.disposables.Disposable;
+
+/** Shares PV subscriptions between {@link RuntimePV}s
+ *
+ *  <p>When many widgets use the same PV, each has its own {@link RuntimePV}.
+ *  Instead of subscribing to the PV and throttling its updates
+ *  for each of them, the multiplexer keeps one subscription per PV
+ *  and forwards the throttled updates to all {@link RuntimePV}s of that PV.
+ *
+ *  <p>The throttling of all PVs is handled by one timer wheel.
+ *  Like <code>throttleLatest</code>, a value that arrives while the PV
+ *  is not throttled is forwarded right away and starts a throttle period.
+ *  At the end of the period, the latest value received within the period
+ *  is forwarded and starts another period.
+ *  The wheel only handles the timing.
+ *  Values are forwarded to the {@link RuntimePV}s on a pool of threads,
+ *  so a slow listener does not delay the updates of other PVs.
+ */
+@SuppressWarnings("nls")
+class PVMultiplexer
+{
+    /** Subscription to one PV, shared by all its {@link RuntimePV}s */
+    static class Subscription
+    {
+        private final PV pv;
+        private final List<RuntimePV> runtime_pvs = new CopyOnWriteArrayList<>();
+        private final Disposable value_flow, writable_flow;
+
+        /** Latest value that has not been forwarded, or <code>null</code> */
+        private final AtomicReference<VType> pending = new AtomicReference<>();
+
+        /** Is a throttle period active? */
+        private final AtomicBoolean throttled = new AtomicBoolean();
+
+        /** Is a forward() queued on the update threads? */
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        Subscription(final PV pv)
+        {
+            this.pv = pv;
+            value_flow = pv.onValueEvent().subscribe(this::valueEvent);
+            writable_flow = pv.onAccessRightsEvent().subscribe(this::writableEvent);
+        }
+
+        private void valueEvent(final VType value)
+        {
+            pending.set(value);
+            if (throttled.compareAndSet(false, true))
+            {
+                forwardLater();
+                wheel.schedule(this);
+            }
+            // else: End of throttle period will forward the latest value
+        }
+
+        /** Called by timer wheel at end of throttle period */
+        void periodEnded()
+        {
+            if (pending.get() != null)
+            {
+                forwardLater();
+                wheel.schedule(this);
+            }
+            else
+            {
+                throttled.set(false);
+                // Forward value that arrived after checking for one,
+                // unless valueEvent() already did that
+                if (pending.get() != null  &&  throttled.compareAndSet(false, true))
+                {
+                    forwardLater();
+                    wheel.schedule(this);
+                }
+            }
+        }
+
+        /** Forward latest value on the update threads */
+        private void forwardLater()
+        {
+            // A queued forward() will pick up the latest value
+            if (queued.compareAndSet(false, true))
+                updates.execute(() ->
+                {
+                    queued.set(false);
+                    forward();
+                });
+        }
+
+        /** Forward latest value, one at a time so listeners receive them in order */
+        private synchronized void forward()
+        {
+            final VType value = pending.getAndSet(null);
+            if (value == null)
+                return;
+            for (RuntimePV runtime_pv : runtime_pvs)
+            {
+                try
+                {
+                    runtime_pv.valueChanged(value);
+                }
+                catch (Throwable ex)
+                {
+                    logger.log(Level.WARNING, "Error handling update of PV " + pv.getName(), ex);
+                }
+            }
+        }
+
+        private void writableEvent(final boolean writable)
+        {
+            for (RuntimePV runtime_pv : runtime_pvs)
+                runtime_pv.writableChanged(writable);
+        }
+
+        private void dispose()
+        {
+            writable_flow.dispose();
+            value_flow.dispose();
+        }
+    }
+
+    /** Timer wheel for the throttle periods of all subscriptions
+     *
+     *  <p>Since all periods have the same duration, the wheel only needs
+     *  one rotation's worth of slots.
+     *  A subscription is added to the slot that will be handled
+     *  one period from now, which is the slot that was just handled.
+     */
+    private static class ThrottleWheel implements Runnable
+    {
+        private final Queue<Subscription>[] slots;
+        private volatile int current = 0;
+
+        @SuppressWarnings("unchecked")
+        ThrottleWheel(final int period_ms)
+        {
+            // Tick at 1/10 of the period
+            final int tick_ms = Math.max(1, period_ms / 10);
+            final int ticks = Math.max(1, (period_ms + tick_ms - 1) / tick_ms);
+            slots = new Queue[ticks + 1];
+            for (int i=0; i<slots.length; ++i)
+                slots[i] = new ConcurrentLinkedQueue<>();
+            final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("RuntimePVThrottle"));
+            timer.scheduleAtFixedRate(this, tick_ms, tick_ms, TimeUnit.MILLISECONDS);
+        }
+
+        /** @param subscription Subscription that starts a throttle period */
+        void schedule(final Subscription subscription)
+        {
+            slots[(current + slots.length - 1) % slots.length].add(subscription);
+        }
+
+        @Override
+        public void run()
+        {
+            final int next = (current + 1) % slots.length;
+            current = next;
+            final Queue<Subscription> slot = slots[next];
+            Subscription subscription;
+            while ((subscription = slot.poll()) != null)
+                subscription.periodEnded();
+        }
+    }
+
+    /** Subscriptions by PV. SYNC on access */
+    private static final Map<PV, Subscription> subscriptions = new IdentityHashMap<>();
+
+    /** Threads that forward values to the runtime PVs, one per CPU core */
+    private static final ExecutorService updates =
+        Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), new NamedThreadFactory("RuntimePVUpdate"));
+
+    /** Timer wheel for throttling all subscriptions */
+    private static final ThrottleWheel wheel = new ThrottleWheel(Preferences.update_throttle_ms);
+
+    /** @param pv PV to subscribe
+     *  @param runtime_pv {@link RuntimePV} that will receive updates of the PV
+     *  @return Subscription, to be released when runtime PV is closed
+     */
+    static Subscription subscribe(final PV pv, final RuntimePV runtime_pv)
+    {
+        synchronized (subscriptions)
+        {
+            final Subscription subscription = subscriptions.computeIfAbsent(pv, Subscription::new);
+            subscription.runtime_pvs.add(runtime_pv);
+            return subscription;
+        }
+    }
+
+    /** @param subscription Subscription of a runtime PV
+     *  @param runtime_pv {@link RuntimePV} that no longer receives updates
+     */
+    static void unsubscribe(final Subscription subscription, final RuntimePV runtime_pv)
+    {
+        synchronized (subscriptions)
+        {
+            subscription.runtime_pvs.remove(runtime_pv);
+            if (subscription.runtime_pvs.isEmpty())
+            {
+                subscriptions.remove(subscription.pv);
+                subscription.dispose();
+            }
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2021 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,16 +11,12 @@ import static org.csstudio.display.builder.runtime.WidgetRuntime.logger;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
-import org.csstudio.display.builder.runtime.Preferences;
 import org.epics.vtype.VType;
 import org.phoebus.pv.PV;
 import org.phoebus.pv.PVPool;
 
-import io.reactivex.rxjava3.disposables.Disposable;
-
 /** Process Variable, API for accessing life control system data.
  *
  *  <p>PVs are to be fetched from the {@link PVPool}
@@ -29,24 +25,23 @@ import io.reactivex.rxjava3.disposables.Disposable;
  *  <p>The name of the PV is the name by which it was created.
  *  The underlying implementation might use a slightly different name.
  *
+ *  <p>All runtime PVs for the same PV share one throttled
+ *  subscription via the {@link PVMultiplexer}.
+ *
  *  @author Kay Kasemir
  */
 @SuppressWarnings("nls")
 public class RuntimePV // TODO (Almost) remove. Use vtype.pv, only add setValue for script compatibility?
 {
     private final PV pv;
-    private final Disposable value_flow, writable_flow;
+    private final PVMultiplexer.Subscription subscription;
     private final List<RuntimePVListener> listeners = new CopyOnWriteArrayList<>();
 
     /** @param pv PV to wrap */
     RuntimePV(final PV pv)
     {
         this.pv = pv;
-        value_flow = pv.onValueEvent()
-                .throttleLatest(Preferences.update_throttle_ms, TimeUnit.MILLISECONDS)
-                .subscribe(this::valueChanged);
-        writable_flow = pv.onAccessRightsEvent()
-                          .subscribe(this::writableChanged);
+        subscription = PVMultiplexer.subscribe(pv, this);
     }
 
     /** @return PV name */
@@ -115,7 +110,8 @@ public class RuntimePV // TODO (Almost) remove. Use vtype.pv, only add setValue
         }
     }
 
-    private void valueChanged(final VType value)
+    /** @param value Throttled value update from the {@link PVMultiplexer} */
+    void valueChanged(final VType value)
     {
         if (PV.isDisconnected(value))
             for (RuntimePVListener listener : listeners)
@@ -125,7 +121,8 @@ public class RuntimePV // TODO (Almost) remove. Use vtype.pv, only add setValue
                 listener.valueChanged(this, value);
     }
 
-    private void writableChanged(final boolean writable)
+    /** @param writable Access rights update from the {@link PVMultiplexer} */
+    void writableChanged(final boolean writable)
     {
         for (RuntimePVListener listener : listeners)
             listener.permissionsChanged(this, !writable);
@@ -163,8 +160,7 @@ public class RuntimePV // TODO (Almost) remove. Use vtype.pv, only add setValue
 
     void close()
     {
-        writable_flow.dispose();
-        value_flow.dispose();
+        PVMultiplexer.unsubscribe(subscription, this);
         PVPool.releasePV(pv);
     }
 
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.csstudio.display.builder.runtime.script.internal;
+
+import static org.csstudio.display.builder.runtime.WidgetRuntime.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.csstudio.apputil.formula.Formula;
+import org.csstudio.apputil.formula.Node;
+import org.csstudio.apputil.formula.VariableNode;
+import org.csstudio.display.builder.model.Widget;
+import org.csstudio.display.builder.model.WidgetProperty;
+import org.csstudio.display.builder.model.rules.RuleInfo;
+import org.csstudio.display.builder.model.rules.RuleInfo.ExpressionInfo;
+import org.csstudio.display.builder.runtime.RuntimeUtil;
+import org.csstudio.display.builder.runtime.pv.RuntimePV;
+import org.csstudio.display.builder.runtime.script.PVUtil;
+import org.csstudio.display.builder.runtime.script.PVUtil.PVHasNoValueException;
+import org.phoebus.core.vtypes.VTypeHelper;
+import org.phoebus.framework.macros.MacroHandler;
+import org.phoebus.framework.macros.Macros;
+
+/** Rule compiled into {@link Formula} trees
+ *
+ *  <p>Evaluates the rule's expressions in Java
+ *  and directly updates the widget property,
+ *  without generating a script.
+ *  Like scripts, the rule is executed on the script support thread.
+ *
+ *  <p>Only handles rules where the formula
+ *  gives the same result as the script generated by
+ *  {@link org.csstudio.display.builder.model.rules.RuleToScript}:
+ *  Numeric comparisons and logic on the <code>pv0</code>,
+ *  <code>pvInt0</code>, <code>pvSev0</code> and <code>pvLegacySev0</code> variables.
+ *  Rules that use strings, division, a mix of '&amp;&amp;' and '||'
+ *  without parentheses or other Python features
+ *  are not compiled and remain scripts.
+ */
+@SuppressWarnings("nls")
+public class CompiledRule implements Script
+{
+    /** Variables that can be used in a rule expression */
+    private enum Kind
+    {
+        DOUBLE("pv"),
+        LONG("pvInt"),
+        SEVERITY("pvSev"),
+        LEGACY_SEVERITY("pvLegacySev");
+
+        final String prefix;
+
+        private Kind(final String prefix)
+        {
+            this.prefix = prefix;
+        }
+
+        /** @param pv PV
+         *  @return Value of the variable for that PV
+         */
+        @SuppressWarnings("deprecation")
+        double read(final RuntimePV pv)
+        {
+            switch (this)
+            {
+            case LONG:
+                return PVUtil.getLong(pv);
+            case SEVERITY:
+                return PVUtil.getSeverity(pv);
+            case LEGACY_SEVERITY:
+                return PVUtil.getLegacySeverity(pv);
+            case DOUBLE:
+            default:
+                return PVUtil.getDouble(pv);
+            }
+        }
+    }
+
+    /** Variable of a formula, reading one PV */
+    private static class Variable
+    {
+        final VariableNode node;
+        final Kind kind;
+        final int index;
+
+        Variable(final Kind kind, final int index)
+        {
+            this.node = new VariableNode(kind.prefix + index);
+            this.kind = kind;
+            this.index = index;
+        }
+    }
+
+    /** Identifiers that a compiled rule may use */
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_]\\w*");
+
+    private static final Pattern VARIABLE = Pattern.compile("(pv|pvInt|pvSev|pvLegacySev)[0-9]+");
+
+    private static final Set<String> FUNCTIONS = Set.of("abs", "min", "max");
+
+    /** 'true' and 'false', which the script turns into 'True' and 'False' */
+    private static final VariableNode[] CONSTANTS = { new VariableNode("true", 1.0), new VariableNode("false", 0.0) };
+
+    private static final Pattern COMPARISON = Pattern.compile("==|!=|<=|>=|<|>");
+
+    private final String name;
+    private final String prop_id;
+    private final boolean prop_as_expr;
+    private final boolean is_boolean;
+    private final Variable[] variables;
+    private final Formula[] conditions;
+    /** Formula for each condition's value, or the value itself */
+    private final Object[] values;
+    private final Object default_value;
+
+    /** Is the rule queued for execution? */
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    /** Compile rule
+     *  @param widget Widget on which the rule is invoked
+     *  @param rule_info Rule to compile
+     *  @return {@link CompiledRule} or <code>null</code> if rule needs to be executed as a script
+     */
+    public static CompiledRule compile(final Widget widget, final RuleInfo rule_info)
+    {
+        final WidgetProperty<?> prop = widget.getProperty(rule_info.getPropID());
+        final Object default_value = prop.getDefaultValue();
+        final boolean is_boolean = default_value instanceof Boolean;
+        // Expression for value can only compute numbers or booleans
+        if (rule_info.getPropAsExprFlag()  &&
+            ! (is_boolean  ||  default_value instanceof Number  ||  default_value instanceof Enum<?>))
+            return null;
+
+        final int pv_count = rule_info.getPVs().size();
+        final List<Variable> all = new ArrayList<>();
+        for (Kind kind : Kind.values())
+            for (int i=0; i<pv_count; ++i)
+                all.add(new Variable(kind, i));
+        final VariableNode[] nodes = new VariableNode[all.size() + CONSTANTS.length];
+        for (int i=0; i<all.size(); ++i)
+            nodes[i] = all.get(i).node;
+        System.arraycopy(CONSTANTS, 0, nodes, all.size(), CONSTANTS.length);
+
+        final Macros macros = widget.getEffectiveMacros();
+        final List<ExpressionInfo<?>> expressions = rule_info.getExpressions();
+        final Formula[] conditions = new Formula[expressions.size()];
+        final Object[] values = new Object[expressions.size()];
+        try
+        {
+            for (int i=0; i<conditions.length; ++i)
+            {
+                final ExpressionInfo<?> expr = expressions.get(i);
+                String condition;
+                try
+                {
+                    condition = MacroHandler.replace(macros, expr.getBoolExp());
+                }
+                catch (Exception ex)
+                {   // Like RuleToScript, try the expression as it is
+                    condition = expr.getBoolExp();
+                }
+                conditions[i] = parse(condition, nodes);
+                if (conditions[i] == null)
+                    return null;
+                if (rule_info.getPropAsExprFlag())
+                {
+                    values[i] = parse(expr.getPropVal().toString(), nodes);
+                    if (values[i] == null)
+                        return null;
+                }
+                else
+                    values[i] = ((WidgetProperty<?>) expr.getPropVal()).getValue();
+            }
+        }
+        catch (Exception ex)
+        {
+            logger.log(Level.FINE, () -> "Rule " + rule_info.getName() + " remains a script: " + ex.getMessage());
+            return null;
+        }
+
+        // Only read the variables that are used
+        final List<Variable> used = new ArrayList<>();
+        for (Variable variable : all)
+        {
+            boolean is_used = false;
+            for (int i=0; i<conditions.length  &&  !is_used; ++i)
+                is_used = conditions[i].hasSubnode(variable.node)  ||
+                          (values[i] instanceof Formula  &&  ((Formula) values[i]).hasSubnode(variable.node));
+            if (is_used)
+                used.add(variable);
+        }
+
+        return new CompiledRule(widget.getType() + ":" + widget.getName() + ":" + rule_info.getName(),
+                                rule_info.getPropID(), rule_info.getPropAsExprFlag(), is_boolean,
+                                used.toArray(new Variable[used.size()]), conditions, values, prop.getValue());
+    }
+
+    /** @param expression Expression of the rule
+     *  @param variables Variables that the expression may use
+     *  @return {@link Formula} or <code>null</code> if expression would evaluate differently in a script
+     *  @throws Exception on parse error
+     */
+    private static Formula parse(final String expression, final VariableNode[] variables) throws Exception
+    {
+        // Python uses &, | for bits, ^ for XOR, integer division, 'not' with lower precedence than '!'.
+        // Python's 'and' binds tighter than 'or', formula evaluates '&&', '||' left to right,
+        // so each level of parentheses may only use one of them.
+        final StringBuilder logic = new StringBuilder(" ");
+        for (int i=0; i<expression.length(); ++i)
+        {
+            final char c = expression.charAt(i);
+            if ("\"'`/^?%".indexOf(c) >= 0)
+                return null;
+            if ((c == '&'  ||  c == '|'))
+            {
+                if (i+1 >= expression.length()  ||  expression.charAt(i+1) != c)
+                    return null;
+                final int level = logic.length() - 1;
+                if (logic.charAt(level) == ' ')
+                    logic.setCharAt(level, c);
+                else if (logic.charAt(level) != c)
+                    return null;
+                ++i;
+            }
+            else if (c == '(')
+                logic.append(' ');
+            else if (c == ')'  &&  logic.length() > 1)
+                logic.setLength(logic.length() - 1);
+            else if (c == '!'  &&  (i+1 >= expression.length()  ||  expression.charAt(i+1) != '='))
+                return null;
+        }
+
+        final Matcher identifiers = IDENTIFIER.matcher(expression);
+        while (identifiers.find())
+        {
+            // Skip exponent of numbers like 1e5
+            if (identifiers.start() > 0  &&  Character.isDigit(expression.charAt(identifiers.start()-1)))
+                continue;
+            final String identifier = identifiers.group();
+            if (! (VARIABLE.matcher(identifier).matches()  ||  FUNCTIONS.contains(identifier)  ||
+                   identifier.equals("true")  ||  identifier.equals("false")))
+                return null;
+        }
+
+        // Python chains 'a < b < c', formula would compute '(a < b) < c'
+        for (String term : expression.split("&&|\\|\\||\\(|\\)|,"))
+        {
+            final Matcher comparisons = COMPARISON.matcher(term);
+            if (comparisons.find()  &&  comparisons.find())
+                return null;
+        }
+
+        return new Formula(expression, variables);
+    }
+
+    private CompiledRule(final String name, final String prop_id, final boolean prop_as_expr, final boolean is_boolean,
+                         final Variable[] variables, final Formula[] conditions, final Object[] values, final Object default_value)
+    {
+        this.name = name;
+        this.prop_id = prop_id;
+        this.prop_as_expr = prop_as_expr;
+        this.is_boolean = is_boolean;
+        this.variables = variables;
+        this.conditions = conditions;
+        this.values = values;
+        this.default_value = default_value;
+    }
+
+    @Override
+    public Future<Object> submit(final Widget widget, final RuntimePV... pvs)
+    {
+        // Skip rule that's already in the queue
+        if (queued.getAndSet(true))
+            return null;
+
+        final ScriptSupport support;
+        try
+        {
+            support = RuntimeUtil.getScriptSupport(widget);
+        }
+        catch (Exception ex)
+        {
+            queued.set(false);
+            logger.log(Level.WARNING, "Rule " + name + " cannot be executed", ex);
+            return CompletableFuture.completedFuture(null);
+        }
+        return support.submit(() ->
+        {
+            // Rule may be queued again
+            queued.set(false);
+            execute(widget, pvs);
+            return null;
+        });
+    }
+
+    /** Evaluate rule and update widget property
+     *  @param widget Widget
+     *  @param pvs PVs of the rule
+     */
+    private synchronized void execute(final Widget widget, final RuntimePV... pvs)
+    {
+        try
+        {
+            // Like the generated script, which reads pvInt for each PV,
+            // use the default value when any PV has no value
+            for (RuntimePV pv : pvs)
+                PVUtil.getVType(pv);
+            for (Variable variable : variables)
+                variable.node.setValue(variable.kind.read(pvs[variable.index]));
+
+            widget.setPropertyValue(prop_id, evaluate());
+        }
+        catch (PVHasNoValueException ex)
+        {
+            setDefault(widget);
+        }
+        catch (Exception ex)
+        {
+            setDefault(widget);
+            logger.log(Level.WARNING, "Rule " + name + " failed", ex);
+        }
+    }
+
+    /** @return Value for the property
+     *  @throws Exception on error
+     */
+    private Object evaluate() throws Exception
+    {
+        for (int i=0; i<conditions.length; ++i)
+            if (isTrue(conditions[i]))
+            {
+                if (! prop_as_expr)
+                    return values[i];
+                if (is_boolean)
+                    return isTrue((Formula) values[i]);
+                return VTypeHelper.toDouble(((Formula) values[i]).eval());
+            }
+        return default_value;
+    }
+
+    /** @param formula Formula
+     *  @return <code>true</code> if formula evaluates to non-zero, like a Python 'if'
+     */
+    private static boolean isTrue(final Node formula)
+    {
+        return VTypeHelper.toDouble(formula.eval()) != 0.0;
+    }
+
+    private void setDefault(final Widget widget)
+    {
+        try
+        {
+            widget.setPropertyValue(prop_id, default_value);
+        }
+        catch (Exception ex)
+        {
+            logger.log(Level.WARNING, "Rule " + name + " cannot set " + prop_id, ex);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompiledRule " + name;
+    }
+}
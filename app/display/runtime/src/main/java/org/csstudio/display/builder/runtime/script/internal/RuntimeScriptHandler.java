@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015-2018 Oak Ridge National Laboratory.
+ * Copyright (c) 2015-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,7 @@ import org.csstudio.display.builder.model.properties.ScriptPV;
 import org.csstudio.display.builder.model.rules.RuleInfo;
 import org.csstudio.display.builder.model.rules.RuleToScript;
 import org.csstudio.display.builder.model.util.ModelResourceUtil;
+import org.csstudio.display.builder.runtime.Preferences;
 import org.csstudio.display.builder.runtime.RuntimeUtil;
 import org.csstudio.display.builder.runtime.WidgetRuntime;
 import org.csstudio.display.builder.runtime.pv.PVFactory;
@@ -124,6 +125,28 @@ public class RuntimeScriptHandler implements RuntimePVListener
         }
     }
 
+    /** Helper to compile rule
+     *
+     *  <p>Uses a {@link CompiledRule} when possible,
+     *  falling back to a generated script.
+     *
+     *  @param widget Widget on which the rule is invoked
+     *  @param rule_info Rule to compile
+     *  @return Compiled rule or script
+     *  @throws Exception on error
+     */
+    private static Script compileRule(final Widget widget,
+            final RuleInfo rule_info) throws Exception
+    {
+        if (Preferences.compile_rules)
+        {
+            final Script rule = CompiledRule.compile(widget, rule_info);
+            if (rule != null)
+                return rule;
+        }
+        return compileScript(widget, rule_info);
+    }
+
     /** @param widget Widget on which the script is invoked
      *  @param script_info Script to handle
      *  @throws Exception on error
@@ -139,7 +162,7 @@ public class RuntimeScriptHandler implements RuntimePVListener
      */
     public RuntimeScriptHandler(final Widget widget, final RuleInfo rule_info) throws Exception
     {
-        this(widget, compileScript(widget, rule_info), true, true, rule_info.getPVs());
+        this(widget, compileRule(widget, rule_info), true, true, rule_info.getPVs());
     }
 
     /** @param widget Widget on which the script is invoked
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.csstudio.display.builder.runtime.test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+
+import org.csstudio.display.builder.model.DisplayModel;
+import org.csstudio.display.builder.model.WidgetProperty;
+import org.csstudio.display.builder.model.properties.ScriptPV;
+import org.csstudio.display.builder.model.rules.RuleInfo;
+import org.csstudio.display.builder.model.rules.RuleInfo.ExprInfoString;
+import org.csstudio.display.builder.model.rules.RuleInfo.ExprInfoValue;
+import org.csstudio.display.builder.model.widgets.LabelWidget;
+import org.csstudio.display.builder.runtime.pv.PVFactory;
+import org.csstudio.display.builder.runtime.pv.RuntimePV;
+import org.csstudio.display.builder.runtime.script.internal.CompiledRule;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of rules that are compiled instead of turned into scripts
+ */
+@SuppressWarnings("nls")
+public class CompiledRuleTest
+{
+    /** @return Label in a display, which provides the script support */
+    private static LabelWidget createLabel()
+    {
+        final DisplayModel model = new DisplayModel();
+        final LabelWidget widget = new LabelWidget();
+        model.runtimeChildren().addChild(widget);
+        return widget;
+    }
+
+    private static RuleInfo widthRule(final LabelWidget widget, final String condition)
+    {
+        final WidgetProperty<Integer> width = widget.propWidth().clone();
+        width.setValue(47);
+        return new RuleInfo("Width", "width", false,
+                            List.of(new ExprInfoValue<>(condition, width)),
+                            List.of(new ScriptPV("loc://rule_test(0)")));
+    }
+
+    /** Check which rules can be compiled */
+    @Test
+    public void testCompile()
+    {
+        final LabelWidget widget = new LabelWidget();
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pv0 > 10")), notNullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pv0 > 10 && pvSev0 == 0")), notNullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "true")), notNullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pv0 > 5 || (pv0 < 2 && pvSev0 == 0)")), notNullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "(pv0 > 5 || pv0 < 2) && pvSev0 == 0")), notNullValue());
+
+        // Strings, bitwise operations, chained comparisons and unknown variables remain scripts
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pvStr0 == \"OK\"")), nullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pvInt0 & 4")), nullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "1 < pv0 < 5")), nullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pv1 > 10")), nullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pvInt0/2 > 1")), nullValue());
+
+        // Python evaluates 'a or b and c' as 'a or (b and c)', formula as '(a || b) && c'
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pv0 > 5 || pv0 < 2 && pvSev0 == 0")), nullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "pv0 > 5 && pv0 < 8 || pvSev0 == 0")), nullValue());
+        assertThat(CompiledRule.compile(widget, widthRule(widget, "(pv0 > 5 || pv0 < 2 && pvSev0 == 0)")), nullValue());
+    }
+
+    /** Check that compiled rule updates the property */
+    @Test
+    public void testRule() throws Exception
+    {
+        final LabelWidget widget = createLabel();
+        final int original = widget.propWidth().getValue();
+        final CompiledRule rule = CompiledRule.compile(widget, widthRule(widget, "pv0 > 10"));
+        final RuntimePV pv = PVFactory.getPV("loc://rule_test(0)");
+        try
+        {
+            pv.write(20);
+            rule.submit(widget, pv).get();
+            assertThat(widget.propWidth().getValue(), equalTo(47));
+
+            pv.write(5);
+            rule.submit(widget, pv).get();
+            assertThat(widget.propWidth().getValue(), equalTo(original));
+        }
+        finally
+        {
+            PVFactory.releasePV(pv);
+        }
+    }
+
+    /** Check rule that computes the property value */
+    @Test
+    public void testValueAsExpression() throws Exception
+    {
+        final LabelWidget widget = createLabel();
+        final RuleInfo info = new RuleInfo("Width", "width", true,
+                                           List.of(new ExprInfoString("pv0 >= 0", "pv0 * 2 + 1")),
+                                           List.of(new ScriptPV("loc://rule_test2(0)")));
+        final CompiledRule rule = CompiledRule.compile(widget, info);
+        assertThat(rule, notNullValue());
+        final RuntimePV pv = PVFactory.getPV("loc://rule_test2(0)");
+        try
+        {
+            pv.write(21);
+            rule.submit(widget, pv).get();
+            assertThat(widget.propWidth().getValue(), equalTo(43));
+        }
+        finally
+        {
+            PVFactory.releasePV(pv);
+        }
+    }
+}
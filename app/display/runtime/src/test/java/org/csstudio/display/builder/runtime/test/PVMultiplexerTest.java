@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.csstudio.display.builder.runtime.test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.csstudio.display.builder.model.util.VTypeUtil;
+import org.csstudio.display.builder.runtime.Preferences;
+import org.csstudio.display.builder.runtime.pv.PVFactory;
+import org.csstudio.display.builder.runtime.pv.RuntimePV;
+import org.csstudio.display.builder.runtime.pv.RuntimePVListener;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of runtime PVs that share one subscription
+ */
+@SuppressWarnings("nls")
+public class PVMultiplexerTest
+{
+    @Test
+    public void testSharedSubscription() throws Exception
+    {
+        final RuntimePV pv1 = PVFactory.getPV("loc://shared(0)");
+        final RuntimePV pv2 = PVFactory.getPV("loc://shared(0)");
+        try
+        {
+            final AtomicInteger updates1 = new AtomicInteger(), updates2 = new AtomicInteger();
+            final AtomicReference<Number> last1 = new AtomicReference<>(), last2 = new AtomicReference<>();
+            final RuntimePVListener listener1 = (pv, value) ->
+            {
+                last1.set(VTypeUtil.getValueNumber(value));
+                updates1.incrementAndGet();
+            };
+            final RuntimePVListener listener2 = (pv, value) ->
+            {
+                last2.set(VTypeUtil.getValueNumber(value));
+                updates2.incrementAndGet();
+            };
+            pv1.addListener(listener1);
+            pv2.addListener(listener2);
+
+            // Burst of updates is throttled, but both receive the last value
+            for (int i=1; i<=100; ++i)
+                pv1.write(i);
+            TimeUnit.MILLISECONDS.sleep(3 * Preferences.update_throttle_ms);
+            System.out.println("Received " + updates1.get() + " and " + updates2.get() + " updates");
+            assertThat(last1.get().intValue(), equalTo(100));
+            assertThat(last2.get().intValue(), equalTo(100));
+            assertThat(updates1.get(), lessThan(10));
+
+            // Closing one runtime PV doesn't affect the other
+            PVFactory.releasePV(pv1);
+            pv2.write(42);
+            TimeUnit.MILLISECONDS.sleep(3 * Preferences.update_throttle_ms);
+            assertThat(last1.get().intValue(), equalTo(100));
+            assertThat(last2.get().intValue(), equalTo(42));
+        }
+        finally
+        {
+            PVFactory.releasePV(pv2);
+        }
+    }
+
+    /** Slow listener of one PV must not delay updates of other PVs */
+    @Test
+    public void testSlowListener() throws Exception
+    {
+        final RuntimePV slow = PVFactory.getPV("loc://slow(0)");
+        final RuntimePV other = PVFactory.getPV("loc://other(0)");
+        try
+        {
+            final AtomicInteger slow_updates = new AtomicInteger();
+            slow.addListener((pv, value) ->
+            {
+                // Ignore initial value
+                if (VTypeUtil.getValueNumber(value).intValue() == 0)
+                    return;
+                slow_updates.incrementAndGet();
+                try
+                {
+                    TimeUnit.MILLISECONDS.sleep(20 * Preferences.update_throttle_ms);
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final AtomicReference<Number> last = new AtomicReference<>();
+            other.addListener((pv, value) -> last.set(VTypeUtil.getValueNumber(value)));
+
+            // Keep the slow listener busy
+            for (int i=1; i<=5; ++i)
+            {
+                slow.write(i);
+                TimeUnit.MILLISECONDS.sleep(Preferences.update_throttle_ms);
+            }
+            other.write(42);
+            TimeUnit.MILLISECONDS.sleep(3 * Preferences.update_throttle_ms);
+            assertThat(last.get().intValue(), equalTo(42));
+            // Slow listener is still handling its first value
+            assertThat(slow_updates.get(), equalTo(1));
+        }
+        finally
+        {
+            PVFactory.releasePV(other);
+            PVFactory.releasePV(slow);
+        }
+    }
+}
@@ -58,6 +58,80 @@ public interface PlotDataProvider<XTYPE extends Comparable<XTYPE>>
      */
     public PlotDataItem<XTYPE> get(int index);
 
+    // Indexed access to the sample fields.
+    //
+    // The plot library uses these when painting, searching and
+    // auto-scaling. The default implementations simply go via get(index).
+    // Data providers that keep their samples in primitive arrays
+    // should override them to avoid creating a PlotDataItem per sample.
+
+    /** @param index Sample index, 0 .. size()-1
+     *  @return Position of that sample
+     *  @see PlotDataItem#getPosition()
+     */
+    public default XTYPE getPosition(final int index)
+    {
+        return get(index).getPosition();
+    }
+
+    /** @param index Sample index, 0 .. size()-1
+     *  @return Value of that sample
+     *  @see PlotDataItem#getValue()
+     */
+    public default double getValue(final int index)
+    {
+        return get(index).getValue();
+    }
+
+    /** @param index Sample index, 0 .. size()-1
+     *  @return Standard deviation, or {@link Double#NaN}
+     *  @see PlotDataItem#getStdDev()
+     */
+    public default double getStdDev(final int index)
+    {
+        return get(index).getStdDev();
+    }
+
+    /** @param index Sample index, 0 .. size()-1
+     *  @return Minimum, or {@link Double#NaN}
+     *  @see PlotDataItem#getMin()
+     */
+    public default double getMin(final int index)
+    {
+        return get(index).getMin();
+    }
+
+    /** @param index Sample index, 0 .. size()-1
+     *  @return Maximum, or {@link Double#NaN}
+     *  @see PlotDataItem#getMax()
+     */
+    public default double getMax(final int index)
+    {
+        return get(index).getMax();
+    }
+
+    /** Get a reduced set of samples for drawing
+     *
+     *  <p>When there are many more samples than pixels,
+     *  the plot only needs the first, last, minimum and maximum
+     *  sample of each pixel column.
+     *  Data providers that maintain a {@link PlotDataPyramid}
+     *  can return those indices, sparing the plot a visit
+     *  to every sample.
+     *
+     *  <p>Only called while holding the read lock,
+     *  and only for data providers with ordered positions.
+     *
+     *  @param start Index of first sample to draw
+     *  @param end Index after the last sample to draw
+     *  @param pixels Number of horizontal pixels
+     *  @return Sorted indices of samples to draw, or <code>null</code> to draw all samples
+     */
+    public default int[] getReducedIndices(final int start, final int end, final int pixels)
+    {
+        return null;
+    }
+
     //    public String toString()
     //    {
     //        // Derived class should include InstrumentedReadWriteLock#toString()
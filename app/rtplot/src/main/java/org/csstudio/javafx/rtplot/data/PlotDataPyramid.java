@@ -0,0 +1,349 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.javafx.rtplot.data;
+
+import java.util.Arrays;
+
+/** Level-of-detail summary of samples for drawing
+ *
+ *  <p>Groups samples into buckets of {@link #FACTOR} samples,
+ *  those into buckets of {@link #FACTOR} buckets and so on.
+ *  For each bucket, it tracks the samples with minimum and maximum
+ *  value as well as minimum 'min' and maximum 'max'.
+ *  Together with the first and last sample of each bucket,
+ *  these are sufficient to draw the samples of the bucket
+ *  when the bucket covers about one pixel column.
+ *
+ *  <p>Samples are appended in order, each receiving an absolute
+ *  sample number that counts up from 0.
+ *  Oldest samples can be dropped, for example when a ring buffer
+ *  overwrites them.
+ *  Data providers use the pyramid to implement
+ *  {@link PlotDataProvider#getReducedIndices(int, int, int)},
+ *  mapping their sample indices to absolute sample numbers.
+ *
+ *  <p>Not thread-safe. Data providers need to synchronize
+ *  updates with calls to {@link #reduce(long, long, int, int)}.
+ */
+public class PlotDataPyramid
+{
+    /** Number of samples in a bucket of the lowest level,
+     *  number of buckets that make up a bucket of the next level
+     */
+    public static final int FACTOR = 8;
+
+    /** log2(FACTOR) */
+    private static final int SHIFT = 3;
+
+    /** One level of buckets */
+    private static class Level
+    {
+        /** Number of samples per bucket as log2 */
+        final int shift;
+
+        /** Bucket number of first element in arrays */
+        long first_bucket = 0;
+
+        /** Number of completed buckets in arrays */
+        int count = 0;
+
+        /** Offset of samples within bucket that have minimum and maximum value, min, max.
+         *  -1 if no such sample.
+         */
+        int[] min_value_at = new int[16], max_value_at = new int[16],
+              min_min_at = new int[16], max_max_at = new int[16];
+
+        /** Minimum, maximum value, minimum min, maximum max */
+        double[] min_value = new double[16], max_value = new double[16],
+                 min_min = new double[16], max_max = new double[16];
+
+        /** Does bucket contain a NaN value, i.e. a gap in the data? */
+        boolean[] gap = new boolean[16];
+
+        Level(final int shift)
+        {
+            this.shift = shift;
+        }
+
+        /** @return Bucket number after the last completed bucket */
+        long end()
+        {
+            return first_bucket + count;
+        }
+
+        /** @param bucket Bucket number
+         *  @return Is that bucket complete and not dropped?
+         */
+        boolean has(final long bucket)
+        {
+            return bucket >= first_bucket  &&  bucket < end();
+        }
+
+        /** Append empty bucket, return its array index */
+        int append()
+        {
+            if (count >= gap.length)
+            {
+                final int size = count * 2;
+                min_value_at = Arrays.copyOf(min_value_at, size);
+                max_value_at = Arrays.copyOf(max_value_at, size);
+                min_min_at = Arrays.copyOf(min_min_at, size);
+                max_max_at = Arrays.copyOf(max_max_at, size);
+                min_value = Arrays.copyOf(min_value, size);
+                max_value = Arrays.copyOf(max_value, size);
+                min_min = Arrays.copyOf(min_min, size);
+                max_max = Arrays.copyOf(max_max, size);
+                gap = Arrays.copyOf(gap, size);
+            }
+            final int i = count++;
+            min_value_at[i] = max_value_at[i] = min_min_at[i] = max_max_at[i] = -1;
+            min_value[i] = min_min[i] = Double.POSITIVE_INFINITY;
+            max_value[i] = max_max[i] = Double.NEGATIVE_INFINITY;
+            gap[i] = false;
+            return i;
+        }
+
+        /** Drop buckets before the given bucket number */
+        void dropBefore(final long bucket)
+        {
+            final int drop = (int) Math.min(count, bucket - first_bucket);
+            if (drop <= 0)
+                return;
+            count -= drop;
+            System.arraycopy(min_value_at, drop, min_value_at, 0, count);
+            System.arraycopy(max_value_at, drop, max_value_at, 0, count);
+            System.arraycopy(min_min_at, drop, min_min_at, 0, count);
+            System.arraycopy(max_max_at, drop, max_max_at, 0, count);
+            System.arraycopy(min_value, drop, min_value, 0, count);
+            System.arraycopy(max_value, drop, max_value, 0, count);
+            System.arraycopy(min_min, drop, min_min, 0, count);
+            System.arraycopy(max_max, drop, max_max, 0, count);
+            System.arraycopy(gap, drop, gap, 0, count);
+            first_bucket += drop;
+        }
+
+        /** Add a sample or lower level bucket to a bucket
+         *  @param i Array index of bucket
+         *  @param offset Offset of the sample's bucket within this bucket
+         *  @param ... Values of the added sample or bucket
+         */
+        void add(final int i, final int offset,
+                 final int min_value_offset, final double min_value,
+                 final int max_value_offset, final double max_value,
+                 final int min_min_offset, final double min_min,
+                 final int max_max_offset, final double max_max,
+                 final boolean gap)
+        {
+            if (min_value_offset >= 0  &&  min_value < this.min_value[i])
+            {
+                this.min_value[i] = min_value;
+                min_value_at[i] = offset + min_value_offset;
+            }
+            if (max_value_offset >= 0  &&  max_value > this.max_value[i])
+            {
+                this.max_value[i] = max_value;
+                max_value_at[i] = offset + max_value_offset;
+            }
+            if (min_min_offset >= 0  &&  min_min < this.min_min[i])
+            {
+                this.min_min[i] = min_min;
+                min_min_at[i] = offset + min_min_offset;
+            }
+            if (max_max_offset >= 0  &&  max_max > this.max_max[i])
+            {
+                this.max_max[i] = max_max;
+                max_max_at[i] = offset + max_max_offset;
+            }
+            if (gap)
+                this.gap[i] = true;
+        }
+    }
+
+    /** Levels, [0] with buckets of FACTOR samples */
+    private Level[] levels = new Level[0];
+
+    /** Number of samples added */
+    private long count = 0;
+
+    /** Absolute sample number of first sample that's not dropped */
+    private long first = 0;
+
+    /** Aggregated values for samples of the incomplete bucket on each level */
+    private Level[] pending = new Level[0];
+
+    /** @return Number of samples that were added, i.e. the next absolute sample number */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /** @return Absolute sample number of the first sample that's not dropped */
+    public long getFirst()
+    {
+        return first;
+    }
+
+    /** Remove all samples, restarting with sample number 0 */
+    public void clear()
+    {
+        levels = new Level[0];
+        pending = new Level[0];
+        count = first = 0;
+    }
+
+    /** Append a sample
+     *  @param value Value of sample, NaN for a gap
+     *  @param min Minimum, NaN if not known
+     *  @param max Maximum, NaN if not known
+     */
+    public void add(final double value, final double min, final double max)
+    {
+        final boolean is_gap = Double.isNaN(value);
+        final int value_at = is_gap ? -1 : 0;
+        final int min_at = Double.isNaN(min) ? -1 : 0;
+        final int max_at = Double.isNaN(max) ? -1 : 0;
+
+        // Add sample to pending bucket of lowest level
+        if (levels.length == 0)
+            addLevel();
+        final int offset = (int) (count & (FACTOR - 1));
+        if (offset == 0)
+            pending[0].append();
+        pending[0].add(0, offset, value_at, value, value_at, value, min_at, min, max_at, max, is_gap);
+        ++count;
+
+        // Complete buckets, moving them into the level and up to the next level
+        int l = 0;
+        while ((count & ((1L << levels[l].shift) - 1)) == 0)
+        {
+            final Level done = pending[l];
+            final Level level = levels[l];
+            if (level.count == 0)
+                level.first_bucket = (count >> level.shift) - 1;
+            final int i = level.append();
+            level.add(i, 0, done.min_value_at[0], done.min_value[0], done.max_value_at[0], done.max_value[0],
+                            done.min_min_at[0], done.min_min[0], done.max_max_at[0], done.max_max[0], done.gap[0]);
+            done.count = 0;
+
+            // Add completed bucket to next level's pending bucket
+            if (l+1 >= levels.length)
+                addLevel();
+            final Level next = pending[l+1];
+            final long bucket = level.end() - 1;
+            final int child = (int) (bucket & (FACTOR - 1));
+            if (child == 0  ||  next.count == 0)
+                next.append();
+            final int child_offset = child << level.shift;
+            next.add(0, child_offset,
+                     level.min_value_at[i], level.min_value[i], level.max_value_at[i], level.max_value[i],
+                     level.min_min_at[i], level.min_min[i], level.max_max_at[i], level.max_max[i], level.gap[i]);
+            ++l;
+        }
+    }
+
+    private void addLevel()
+    {
+        final int l = levels.length;
+        levels = Arrays.copyOf(levels, l+1);
+        pending = Arrays.copyOf(pending, l+1);
+        final int shift = SHIFT * (l+1);
+        levels[l] = new Level(shift);
+        pending[l] = new Level(shift);
+    }
+
+    /** Drop oldest samples
+     *  @param new_first Absolute sample number of the first sample to keep
+     */
+    public void dropBefore(final long new_first)
+    {
+        if (new_first <= first)
+            return;
+        first = Math.min(new_first, count);
+        // Buckets that end before the new first sample are dropped.
+        // Partial buckets are kept but never used by reduce().
+        for (Level level : levels)
+            level.dropBefore(first >> level.shift);
+    }
+
+    /** Get sample numbers needed to draw a range of samples
+     *
+     *  <p>Uses buckets of the highest level that still
+     *  result in about one bucket per pixel,
+     *  and lower level buckets or plain samples at the edges of the range.
+     *  Buckets that contain gaps are resolved into their samples.
+     *
+     *  @param start Absolute sample number of first sample
+     *  @param end Absolute sample number after the last sample
+     *  @param pixels Number of horizontal pixels
+     *  @param index Index that the data provider uses for the <code>start</code> sample
+     *  @return Sorted sample indices, i.e. <code>index + (sample number - start)</code>
+     */
+    public int[] reduce(long start, final long end, final int pixels, final int index)
+    {
+        final long offset = index - start;
+        start = Math.max(start, first);
+        final long range = Math.min(end, count) - start;
+        int[] result = new int[64];
+        int size = 0;
+        if (range <= 0)
+            return new int[0];
+
+        // Highest level with at least pixels/2 buckets in the range
+        int top = -1;
+        for (int l=0; l<levels.length; ++l)
+            if ((range >> levels[l].shift) >= Math.max(1, pixels/2))
+                top = l;
+
+        final long stop = Math.min(end, count);
+        long sample = start;
+        while (sample < stop)
+        {
+            // Find largest usable bucket that starts with this sample
+            int use = -1;
+            for (int l=top; l>=0; --l)
+            {
+                final Level level = levels[l];
+                final long bucket = sample >> level.shift;
+                if ((bucket << level.shift) == sample  &&
+                    ((bucket+1) << level.shift) <= stop  &&
+                    level.has(bucket))
+                {
+                    final int i = (int) (bucket - level.first_bucket);
+                    if (level.gap[i])
+                        continue;
+                    use = l;
+                    break;
+                }
+            }
+            if (size + 6 > result.length)
+                result = Arrays.copyOf(result, result.length * 2);
+            if (use < 0)
+            {   // Plain sample
+                result[size++] = (int) (sample + offset);
+                ++sample;
+                continue;
+            }
+            // First, last and extreme samples of bucket, sorted
+            final Level level = levels[use];
+            final int i = (int) ((sample >> level.shift) - level.first_bucket);
+            final int bucket_size = 1 << level.shift;
+            final int[] at = { 0, level.min_value_at[i], level.max_value_at[i],
+                               level.min_min_at[i], level.max_max_at[i], bucket_size - 1 };
+            Arrays.sort(at);
+            int last = -1;
+            for (int o : at)
+                if (o >= 0  &&  o != last)
+                {
+                    result[size++] = (int) (sample + o + offset);
+                    last = o;
+                }
+            sample += bucket_size;
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
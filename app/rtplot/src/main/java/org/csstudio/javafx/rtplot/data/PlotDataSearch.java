@@ -31,7 +31,7 @@ public class PlotDataSearch<XTYPE extends Comparable<XTYPE>>
         {
             mid = (low + high) / 2;
             // Compare 'mid' sample with goal
-            cmp = data.get(mid).getPosition().compareTo(x);
+            cmp = data.getPosition(mid).compareTo(x);
             // See where to look next
             if (cmp == 0)
                 return true; // key found
@@ -79,7 +79,7 @@ public class PlotDataSearch<XTYPE extends Comparable<XTYPE>>
         while (i > 0)
         {
             --i;
-            if (data.get(i).getPosition().compareTo(x) < 0)
+            if (data.getPosition(i).compareTo(x) < 0)
                 return i;
         }
         return -1;
@@ -120,7 +120,7 @@ public class PlotDataSearch<XTYPE extends Comparable<XTYPE>>
         // Look for sample > x
         while (++i < data.size())
         {
-            if (data.get(i).getPosition().compareTo(x) > 0)
+            if (data.getPosition(i).compareTo(x) > 0)
                 return i;
         }
         return -1;
@@ -26,7 +26,6 @@ import org.csstudio.javafx.rtplot.Messages;
 import org.csstudio.javafx.rtplot.PointType;
 import org.csstudio.javafx.rtplot.Trace;
 import org.csstudio.javafx.rtplot.TraceType;
-import org.csstudio.javafx.rtplot.data.PlotDataItem;
 import org.csstudio.javafx.rtplot.data.PlotDataProvider;
 import org.csstudio.javafx.rtplot.data.PlotDataSearch;
 import org.csstudio.javafx.rtplot.data.ValueRange;
@@ -79,7 +78,7 @@ public class PlotProcessor<XTYPE extends Comparable<XTYPE>>
                     final int N = data.size();
                     for (int i=0; i<N; ++i)
                     {
-                        XTYPE pos = data.get(i).getPosition();
+                        XTYPE pos = data.getPosition(i);
                         // If sample is Double (not Instant), AND NaN/inf, skip this trace
                         if ((pos instanceof Double)  &&  !Double.isFinite((Double) pos))
                             continue;
@@ -108,10 +107,10 @@ public class PlotProcessor<XTYPE extends Comparable<XTYPE>>
         final int N = data.size();
         if (N <= 0)
             return false;
-        XTYPE prev = data.get(0).getPosition();
+        XTYPE prev = data.getPosition(0);
         for (int i=1; i<N; ++i)
         {
-            final XTYPE current = data.get(i).getPosition();
+            final XTYPE current = data.getPosition(i);
             if (prev.compareTo(current) > 0)
                 return false;
             prev = current;
@@ -169,8 +168,7 @@ public class PlotProcessor<XTYPE extends Comparable<XTYPE>>
                         // Check [start .. stop], including stop
                         for (int idx = start; idx <= stop; idx++)
                         {
-                            final PlotDataItem<XTYPE> item = data.get(idx);
-                            final double value = item.getValue();
+                            final double value = data.getValue(idx);
                             if (!Double.isFinite(value))
                                 continue;
                             if (value < low)
@@ -178,10 +176,12 @@ public class PlotProcessor<XTYPE extends Comparable<XTYPE>>
                             if (value > high)
                                 high = value;
                             // Implies Double.isFinite(min), ..(max)
-                            if (item.getMin() < low)
-                                low = item.getMin();
-                            if (item.getMax() > high)
-                                high = item.getMax();
+                            final double min = data.getMin(idx);
+                            if (min < low)
+                                low = min;
+                            final double max = data.getMax(idx);
+                            if (max > high)
+                                high = max;
                         }
                     }
                 }
@@ -14,6 +14,7 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Stroke;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -22,7 +23,6 @@ import org.csstudio.javafx.rtplot.LineStyle;
 import org.csstudio.javafx.rtplot.PointType;
 import org.csstudio.javafx.rtplot.Trace;
 import org.csstudio.javafx.rtplot.TraceType;
-import org.csstudio.javafx.rtplot.data.PlotDataItem;
 import org.csstudio.javafx.rtplot.data.PlotDataProvider;
 import org.csstudio.javafx.rtplot.data.PlotDataSearch;
 import org.csstudio.javafx.rtplot.internal.util.GraphicsUtils;
@@ -42,9 +42,112 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
     // but it requires an int[] array of varying size.
     // IntList turned out to be about 3x faster than ArrayList<Integer>.
 
+    /** Ask data provider to reduce samples when there are more than this many per pixel */
+    private static final int REDUCE_THRESHOLD = 4;
+
     /** Initial {@link IntList} size */
     private static final int INITIAL_ARRAY_SIZE = 2048;
 
+    /** Points of lines, separated into segments where data has gaps
+     *
+     *  <p>Consecutive points in the same pixel column are reduced
+     *  to the first, lowest, highest and last point of that column,
+     *  which results in the same pixels when drawn.
+     */
+    private static class Polylines
+    {
+        final IntList x = new IntList(INITIAL_ARRAY_SIZE);
+        final IntList y = new IntList(INITIAL_ARRAY_SIZE);
+
+        /** End of each segment in x, y */
+        final IntList ends = new IntList(16);
+
+        /** Start of current segment */
+        private int segment = 0;
+
+        /** Current pixel column and its first, lowest, highest, last y */
+        private int column = -1, first, low, high, last;
+        private boolean have_column = false;
+
+        /** @return Does the current segment have no points? */
+        boolean isSegmentEmpty()
+        {
+            return ! have_column  &&  x.size() == segment;
+        }
+
+        /** @param px Screen coordinate ..
+         *  @param py .. of point to add
+         */
+        void add(final int px, final int py)
+        {
+            if (have_column  &&  px == column)
+            {
+                if (py < low)
+                    low = py;
+                if (py > high)
+                    high = py;
+                last = py;
+                return;
+            }
+            flushColumn();
+            have_column = true;
+            column = px;
+            first = low = high = last = py;
+        }
+
+        private void flushColumn()
+        {
+            if (! have_column)
+                return;
+            have_column = false;
+            x.add(column);
+            y.add(first);
+            if (low != first)
+            {
+                x.add(column);
+                y.add(low);
+            }
+            if (high != low)
+            {
+                x.add(column);
+                y.add(high);
+            }
+            if (last != high)
+            {
+                x.add(column);
+                y.add(last);
+            }
+        }
+
+        /** End current segment */
+        void split()
+        {
+            flushColumn();
+            if (x.size() > segment)
+            {
+                ends.add(x.size());
+                segment = x.size();
+            }
+        }
+
+        void clear()
+        {
+            x.clear();
+            y.clear();
+            ends.clear();
+            segment = 0;
+            have_column = false;
+        }
+    }
+
+    // Polylines are re-used between calls to paint(),
+    // so a painter must only be used by one thread at a time
+    private final Polylines value_line = new Polylines(),
+                            lower_line = new Polylines(),
+                            upper_line = new Polylines(),
+                            min_line = new Polylines(),
+                            max_line = new Polylines();
+
     /** Fudge to avoid clip errors
      *
      *  <p>When coordinates are way outside the clip region,
@@ -107,12 +210,6 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         final Color tpcolor = new Color(color.getRed(), color.getGreen(), color.getBlue(), opacity);
         gc.setColor(color);
 
-        // TODO Optimize drawing
-        //
-        // Loop only once, performing drawMinMax, drawStdDev, drawValueStaircase in one loop
-        //
-        // For now, main point is that this happens in non-UI thread,
-        // so the slower the better to test UI responsiveness.
         final PlotDataProvider<XTYPE> data = trace.getData();
         try
         {
@@ -131,6 +228,8 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
             if (end <= 0)
                 return;
 
+            // Indices of samples to draw when data provider can reduce them
+            int[] indices = null;
             switch (type)
             {
             // Types that require ordered X axis so start..end can be optimized
@@ -138,73 +237,78 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
             case LINES_ERROR_BARS:
             case ERROR_BARS:
             case BARS:
-                // Determine first and last sample to draw, then go one sample further on each end
-                final PlotDataSearch<XTYPE> search = new PlotDataSearch<>();
-                XTYPE border = x_transform.inverse(bounds.x);
-                start = search.findSampleLessOrEqual(data, border);
-                if (start < 0)
-                    start = 0;
-                else
-                    start = Math.max(0, start-1);
-
-                border = x_transform.inverse(bounds.getMaxX());
-                end = search.findSampleGreaterOrEqual(data, border);
-                if (end < 0)
-                    end = data.size();
-                else
-                    end = Math.min(end+1, data.size());
-
+            {
+                final int[] range = findVisibleRange(bounds, x_transform, data);
+                start = range[0];
+                end = range[1];
                 if (logger.isLoggable(Level.FINE))
                     logger.log(Level.FINE,
                                "Optimized drawing from samples 0.." + data.size() + " to " + start + ".." + end);
+                if (type == TraceType.AREA)
+                    indices = getReducedIndices(bounds, data, start, end);
+                break;
+            }
+            // Line types with many more samples than pixels can be reduced
+            // if the data provider has ordered X axis, which it implies
+            // by supporting getReducedIndices()
+            case AREA_DIRECT:
+            case LINES:
+            case LINES_DIRECT:
+            case SINGLE_LINE:
+            case SINGLE_LINE_DIRECT:
+                if (end > REDUCE_THRESHOLD * bounds.width)
+                {
+                    final int[] range = findVisibleRange(bounds, x_transform, data);
+                    indices = getReducedIndices(bounds, data, range[0], range[1]);
+                }
                 break;
-
             // Types where X axis may not be ordered so start..end cannot be optimized
             default:
                 break;
             }
+            // Draw the reduced samples 0..indices.length via the indices
+            final int all = data.size();
+            if (indices != null)
+            {
+                if (logger.isLoggable(Level.FINE))
+                    logger.log(Level.FINE,
+                               "Reduced drawing from samples 0.." + all + " to " + indices.length + " samples");
+                start = 0;
+                end = indices.length;
+            }
 
             switch (type)
             {
             case NONE:
                 break;
             case AREA:
-                gc.setPaint(tpcolor);
-                drawMinMaxArea(gc, x_transform, y_axis, data, start, end);
-                gc.setPaint(color);
-                drawStdDevLines(gc, x_transform, y_axis, data, start, end, trace.getWidth());
-                drawValueStaircase(gc, x_transform, y_axis, data, start, end, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, indices, start, end, true, false, true,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
                 break;
             case AREA_DIRECT:
-                gc.setPaint(tpcolor);
-                drawMinMaxArea(gc, x_transform, y_axis, data, start, end);
-                gc.setPaint(color);
-                drawStdDevLines(gc, x_transform, y_axis, data, start, end, trace.getWidth());
-                drawValueLines(gc, x_transform, y_axis, data, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, indices, start, end, true, false, false,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
                 break;
             case LINES:
-                drawMinMaxLines(gc, x_transform, y_axis, data, trace.getWidth());
-                gc.setPaint(tpcolor);
-                drawStdDevLines(gc, x_transform, y_axis, data, start, end, trace.getWidth());
-                gc.setPaint(color);
-                drawValueStaircase(gc, x_transform, y_axis, data, start, end, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, indices, start, end, false, true, true,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
                 break;
             case LINES_DIRECT:
-                drawMinMaxLines(gc, x_transform, y_axis, data, trace.getWidth());
-                gc.setPaint(tpcolor);
-                drawStdDevLines(gc, x_transform, y_axis, data, start, end, trace.getWidth());
-                gc.setPaint(color);
-                drawValueLines(gc, x_transform, y_axis, data, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, indices, start, end, false, true, false,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
                 break;
             case SINGLE_LINE:
-                drawValueStaircase(gc, x_transform, y_axis, data, start, end, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, indices, start, end, false, false, true,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
                 break;
             case SINGLE_LINE_DIRECT:
-                drawValueLines(gc, x_transform, y_axis, data, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, indices, start, end, false, false, false,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
                 break;
             case LINES_ERROR_BARS:
                 drawErrorBars(gc, x_transform, y_axis, data, trace.getPointSize());
-                drawValueLines(gc, x_transform, y_axis, data, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, null, 0, all, false, false, false,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
                 break;
             case ERROR_BARS:
                 // Compare error bars to area and min/max lines
@@ -222,11 +326,12 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
                     drawHistogram(gc, x_transform, y_axis, data);
                 break;
             default:
-                drawValueStaircase(gc, x_transform, y_axis, data, start, end, trace.getWidth(), trace.getLineStyle());
+                drawLines(gc, x_transform, y_axis, data, indices, start, end, false, false, true,
+                          color, tpcolor, trace.getWidth(), trace.getLineStyle());
             }
 
             if (point_type != PointType.NONE)
-                drawPoints(gc, x_transform, y_axis, data, point_type, trace.getPointSize());
+                drawPoints(gc, x_transform, y_axis, data, indices, 0, indices == null ? all : end, point_type, trace.getPointSize());
         }
         finally
         {
@@ -237,6 +342,46 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         gc.setColor(old_color);
     }
 
+    /** Determine first and last sample to draw, then go one sample further on each end
+     *  @param bounds Clipping bounds within which to paint
+     *  @param x_transform Coordinate transform used by the x axis
+     *  @param data Data with ordered X axis
+     *  @return { start, end } index range of samples to draw
+     */
+    private int[] findVisibleRange(final Rectangle bounds, final ScreenTransform<XTYPE> x_transform,
+                                   final PlotDataProvider<XTYPE> data)
+    {
+        final PlotDataSearch<XTYPE> search = new PlotDataSearch<>();
+        XTYPE border = x_transform.inverse(bounds.x);
+        int start = search.findSampleLessOrEqual(data, border);
+        if (start < 0)
+            start = 0;
+        else
+            start = Math.max(0, start-1);
+
+        border = x_transform.inverse(bounds.getMaxX());
+        int end = search.findSampleGreaterOrEqual(data, border);
+        if (end < 0)
+            end = data.size();
+        else
+            end = Math.min(end+1, data.size());
+        return new int[] { start, end };
+    }
+
+    /** @param bounds Clipping bounds within which to paint
+     *  @param data Data
+     *  @param start Start and ..
+     *  @param end .. end index of data to plot
+     *  @return Indices of samples to draw or <code>null</code> to draw start..end
+     */
+    private int[] getReducedIndices(final Rectangle bounds, final PlotDataProvider<XTYPE> data,
+                                    final int start, final int end)
+    {
+        if (end - start <= REDUCE_THRESHOLD * bounds.width)
+            return null;
+        return data.getReducedIndices(start, end, bounds.width);
+    }
+
     // Basic dash patterns
     private static final float DASH[]       = { 10f,  5f };
     private static final float DOT[]        = {  2f, 10f };
@@ -271,228 +416,163 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         }
     }
 
-    /** Draw values of data as staircase line
+    /** Draw lines and areas of a trace in one pass over the samples
+     *
+     *  <p>Computes the screen coordinates of each sample once,
+     *  collecting them into the reusable polylines,
+     *  and then draws min/max area or lines, std. deviation
+     *  and value lines in that order.
+     *
      *  @param gc GC
      *  @param x_transform Horizontal axis
      *  @param y_axis Value axis
      *  @param data Data
+     *  @param indices Indices of samples to draw or <code>null</code>
      *  @param start Start and ..
-     *  @param end .. end index of data to plot
+     *  @param end .. end index of data (or indices) to plot
+     *  @param area Draw min/max area and std. deviation?
+     *  @param min_max_lines Draw min/max and std. deviation lines?
+     *  @param staircase Draw value as staircase, or direct line?
+     *  @param color Color of lines
+     *  @param tpcolor Transparent color for area, std. deviation of 'lines'
      *  @param line_width
      *  @param line_style
      */
-    final private void drawValueStaircase(final Graphics2D gc,
+    final private void drawLines(final Graphics2D gc,
             final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
-            final PlotDataProvider<XTYPE> data,
+            final PlotDataProvider<XTYPE> data, final int[] indices,
             final int start, final int end,
+            final boolean area, final boolean min_max_lines, final boolean staircase,
+            final Color color, final Color tpcolor,
             final int line_width, final LineStyle line_style)
     {
-        final IntList poly_x = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList poly_y = new IntList(INITIAL_ARRAY_SIZE);
+        final boolean envelope = area  ||  min_max_lines;
+        value_line.clear();
+        lower_line.clear();
+        upper_line.clear();
+        min_line.clear();
+        max_line.clear();
 
         int last_x = -1, last_y = -1;
-        gc.setStroke(createStroke(line_width, line_style));
-        for (int i=start; i<end; ++i)
+        for (int k=start; k<end; ++k)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
-            final double value = item.getValue();
-            if (poly_x.size() > 0  && x != last_x && !Double.isNaN(value))
-            {   // Staircase from last 'y'..
-                poly_x.add(x);
-                poly_y.add(last_y);
-                last_x = x;
-            }
-            if (Double.isNaN(value))
-            {
-                flushPolyLine(gc, poly_x, poly_y, line_width);
-                last_x = last_y = -1;
-            }
-            else
+            final int i = indices == null ? k : indices[k];
+            final double pos = x_transform.transform(data.getPosition(i));
+            final double value = data.getValue(i);
+
+            if (envelope)
             {
-                final int y = clipY(y_axis.getScreenCoord(value));
-                if (last_x == x  &&  last_y == y)
-                    continue;
-                poly_x.add(x);
-                poly_y.add(y);
-                last_y = y;
-            }
-        }
-        flushPolyLine(gc, poly_x, poly_y, line_width);
-    }
+                // Min/max area or lines
+                final int x = clipX(pos);
+                final double ymin = data.getMin(i);
+                final double ymax = data.getMax(i);
+                if (Double.isNaN(ymin)  ||  Double.isNaN(ymax))
+                {
+                    min_line.split();
+                    max_line.split();
+                }
+                else
+                {
+                    min_line.add(x, clipY(y_axis.getScreenCoord(ymin)));
+                    max_line.add(x, clipY(y_axis.getScreenCoord(ymax)));
+                }
 
-    /** Draw values of data as direct line
-     *  @param gc GC
-     *  @param x_transform Horizontal axis
-     *  @param y_axis Value axis
-     *  @param data Data
-     *  @param line_width
-     *  @param line_style
-     */
-    final private void drawValueLines(final Graphics2D gc,
-            final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
-            final PlotDataProvider<XTYPE> data, final int line_width, final LineStyle line_style)
-    {
-        final IntList value_poly_x = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList value_poly_y = new IntList(INITIAL_ARRAY_SIZE);
-        final int N = data.size();
+                // Std. deviation
+                final double dev = data.getStdDev(i);
+                if (Double.isNaN(value) ||  ! (dev > 0))
+                {
+                    lower_line.split();
+                    upper_line.split();
+                }
+                else
+                {
+                    lower_line.add(x, clipY(y_axis.getScreenCoord(value - dev)));
+                    upper_line.add(x, clipY(y_axis.getScreenCoord(value + dev)));
+                }
+            }
 
-        gc.setStroke(createStroke(line_width, line_style));
-        int last_x = -1, last_y = -1;
-        for (int i=0; i<N; ++i)
-        {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
-            final double value = item.getValue();
-            if (Double.isNaN(value)) {
-                flushPolyLine(gc, value_poly_x, value_poly_y, line_width);
+            // Value
+            final int x = clipX(Math.round(pos));
+            if (staircase)
+            {
+                if (! value_line.isSegmentEmpty()  &&  x != last_x  &&  !Double.isNaN(value))
+                {   // Staircase from last 'y'..
+                    value_line.add(x, last_y);
+                    last_x = x;
+                }
+                if (Double.isNaN(value))
+                {
+                    value_line.split();
+                    last_x = last_y = -1;
+                }
+                else
+                {
+                    final int y = clipY(y_axis.getScreenCoord(value));
+                    if (last_x == x  &&  last_y == y)
+                        continue;
+                    value_line.add(x, y);
+                    last_y = y;
+                }
             }
             else
             {
-                final int y = clipY(y_axis.getScreenCoord(value));
-                if (x == last_x  &&  y == last_y)
-                    continue;
-                value_poly_x.add(x);
-                value_poly_y.add(y);
-                last_x = x;
-                last_y = y;
+                if (Double.isNaN(value))
+                    value_line.split();
+                else
+                {
+                    final int y = clipY(y_axis.getScreenCoord(value));
+                    if (x == last_x  &&  y == last_y)
+                        continue;
+                    value_line.add(x, y);
+                    last_x = x;
+                    last_y = y;
+                }
             }
         }
-        flushPolyLine(gc, value_poly_x, value_poly_y, line_width);
-    }
 
-    /** Draw min/max outline
-     *  @param gc GC
-     *  @param x_transform Horizontal axis
-     *  @param y_axis Value axis
-     *  @param data Data
-     *  @param start Start and ..
-     *  @param end .. end index of data to plot
-     */
-    final private void drawMinMaxArea(final Graphics2D gc,
-            final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
-            final PlotDataProvider<XTYPE> data,
-            final int start, final int end)
-    {
-        final int N = end - start;
-        // Assume N, might use less because end up with sections
-        // separated by Double.NaN
-        final IntList pos = new IntList(N);
-        final IntList min = new IntList(N);
-        final IntList max = new IntList(N);
-
-        for (int i = start;  i < end;  ++i)
+        if (area)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            double ymin = item.getMin();
-            double ymax = item.getMax();
-            if (Double.isNaN(ymin)  ||  Double.isNaN(ymax))
-                flushPolyFill(gc, pos, min, max);
-            else
-            {
-                final int x1 = clipX(x_transform.transform(item.getPosition()));
-                final int y1min = clipY(y_axis.getScreenCoord(ymin));
-                final int y1max = clipY(y_axis.getScreenCoord(ymax));
-                pos.add(x1);
-                min.add(y1min);
-                max.add(y1max);
-            }
+            gc.setPaint(tpcolor);
+            fillArea(gc, min_line, max_line);
+            gc.setPaint(color);
+            drawPolylines(gc, lower_line, line_width);
+            drawPolylines(gc, upper_line, line_width);
         }
-        flushPolyFill(gc, pos, min, max);
-    }
-
-    /** Draw min/max outline
-     *  @param gc GC
-     *  @param x_transform Horizontal axis
-     *  @param y_axis Value axis
-     *  @param data Data
-     */
-    final private void drawMinMaxLines(final Graphics2D gc,
-            final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
-            final PlotDataProvider<XTYPE> data, final int line_width)
-    {
-        final IntList min_x = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList max_x = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList min_y = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList max_y = new IntList(INITIAL_ARRAY_SIZE);
-
-        final int N = data.size();
-        for (int i = 0;  i < N;  ++i)
+        else if (min_max_lines)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            double ymin = item.getMin();
-            double ymax = item.getMax();
-            if (Double.isNaN(ymin)  ||  Double.isNaN(ymax))
-            {
-                flushPolyLine(gc, min_x, min_y, line_width);
-                flushPolyLine(gc, max_x, max_y, line_width);
-            }
-            else
-            {
-                final int x1 = clipX(x_transform.transform(item.getPosition()));
-                final int y1min = clipY(y_axis.getScreenCoord(ymin));
-                final int y1max = clipY(y_axis.getScreenCoord(ymax));
-                min_x.add(x1);   min_y.add(y1min);
-                max_x.add(x1);   max_y.add(y1max);
-            }
+            drawPolylines(gc, min_line, line_width);
+            drawPolylines(gc, max_line, line_width);
+            gc.setPaint(tpcolor);
+            drawPolylines(gc, lower_line, line_width);
+            drawPolylines(gc, upper_line, line_width);
+            gc.setPaint(color);
         }
-        flushPolyLine(gc, min_x, min_y, line_width);
-        flushPolyLine(gc, max_x, max_y, line_width);
+        gc.setStroke(createStroke(line_width, line_style));
+        drawPolylines(gc, value_line, line_width);
     }
 
-    /** Draw std. deviation outline
-     *  @param gc GC
-     *  @param x_transform Horizontal axis
-     *  @param y_axis Value axis
-     *  @param data Data
-     *  @param start Start and ..
-     *  @param end .. end index of data to plot
+    /** @param gc GC
+     *  @param line Polyline segments to draw
      *  @param line_width
      */
-    final private void drawStdDevLines(final Graphics2D gc, final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
-            final PlotDataProvider<XTYPE> data, final int start, final int end, final int line_width)
+    final private void drawPolylines(final Graphics2D gc, final Polylines line, final int line_width)
     {
-        final IntList lower_poly_y = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList upper_poly_y = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList lower_poly_x = new IntList(INITIAL_ARRAY_SIZE);
-        final IntList upper_poly_x = new IntList(INITIAL_ARRAY_SIZE);
-
-        for (int i = start;  i < end;  ++i)
+        line.split();
+        final int[] x = line.x.getArray(), y = line.y.getArray();
+        final int segments = line.ends.size();
+        int first = 0;
+        for (int s=0; s<segments; ++s)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            double value = item.getValue();
-            double dev = item.getStdDev();
-            if (Double.isNaN(value) ||  ! (dev > 0))
-            {
-                flushPolyLine(gc, lower_poly_x, lower_poly_y, line_width);
-                flushPolyLine(gc, upper_poly_x, upper_poly_y, line_width);
-            }
+            final int end = line.ends.get(s);
+            final int N = end - first;
+            if (N == 1)
+                drawPoint(gc, x[first], y[first], line_width);
+            else if (first == 0)
+                gc.drawPolyline(x, y, N);
             else
-            {
-                final int x = clipX(x_transform.transform(item.getPosition()));
-                final int low_y = clipY(y_axis.getScreenCoord(value - dev));
-                final int upp_y = clipY(y_axis.getScreenCoord(value + dev));
-                lower_poly_x.add(x);  lower_poly_y.add(low_y);
-                upper_poly_x.add(x);  upper_poly_y.add(upp_y);
-            }
+                gc.drawPolyline(Arrays.copyOfRange(x, first, end), Arrays.copyOfRange(y, first, end), N);
+            first = end;
         }
-        flushPolyLine(gc, lower_poly_x, lower_poly_y, line_width);
-        flushPolyLine(gc, upper_poly_x, upper_poly_y, line_width);
-    }
-
-    /** @param gc GC
-     *  @param poly_x Points of poly line, will be cleared
-     *  @param line_width
-     */
-    final private void flushPolyLine(final Graphics2D gc, final IntList poly_x, final IntList poly_y, final int line_width)
-    {
-        final int N = poly_x.size();
-        if (N == 1)
-            drawPoint(gc, poly_x.get(0), poly_y.get(0), line_width);
-        else if (N > 1)
-            gc.drawPolyline(poly_x.getArray(), poly_y.getArray(), N);
-        poly_x.clear();
-        poly_y.clear();
     }
 
     /** Draw error bar for each value
@@ -509,20 +589,19 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         final int N = data.size();
         for (int i=0; i<N; ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final double value = item.getValue();
+            final double value = data.getValue(i);
             if (!Double.isNaN(value))
             {
-                final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
+                final int x = clipX(Math.round(x_transform.transform(data.getPosition(i))));
                 final int y = clipY(y_axis.getScreenCoord(value));
-                final double min = item.getMin();
+                final double min = data.getMin(i);
                 if (!Double.isNaN(min))
                 {
                     final int ym = clipY(y_axis.getScreenCoord(min));
                     gc.drawLine(x, y, x, ym);
                     gc.drawLine(x-size/2, ym, x+size/2, ym);
                 }
-                final double max = item.getMax();
+                final double max = data.getMax(i);
                 if (!Double.isNaN(max))
                 {
                     final int ym = clipY(y_axis.getScreenCoord(max));
@@ -538,29 +617,31 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
      *  @param x_transform Horizontal axis
      *  @param y_axis Value axis
      *  @param data Data
+     *  @param indices Indices of samples to draw or <code>null</code>
+     *  @param start Start and ..
+     *  @param end .. end index of data (or indices) to plot
      *  @param point_type
      *  @param size
      */
     final private void drawPoints(final Graphics2D gc,
             final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
-            final PlotDataProvider<XTYPE> data, PointType point_type, final int size)
+            final PlotDataProvider<XTYPE> data, final int[] indices,
+            final int start, final int end, PointType point_type, final int size)
     {
-        final int N = data.size();
         int last_x = -1, last_y = -1;
-        for (int i=0; i<N; ++i)
+        for (int k=start; k<end; ++k)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final double value = item.getValue();
-            final XTYPE loc = item.getPosition();
+            final int i = indices == null ? k : indices[k];
+            final double value = data.getValue(i);
             if (!Double.isNaN(value))
             {
-                final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
+                final int x = clipX(Math.round(x_transform.transform(data.getPosition(i))));
                 final int y = clipY(y_axis.getScreenCoord(value));
                 if (x == last_x  &&  y == last_y)
                     continue;
                 // If the point is virtual, draw it without a size; drawing a virtual point visually
                 // implies the point is real data, and this often is not the case.
-                if(item.isVirtual()) {
+                if(data.get(i).isVirtual()) {
                     return;
                 }
                 switch (point_type)
@@ -600,37 +681,40 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         gc.fillOval(x-size/2, y-size/2, size, size);
     }
 
-    /** Fill area. All lists will be cleared.
+    /** Fill area between lower and upper outline
+     *
+     *  <p>Each segment of the outlines, separated where data has gaps,
+     *  is filled as one polygon, following the lower outline
+     *  and then the upper outline in reverse.
+     *
      *  @param gc GC
-     *  @param pos Horizontal screen positions
-     *  @param min Minimum 'y' values in screen coords
-     *  @param max .. maximum
+     *  @param lower Lower outline
+     *  @param upper Upper outline, having the same segments as the lower outline
      */
-    final private void flushPolyFill(final Graphics2D gc, final IntList pos, final IntList min, final IntList max)
+    final private void fillArea(final Graphics2D gc, final Polylines lower, final Polylines upper)
     {
-        final int N = pos.size();
-        if (N <= 0)
-            return;
-
-        // 'direct' outline, point-to-point
-        // Turn pos/min/max into array required by fillPolygon:
-        // First sequence of x[], min[],
-        // then x[], max[i] in reverse.
-        final int N2 = N * 2;
-        final int xpoints[] = new int[N2];
-        final int ypoints[] = new int[N2];
-        int tail = N2-1;
-        for (int i=0; i<N; ++i)
-        {   // i == 'head'
-            xpoints[i] = xpoints[tail] = pos.get(i);
-            ypoints[i] = min.get(i);
-            ypoints[tail--] = max.get(i);
+        lower.split();
+        upper.split();
+        final int segments = lower.ends.size();
+        int lower_first = 0, upper_first = 0;
+        for (int s=0; s<segments; ++s)
+        {
+            final int lower_end = lower.ends.get(s), upper_end = upper.ends.get(s);
+            final int NL = lower_end - lower_first, NU = upper_end - upper_first;
+            final int xpoints[] = new int[NL + NU];
+            final int ypoints[] = new int[NL + NU];
+            System.arraycopy(lower.x.getArray(), lower_first, xpoints, 0, NL);
+            System.arraycopy(lower.y.getArray(), lower_first, ypoints, 0, NL);
+            int tail = NL + NU - 1;
+            for (int i=upper_first; i<upper_end; ++i)
+            {
+                xpoints[tail] = upper.x.get(i);
+                ypoints[tail--] = upper.y.get(i);
+            }
+            gc.fillPolygon(xpoints, ypoints, NL + NU);
+            lower_first = lower_end;
+            upper_first = upper_end;
         }
-        gc.fillPolygon(xpoints, ypoints, N2);
-
-        pos.clear();
-        min.clear();
-        max.clear();
     }
 
     /** Draw bar for each value
@@ -651,11 +735,10 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         final int y0 = clipY(y_axis.getScreenCoord(0.0));
         for (int i=0; i<N; ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final double value = item.getValue();
+            final double value = data.getValue(i);
             if (Double.isNaN(value))
                 continue;
-            final int x = (int) Math.round(x_transform.transform(item.getPosition()));
+            final int x = (int) Math.round(x_transform.transform(data.getPosition(i)));
             final int y = clipY(y_axis.getScreenCoord(value));
             if (y0 > y)
                 gc.fillRect(x-width/2, y, width, y0-y);
@@ -686,9 +769,8 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         int last_x1 = -1, last_x = -1, last_y = -1;
         for (int i=0; i<N; ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final double value = item.getValue();
-            final int x = (int) Math.round(x_transform.transform(item.getPosition()));
+            final double value = data.getValue(i);
+            final int x = (int) Math.round(x_transform.transform(data.getPosition(i)));
             final int y = Double.isNaN(value) ?  -1  :  clipY(y_axis.getScreenCoord(value));
             if (last_x >= 0)
             {
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.javafx.rtplot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.csstudio.javafx.rtplot.data.PlotDataPyramid;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link PlotDataPyramid}
+ */
+@SuppressWarnings("nls")
+public class PlotDataPyramidTest
+{
+    private static double value(final int i)
+    {
+        return Math.sin(i * 0.01) + ((i * 7919) % 101) / 100.0;
+    }
+
+    /** Check that reduced indices are sorted, in range, and include extremes */
+    private static void check(final int[] indices, final int start, final int end, final double[] values)
+    {
+        assertTrue(indices.length > 0);
+        assertEquals(start, indices[0]);
+        assertEquals(end-1, indices[indices.length-1]);
+        for (int k=1; k<indices.length; ++k)
+            assertTrue(indices[k-1] < indices[k], "Sorted");
+
+        int min = start, max = start;
+        for (int i=start; i<end; ++i)
+        {
+            if (values[i] < values[min])
+                min = i;
+            if (values[i] > values[max])
+                max = i;
+        }
+        assertTrue(Arrays.binarySearch(indices, min) >= 0, "Includes minimum");
+        assertTrue(Arrays.binarySearch(indices, max) >= 0, "Includes maximum");
+    }
+
+    @Test
+    public void testReduce()
+    {
+        final int N = 100000;
+        final double[] values = new double[N];
+        final PlotDataPyramid pyramid = new PlotDataPyramid();
+        for (int i=0; i<N; ++i)
+        {
+            values[i] = value(i);
+            pyramid.add(values[i], Double.NaN, Double.NaN);
+        }
+        assertEquals(N, pyramid.getCount());
+
+        // All samples onto 500 pixels
+        int[] indices = pyramid.reduce(0, N, 500, 0);
+        System.out.println("Reduced " + N + " samples to " + indices.length);
+        assertTrue(indices.length < N / 10);
+        check(indices, 0, N, values);
+
+        // Unaligned range
+        indices = pyramid.reduce(1234, 56789, 300, 1234);
+        System.out.println("Reduced " + (56789 - 1234) + " samples to " + indices.length);
+        check(indices, 1234, 56789, values);
+
+        // Few samples are not reduced
+        indices = pyramid.reduce(100, 110, 300, 100);
+        assertEquals(10, indices.length);
+
+        // Result indices start at the given index
+        indices = pyramid.reduce(1234, 56789, 300, 0);
+        assertEquals(0, indices[0]);
+        assertEquals(56789-1234-1, indices[indices.length-1]);
+    }
+
+    @Test
+    public void testGaps()
+    {
+        final PlotDataPyramid pyramid = new PlotDataPyramid();
+        for (int i=0; i<10000; ++i)
+            pyramid.add(i == 5000 ? Double.NaN : value(i), Double.NaN, Double.NaN);
+        final int[] indices = pyramid.reduce(0, 10000, 100, 0);
+        // Gap and its neighbors are included
+        assertTrue(Arrays.binarySearch(indices, 4999) >= 0);
+        assertTrue(Arrays.binarySearch(indices, 5000) >= 0);
+        assertTrue(Arrays.binarySearch(indices, 5001) >= 0);
+    }
+
+    @Test
+    public void testMinMax()
+    {
+        final PlotDataPyramid pyramid = new PlotDataPyramid();
+        for (int i=0; i<10000; ++i)
+        {
+            final double min = i == 1234 ? -100 : -1;
+            final double max = i == 4321 ? +100 : +1;
+            pyramid.add(0, min, max);
+        }
+        final int[] indices = pyramid.reduce(0, 10000, 50, 0);
+        assertTrue(indices.length < 1000);
+        assertTrue(Arrays.binarySearch(indices, 1234) >= 0);
+        assertTrue(Arrays.binarySearch(indices, 4321) >= 0);
+    }
+
+    @Test
+    public void testRing()
+    {
+        // Simulate ring buffer that keeps the last 'capacity' samples
+        final int capacity = 5000;
+        final double[] values = new double[50000];
+        final PlotDataPyramid pyramid = new PlotDataPyramid();
+        for (int i=0; i<values.length; ++i)
+        {
+            values[i] = value(i);
+            pyramid.add(values[i], Double.NaN, Double.NaN);
+            pyramid.dropBefore(Math.max(0, i+1 - capacity));
+        }
+        final int first = values.length - capacity;
+        assertEquals(first, pyramid.getFirst());
+        final int[] indices = pyramid.reduce(first, values.length, 200, first);
+        check(indices, first, values.length, values);
+
+        // Samples before the first are not available
+        final int[] clamped = pyramid.reduce(0, values.length, 200, 0);
+        assertEquals(first, clamped[0]);
+
+        pyramid.clear();
+        assertEquals(0, pyramid.getCount());
+        assertEquals(0, pyramid.reduce(0, 10, 10, 0).length);
+    }
+}
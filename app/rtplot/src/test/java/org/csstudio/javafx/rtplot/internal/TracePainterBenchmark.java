@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.javafx.rtplot.internal;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.csstudio.javafx.rtplot.LineStyle;
+import org.csstudio.javafx.rtplot.PointType;
+import org.csstudio.javafx.rtplot.TraceType;
+import org.csstudio.javafx.rtplot.data.PlotDataItem;
+import org.csstudio.javafx.rtplot.data.PlotDataProvider;
+import org.csstudio.javafx.rtplot.data.SimpleDataItem;
+import org.csstudio.javafx.rtplot.internal.util.LinearScreenTransform;
+
+import javafx.scene.paint.Color;
+
+/** Benchmark for the {@link TracePainter}
+ *
+ *  <p>Paints AREA and LINES traces of 100k, 1M and 10M samples
+ *  into an off-screen image and prints the time per paint.
+ *  Other sample counts can be passed as arguments.
+ *  Not a unit test, run as a plain Java program.
+ */
+@SuppressWarnings("nls")
+public class TracePainterBenchmark
+{
+    private static final int WIDTH = 1000, HEIGHT = 600;
+
+    /** Data with min/max envelope and standard deviation,
+     *  provided from arrays without creating data items when painting
+     */
+    private static class Data implements PlotDataProvider<Double>
+    {
+        private final Lock lock = new ReentrantLock();
+        private final double[] values;
+
+        Data(final int size)
+        {
+            values = new double[size];
+            for (int i=0; i<size; ++i)
+                values[i] = Math.sin(i * 20.0 / size) + Math.cos(i * 0.37) * 0.2;
+        }
+
+        @Override
+        public Lock getLock()
+        {
+            return lock;
+        }
+
+        @Override
+        public int size()
+        {
+            return values.length;
+        }
+
+        @Override
+        public PlotDataItem<Double> get(final int index)
+        {
+            return new SimpleDataItem<>(getPosition(index), getValue(index), getStdDev(index),
+                                        getMin(index), getMax(index), null);
+        }
+
+        @Override
+        public Double getPosition(final int index)
+        {
+            return Double.valueOf(index);
+        }
+
+        @Override
+        public double getValue(final int index)
+        {
+            return values[index];
+        }
+
+        @Override
+        public double getStdDev(final int index)
+        {
+            return 0.1;
+        }
+
+        @Override
+        public double getMin(final int index)
+        {
+            return values[index] - 0.3;
+        }
+
+        @Override
+        public double getMax(final int index)
+        {
+            return values[index] + 0.3;
+        }
+    }
+
+    private static final PlotPartListener listener = new PlotPartListener()
+    {
+        @Override
+        public void layoutPlotPart(final PlotPart plotPart)
+        {
+        }
+
+        @Override
+        public void refreshPlotPart(final PlotPart plotPart)
+        {
+        }
+    };
+
+    private static double benchmark(final Graphics2D gc, final Data data, final TraceType type)
+    {
+        final Rectangle bounds = new Rectangle(0, 0, WIDTH, HEIGHT);
+        final LinearScreenTransform x_transform = new LinearScreenTransform();
+        x_transform.config(0.0, (double) data.size(), 0, WIDTH);
+        final YAxisImpl<Double> y_axis = new YAxisImpl<>("Y", listener);
+        y_axis.setBounds(0, 0, 50, HEIGHT);
+        y_axis.setValueRange(-2.0, 2.0);
+        final TraceImpl<Double> trace = new TraceImpl<>("Trace", "", data, Color.BLUE,
+                                                        type, 1, LineStyle.SOLID, PointType.NONE, 1, 0);
+        final TracePainter<Double> painter = new TracePainter<>();
+
+        // Warm up, then measure
+        final int runs = Math.max(1, 1_000_000 / data.size());
+        for (int i=0; i<runs; ++i)
+            painter.paint(gc, bounds, 50, x_transform, y_axis, trace);
+        final long start = System.nanoTime();
+        for (int i=0; i<runs; ++i)
+            painter.paint(gc, bounds, 50, x_transform, y_axis, trace);
+        return (System.nanoTime() - start) / 1e6 / runs;
+    }
+
+    public static void main(final String[] args)
+    {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D gc = image.createGraphics();
+        final int[] sizes = args.length > 0
+                          ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                          : new int[] { 100_000, 1_000_000, 10_000_000 };
+        for (int size : sizes)
+        {
+            final Data data = new Data(size);
+            for (TraceType type : new TraceType[] { TraceType.AREA, TraceType.LINES })
+                System.out.format("%-6s %,11d samples: %8.2f ms per paint\n",
+                                  type.name(), size, benchmark(gc, data, type));
+        }
+        gc.dispose();
+    }
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.javafx.rtplot.internal;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.csstudio.javafx.rtplot.LineStyle;
+import org.csstudio.javafx.rtplot.PointType;
+import org.csstudio.javafx.rtplot.TraceType;
+import org.csstudio.javafx.rtplot.data.PlotDataItem;
+import org.csstudio.javafx.rtplot.data.PlotDataProvider;
+import org.csstudio.javafx.rtplot.data.SimpleDataItem;
+import org.csstudio.javafx.rtplot.internal.util.LinearScreenTransform;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link TracePainter}
+ *
+ *  <p>Paints traces with many samples per pixel column
+ *  and compares them with the same traces painted from all samples,
+ *  without reducing each pixel column to its first, lowest, highest and last point.
+ */
+@SuppressWarnings("nls")
+public class TracePainterTest
+{
+    private static final int WIDTH = 100, HEIGHT = 100;
+
+    /** Samples per pixel column */
+    private static final int PER_COLUMN = 40;
+
+    /** Pixel columns that are all within a gap of the data */
+    private static final int GAP_START = 50, GAP_END = 60;
+
+    private static final int OPACITY = 50;
+
+    /** Data with min/max envelope, standard deviation and a gap */
+    private static class Data implements PlotDataProvider<Double>
+    {
+        private final Lock lock = new ReentrantLock();
+        private final double[] values = new double[WIDTH * PER_COLUMN];
+
+        Data()
+        {
+            for (int i=0; i<values.length; ++i)
+            {
+                // Gap of whole pixel columns, starting where samples round to the first gap column
+                final int column = i / PER_COLUMN;
+                if (i >= GAP_START * PER_COLUMN - PER_COLUMN / 2  &&  column < GAP_END)
+                    values[i] = Double.NaN;
+                else
+                    values[i] = 2.0 * Math.sin(i * 0.002) + ((i * 7919) % 13 - 6) * 0.05;
+            }
+        }
+
+        @Override
+        public Lock getLock()
+        {
+            return lock;
+        }
+
+        @Override
+        public int size()
+        {
+            return values.length;
+        }
+
+        @Override
+        public PlotDataItem<Double> get(final int index)
+        {
+            return new SimpleDataItem<>(getPosition(index), getValue(index), getStdDev(index),
+                                        getMin(index), getMax(index), null);
+        }
+
+        @Override
+        public Double getPosition(final int index)
+        {
+            return Double.valueOf(index);
+        }
+
+        @Override
+        public double getValue(final int index)
+        {
+            return values[index];
+        }
+
+        @Override
+        public double getStdDev(final int index)
+        {
+            return 0.2;
+        }
+
+        @Override
+        public double getMin(final int index)
+        {
+            return values[index] - 0.5 - (index % 7) * 0.05;
+        }
+
+        @Override
+        public double getMax(final int index)
+        {
+            return values[index] + 0.5 + (index % 5) * 0.05;
+        }
+    }
+
+    private static final PlotPartListener listener = new PlotPartListener()
+    {
+        @Override
+        public void layoutPlotPart(final PlotPart plotPart)
+        {
+        }
+
+        @Override
+        public void refreshPlotPart(final PlotPart plotPart)
+        {
+        }
+    };
+
+    private final Data data = new Data();
+    private final Rectangle bounds = new Rectangle(0, 0, WIDTH, HEIGHT);
+    private final LinearScreenTransform x_transform = new LinearScreenTransform();
+    private final YAxisImpl<Double> y_axis = new YAxisImpl<>("Y", listener);
+
+    public TracePainterTest()
+    {
+        x_transform.config(0.0, (double) data.size(), 0, WIDTH);
+        y_axis.setBounds(0, 0, 50, HEIGHT);
+        y_axis.setValueRange(-4.0, 4.0);
+    }
+
+    /** Screen coordinates of a polyline, separated into segments at gaps */
+    private static class Segments
+    {
+        final List<List<int[]>> segments = new ArrayList<>();
+        private List<int[]> current = null;
+
+        void add(final int x, final int y)
+        {
+            if (current == null)
+            {
+                current = new ArrayList<>();
+                segments.add(current);
+            }
+            current.add(new int[] { x, y });
+        }
+
+        void split()
+        {
+            current = null;
+        }
+
+        boolean isSegmentEmpty()
+        {
+            return current == null;
+        }
+
+        void draw(final Graphics2D gc)
+        {
+            for (List<int[]> segment : segments)
+            {
+                if (segment.size() == 1)
+                    gc.fillOval(segment.get(0)[0], segment.get(0)[1], 1, 1);
+                else
+                    gc.drawPolyline(segment.stream().mapToInt(p -> p[0]).toArray(),
+                                    segment.stream().mapToInt(p -> p[1]).toArray(),
+                                    segment.size());
+            }
+        }
+    }
+
+    /** Paint trace from all samples
+     *  @param type Line or area type
+     *  @return Image
+     */
+    private BufferedImage paintReference(final TraceType type)
+    {
+        final boolean area = type == TraceType.AREA  ||  type == TraceType.AREA_DIRECT;
+        final boolean min_max_lines = type == TraceType.LINES  ||  type == TraceType.LINES_DIRECT;
+        final boolean staircase = type == TraceType.AREA  ||  type == TraceType.LINES  ||  type == TraceType.SINGLE_LINE;
+
+        final Segments value_line = new Segments(), lower_line = new Segments(), upper_line = new Segments(),
+                       min_line = new Segments(), max_line = new Segments();
+        int last_x = -1, last_y = -1;
+        for (int i=0; i<data.size(); ++i)
+        {
+            final double pos = x_transform.transform(data.getPosition(i));
+            final double value = data.getValue(i);
+            final int ex = (int) pos;
+            if (Double.isNaN(value))
+            {
+                min_line.split();
+                max_line.split();
+                lower_line.split();
+                upper_line.split();
+                value_line.split();
+                continue;
+            }
+            min_line.add(ex, y_axis.getScreenCoord(data.getMin(i)));
+            max_line.add(ex, y_axis.getScreenCoord(data.getMax(i)));
+            lower_line.add(ex, y_axis.getScreenCoord(value - data.getStdDev(i)));
+            upper_line.add(ex, y_axis.getScreenCoord(value + data.getStdDev(i)));
+
+            final int x = (int) Math.round(pos);
+            final int y = y_axis.getScreenCoord(value);
+            if (staircase  &&  !value_line.isSegmentEmpty()  &&  x != last_x)
+                value_line.add(x, last_y);
+            value_line.add(x, y);
+            last_x = x;
+            last_y = y;
+        }
+
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D gc = image.createGraphics();
+        final Color color = Color.BLUE;
+        final Color tpcolor = new Color(color.getRed(), color.getGreen(), color.getBlue(), OPACITY);
+        if (area)
+        {
+            gc.setPaint(tpcolor);
+            for (int s=0; s<min_line.segments.size(); ++s)
+            {
+                final List<int[]> outline = new ArrayList<>(min_line.segments.get(s));
+                final List<int[]> upper = max_line.segments.get(s);
+                for (int i=upper.size()-1; i>=0; --i)
+                    outline.add(upper.get(i));
+                gc.fillPolygon(outline.stream().mapToInt(p -> p[0]).toArray(),
+                               outline.stream().mapToInt(p -> p[1]).toArray(),
+                               outline.size());
+            }
+            gc.setPaint(color);
+            lower_line.draw(gc);
+            upper_line.draw(gc);
+        }
+        else if (min_max_lines)
+        {
+            gc.setPaint(color);
+            min_line.draw(gc);
+            max_line.draw(gc);
+            gc.setPaint(tpcolor);
+            lower_line.draw(gc);
+            upper_line.draw(gc);
+        }
+        gc.setPaint(color);
+        value_line.draw(gc);
+        gc.dispose();
+        return image;
+    }
+
+    /** @param type Line or area type
+     *  @return Image painted by the {@link TracePainter}
+     */
+    private BufferedImage paint(final TraceType type)
+    {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D gc = image.createGraphics();
+        final TraceImpl<Double> trace = new TraceImpl<>("Trace", "", data, javafx.scene.paint.Color.BLUE,
+                                                        type, 1, LineStyle.SOLID, PointType.NONE, 1, 0);
+        new TracePainter<Double>().paint(gc, bounds, OPACITY, x_transform, y_axis, trace);
+        gc.dispose();
+        return image;
+    }
+
+    /** @param image Image
+     *  @param x Pixel column
+     *  @return Is any pixel of the column painted?
+     */
+    private static boolean isColumnPainted(final BufferedImage image, final int x)
+    {
+        for (int y=0; y<HEIGHT; ++y)
+            if (image.getRGB(x, y) != 0)
+                return true;
+        return false;
+    }
+
+    /** Check that a trace type paints the same pixels as the reference */
+    private void check(final TraceType type)
+    {
+        final BufferedImage image = paint(type);
+        final BufferedImage reference = paintReference(type);
+
+        int differences = 0;
+        for (int x=0; x<WIDTH; ++x)
+            for (int y=0; y<HEIGHT; ++y)
+                if (image.getRGB(x, y) != reference.getRGB(x, y))
+                    ++differences;
+        System.out.println(type.name() + ": " + differences + " pixels differ");
+        assertThat(type.name() + " differences", differences, equalTo(0));
+
+        // Lowest and highest value of each column is painted, nothing within the gap
+        for (int x=0; x<WIDTH; ++x)
+        {
+            if (x >= GAP_START  &&  x < GAP_END)
+            {
+                assertThat(type.name() + " gap at " + x, isColumnPainted(image, x), equalTo(false));
+                continue;
+            }
+            int low = Integer.MAX_VALUE, high = Integer.MIN_VALUE;
+            for (int i=x*PER_COLUMN; i<(x+1)*PER_COLUMN; ++i)
+            {
+                final double value = data.getValue(i);
+                if (Double.isNaN(value)  ||  (int) Math.round(x_transform.transform(data.getPosition(i))) != x)
+                    continue;
+                final int y = y_axis.getScreenCoord(value);
+                low = Math.min(low, y);
+                high = Math.max(high, y);
+            }
+            if (low > high)
+                continue;
+            assertThat(type.name() + " low at " + x, image.getRGB(x, low), equalTo(Color.BLUE.getRGB()));
+            assertThat(type.name() + " high at " + x, image.getRGB(x, high), equalTo(Color.BLUE.getRGB()));
+        }
+    }
+
+    @Test
+    public void testLines()
+    {
+        check(TraceType.LINES);
+        check(TraceType.LINES_DIRECT);
+        check(TraceType.SINGLE_LINE);
+        check(TraceType.SINGLE_LINE_DIRECT);
+    }
+
+    @Test
+    public void testArea()
+    {
+        check(TraceType.AREA);
+        check(TraceType.AREA_DIRECT);
+    }
+}
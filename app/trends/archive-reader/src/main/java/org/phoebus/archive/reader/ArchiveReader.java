@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017-2022 Oak Ridge National Laboratory.
+ * Copyright (c) 2017-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@ package org.phoebus.archive.reader;
 import java.io.Closeable;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /** Interface to archive data retrieval.
  *
@@ -107,6 +109,101 @@ public interface ArchiveReader extends Closeable
         return getRawValues(name, start, end);
     }
 
+    /** @return <code>true</code> if the batch calls for several channels
+     *          are implemented more efficiently than calling
+     *          the single-channel methods for each channel
+     */
+    public default boolean supportsBatchRequests()
+    {
+        return false;
+    }
+
+    /** Read original, raw samples for several channels
+     *
+     *  <p>The default implementation calls <code>getRawValues</code>
+     *  for each channel.
+     *  Readers that can fetch data for several channels in one request
+     *  override this and {@link #supportsBatchRequests()}.
+     *
+     *  @param names Channel names
+     *  @param start Start time
+     *  @param end End time
+     *  @return {@link ValueIterator} for the 'raw' samples by channel name.
+     *          Channels that are not known to the archive are not included.
+     *          Caller must close all iterators.
+     *  @throws Exception on error
+     */
+    public default Map<String, ValueIterator> getRawValues(final Collection<String> names,
+            final Instant start, final Instant end) throws Exception
+    {
+        final Map<String, ValueIterator> result = new HashMap<>();
+        try
+        {
+            for (String name : names)
+            {
+                try
+                {
+                    result.put(name, getRawValues(name, start, end));
+                }
+                catch (UnknownChannelException ex)
+                {
+                    // Not included in result
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            for (ValueIterator values : result.values())
+                values.close();
+            throw ex;
+        }
+        return result;
+    }
+
+    /** Read optimized samples for several channels
+     *
+     *  <p>The default implementation calls <code>getOptimizedValues</code>
+     *  for each channel.
+     *  Readers that can fetch data for several channels in one request
+     *  override this and {@link #supportsBatchRequests()}.
+     *
+     *  @param names Channel names
+     *  @param start Start time
+     *  @param end End time
+     *  @param count Hint for number of values per channel
+     *  @return {@link ValueIterator} for the 'optimized' samples by channel name.
+     *          Channels that are not known to the archive are not included.
+     *          Caller must close all iterators.
+     *  @throws Exception on error
+     *  @see #getOptimizedValues(String, Instant, Instant, int)
+     */
+    public default Map<String, ValueIterator> getOptimizedValues(final Collection<String> names,
+            final Instant start, final Instant end, final int count) throws Exception
+    {
+        final Map<String, ValueIterator> result = new HashMap<>();
+        try
+        {
+            for (String name : names)
+            {
+                try
+                {
+                    result.put(name, getOptimizedValues(name, start, end, count));
+                }
+                catch (UnknownChannelException ex)
+                {
+                    // Not included in result
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            for (ValueIterator values : result.values())
+                values.close();
+            throw ex;
+        }
+        return result;
+    }
+
     /** Cancel an ongoing get*() call. */
     public default void cancel()
     {
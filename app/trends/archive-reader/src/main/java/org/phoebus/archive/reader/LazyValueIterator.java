@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader;
+
+import static org.phoebus.archive.reader.ArchiveReaders.logger;
+
+import java.util.logging.Level;
+
+import org.epics.vtype.VType;
+
+/** Value Iterator that opens its data source when first used
+ *
+ *  <p>Allows returning iterators for many channels
+ *  without holding a connection or query for each of them
+ *  until the caller reads the samples.
+ *  An error while opening the data source is logged,
+ *  and the iterator then has no samples.
+ */
+public class LazyValueIterator implements ValueIterator
+{
+    /** Opens the actual iterator */
+    @FunctionalInterface
+    public interface Source
+    {
+        /** @return {@link ValueIterator}
+         *  @throws Exception on error
+         */
+        public ValueIterator open() throws Exception;
+    }
+
+    private final String name;
+    private Source source;
+    private ValueIterator values = null;
+
+    /** @param name Channel name, used to log errors
+     *  @param source Source for the samples
+     */
+    public LazyValueIterator(final String name, final Source source)
+    {
+        this.name = name;
+        this.source = source;
+    }
+
+    private synchronized ValueIterator getValues()
+    {
+        if (source != null)
+        {
+            try
+            {
+                values = source.open();
+            }
+            catch (Exception ex)
+            {
+                logger.log(Level.WARNING, "Error reading samples for " + name, ex);
+            }
+            source = null;
+        }
+        return values;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        final ValueIterator iter = getValues();
+        return iter != null  &&  iter.hasNext();
+    }
+
+    @Override
+    public VType next()
+    {
+        final ValueIterator iter = getValues();
+        if (iter == null)
+            throw new IllegalStateException("No samples for " + name);
+        return iter.next();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        source = null;
+        if (values != null)
+        {
+            try
+            {
+                values.close();
+            }
+            catch (Exception ex)
+            {
+                // Ignore
+            }
+            values = null;
+        }
+    }
+}
@@ -14,6 +14,11 @@ import org.epics.vtype.VType;
 import org.phoebus.core.vtypes.VTypeHelper;
 
 /** Merge values from several <code>ValueIterator</code> based on time stamps
+ *
+ *  <p>By default, all values are interleaved in time order.
+ *  Optionally, where the time ranges of the base iterators overlap,
+ *  the later iterator replaces the values of earlier iterators.
+ *  The time range of an iterator extends from its first to its last value.
  *  @author Kay Kasemir
  */
 public class MergingValueIterator implements ValueIterator
@@ -26,48 +31,110 @@ public class MergingValueIterator implements ValueIterator
 
     private VType value;
 
+    /** Index of the base iterator that provided <code>value</code> */
+    private int value_index = -1;
+
+    /** Index of the base iterator that provided the value last returned by next() */
+    private int last_index = -1;
+
+    /** Do later iterators replace the values of earlier iterators? */
+    final private boolean replace;
+
+    /** Time of the first value read from each base iterator, or <code>null</code> */
+    final private Instant first[];
+
+    /** Time of the last value read from each base iterator, or <code>null</code> */
+    final private Instant last[];
+
     /** Constructor.
      *  @param iters The 'base' iterators.
      *  @throws Exception on error in archive access
      */
     public MergingValueIterator(final ValueIterator... iters) throws Exception
+    {
+        this(false, iters);
+    }
+
+    /** Constructor.
+     *  @param replace Should later iterators replace the values of
+     *                 earlier iterators within their time range?
+     *  @param iters The 'base' iterators.
+     *  @throws Exception on error in archive access
+     */
+    public MergingValueIterator(final boolean replace, final ValueIterator... iters) throws Exception
     {
         this.iters = iters;
+        this.replace = replace;
+        first = new Instant[iters.length];
+        last = new Instant[iters.length];
 
         // Get first sample from each base iterator
         raw_data = new VType[iters.length];
         for (int i=0; i<iters.length; ++i)
-            raw_data[i] = iters[i].hasNext() ? iters[i].next() :  null;
+            read(i);
         fetchNext();
     }
 
+    /** Read next value of a base iterator
+     *  @param index Index of the base iterator
+     */
+    private void read(final int index)
+    {
+        raw_data[index] = iters[index].hasNext() ? iters[index].next() :  null;
+        if (raw_data[index] == null)
+            return;
+        last[index] = VTypeHelper.getTimestamp(raw_data[index]);
+        if (first[index] == null)
+            first[index] = last[index];
+    }
+
+    /** @param index Index of a base iterator
+     *  @param time Time of its value, not after the current value of any iterator
+     *  @return Is the time within the time range of a later iterator?
+     */
+    private boolean isReplaced(final int index, final Instant time)
+    {
+        // Later iterators that have not ended have a current value at or after 'time',
+        // so 'last' is the end of their time range as far as it matters
+        for (int i=index+1; i<iters.length; ++i)
+            if (first[i] != null  &&  !first[i].isAfter(time)  &&  !last[i].isBefore(time))
+                return true;
+        return false;
+    }
+
     /** Determine the next value, i.e. the oldest sample from the base iterators
      *  @throws Exception on error
      */
     private void fetchNext()
     {
-        // Find oldest time stamp
-        Instant time = null;
-        int index = -1;
-        for (int i=0; i<raw_data.length; ++i)
+        while (true)
         {
-            if (raw_data[i] == null)
-                continue;
-            final Instant sample_time = VTypeHelper.getTimestamp(raw_data[i]);
-            if (time == null  ||  sample_time.compareTo(time) < 0)
+            // Find oldest time stamp
+            Instant time = null;
+            int index = -1;
+            for (int i=0; i<raw_data.length; ++i)
             {
-                time = sample_time;
-                index = i;
+                if (raw_data[i] == null)
+                    continue;
+                final Instant sample_time = VTypeHelper.getTimestamp(raw_data[i]);
+                if (time == null  ||  sample_time.compareTo(time) < 0)
+                {
+                    time = sample_time;
+                    index = i;
+                }
             }
+            if (time == null)
+            {   // No channel left with any data.
+                raw_data = null;
+                value = null;
+                return;
+            }
+            value = raw_data[index];
+            value_index = index;
+            read(index);
+            if (! (replace  &&  isReplaced(index, time)))
+                return;
         }
-        if (time == null)
-        {   // No channel left with any data.
-            raw_data = null;
-            value = null;
-            return;
-        }
-        value = raw_data[index];
-        raw_data[index] = iters[index].hasNext() ? iters[index].next() :  null;
     }
 
     @Override
@@ -82,10 +149,19 @@ public class MergingValueIterator implements ValueIterator
         if (! hasNext())
             throw new IllegalStateException();
         final VType result = value;
+        last_index = value_index;
         fetchNext();
         return result;
     }
 
+    /** @return Index of the base iterator that provided
+     *          the value last returned by next(), or -1
+     */
+    public int getIteratorIndex()
+    {
+        return last_index;
+    }
+
     @Override
     public void close() throws IOException
     {
@@ -8,19 +8,29 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.epics.archiverappliance.retrieval.client.DataRetrieval;
 import org.epics.archiverappliance.retrieval.client.EpicsMessage;
 import org.epics.archiverappliance.retrieval.client.GenMsgIterator;
 import org.epics.archiverappliance.retrieval.client.RawDataRetrieval;
 import org.phoebus.archive.reader.ArchiveReader;
+import org.phoebus.archive.reader.LazyValueIterator;
 import org.phoebus.archive.reader.UnknownChannelException;
 import org.phoebus.archive.reader.ValueIterator;
+import org.phoebus.framework.jobs.NamedThreadFactory;
 import org.phoebus.ui.text.RegExHelper;
 import org.phoebus.util.time.TimestampHelper;
 
@@ -31,6 +41,10 @@ import org.phoebus.util.time.TimestampHelper;
  */
 public class ApplianceArchiveReader implements ArchiveReader, IteratorListener {
 
+    /** Threads that open the requests for several PVs, shared by all readers */
+    private static final ExecutorService fetchers = Executors.newFixedThreadPool(
+            Math.max(1, AppliancePreferences.concurrentRequests), new NamedThreadFactory("ApplianceFetch"));
+
     private final String httpURL;
     private final String pbrawURL;
     private final boolean useStatistics;
@@ -173,6 +187,92 @@ public class ApplianceArchiveReader implements ArchiveReader, IteratorListener {
         return it;
     }
 
+    /**
+     * With the shared HTTP client, the requests for several PVs are sent concurrently.
+     */
+    @Override
+    public boolean supportsBatchRequests() {
+        return AppliancePreferences.useHttpClient;
+    }
+
+    @Override
+    public Map<String, ValueIterator> getRawValues(Collection<String> names, Instant start, Instant end)
+            throws Exception {
+        if (!supportsBatchRequests()) {
+            return ArchiveReader.super.getRawValues(names, start, end);
+        }
+        Map<String, Callable<ValueIterator>> requests = new LinkedHashMap<>();
+        for (String name : names) {
+            requests.put(name, () -> getRawValues(name, start, end));
+        }
+        return fetchConcurrently(requests);
+    }
+
+    @Override
+    public Map<String, ValueIterator> getOptimizedValues(Collection<String> names, Instant start, Instant end,
+            int count) throws Exception {
+        if (!supportsBatchRequests()) {
+            return ArchiveReader.super.getOptimizedValues(names, start, end, count);
+        }
+        Map<String, Callable<ValueIterator>> requests = new LinkedHashMap<>();
+        for (String name : names) {
+            requests.put(name, () -> getOptimizedValues(name, start, end, count));
+        }
+        return fetchConcurrently(requests);
+    }
+
+    /**
+     * Runs the requests for several PVs concurrently. Each request returns as soon as
+     * the server responds, the samples are then decoded while the caller iterates over them.
+     *
+     * Each open response holds a connection or stream until its samples are read,
+     * so only the first <code>concurrentRequests</code> requests are opened right away.
+     * The remaining requests are opened when the caller starts to read their samples.
+     *
+     * @param requests requests by PV name
+     * @return iterators by PV name, without the PVs of the initial requests that are not known to the appliance
+     * @throws Exception if a request failed, in which case all iterators are closed
+     */
+    private Map<String, ValueIterator> fetchConcurrently(Map<String, Callable<ValueIterator>> requests)
+            throws Exception {
+        int limit = Math.max(1, AppliancePreferences.concurrentRequests);
+        Map<String, Future<ValueIterator>> futures = new LinkedHashMap<>();
+        Map<String, ValueIterator> result = new HashMap<>();
+        for (Map.Entry<String, Callable<ValueIterator>> request : requests.entrySet()) {
+            if (futures.size() < limit) {
+                futures.put(request.getKey(), fetchers.submit(request.getValue()));
+            } else {
+                result.put(request.getKey(), new LazyValueIterator(request.getKey(), request.getValue()::call));
+            }
+        }
+        Exception error = null;
+        for (Map.Entry<String, Future<ValueIterator>> future : futures.entrySet()) {
+            try {
+                ValueIterator values = future.getValue().get();
+                if (values != null) {
+                    result.put(future.getKey(), values);
+                }
+            } catch (ExecutionException ex) {
+                if (!(ex.getCause() instanceof UnknownChannelException) && error == null) {
+                    error = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                }
+            } catch (InterruptedException ex) {
+                for (Future<ValueIterator> pending : futures.values()) {
+                    pending.cancel(true);
+                }
+                error = ex;
+                break;
+            }
+        }
+        if (error != null) {
+            for (ValueIterator values : result.values()) {
+                values.close();
+            }
+            throw error;
+        }
+        return result;
+    }
+
     @Override
     public void cancel() {
         ApplianceValueIterator[] its = iterators.keySet().toArray(new ApplianceValueIterator[0]);
@@ -190,9 +290,12 @@ public class ApplianceArchiveReader implements ArchiveReader, IteratorListener {
      * Creates and returns DataRetrieval
      *
      * @param dataRetrievalURL URL
-     * @return dataRetrieval instance
+     * @return dataRetrieval instance, using the shared HTTP client unless disabled in the preferences
      */
     public DataRetrieval createDataRetriveal(String dataRetrievalURL) {
+        if (AppliancePreferences.useHttpClient) {
+            return new ApplianceDataRetrieval(dataRetrievalURL);
+        }
         return new RawDataRetrieval(dataRetrievalURL);
     }
 
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader.appliance;
+
+import static org.phoebus.archive.reader.ArchiveReaders.logger;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+
+import org.epics.archiverappliance.retrieval.client.DataRetrieval;
+import org.epics.archiverappliance.retrieval.client.GenMsgIterator;
+import org.epics.archiverappliance.retrieval.client.InputStreamBackedGenMsg;
+
+/**
+ * <code>ApplianceDataRetrieval</code> fetches PB data from the appliance
+ * with one {@link HttpClient} that is shared by all readers.
+ *
+ * <p>The client prefers HTTP/2, so requests for several PVs are multiplexed
+ * over one connection, and otherwise keeps HTTP/1.1 connections alive
+ * for the next request. Responses may be gzip-compressed.
+ * The samples are decoded while the response body streams in.
+ *
+ * <p>Unlike the {@link org.epics.archiverappliance.retrieval.client.RawDataRetrieval},
+ * this class is thread-safe.
+ */
+@SuppressWarnings("nls")
+public class ApplianceDataRetrieval implements DataRetrieval {
+
+    private static final HttpClient client = HttpClient.newBuilder()
+                                                       .version(HttpClient.Version.HTTP_2)
+                                                       .followRedirects(HttpClient.Redirect.NORMAL)
+                                                       .connectTimeout(Duration.ofSeconds(10))
+                                                       .build();
+
+    /**
+     * Format of the start and end time in a request: UTC with milliseconds,
+     * the same format that the {@link org.epics.archiverappliance.retrieval.client.RawDataRetrieval} uses.
+     * {@link java.time.Instant#toString()} would drop zero milliseconds and add micro- or nanoseconds.
+     */
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+                                                                  .withZone(ZoneOffset.UTC);
+
+    private final String url;
+
+    /**
+     * Constructor.
+     *
+     * @param url data retrieval URL, for example http://server:port/retrieval/data/getData.raw
+     */
+    public ApplianceDataRetrieval(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public GenMsgIterator getDataForPV(String pvName, Timestamp start, Timestamp end) {
+        return getDataForPV(pvName, start, end, false, null);
+    }
+
+    @Override
+    public GenMsgIterator getDataForPV(String pvName, Timestamp start, Timestamp end, boolean useReducedDataSet) {
+        return getDataForPV(pvName, start, end, useReducedDataSet, null);
+    }
+
+    @Override
+    public GenMsgIterator getDataForPV(String pvName, Timestamp start, Timestamp end, boolean useReducedDataSet,
+            HashMap<String, String> otherParams) {
+        final URI uri = URI.create(createRequestURL(pvName, start, end, useReducedDataSet, otherParams));
+        final HttpRequest request = HttpRequest.newBuilder(uri)
+                                               .header("Accept-Encoding", "gzip")
+                                               .GET()
+                                               .build();
+        try {
+            final HttpResponse<InputStream> response = client.send(request, BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                logger.log(Level.INFO, "No data for " + pvName + " from " + uri + ", HTTP status " + response.statusCode());
+                response.body().close();
+                return null;
+            }
+            InputStream stream = response.body();
+            if (response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+                stream = new GZIPInputStream(stream);
+            }
+            stream = new BufferedInputStream(stream);
+            // Empty response means there is no data for the PV
+            stream.mark(1);
+            if (stream.read() < 0) {
+                stream.close();
+                return null;
+            }
+            stream.reset();
+            return new InputStreamBackedGenMsg(stream);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Cannot fetch data from " + uri, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the URL for a data request.
+     *
+     * @param pvName name of the PV, which may include a post processing operator
+     * @param start start of the time window of the data
+     * @param end end of the time window of the data
+     * @param useReducedDataSet true if the server may return a reduced data set
+     * @param otherParams additional request parameters, may be null
+     * @return request URL
+     */
+    String createRequestURL(String pvName, Timestamp start, Timestamp end, boolean useReducedDataSet,
+            Map<String, String> otherParams) {
+        final StringBuilder buf = new StringBuilder(url);
+        buf.append(url.contains("?") ? "&pv=" : "?pv=").append(encode(pvName));
+        buf.append("&from=").append(encode(TIME_FORMAT.format(start.toInstant())));
+        buf.append("&to=").append(encode(TIME_FORMAT.format(end.toInstant())));
+        if (useReducedDataSet) {
+            buf.append("&usereduced=true");
+        }
+        if (otherParams != null) {
+            for (Map.Entry<String, String> param : otherParams.entrySet()) {
+                buf.append('&').append(param.getKey()).append('=').append(encode(param.getValue()));
+            }
+        }
+        return buf.toString();
+    }
+
+    private static String encode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8);
+    }
+}
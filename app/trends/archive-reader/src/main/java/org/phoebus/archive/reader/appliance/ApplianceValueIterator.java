@@ -110,8 +110,13 @@ public abstract class ApplianceValueIterator implements ValueIterator {
         otherParms.put("fetchLatestMetadata", "true");  // Include Metadata like EnumLabels in the headers
 
         DataRetrieval dataRetrieval = reader.createDataRetriveal(reader.getDataRetrievalURL());
-        synchronized(lock){
+        if (dataRetrieval instanceof ApplianceDataRetrieval) {
+            //thread-safe, so requests for several PVs can be sent concurrently
             mainStream = dataRetrieval.getDataForPV(pvName, sqlStartTimestamp, sqlEndTimestamp, false, otherParms);
+        } else {
+            synchronized(lock){
+                mainStream = dataRetrieval.getDataForPV(pvName, sqlStartTimestamp, sqlEndTimestamp, false, otherParms);
+            }
         }
         if (mainStream != null) {
             mainIterator = mainStream.iterator();
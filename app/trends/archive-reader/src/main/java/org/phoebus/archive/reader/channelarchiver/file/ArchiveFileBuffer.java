@@ -9,20 +9,50 @@ package org.phoebus.archive.reader.channelarchiver.file;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.phoebus.archive.reader.channelarchiver.XMLRPCArchiveReader;
+import org.phoebus.framework.preferences.AnnotatedPreferences;
+import org.phoebus.framework.preferences.Preference;
 
 /** Implements ByteBuffer-like relative get methods for getting binary data
  *  from a file. Created for use with ArchiveFileReader and associated classes.
+ *
+ *  <p>By default, files are mapped into memory, and all buffers
+ *  for the same file share the mapping while they use it.
+ *  Otherwise, or for files too large to map,
+ *  data is read through a heap buffer.
  *  @author Amanda Carpenter
  */
 @SuppressWarnings("nls")
 public class ArchiveFileBuffer implements AutoCloseable
 {
+    /** Map files into memory? */
+    @Preference static boolean memory_map_files;
+
+    static
+    {
+        AnnotatedPreferences.initialize(XMLRPCArchiveReader.class, ArchiveFileBuffer.class, "/channelarchiver_preferences.properties");
+    }
+
+    /** Mapped files, shared by all buffers.
+     *  A mapping is released once no buffer uses it.
+     */
+    private static final Map<File, WeakReference<MappedByteBuffer>> mappings = new HashMap<>();
+
     // XXX: what size? Bigger means less fetching, but too big means memory runs out;
-    private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+    private final ByteBuffer read_buffer = ByteBuffer.allocate(65536);
+    /** Either the read_buffer or a view of the mapped file */
+    private ByteBuffer buffer = read_buffer;
+    /** Is buffer a view of the mapped file? */
+    private boolean mapped = false;
     private FileChannel fileChannel;
     private File file = null;
 
@@ -49,9 +79,51 @@ public class ArchiveFileBuffer implements AutoCloseable
         {
             this.file = file;
             close();
-            fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            final ByteBuffer mapping = memory_map_files ? map(file) : null;
+            mapped = mapping != null;
+            if (mapped)
+                buffer = mapping;
+            else
+            {
+                buffer = read_buffer;
+                fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+        }
+        if (mapped)
+            buffer.position(0);
+        else
+            buffer.position(0).limit(0);
+    }
+
+    /** @param file File to map
+     *  @return View of the mapped file, or <code>null</code> if too large to map
+     *  @throws IOException on error
+     */
+    private static ByteBuffer map(final File file) throws IOException
+    {
+        synchronized (mappings)
+        {
+            mappings.values().removeIf(ref -> ref.get() == null);
+            final WeakReference<MappedByteBuffer> ref = mappings.get(file);
+            MappedByteBuffer mapping = ref == null ? null : ref.get();
+            final long size = file.length();
+            // Map again if file has grown
+            if (mapping == null  ||  mapping.capacity() != size)
+            {
+                if (size > Integer.MAX_VALUE)
+                    return null;
+                try
+                (
+                    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                )
+                {
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+                mappings.put(file, new WeakReference<>(mapping));
+            }
+            // Each view has its own position and keeps the mapping alive
+            return mapping.duplicate();
         }
-        buffer.position(0).limit(0);
     }
 
     /** @return File */
@@ -65,6 +137,9 @@ public class ArchiveFileBuffer implements AutoCloseable
      */
     public void prepareGet(int numBytes) throws IOException
     {
+        // Mapped buffer holds the complete file
+        if (mapped)
+            return;
         if (buffer.remaining() < numBytes)
         {
             buffer.compact();
@@ -124,7 +199,7 @@ public class ArchiveFileBuffer implements AutoCloseable
      */
     public byte get() throws IOException
     {
-        if (!buffer.hasRemaining())
+        if (!mapped  &&  !buffer.hasRemaining())
         {
             buffer.clear();
             buffer.limit(fileChannel.read(buffer));
@@ -149,6 +224,11 @@ public class ArchiveFileBuffer implements AutoCloseable
      */
     public void skip(int numBytes) throws IOException
     {
+        if (mapped)
+        {
+            buffer.position(buffer.position() + numBytes);
+            return;
+        }
         int numAlready = buffer.remaining();
         while (numBytes > numAlready)
         {
@@ -166,6 +246,12 @@ public class ArchiveFileBuffer implements AutoCloseable
      */
     public void offset(long offset) throws IOException
     {
+        if (mapped)
+        {
+            if (offset >= 0  &&  offset <= buffer.capacity())
+                buffer.position((int) offset);
+            return;
+        }
          if (offset < 0 || offset > fileChannel.size())
         {
             //throw new RuntimeException("Offset is invalid.") ?
@@ -202,6 +288,8 @@ public class ArchiveFileBuffer implements AutoCloseable
      */
     long offset() throws IOException
     {
+        if (mapped)
+            return buffer.position();
         return fileChannel.position() - buffer.limit() + buffer.position();
     }
 
@@ -214,6 +302,12 @@ public class ArchiveFileBuffer implements AutoCloseable
     @Override
     public void close() throws IOException
     {
+        if (mapped)
+        {   // Release view of the mapping
+            buffer = read_buffer;
+            buffer.position(0).limit(0);
+            mapped = false;
+        }
         if (fileChannel != null)
         {
             fileChannel.close();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017-2023 Oak Ridge National Laboratory.
+ * Copyright (c) 2017-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.text.NumberFormat;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -29,6 +30,7 @@ import org.epics.vtype.Time;
 import org.epics.vtype.VDouble;
 import org.epics.vtype.VDoubleArray;
 import org.epics.vtype.VEnum;
+import org.epics.vtype.VStatistics;
 import org.epics.vtype.VString;
 import org.epics.vtype.VType;
 import org.phoebus.archive.reader.ValueIterator;
@@ -46,6 +48,9 @@ abstract class AbstractRDBValueIterator implements ValueIterator
     final protected Connection connection;
     final protected int channel_id;
 
+    /** Was the connection obtained by this iterator, to be released on close? */
+    final private boolean release_connection;
+
     protected Display display = null;
     protected EnumDisplay labels = null;
 
@@ -73,12 +78,26 @@ abstract class AbstractRDBValueIterator implements ValueIterator
      */
     AbstractRDBValueIterator(final RDBArchiveReader reader,
             final int channel_id) throws Exception
+    {
+        this(reader, reader.getPool().getConnection(), true, channel_id);
+    }
+
+    /** @param reader {@link RDBArchiveReader}
+     *  @param connection Connection to use
+     *  @param release_connection Release connection to the pool on close?
+     *  @param channel_id ID of channel
+     *  @throws Exception on error
+     */
+    AbstractRDBValueIterator(final RDBArchiveReader reader,
+            final Connection connection, final boolean release_connection,
+            final int channel_id) throws Exception
     {
         this.reader = reader;
-        this.connection = reader.getPool().getConnection();
+        this.connection = connection;
+        this.release_connection = release_connection;
 
         // Disable auto-commit to determine sample with PostgreSQL when fetch direction is FETCH_FORWARD
-        if (reader.getPool().getDialect() == Dialect.PostgreSQL)
+        if (release_connection  &&  reader.getPool().getDialect() == Dialect.PostgreSQL)
             connection.setAutoCommit(false);
 
         this.channel_id = channel_id;
@@ -228,6 +247,75 @@ abstract class AbstractRDBValueIterator implements ValueIterator
         return VString.of(Objects.toString(txt), alarm, time);
     }
 
+    /** Extract value for a time bucket from SQL result
+     *  @param result ResultSet with columns WB, MIN, MAX, AVG, STDDEV, COUNT,
+     *                and last sample's SMPL_TIME, SEVERITY_ID, STATUS_ID, VALUE, NANOSECS (not Oracle)
+     *  @return Statistics for the bucket, or plain value if the bucket has only one sample
+     *  @throws Exception on error, including cancellation
+     *  @see SQL#sample_sel_aggregated_by_id_start_end
+     */
+    protected VType decodeAggregatedValue(final ResultSet result) throws Exception
+    {
+        final java.sql.Timestamp stamp = result.getTimestamp(7);
+        if (reader.getPool().getDialect() != Dialect.Oracle)
+            stamp.setNanos(result.getInt(11));
+        final Time time = TimeHelper.fromInstant(stamp.toInstant());
+
+        final String status = reader.getStatus(result.getInt(9));
+        final AlarmSeverity severity = filterSeverity(reader.getSeverity(result.getInt(8)), status);
+        final Alarm alarm = Alarm.of(severity, AlarmStatus.CLIENT, status);
+
+        final int n = result.getInt(6);
+        if (labels != null)
+            return VEnum.of((int) result.getDouble(10), labels, alarm, time);
+        if (n == 1)
+            return VDouble.of(result.getDouble(10), alarm, time, display);
+        return VStatistics.of(result.getDouble(4), result.getDouble(5),
+                              result.getDouble(2), result.getDouble(3), n,
+                              alarm, time, display);
+    }
+
+    /** Determine time of the sample at or before the start time,
+     *  so that the data includes the value that was valid at the start time
+     *  @param start Start time
+     *  @param end End time
+     *  @return Time of the sample at or before start, or start
+     *  @throws Exception on error, including cancellation
+     */
+    protected java.sql.Timestamp determineInitialTime(final Instant start, final Instant end) throws Exception
+    {
+        java.sql.Timestamp start_stamp = java.sql.Timestamp.from(start);
+        final PreparedStatement statement =
+                connection.prepareStatement(reader.getSQL().sample_sel_initial_time);
+        reader.addForCancellation(statement);
+        try
+        {
+            statement.setInt(1, channel_id);
+            statement.setTimestamp(2, start_stamp);
+            if (statement.getParameterMetaData().getParameterCount() == 3)
+                statement.setTimestamp(3, java.sql.Timestamp.from(end));
+            final ResultSet result = statement.executeQuery();
+            if (result.next())
+            {
+                final java.sql.Timestamp actual_start = result.getTimestamp(1);
+                if (actual_start != null)
+                {
+                    start_stamp = actual_start;
+                    // Oracle has nanoseconds in TIMESTAMP, MySQL in separate column
+                    if (reader.getPool().getDialect() == Dialect.MySQL || reader.getPool().getDialect() == Dialect.PostgreSQL)
+                        start_stamp.setNanos(result.getInt(2));
+                }
+            }
+            result.close();
+        }
+        finally
+        {
+            reader.removeFromCancellation(statement);
+            statement.close();
+        }
+        return start_stamp;
+    }
+
     /** @param severity Original severity
      *  @param status Status text
      *  @return If the status indicates that there is no actual value,
@@ -359,6 +447,9 @@ abstract class AbstractRDBValueIterator implements ValueIterator
             sel_array_samples = null;
         }
 
+        if (! release_connection)
+            return;
+
         if (reader.getPool().getDialect() == Dialect.PostgreSQL)
         {
             // Restore default auto-commit on result set close
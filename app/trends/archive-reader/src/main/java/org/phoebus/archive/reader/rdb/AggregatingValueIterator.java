@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader.rdb;
+
+import static org.phoebus.archive.reader.ArchiveReaders.logger;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.epics.vtype.VType;
+import org.phoebus.core.vtypes.VTypeHelper;
+import org.phoebus.util.time.TimeDuration;
+
+/** Value Iterator that provides 'optimized' data by letting
+ *  the RDB compute min/max/average/standard deviation/count per time bucket.
+ *
+ *  <p>Splits the time range into <code>count</code> buckets
+ *  and uses plain SQL with window functions, so it works
+ *  without installing a stored procedure.
+ *  Each bucket results in one sample, placed at the time of the
+ *  last sample within the bucket and using that sample's alarm.
+ *  Like the raw data, the result includes the sample
+ *  that was valid at the start time.
+ *  Samples without a numeric value, for example 'Archive_Off',
+ *  are returned as they are.
+ */
+@SuppressWarnings("nls")
+public class AggregatingValueIterator extends AbstractRDBValueIterator
+{
+    /** Values received from the RDB */
+    private List<VType> values = null;
+
+    /** Iteration index into <code>values</code>, points to what
+     *  <code>next()</code> will return or -1
+     */
+    private int index = -1;
+
+    /** Initialize
+     *  @param reader RDBArchiveReader
+     *  @param channel_id ID of channel
+     *  @param start Start time
+     *  @param end End time
+     *  @param count Number of time buckets
+     *  @throws Exception on error
+     */
+    public AggregatingValueIterator(final RDBArchiveReader reader,
+            final int channel_id, final Instant start, final Instant end,
+            final int count) throws Exception
+    {
+        super(reader, channel_id);
+        try
+        {
+            // Include the sample that was valid at the start time
+            final Timestamp initial = determineInitialTime(start, end);
+            final List<VType> buckets = readBuckets(start, initial, end, count);
+            final List<VType> others = readNonNumeric(initial, end);
+            values = merge(buckets, others);
+            if (values.size() > 0)
+                index = 0;
+            // else: No data, leave as -1
+        }
+        catch (Exception ex)
+        {
+            if (! RDBArchiveReader.isCancellation(ex))
+            {   // Caller won't get a valid iterator, so close here
+                super.close();
+                throw ex;
+            }
+            // Else: Not a real error; return empty iterator
+            logger.log(Level.FINE, "Aggregation cancelled");
+        }
+    }
+
+    /** Read min/max/average/standard deviation for each bucket
+     *  @param start Start time
+     *  @param initial Time of the sample at or before the start time
+     *  @param end End time
+     *  @param count Number of time buckets
+     *  @return One value per bucket that holds samples
+     *  @throws Exception on error
+     */
+    private List<VType> readBuckets(final Instant start, final Timestamp initial, final Instant end,
+                                    final int count) throws Exception
+    {
+        final double seconds = TimeDuration.toSecondsDouble(Duration.between(start, end)) / count;
+        final List<VType> buckets = new ArrayList<>(count);
+        final PreparedStatement statement = connection.prepareStatement(
+                reader.getSQL().sample_sel_aggregated_by_id_start_end);
+        reader.addForCancellation(statement);
+        try
+        {
+            statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+            statement.setFetchSize(RDBPreferences.fetch_size);
+            statement.setInt(1, count - 1);
+            statement.setDouble(2, seconds);
+            statement.setTimestamp(3, Timestamp.from(start));
+            statement.setInt(4, channel_id);
+            statement.setTimestamp(5, initial);
+            statement.setTimestamp(6, Timestamp.from(end));
+            final ResultSet result = statement.executeQuery();
+            while (result.next())
+                buckets.add(decodeAggregatedValue(result));
+            result.close();
+        }
+        finally
+        {
+            reader.removeFromCancellation(statement);
+            statement.close();
+        }
+        return buckets;
+    }
+
+    /** Read samples that have no numeric value
+     *  @param start Start time, including the sample that was valid at the start time
+     *  @param end End time
+     *  @return String samples
+     *  @throws Exception on error
+     */
+    private List<VType> readNonNumeric(final Timestamp start, final Instant end) throws Exception
+    {
+        final List<VType> others = new ArrayList<>();
+        final PreparedStatement statement = connection.prepareStatement(
+                reader.getSQL().sample_sel_non_numeric_by_id_start_end);
+        reader.addForCancellation(statement);
+        try
+        {
+            statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+            statement.setFetchSize(RDBPreferences.fetch_size);
+            statement.setInt(1, channel_id);
+            statement.setTimestamp(2, start);
+            statement.setTimestamp(3, Timestamp.from(end));
+            final ResultSet result = statement.executeQuery();
+            while (result.next())
+                others.add(decodeSampleTableValue(result, false));
+            result.close();
+        }
+        finally
+        {
+            reader.removeFromCancellation(statement);
+            statement.close();
+        }
+        return others;
+    }
+
+    /** @param buckets Bucket values in time order
+     *  @param others Other samples in time order
+     *  @return All values in time order
+     */
+    static List<VType> merge(final List<VType> buckets, final List<VType> others)
+    {
+        if (others.isEmpty())
+            return buckets;
+        final List<VType> merged = new ArrayList<>(buckets.size() + others.size());
+        int b = 0, o = 0;
+        while (b < buckets.size()  &&  o < others.size())
+        {
+            final Instant bt = VTypeHelper.getTimestamp(buckets.get(b));
+            final Instant ot = VTypeHelper.getTimestamp(others.get(o));
+            if (bt.compareTo(ot) <= 0)
+                merged.add(buckets.get(b++));
+            else
+                merged.add(others.get(o++));
+        }
+        while (b < buckets.size())
+            merged.add(buckets.get(b++));
+        while (o < others.size())
+            merged.add(others.get(o++));
+        return merged;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext()
+    {
+        return index >= 0;
+    }
+
+    @Override
+    public VType next()
+    {
+        final VType result = values.get(index);
+        ++index;
+        if (index >= values.size())
+            index = -1;
+        return result;
+    }
+
+    @Override
+    public void close()
+    {
+        index = -1;
+        values = null;
+        super.close();
+    }
+}
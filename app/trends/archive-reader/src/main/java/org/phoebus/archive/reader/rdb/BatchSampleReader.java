@@ -0,0 +1,530 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader.rdb;
+
+import static org.phoebus.archive.reader.ArchiveReaders.logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import org.epics.vtype.VType;
+import org.phoebus.archive.reader.AveragedValueIterator;
+import org.phoebus.archive.reader.LazyValueIterator;
+import org.phoebus.archive.reader.ValueIterator;
+import org.phoebus.framework.rdb.RDBInfo.Dialect;
+import org.phoebus.util.time.TimeDuration;
+
+/** Reads samples for several channels with one query per batch of channels
+ *
+ *  <p>Uses a single connection.
+ *  The samples are read into memory, so the returned iterators
+ *  no longer need the connection.
+ *  Channels that would exceed the memory limit for a batch
+ *  are streamed like a single-channel request,
+ *  opening their query when the iterator is first used.
+ */
+@SuppressWarnings("nls")
+class BatchSampleReader
+{
+    /** Maximum number of channels in one query, Oracle allows up to 1000 list elements */
+    private static final int MAX_CHANNELS = 500;
+
+    /** Maximum number of raw samples that a batch reads into memory */
+    private static final int MAX_SAMPLES = 100000;
+
+    /** Samples of one channel, using the meta data of the channel to decode them */
+    private static class Samples extends AbstractRDBValueIterator
+    {
+        private final List<VType> values = new ArrayList<>();
+        private int index = 0;
+
+        Samples(final RDBArchiveReader reader, final Connection connection, final int channel_id) throws Exception
+        {
+            super(reader, connection, false, channel_id);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return index < values.size();
+        }
+
+        @Override
+        public VType next()
+        {
+            return values.get(index++);
+        }
+    }
+
+    private final RDBArchiveReader reader;
+
+    /** Channel IDs by name */
+    private final Map<String, Integer> channels;
+
+    /** @param reader {@link RDBArchiveReader}
+     *  @param channels Channel IDs by name
+     */
+    BatchSampleReader(final RDBArchiveReader reader, final Map<String, Integer> channels)
+    {
+        this.reader = reader;
+        this.channels = channels;
+    }
+
+    /** @param start Start time
+     *  @param end End time
+     *  @return Raw samples by channel name
+     *  @throws Exception on error
+     */
+    Map<String, ValueIterator> readRaw(final Instant start, final Instant end) throws Exception
+    {
+        final Map<String, ValueIterator> result = new HashMap<>();
+        if (channels.isEmpty())
+            return result;
+        final Connection connection = getConnection();
+        try
+        {
+            final Map<String, Samples> by_name = new HashMap<>();
+            final Map<Integer, List<Samples>> samples = createSamples(connection, by_name);
+
+            // Read what fits into memory, stream the rest
+            final Map<Integer, Integer> counted = countSamples(connection, samples.keySet(), start, end);
+            final Set<Integer> in_memory = selectInMemory(samples.keySet(), counted, MAX_SAMPLES);
+            logger.log(Level.FINER, () -> "Batch of " + samples.size() + " channels: " +
+                                          in_memory.size() + " read, " + (samples.size() - in_memory.size()) + " streamed");
+            readRaw(connection, select(samples, in_memory), start, end);
+            for (Map.Entry<String, Samples> entry : by_name.entrySet())
+            {
+                final int channel_id = entry.getValue().channel_id;
+                if (in_memory.contains(channel_id))
+                    result.put(entry.getKey(), entry.getValue());
+                else
+                    result.put(entry.getKey(), new LazyValueIterator(entry.getKey(),
+                                                                     () -> reader.getRawValues(channel_id, start, end)));
+            }
+            closeStatements(samples);
+        }
+        finally
+        {
+            releaseConnection(connection);
+        }
+        return result;
+    }
+
+    /** @param start Start time
+     *  @param end End time
+     *  @param count Number of time buckets
+     *  @return Optimized samples by channel name
+     *  @throws Exception on error
+     */
+    Map<String, ValueIterator> readOptimized(final Instant start, final Instant end, final int count) throws Exception
+    {
+        final Map<String, ValueIterator> result = new HashMap<>();
+        if (channels.isEmpty())
+            return result;
+        final Connection connection = getConnection();
+        try
+        {
+            final Map<String, Samples> by_name = new HashMap<>();
+            final Map<Integer, List<Samples>> samples = createSamples(connection, by_name);
+
+            // Channels with only a few samples return raw data,
+            // the others are aggregated
+            final Map<Integer, Integer> counted = countSamples(connection, samples.keySet(), start, end);
+            final List<Integer> raw = new ArrayList<>();
+            final Set<Integer> reduced = new HashSet<>();
+            for (int channel_id : samples.keySet())
+                if (counted.getOrDefault(channel_id, 0) < count)
+                    raw.add(channel_id);
+                else
+                    reduced.add(channel_id);
+            final Set<Integer> in_memory = selectInMemory(raw, counted, MAX_SAMPLES);
+            logger.log(Level.FINER, () -> "Batch of " + samples.size() + " channels: " +
+                                          raw.size() + " raw, " + reduced.size() + " reduced to " + count + " bins");
+            readRaw(connection, select(samples, in_memory), start, end);
+
+            // Buckets are limited by the count, so aggregated samples are read into memory.
+            // Without aggregation, the raw data of each channel is streamed and averaged.
+            final boolean aggregated = reader.useSQLAggregation()  &&
+                                       readAggregated(connection, select(samples, reduced), start, end, count);
+            final double seconds = TimeDuration.toSecondsDouble(Duration.between(start, end)) / count;
+            for (Map.Entry<String, Samples> entry : by_name.entrySet())
+            {
+                final int channel_id = entry.getValue().channel_id;
+                if (in_memory.contains(channel_id)  ||  (aggregated  &&  reduced.contains(channel_id)))
+                    result.put(entry.getKey(), entry.getValue());
+                else if (reduced.contains(channel_id))
+                    result.put(entry.getKey(), new LazyValueIterator(entry.getKey(),
+                            () -> new AveragedValueIterator(reader.getRawValues(channel_id, start, end), seconds)));
+                else
+                    result.put(entry.getKey(), new LazyValueIterator(entry.getKey(),
+                                                                     () -> reader.getRawValues(channel_id, start, end)));
+            }
+            closeStatements(samples);
+        }
+        finally
+        {
+            releaseConnection(connection);
+        }
+        return result;
+    }
+
+    /** @return Connection, prepared for forward-only queries
+     *  @throws Exception on error
+     */
+    private Connection getConnection() throws Exception
+    {
+        final Connection connection = reader.getPool().getConnection();
+        // Disable auto-commit to determine sample with PostgreSQL when fetch direction is FETCH_FORWARD
+        if (reader.getPool().getDialect() == Dialect.PostgreSQL)
+            connection.setAutoCommit(false);
+        return connection;
+    }
+
+    /** @param connection Connection to restore and return to pool */
+    private void releaseConnection(final Connection connection)
+    {
+        if (reader.getPool().getDialect() == Dialect.PostgreSQL)
+        {
+            try
+            {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            catch (Exception ex)
+            {
+                // Ignore
+            }
+        }
+        reader.getPool().releaseConnection(connection);
+    }
+
+    /** Read meta data for all channels
+     *  @param connection Connection
+     *  @param by_name Map that receives {@link Samples} by channel name
+     *  @return {@link Samples} by channel ID, a list in case several names refer to the same ID
+     *  @throws Exception on error
+     */
+    private Map<Integer, List<Samples>> createSamples(final Connection connection,
+                                                      final Map<String, Samples> by_name) throws Exception
+    {
+        final Map<Integer, List<Samples>> samples = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : channels.entrySet())
+        {
+            final Samples s = new Samples(reader, connection, entry.getValue());
+            samples.computeIfAbsent(entry.getValue(), id -> new ArrayList<>()).add(s);
+            by_name.put(entry.getKey(), s);
+        }
+        return samples;
+    }
+
+    /** @param samples Samples by channel ID
+     *  @param channel_ids Channel IDs to select
+     *  @return Samples for just the selected channel IDs
+     */
+    private static Map<Integer, List<Samples>> select(final Map<Integer, List<Samples>> samples,
+                                                      final Set<Integer> channel_ids)
+    {
+        final Map<Integer, List<Samples>> selected = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Samples>> entry : samples.entrySet())
+            if (channel_ids.contains(entry.getKey()))
+                selected.put(entry.getKey(), entry.getValue());
+        return selected;
+    }
+
+    /** Determine which channels are read into memory
+     *
+     *  <p>Channels are added in order while their samples,
+     *  including the one at the start time, fit the limit.
+     *  A channel that's too large is skipped,
+     *  but smaller channels after it can still be added.
+     *
+     *  @param channel_ids Channel IDs
+     *  @param counted Sample count by channel ID
+     *  @param max_samples Maximum total number of samples
+     *  @return IDs of channels to read into memory.
+     *          The remaining channels need to be streamed.
+     */
+    static Set<Integer> selectInMemory(final Iterable<Integer> channel_ids, final Map<Integer, Integer> counted,
+                                       final int max_samples)
+    {
+        final Set<Integer> in_memory = new HashSet<>();
+        long total = 0;
+        for (int channel_id : channel_ids)
+        {
+            final long needed = counted.getOrDefault(channel_id, 0) + 1L;
+            if (total + needed <= max_samples)
+            {
+                total += needed;
+                in_memory.add(channel_id);
+            }
+        }
+        return in_memory;
+    }
+
+    /** @param channel_ids Channel IDs
+     *  @return Channel IDs in groups of at most MAX_CHANNELS
+     */
+    private static List<List<Integer>> split(final Iterable<Integer> channel_ids)
+    {
+        return split(channel_ids, MAX_CHANNELS);
+    }
+
+    /** @param channel_ids Channel IDs
+     *  @param max_channels Maximum number of channels per group
+     *  @return Channel IDs in groups of at most max_channels
+     */
+    static List<List<Integer>> split(final Iterable<Integer> channel_ids, final int max_channels)
+    {
+        final List<List<Integer>> batches = new ArrayList<>();
+        List<Integer> batch = null;
+        for (int channel_id : channel_ids)
+        {
+            if (batch == null  ||  batch.size() >= max_channels)
+            {
+                batch = new ArrayList<>();
+                batches.add(batch);
+            }
+            batch.add(channel_id);
+        }
+        return batches;
+    }
+
+    /** @param connection Connection
+     *  @param channel_ids Channel IDs
+     *  @param start Start time
+     *  @param end End time
+     *  @return Sample count by channel ID
+     *  @throws Exception on error
+     */
+    private Map<Integer, Integer> countSamples(final Connection connection, final Iterable<Integer> channel_ids,
+                                               final Instant start, final Instant end) throws Exception
+    {
+        final Map<Integer, Integer> counted = new HashMap<>();
+        for (List<Integer> batch : split(channel_ids))
+        {
+            final PreparedStatement statement = connection.prepareStatement(
+                    reader.getSQL().sample_count_by_ids_start_end(batch.size()));
+            reader.addForCancellation(statement);
+            try
+            {
+                int p = 0;
+                for (int channel_id : batch)
+                    statement.setInt(++p, channel_id);
+                statement.setTimestamp(++p, Timestamp.from(start));
+                statement.setTimestamp(++p, Timestamp.from(end));
+                final ResultSet result = statement.executeQuery();
+                while (result.next())
+                    counted.put(result.getInt(1), result.getInt(2));
+                result.close();
+            }
+            finally
+            {
+                reader.removeFromCancellation(statement);
+                statement.close();
+            }
+        }
+        return counted;
+    }
+
+    /** Read raw samples into memory
+     *  @param connection Connection
+     *  @param samples Samples by channel ID that receive the data
+     *  @param start Start time
+     *  @param end End time
+     *  @throws Exception on error
+     */
+    private void readRaw(final Connection connection, final Map<Integer, List<Samples>> samples,
+                         final Instant start, final Instant end) throws Exception
+    {
+        for (List<Integer> batch : split(samples.keySet()))
+        {
+            // Include the sample that was valid at the start time
+            final List<Timestamp> starts = new ArrayList<>(batch.size());
+            for (int channel_id : batch)
+                starts.add(samples.get(channel_id).get(0).determineInitialTime(start, end));
+
+            final PreparedStatement statement = connection.prepareStatement(
+                    reader.getSQL().sample_sel_by_ids_start_end(batch.size(), RDBPreferences.use_array_blob),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            reader.addForCancellation(statement);
+            try
+            {
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                statement.setFetchSize(RDBPreferences.fetch_size);
+                int p = 0;
+                for (int i=0; i<batch.size(); ++i)
+                {
+                    statement.setInt(++p, batch.get(i));
+                    statement.setTimestamp(++p, starts.get(i));
+                }
+                statement.setTimestamp(++p, Timestamp.from(end));
+                final ResultSet result = statement.executeQuery();
+                while (result.next())
+                {
+                    final List<Samples> list = samples.get(result.getInt("channel_id"));
+                    final VType value = list.get(0).decodeSampleTableValue(result, true);
+                    for (Samples s : list)
+                        s.values.add(value);
+                }
+                result.close();
+            }
+            finally
+            {
+                reader.removeFromCancellation(statement);
+                statement.close();
+            }
+        }
+    }
+
+    /** Read min/max/average/standard deviation for time buckets
+     *  @param connection Connection
+     *  @param samples Samples by channel ID that receive the data
+     *  @param start Start time
+     *  @param end End time
+     *  @param count Number of time buckets
+     *  @return <code>true</code> if samples were read,
+     *          <code>false</code> if the RDB does not support the aggregation
+     *  @throws Exception on error
+     */
+    private boolean readAggregated(final Connection connection, final Map<Integer, List<Samples>> samples,
+                                   final Instant start, final Instant end, final int count) throws Exception
+    {
+        try
+        {
+            readAggregatedBatches(connection, samples, start, end, count);
+            return true;
+        }
+        catch (Exception ex)
+        {
+            if (! reader.disableSQLAggregation(ex))
+                throw ex;
+            // Failed statement aborts the transaction for PostgreSQL
+            if (! connection.getAutoCommit())
+                connection.rollback();
+            for (List<Samples> list : samples.values())
+                for (Samples s : list)
+                    s.values.clear();
+            return false;
+        }
+    }
+
+    /** @param connection Connection
+     *  @param samples Samples by channel ID that receive the data
+     *  @param start Start time
+     *  @param end End time
+     *  @param count Number of time buckets
+     *  @throws Exception on error
+     */
+    private void readAggregatedBatches(final Connection connection, final Map<Integer, List<Samples>> samples,
+                                       final Instant start, final Instant end, final int count) throws Exception
+    {
+        final double seconds = TimeDuration.toSecondsDouble(Duration.between(start, end)) / count;
+        for (List<Integer> batch : split(samples.keySet()))
+        {
+            // Include the sample that was valid at the start time
+            final List<Timestamp> starts = new ArrayList<>(batch.size());
+            for (int channel_id : batch)
+                starts.add(samples.get(channel_id).get(0).determineInitialTime(start, end));
+
+            PreparedStatement statement = connection.prepareStatement(
+                    reader.getSQL().sample_sel_aggregated_by_ids_start_end(batch.size()));
+            reader.addForCancellation(statement);
+            try
+            {
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                statement.setFetchSize(RDBPreferences.fetch_size);
+                int p = 0;
+                statement.setInt(++p, count - 1);
+                statement.setDouble(++p, seconds);
+                statement.setTimestamp(++p, Timestamp.from(start));
+                for (int i=0; i<batch.size(); ++i)
+                {
+                    statement.setInt(++p, batch.get(i));
+                    statement.setTimestamp(++p, starts.get(i));
+                }
+                statement.setTimestamp(++p, Timestamp.from(end));
+                final ResultSet result = statement.executeQuery();
+                while (result.next())
+                {
+                    final List<Samples> list = samples.get(result.getInt("channel_id"));
+                    final VType value = list.get(0).decodeAggregatedValue(result);
+                    for (Samples s : list)
+                        s.values.add(value);
+                }
+                result.close();
+            }
+            finally
+            {
+                reader.removeFromCancellation(statement);
+                statement.close();
+            }
+
+            // Samples that cannot be aggregated
+            final Map<Integer, List<VType>> others = new HashMap<>();
+            statement = connection.prepareStatement(
+                    reader.getSQL().sample_sel_non_numeric_by_ids_start_end(batch.size()));
+            reader.addForCancellation(statement);
+            try
+            {
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                statement.setFetchSize(RDBPreferences.fetch_size);
+                int p = 0;
+                for (int i=0; i<batch.size(); ++i)
+                {
+                    statement.setInt(++p, batch.get(i));
+                    statement.setTimestamp(++p, starts.get(i));
+                }
+                statement.setTimestamp(++p, Timestamp.from(end));
+                final ResultSet result = statement.executeQuery();
+                while (result.next())
+                {
+                    final int channel_id = result.getInt("channel_id");
+                    others.computeIfAbsent(channel_id, id -> new ArrayList<>())
+                          .add(samples.get(channel_id).get(0).decodeSampleTableValue(result, false));
+                }
+                result.close();
+            }
+            finally
+            {
+                reader.removeFromCancellation(statement);
+                statement.close();
+            }
+
+            for (Map.Entry<Integer, List<VType>> entry : others.entrySet())
+                for (Samples s : samples.get(entry.getKey()))
+                {
+                    final List<VType> merged = AggregatingValueIterator.merge(new ArrayList<>(s.values), entry.getValue());
+                    s.values.clear();
+                    s.values.addAll(merged);
+                }
+        }
+    }
+
+    /** Close statements that the samples might have created on the connection,
+     *  keeping the values that have been read
+     *  @param samples Samples by channel ID
+     */
+    private static void closeStatements(final Map<Integer, List<Samples>> samples)
+    {
+        for (List<Samples> list : samples.values())
+            for (Samples s : list)
+                s.close();
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017-2022 Oak Ridge National Laboratory.
+ * Copyright (c) 2017-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,12 +12,15 @@ import static org.phoebus.archive.reader.ArchiveReaders.logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -60,6 +63,11 @@ public class RDBArchiveReader implements ArchiveReader
     /** Active statements to cancel in cancel() */
     private final List<Statement> cancellable_statements = new ArrayList<>();
 
+    /** Compute 'optimized' data in the RDB?
+     *  Cleared when the RDB does not support the query.
+     */
+    private volatile boolean sql_aggregation = RDBPreferences.sql_aggregation;
+
     /** @param url RDB URL
      *  @throws Exception on error
      */
@@ -307,22 +315,116 @@ public class RDBArchiveReader implements ArchiveReader
         {
             pool.releaseConnection(connection);
         }
-        // Fetch raw data and perform averaging
-        final ValueIterator raw_data = getRawValues(channel_id, start, end);
-
         // If there weren't that many, that's it
         final int actual = counted;
         if (counted < count)
         {
             logger.log(Level.FINER, () -> name + " has only " + actual + " samples, using raw data");
-            return raw_data;
+            return getRawValues(channel_id, start, end);
+        }
+
+        // Let RDB compute min/max/average per bucket?
+        if (useSQLAggregation())
+        {
+            logger.log(Level.FINER, () -> name + " has " + actual + " samples, aggregating into " + count + " bins in RDB");
+            try
+            {
+                return new AggregatingValueIterator(this, channel_id, start, end, count);
+            }
+            catch (Exception ex)
+            {
+                if (! disableSQLAggregation(ex))
+                    throw ex;
+            }
         }
-        // Else: Perform averaging to reduce sample count
+
+        // Else: Fetch raw data and perform averaging to reduce sample count
+        final ValueIterator raw_data = getRawValues(channel_id, start, end);
         final double seconds = TimeDuration.toSecondsDouble(Duration.between(start, end)) / count;
         logger.log(Level.FINER, () -> name + " has " + actual + " samples, averaging into " + count + " bins");
         return new AveragedValueIterator(raw_data, seconds);
     }
 
+    @Override
+    public boolean supportsBatchRequests()
+    {
+        return true;
+    }
+
+    @Override
+    public Map<String, ValueIterator> getRawValues(final Collection<String> names,
+            final Instant start, final Instant end) throws Exception
+    {
+        return new BatchSampleReader(this, getChannelIDs(names)).readRaw(start, end);
+    }
+
+    @Override
+    public Map<String, ValueIterator> getOptimizedValues(final Collection<String> names,
+            final Instant start, final Instant end, final int count) throws Exception
+    {
+        if (count <= 1)
+            throw new Exception("Count must be > 1");
+        // Stored procedure handles one channel at a time
+        if (! RDBPreferences.stored_procedure.isEmpty())
+            return ArchiveReader.super.getOptimizedValues(names, start, end, count);
+        return new BatchSampleReader(this, getChannelIDs(names)).readOptimized(start, end, count);
+    }
+
+    /** @return Compute 'optimized' data in the RDB? */
+    boolean useSQLAggregation()
+    {
+        return sql_aggregation;
+    }
+
+    /** Disable aggregation in the RDB if it's not supported
+     *
+     *  <p>The aggregation query uses window functions,
+     *  which for example MySQL before version 8 does not support.
+     *
+     *  @param ex Error from an aggregation query
+     *  @return <code>true</code> if the error indicates that the RDB does not support the query
+     *          and aggregation has been disabled,
+     *          <code>false</code> for other errors
+     */
+    boolean disableSQLAggregation(final Exception ex)
+    {
+        // SQL state class 42: Syntax error or access rule violation
+        for (Throwable error = ex;  error != null;  error = error.getCause())
+            if (error instanceof SQLException  &&
+                ((SQLException) error).getSQLState() != null  &&
+                ((SQLException) error).getSQLState().startsWith("42"))
+            {
+                if (sql_aggregation)
+                {
+                    sql_aggregation = false;
+                    logger.log(Level.WARNING, "RDB does not support aggregation, reading raw samples instead", ex);
+                }
+                return true;
+            }
+        return false;
+    }
+
+    /** @param names Channel names
+     *  @return Numeric channel IDs by name, skipping unknown channels
+     *  @throws Exception on error
+     */
+    private Map<String, Integer> getChannelIDs(final Collection<String> names) throws Exception
+    {
+        final Map<String, Integer> ids = new LinkedHashMap<>();
+        for (String name : names)
+        {
+            try
+            {
+                ids.put(name, getChannelID(name));
+            }
+            catch (UnknownChannelException ex)
+            {
+                logger.log(Level.FINE, "Unknown channel {0}", name);
+            }
+        }
+        return ids;
+    }
+
     /** @param name Channel name
      *  @return Numeric channel ID
      *  @throws UnknownChannelException when channel not known
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018-2020 Oak Ridge National Laboratory.
+ * Copyright (c) 2018-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ public class RDBPreferences
     @Preference static boolean use_array_blob;
     @Preference static String stored_procedure;
     @Preference static String starttime_function;
+    @Preference static boolean sql_aggregation;
     @Preference static int fetch_size;
     @Preference static String[] equivalent_pv_prefixes;
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017-2020 Oak Ridge National Laboratory.
+ * Copyright (c) 2017-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,7 +16,6 @@ import java.time.Instant;
 import java.util.logging.Level;
 
 import org.epics.vtype.VType;
-import org.phoebus.framework.rdb.RDBInfo.Dialect;
 
 /** Value Iterator that reads from the SAMPLE table.
  *  @author Kay Kasemir
@@ -75,40 +74,9 @@ public class RawSampleIterator extends AbstractRDBValueIterator
      */
     private void determineInitialSample(final Instant start, final Instant end) throws Exception
     {
-        Timestamp start_stamp = Timestamp.from(start);
-        final Timestamp end_stamp = Timestamp.from(end);
-
         // Get time of initial sample
-        final PreparedStatement statement =
-                connection.prepareStatement(reader.getSQL().sample_sel_initial_time);
-        reader.addForCancellation(statement);
-        try
-        {
-            statement.setInt(1, channel_id);
-            statement.setTimestamp(2, start_stamp);
-            if (statement.getParameterMetaData().getParameterCount() == 3)
-                statement.setTimestamp(3, end_stamp);
-            final ResultSet result = statement.executeQuery();
-            if (result.next())
-            {
-                // System.out.print("Start time corrected from " + start_stamp);
-                final Timestamp actual_start = result.getTimestamp(1);
-                if (actual_start != null)
-                {
-                    start_stamp = actual_start;
-                    // Oracle has nanoseconds in TIMESTAMP, MySQL in separate column
-                    if (reader.getPool().getDialect() == Dialect.MySQL || reader.getPool().getDialect() == Dialect.PostgreSQL)
-                        start_stamp.setNanos(result.getInt(2));
-                    // System.out.println(" to " + start_stamp);
-                }
-            }
-            result.close();
-        }
-        finally
-        {
-            reader.removeFromCancellation(statement);
-            statement.close();
-        }
+        final Timestamp start_stamp = determineInitialTime(start, end);
+        final Timestamp end_stamp = Timestamp.from(end);
 
         // Fetch the samples
         if (RDBPreferences.use_array_blob)
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017 Oak Ridge National Laboratory.
+ * Copyright (c) 2017-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -36,6 +36,11 @@ class SQL
     final public String sample_sel_by_id_start_end_with_blob;
     final public String sample_sel_array_vals;
     final public String sample_count_by_id_start_end;
+    final public String sample_sel_aggregated_by_id_start_end;
+    final public String sample_sel_non_numeric_by_id_start_end;
+
+    // Parts of the statements for time buckets and batches
+    final private String prefix, offset, offset_secs, nanosecs, order, sample_columns;
 
 
     SQL(final Dialect dialect, String prefix)
@@ -119,5 +124,151 @@ class SQL
         // Rough count, ignoring nanosecs for the non-Oracle dialects
         sample_count_by_id_start_end = "SELECT COUNT(*) FROM " + prefix + "sample" +
           "   WHERE channel_id=? AND smpl_time BETWEEN ? AND ?";
+
+        // Parts of the statements for time buckets and batches
+        if (dialect == Dialect.Oracle)
+        {   // Difference of timestamps is an INTERVAL DAY TO SECOND
+            offset = "smpl_time - ?";
+            offset_secs = "EXTRACT(DAY FROM secs)*86400 + EXTRACT(HOUR FROM secs)*3600" +
+                          " + EXTRACT(MINUTE FROM secs)*60 + EXTRACT(SECOND FROM secs)";
+            nanosecs = "";
+            order = "smpl_time";
+        }
+        else
+        {
+            if (dialect == Dialect.MySQL)
+                offset = "TIMESTAMPDIFF(MICROSECOND, ?, smpl_time) / 1000000.0";
+            else
+                offset = "EXTRACT(EPOCH FROM (smpl_time - CAST(? AS TIMESTAMP)))";
+            offset_secs = "secs";
+            nanosecs = ", nanosecs";
+            order = "smpl_time, nanosecs";
+        }
+        sample_columns = "smpl_time, severity_id, status_id, num_val, float_val, str_val" + nanosecs;
+        this.prefix = prefix;
+
+        sample_sel_aggregated_by_id_start_end = selectAggregated(channelStarts(1));
+        sample_sel_non_numeric_by_id_start_end = selectNonNumeric(channelStarts(1));
+    }
+
+    /** @param channels Number of channels
+     *  @return "channel_id IN (?, ?, ...)"
+     */
+    private static String channelList(final int channels)
+    {
+        final StringBuilder buf = new StringBuilder("channel_id IN (");
+        for (int i=0; i<channels; ++i)
+            buf.append(i > 0 ? ", ?" : "?");
+        return buf.append(")").toString();
+    }
+
+    /** @param channels Number of channels
+     *  @return "((channel_id=? AND smpl_time>=?) OR ...)"
+     */
+    private static String channelStarts(final int channels)
+    {
+        final StringBuilder buf = new StringBuilder("(");
+        for (int i=0; i<channels; ++i)
+            buf.append(i > 0 ? " OR " : "").append("(channel_id=? AND smpl_time>=?)");
+        return buf.append(")").toString();
+    }
+
+    /** Min/max/average/deviation/count and last sample per channel and time bucket.
+     *
+     *  <p>Parameters: last bucket number, bucket size in seconds,
+     *  start time for bucket offset, channel ID and start time of each channel, end.
+     *  Bucket offset ignores the nanosecs of the non-Oracle dialects.
+     *  A sample before the start time for the bucket offset,
+     *  i.e. the sample that was valid at the start time, falls into bucket -1.
+     *
+     *  @param channel_condition Condition for channel_id and start time
+     *  @return SELECT for columns WB, MIN, MAX, AVG, STDDEV, COUNT,
+     *          last sample's SMPL_TIME, SEVERITY_ID, STATUS_ID, VALUE, NANOSECS (not Oracle),
+     *          and CHANNEL_ID
+     */
+    private String selectAggregated(final String channel_condition)
+    {
+        final String descending = order.replace(",", " DESC,") + " DESC";
+        return "SELECT wb, MIN(val), MAX(val), AVG(val), STDDEV_POP(val), COUNT(val)," +
+               "       MAX(CASE WHEN rn=1 THEN smpl_time END)," +
+               "       MAX(CASE WHEN rn=1 THEN severity_id END)," +
+               "       MAX(CASE WHEN rn=1 THEN status_id END)," +
+               "       MAX(CASE WHEN rn=1 THEN val END)" +
+               (nanosecs.isEmpty() ? "" : ", MAX(CASE WHEN rn=1 THEN nanosecs END)") +
+               ", channel_id" +
+               " FROM (SELECT channel_id, wb, smpl_time" + nanosecs + ", severity_id, status_id, val," +
+               "              ROW_NUMBER() OVER (PARTITION BY channel_id, wb ORDER BY " + descending + ") AS rn" +
+               "       FROM (SELECT channel_id, smpl_time" + nanosecs + ", severity_id, status_id, val," +
+               "                    LEAST(?, FLOOR((" + offset_secs + ") / ?)) AS wb" +
+               "             FROM (SELECT channel_id, smpl_time" + nanosecs + ", severity_id, status_id," +
+               "                          COALESCE(float_val, num_val) AS val, " + offset + " AS secs" +
+               "                   FROM " + prefix + "sample" +
+               "                   WHERE " + channel_condition + " AND smpl_time<=?" +
+               "                     AND (float_val IS NOT NULL OR num_val IS NOT NULL)) s) b) r" +
+               " GROUP BY channel_id, wb ORDER BY channel_id, wb";
+    }
+
+    /** Samples that cannot be aggregated
+     *
+     *  <p>Parameters: channel ID and start time of each channel, end.
+     *
+     *  @param channel_condition Condition for channel_id and start time
+     *  @return SELECT for the same columns as sample_sel_by_id_start_end, and CHANNEL_ID
+     */
+    private String selectNonNumeric(final String channel_condition)
+    {
+        return "SELECT " + sample_columns + ", channel_id" +
+               "   FROM " + prefix + "sample" +
+               "   WHERE " + channel_condition +
+               "     AND smpl_time<=?" +
+               "     AND float_val IS NULL AND num_val IS NULL" +
+               "   ORDER BY channel_id, " + order;
+    }
+
+    /** @param channels Number of channels
+     *  @return SELECT for CHANNEL_ID, COUNT.
+     *          Parameters: channel IDs, start, end
+     */
+    public String sample_count_by_ids_start_end(final int channels)
+    {
+        return "SELECT channel_id, COUNT(*) FROM " + prefix + "sample" +
+               "   WHERE " + channelList(channels) + " AND smpl_time BETWEEN ? AND ?" +
+               "   GROUP BY channel_id";
+    }
+
+    /** @param channels Number of channels
+     *  @param with_blob Include columns for array BLOB?
+     *  @return SELECT for the same columns as sample_sel_by_id_start_end or
+     *          sample_sel_by_id_start_end_with_blob, and CHANNEL_ID.
+     *          Parameters: channel ID and start time for each channel, end
+     */
+    public String sample_sel_by_ids_start_end(final int channels, final boolean with_blob)
+    {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("SELECT ").append(sample_columns);
+        if (with_blob)
+            buf.append(", datatype, array_val");
+        buf.append(", channel_id FROM ").append(prefix).append("sample");
+        buf.append("   WHERE ").append(channelStarts(channels)).append(" AND smpl_time<=?");
+        buf.append("   ORDER BY channel_id, ").append(order);
+        return buf.toString();
+    }
+
+    /** @param channels Number of channels
+     *  @return SELECT for time buckets of several channels
+     *  @see #sample_sel_aggregated_by_id_start_end
+     */
+    public String sample_sel_aggregated_by_ids_start_end(final int channels)
+    {
+        return selectAggregated(channelStarts(channels));
+    }
+
+    /** @param channels Number of channels
+     *  @return SELECT for non-numeric samples of several channels
+     *  @see #sample_sel_non_numeric_by_id_start_end
+     */
+    public String sample_sel_non_numeric_by_ids_start_end(final int channels)
+    {
+        return selectNonNumeric(channelStarts(channels));
     }
 }
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.vtype.VString;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link LazyValueIterator}
+ */
+@SuppressWarnings("nls")
+public class LazyValueIteratorUnitTest
+{
+    @Test
+    public void testLazyOpen() throws Exception
+    {
+        final AtomicInteger opened = new AtomicInteger();
+        final DemoDataIterator data = DemoDataIterator.forStrings("A");
+        final LazyValueIterator iter = new LazyValueIterator("A", () ->
+        {
+            opened.incrementAndGet();
+            return data;
+        });
+        // Nothing opened until the samples are read
+        assertThat(opened.get(), equalTo(0));
+
+        int count = 0;
+        while (iter.hasNext())
+        {
+            assertThat(((VString) iter.next()).getValue(), equalTo("A " + (++count)));
+            assertThat(opened.get(), equalTo(1));
+        }
+        assertThat(count, equalTo(10));
+
+        iter.close();
+        assertThat(data.isOpen(), equalTo(false));
+        // OK to close again
+        iter.close();
+    }
+
+    @Test
+    public void testCloseUnused() throws Exception
+    {
+        final AtomicInteger opened = new AtomicInteger();
+        final LazyValueIterator iter = new LazyValueIterator("A", () ->
+        {
+            opened.incrementAndGet();
+            return DemoDataIterator.forStrings("A");
+        });
+        // Closing an unused iterator never opens the source
+        iter.close();
+        assertThat(iter.hasNext(), equalTo(false));
+        assertThat(opened.get(), equalTo(0));
+    }
+
+    @Test
+    public void testError() throws Exception
+    {
+        final LazyValueIterator iter = new LazyValueIterator("A", () ->
+        {
+            throw new Exception("Test error");
+        });
+        // Error is logged, iterator has no samples
+        assertThat(iter.hasNext(), equalTo(false));
+        assertThat(iter.hasNext(), equalTo(false));
+        iter.close();
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.epics.vtype.VString;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link MergingValueIterator}
+ */
+@SuppressWarnings("nls")
+public class MergingValueIteratorUnitTest
+{
+    @Test
+    public void testMerge() throws Exception
+    {
+        final DemoDataIterator iter1 = DemoDataIterator.forStrings("A");
+        final DemoDataIterator iter2 = DemoDataIterator.forStrings("B", 8);
+        final StringBuilder result = new StringBuilder();
+        try (MergingValueIterator merged = new MergingValueIterator(iter1, iter2))
+        {
+            while (merged.hasNext())
+            {
+                final String value = ((VString) merged.next()).getValue();
+                if (result.length() > 0)
+                    result.append(",");
+                result.append(value).append("@").append(merged.getIteratorIndex());
+            }
+        }
+        assertThat(result.toString(), equalTo("A 1@0,A 2@0,A 3@0,A 4@0,A 5@0,A 6@0,A 7@0,A 8@0,A 9@0,B 1@1,A 10@0,B 2@1,B 3@1,B 4@1,B 5@1,B 6@1,B 7@1,B 8@1,B 9@1,B 10@1"));
+        assertThat(iter1.isOpen(), equalTo(false));
+    }
+
+    /** @param merged Merging iterator
+     *  @return "value@index,..." for the merged values
+     */
+    private static String list(final MergingValueIterator merged)
+    {
+        final StringBuilder result = new StringBuilder();
+        while (merged.hasNext())
+        {
+            final String value = ((VString) merged.next()).getValue();
+            if (result.length() > 0)
+                result.append(",");
+            result.append(value).append("@").append(merged.getIteratorIndex());
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testReplace() throws Exception
+    {
+        // 'B' covers 9..18, replacing 'A 9' and 'A 10'
+        try (MergingValueIterator merged = new MergingValueIterator(true, DemoDataIterator.forStrings("A"), DemoDataIterator.forStrings("B", 8)))
+        {
+            assertThat(list(merged), equalTo("A 1@0,A 2@0,A 3@0,A 4@0,A 5@0,A 6@0,A 7@0,A 8@0,B 1@1,B 2@1,B 3@1,B 4@1,B 5@1,B 6@1,B 7@1,B 8@1,B 9@1,B 10@1"));
+        }
+        // 'A' covers 1..10, replacing 'B 1' and 'B 2'
+        try (MergingValueIterator merged = new MergingValueIterator(true, DemoDataIterator.forStrings("B", 8), DemoDataIterator.forStrings("A")))
+        {
+            assertThat(list(merged), equalTo("A 1@1,A 2@1,A 3@1,A 4@1,A 5@1,A 6@1,A 7@1,A 8@1,A 9@1,A 10@1,B 3@0,B 4@0,B 5@0,B 6@0,B 7@0,B 8@0,B 9@0,B 10@0"));
+        }
+        // 'C' replaces the end of 'A', 'B' doesn't overlap
+        try (MergingValueIterator merged = new MergingValueIterator(true, DemoDataIterator.forStrings("A", 0), DemoDataIterator.forStrings("B", 20), DemoDataIterator.forStrings("C", 2)))
+        {
+            assertThat(list(merged), equalTo("A 1@0,A 2@0,C 1@2,C 2@2,C 3@2,C 4@2,C 5@2,C 6@2,C 7@2,C 8@2,C 9@2,C 10@2,B 1@1,B 2@1,B 3@1,B 4@1,B 5@1,B 6@1,B 7@1,B 8@1,B 9@1,B 10@1"));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader.appliance;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link ApplianceDataRetrieval} request URL
+ */
+@SuppressWarnings("nls")
+public class ApplianceDataRetrievalUnitTest
+{
+    private static final String URL = "http://server:17668/retrieval/data/getData.raw";
+
+    private static Timestamp time(final String iso)
+    {
+        return Timestamp.from(Instant.parse(iso));
+    }
+
+    @Test
+    public void testTimeFormat()
+    {
+        final ApplianceDataRetrieval retrieval = new ApplianceDataRetrieval(URL);
+        // Nanoseconds are truncated to milliseconds,
+        // full seconds still have milliseconds
+        final String url = retrieval.createRequestURL("sim://sine",
+                                                      time("2024-01-02T03:04:05.123456789Z"),
+                                                      time("2024-01-02T04:00:00Z"),
+                                                      false, null);
+        assertThat(url, equalTo(URL + "?pv=sim%3A%2F%2Fsine" +
+                                "&from=2024-01-02T03%3A04%3A05.123Z" +
+                                "&to=2024-01-02T04%3A00%3A00.000Z"));
+    }
+
+    @Test
+    public void testParameters()
+    {
+        final ApplianceDataRetrieval retrieval = new ApplianceDataRetrieval(URL + "?retiredPVTemplate=Template");
+        final Map<String, String> params = new LinkedHashMap<>();
+        params.put("fetchLatestMetadata", "true");
+        params.put("ca_how", "a b");
+        // Post processing operator in the PV name is encoded
+        final String url = retrieval.createRequestURL("mean_60(Some:PV)",
+                                                      time("1999-12-31T23:59:59.999Z"),
+                                                      time("2000-01-01T00:00:00.001Z"),
+                                                      true, params);
+        assertThat(url, equalTo(URL + "?retiredPVTemplate=Template&pv=mean_60%28Some%3APV%29" +
+                                "&from=1999-12-31T23%3A59%3A59.999Z" +
+                                "&to=2000-01-01T00%3A00%3A00.001Z" +
+                                "&usereduced=true&fetchLatestMetadata=true&ca_how=a+b"));
+    }
+}
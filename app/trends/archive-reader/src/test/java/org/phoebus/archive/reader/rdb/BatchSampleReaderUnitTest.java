@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader.rdb;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link BatchSampleReader} helpers
+ *  that split channels into batches and merge their results
+ */
+@SuppressWarnings("nls")
+public class BatchSampleReaderUnitTest
+{
+    private static final Instant START = Instant.parse("2024-01-02T03:04:05Z");
+
+    @Test
+    public void testSplit()
+    {
+        final List<Integer> ids = new ArrayList<>();
+        for (int i=0; i<7; ++i)
+            ids.add(100 + i);
+        final List<List<Integer>> batches = BatchSampleReader.split(ids, 3);
+        assertThat(batches, equalTo(List.of(List.of(100, 101, 102),
+                                             List.of(103, 104, 105),
+                                             List.of(106))));
+
+        assertThat(BatchSampleReader.split(List.of(), 3).size(), equalTo(0));
+        assertThat(BatchSampleReader.split(List.of(1, 2, 3), 3), equalTo(List.of(List.of(1, 2, 3))));
+    }
+
+    @Test
+    public void testSelectInMemory()
+    {
+        // Each channel also needs its initial sample
+        final Map<Integer, Integer> counted = Map.of(1, 10, 2, 500, 3, 20, 4, 69);
+        final List<Integer> ids = List.of(1, 2, 3, 4, 5);
+
+        // All fit
+        assertThat(BatchSampleReader.selectInMemory(ids, counted, 1000), equalTo(Set.of(1, 2, 3, 4, 5)));
+
+        // Channel 2 is too large, but the following small channels still fit
+        assertThat(BatchSampleReader.selectInMemory(ids, counted, 11 + 21 + 70), equalTo(Set.of(1, 3, 4)));
+
+        // Channel 5 has no samples in the range but needs the initial sample
+        assertThat(BatchSampleReader.selectInMemory(ids, counted, 11 + 21 + 1), equalTo(Set.of(1, 3, 5)));
+
+        // Nothing fits
+        assertThat(BatchSampleReader.selectInMemory(ids, counted, 0), equalTo(Set.of()));
+    }
+
+    private static VType number(final int secs)
+    {
+        return VDouble.of(secs, Alarm.none(), Time.of(START.plusSeconds(secs)), Display.none());
+    }
+
+    private static VType text(final int secs)
+    {
+        return VString.of("Text " + secs, Alarm.none(), Time.of(START.plusSeconds(secs)));
+    }
+
+    @Test
+    public void testMerge()
+    {
+        // Aggregated buckets and non-numeric samples of one channel
+        final List<VType> buckets = List.of(number(0), number(10), number(20), number(30));
+        final List<VType> others = List.of(text(5), text(10), text(25), text(40));
+        final List<VType> merged = AggregatingValueIterator.merge(buckets, others);
+
+        // Ordered by time, bucket before sample with the same time
+        final List<VType> expected = List.of(buckets.get(0), others.get(0), buckets.get(1), others.get(1),
+                                             buckets.get(2), others.get(2), buckets.get(3), others.get(3));
+        assertThat(merged.size(), equalTo(expected.size()));
+        for (int i=0; i<expected.size(); ++i)
+            assertThat(merged.get(i), sameInstance(expected.get(i)));
+
+        // Nothing to merge
+        assertThat(AggregatingValueIterator.merge(buckets, List.of()), sameInstance(buckets));
+        assertThat(AggregatingValueIterator.merge(List.of(), others), equalTo(others));
+    }
+}
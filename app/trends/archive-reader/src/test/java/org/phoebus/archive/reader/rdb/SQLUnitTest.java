@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.phoebus.archive.reader.rdb;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.phoebus.framework.rdb.RDBInfo.Dialect;
+
+/** JUnit test of the batched {@link SQL} statements
+ *
+ *  <p>Checks the parameters that the {@link BatchSampleReader} binds.
+ */
+@SuppressWarnings("nls")
+public class SQLUnitTest
+{
+    private static final String CHANNEL_START = "(channel_id=? AND smpl_time>=?)";
+
+    private static int count(final String text, final String part)
+    {
+        int count = 0;
+        for (int i = text.indexOf(part);  i >= 0;  i = text.indexOf(part, i + part.length()))
+            ++count;
+        return count;
+    }
+
+    private static int countParameters(final String sql)
+    {
+        return count(sql, "?");
+    }
+
+    @Test
+    public void testCount()
+    {
+        final SQL sql = new SQL(Dialect.PostgreSQL, "");
+        final String select = sql.sample_count_by_ids_start_end(3);
+        System.out.println(select);
+        // IDs, start, end
+        assertThat(select, containsString("channel_id IN (?, ?, ?)"));
+        assertThat(countParameters(select), equalTo(3 + 2));
+        assertThat(select, containsString("GROUP BY channel_id"));
+    }
+
+    @Test
+    public void testRaw()
+    {
+        final SQL sql = new SQL(Dialect.PostgreSQL, "archive.");
+        final String select = sql.sample_sel_by_ids_start_end(3, false);
+        System.out.println(select);
+        // ID and start for each channel, end
+        assertThat(count(select, CHANNEL_START), equalTo(3));
+        assertThat(countParameters(select), equalTo(2*3 + 1));
+        assertThat(select, containsString("FROM archive.sample"));
+        // Decoded like the single-channel samples, rows grouped by channel
+        assertThat(select, containsString("SELECT smpl_time, severity_id, status_id, num_val, float_val, str_val, nanosecs, channel_id"));
+        assertThat(select, containsString("ORDER BY channel_id, smpl_time, nanosecs"));
+
+        final String blob = sql.sample_sel_by_ids_start_end(2, true);
+        assertThat(blob, containsString("nanosecs, datatype, array_val, channel_id"));
+        assertThat(countParameters(blob), equalTo(2*2 + 1));
+    }
+
+    @Test
+    public void testAggregated()
+    {
+        for (Dialect dialect : new Dialect[] { Dialect.PostgreSQL, Dialect.MySQL, Dialect.Oracle })
+        {
+            final SQL sql = new SQL(dialect, "");
+            final String select = sql.sample_sel_aggregated_by_ids_start_end(4);
+            System.out.println(dialect + ": " + select);
+            // Last bucket, bucket size, start, then ID and start for each channel, end
+            assertThat(count(select, CHANNEL_START), equalTo(4));
+            assertThat(countParameters(select), equalTo(3 + 2*4 + 1));
+            assertThat(select, containsString("STDDEV_POP(val)"));
+            assertThat(select, containsString("GROUP BY channel_id, wb ORDER BY channel_id, wb"));
+            if (dialect == Dialect.Oracle)
+                assertThat(select, not(containsString("nanosecs")));
+            else
+                assertThat(select, containsString("MAX(CASE WHEN rn=1 THEN nanosecs END), channel_id"));
+
+            // Single channel uses the same parameters for one channel
+            assertThat(sql.sample_sel_aggregated_by_id_start_end, equalTo(sql.sample_sel_aggregated_by_ids_start_end(1)));
+        }
+    }
+
+    @Test
+    public void testNonNumeric()
+    {
+        for (Dialect dialect : new Dialect[] { Dialect.PostgreSQL, Dialect.Oracle })
+        {
+            final SQL sql = new SQL(dialect, "");
+            final String select = sql.sample_sel_non_numeric_by_ids_start_end(2);
+            System.out.println(dialect + ": " + select);
+            // ID and start for each channel, end
+            assertThat(count(select, CHANNEL_START), equalTo(2));
+            assertThat(countParameters(select), equalTo(2*2 + 1));
+            assertThat(select, containsString("float_val IS NULL AND num_val IS NULL"));
+            assertThat(sql.sample_sel_non_numeric_by_id_start_end, equalTo(sql.sample_sel_non_numeric_by_ids_start_end(1)));
+        }
+    }
+}
@@ -25,12 +25,18 @@ public class Preferences
     @Preference public static String write_sample_table;
     @Preference public static int max_text_sample_length;
     @Preference public static boolean use_postgres_copy;
+    @Preference public static boolean use_postgres_binary_copy;
     @Preference public static String[] equivalent_pv_prefixes;
     @Preference public static int log_trouble_samples;
     @Preference public static int log_overrun;
     @Preference public static int write_period;
     @Preference public static int max_repeats;
+    @Preference public static int scan_threads;
     @Preference public static int batch_size;
+    @Preference public static int write_threads;
+    @Preference public static String spool_directory;
+    @Preference public static int spool_segment_size;
+    @Preference public static int spool_replay_rate;
     @Preference public static double buffer_reserve;
     @Preference public static int ignored_future;
 
@@ -40,8 +40,8 @@ public class EngineModel
     /** Name of this model */
     private String name = "Archive Engine";  //$NON-NLS-1$
 
-    /** Thread that writes to the <code>archive</code> */
-    final private WriteThread writer;
+    /** Threads that write to the <code>archive</code> */
+    final private WriteThreadPool writer;
 
     /** All the channels.
      *  <p>
@@ -62,7 +62,7 @@ public class EngineModel
     final List<ArchiveGroup> groups = new ArrayList<>();
 
     /** Scanner for scanned channels */
-    final Scanner scanner = new Scanner();
+    final Scanner scanner = new Scanner(Preferences.scan_threads);
 
     /** Thread that runs the scanner */
     final ScanThread scan_thread = new ScanThread(scanner);
@@ -91,7 +91,7 @@ public class EngineModel
     /** Construct model that writes to archive */
     public EngineModel()
     {
-        writer = new WriteThread();
+        writer = new WriteThreadPool(Preferences.write_threads);
     }
 
     /** @return Name (description) */
@@ -290,6 +290,12 @@ public class EngineModel
         scan_thread.start();
     }
 
+    /** @return Threads that write to the archive */
+    public List<WriteThread> getWriteThreads()
+    {
+        return writer.getThreads();
+    }
+
     /** @return Timestamp of end of last write run */
     public Instant getLastWriteTime()
     {
@@ -314,6 +320,18 @@ public class EngineModel
         return scanner.getIdlePercentage();
     }
 
+    /** @see Scanner#getLatency() */
+    public Histogram getScanLatency()
+    {
+        return scanner.getLatency();
+    }
+
+    /** @see Scanner#getJitter() */
+    public Histogram getScanJitter()
+    {
+        return scanner.getJitter();
+    }
+
     /** Ask the model to stop.
      *  Merely updates the model state.
      *  @see #getState()
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Histogram of durations in milliseconds
+ *  <p>
+ *  Thread-safe.
+ */
+@SuppressWarnings("nls")
+public class Histogram
+{
+    /** Upper limits of the buckets in milliseconds.
+     *  Last bucket holds everything above.
+     */
+    private static final long[] LIMITS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(LIMITS.length + 1);
+
+    /** Reset to 0 */
+    public void reset()
+    {
+        for (int i=0; i<counts.length(); ++i)
+            counts.set(i, 0);
+    }
+
+    /** @param millis Duration to add to the histogram */
+    public void update(final long millis)
+    {
+        int i = 0;
+        while (i < LIMITS.length  &&  millis >= LIMITS[i])
+            ++i;
+        counts.incrementAndGet(i);
+    }
+
+    /** @return Number of buckets */
+    public int getBucketCount()
+    {
+        return counts.length();
+    }
+
+    /** @param bucket Bucket index
+     *  @return Label of the bucket, for example "&lt; 10 ms"
+     */
+    public String getLabel(final int bucket)
+    {
+        if (bucket < LIMITS.length)
+            return "< " + LIMITS[bucket] + " ms";
+        return ">= " + LIMITS[LIMITS.length-1] + " ms";
+    }
+
+    /** @param bucket Bucket index
+     *  @return Number of durations in the bucket
+     */
+    public long getCount(final int bucket)
+    {
+        return counts.get(bucket);
+    }
+
+    /** @param percent Percentile, 0..100
+     *  @return Label of the bucket that holds the percentile, or "-" if empty
+     */
+    public String getPercentile(final double percent)
+    {
+        long total = 0;
+        for (int i=0; i<counts.length(); ++i)
+            total += counts.get(i);
+        if (total <= 0)
+            return "-";
+        final double threshold = total * percent / 100.0;
+        long sum = 0;
+        for (int i=0; i<counts.length(); ++i)
+        {
+            sum += counts.get(i);
+            if (sum >= threshold)
+                return getLabel(i);
+        }
+        return getLabel(counts.length()-1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "50%: " + getPercentile(50) +
+               ", 90%: " + getPercentile(90) +
+               ", 99%: " + getPercentile(99);
+    }
+}
@@ -12,7 +12,6 @@ import java.util.logging.Level;
 import org.csstudio.archive.Preferences;
 import org.csstudio.archive.ThrottledLogger;
 import org.epics.vtype.VType;
-import org.phoebus.framework.util.RingBuffer;
 
 /** Buffer for the samples of one channel.
  *
@@ -20,6 +19,12 @@ import org.phoebus.framework.util.RingBuffer;
  *  thread removes them.
  *  When the queue size is reached, older samples get dropped.
  *
+ *  <p>The write thread removes samples without locking.
+ *  Samples are mostly added by the thread of the PV or scan,
+ *  but info samples for disconnects or disabled groups
+ *  can arrive from other threads, so adding samples
+ *  synchronizes on the producer side only.
+ *
  *  @author Kay Kasemir
  */
 public class SampleBuffer
@@ -35,8 +40,8 @@ public class SampleBuffer
      */
     final private String retention;
 
-    /** The actual samples in a thread-save queue. */
-    final private RingBuffer<VType> samples;
+    /** The actual samples in a lock-free queue. */
+    final private SampleRing samples;
 
     /** Statistics */
     final private BufferStats stats = new BufferStats();
@@ -66,7 +71,7 @@ public class SampleBuffer
     {
         this.channel_name = channel_name;
         this.retention = retention;
-        samples = new RingBuffer<>(capacity);
+        samples = new SampleRing(capacity);
     }
 
     /** @return channel name of this buffer */
@@ -84,19 +89,13 @@ public class SampleBuffer
     /** @return Queue capacity, i.e. maximum queue size. */
     public int getCapacity()
     {
-        synchronized (samples)
-        {
-            return samples.getCapacity();
-        }
+        return samples.getCapacity();
     }
 
     /** @return Current queue size, i.e. number of samples in the queue. */
     public int getQueueSize()
     {
-        synchronized (samples)
-        {
-            return samples.size();
-        }
+        return samples.size();
     }
 
     /** @return <code>true</code> if currently experiencing write errors */
@@ -115,10 +114,12 @@ public class SampleBuffer
     @SuppressWarnings("nls")
     void add(final VType value)
     {
-        synchronized (samples)
+        synchronized (this)
         {
-            if (samples.isFull())
-            {   // Note start of overruns, then drop older sample
+            // Adding to a full queue drops the oldest sample,
+            // unless the write thread removed it in the meantime
+            if (samples.add(value))
+            {   // Note start of overruns
                 if (start_of_overruns == null)
                     start_of_overruns = Integer.valueOf(stats.getOverruns());
                 stats.addOverrun();
@@ -129,17 +130,13 @@ public class SampleBuffer
                 overrun_msg.log(channel_name + ": " + overruns + " overruns");
                 start_of_overruns = null;
             }
-            samples.add(value);
         }
     }
 
     /** @return latest sample in queue or <code>null</code> if empty */
     VType remove()
     {
-        synchronized (samples)
-        {
-            return samples.remove();
-        }
+        return samples.remove();
     }
 
     /** Update stats with current values */
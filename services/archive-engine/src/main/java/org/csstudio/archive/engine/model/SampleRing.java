@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.EnumDisplay;
+import org.epics.vtype.Time;
+import org.epics.vtype.VByte;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VFloat;
+import org.epics.vtype.VInt;
+import org.epics.vtype.VLong;
+import org.epics.vtype.VShort;
+import org.epics.vtype.VType;
+
+/** Ring buffer of samples without locks between producer and consumer
+ *
+ *  <p>One thread adds samples while another thread removes them.
+ *  When the ring is full, adding a sample drops the oldest one.
+ *  The consumer thus competes with the producer for the oldest sample,
+ *  which is resolved by advancing the read position via compare-and-set.
+ *
+ *  <p>Scalar numeric and enum samples are held as primitive time stamp
+ *  and value, plus a reference to their alarm, display and time meta data,
+ *  which is shared by consecutive samples with the same meta data.
+ *  Their {@link VType} is re-created when the sample is removed.
+ *  Other samples are held as they are, and released when removed.
+ */
+class SampleRing
+{
+    /** Kinds of samples held as primitives */
+    private static final int DOUBLE = 0, FLOAT = 1, LONG = 2, INT = 3, SHORT = 4, BYTE = 5, ENUM = 6;
+
+    /** Largest epoch second that fits into the nanosecond time stamp */
+    private static final long MAX_SECONDS = Long.MAX_VALUE / 1000000000L - 1;
+
+    /** Holder for a sample that's not held as primitives.
+     *  Each sample has its own holder, so the consumer can
+     *  release a removed sample unless the slot has already
+     *  been reused.
+     */
+    private static class Holder
+    {
+        final VType value;
+
+        Holder(final VType value)
+        {
+            this.value = value;
+        }
+    }
+
+    /** Meta data of primitive samples */
+    private static class Meta
+    {
+        final int kind;
+        final Alarm alarm;
+        final Object display;
+        final Integer user_tag;
+        final boolean valid;
+
+        Meta(final int kind, final Alarm alarm, final Object display, final Time time)
+        {
+            this.kind = kind;
+            this.alarm = alarm;
+            this.display = display;
+            this.user_tag = time.getUserTag();
+            this.valid = time.isValid();
+        }
+
+        boolean matches(final int kind, final Alarm alarm, final Object display, final Time time)
+        {
+            return this.kind == kind  &&
+                   (this.alarm == alarm  ||  this.alarm.equals(alarm))  &&
+                   (this.display == display  ||  this.display.equals(display))  &&
+                   Objects.equals(user_tag, time.getUserTag())  &&
+                   valid == time.isValid();
+        }
+    }
+
+    /** Time stamp of primitive samples in epoch nanoseconds */
+    private final long[] stamps;
+
+    /** Value of primitive samples, double as raw bits */
+    private final long[] values;
+
+    /** {@link Meta} of primitive samples, or the {@link Holder} of other samples */
+    private final AtomicReferenceArray<Object> objects;
+
+    /** Position of the next sample to remove.
+     *  Advanced by the consumer, and by the producer when dropping the oldest sample.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Position of the next sample to add. Only advanced by the producer. */
+    private volatile long tail = 0;
+
+    /** Meta data of the last primitive sample added. Only used by the producer. */
+    private Meta last_meta = null;
+
+    /** @param capacity Number of samples that the ring can hold */
+    SampleRing(final int capacity)
+    {
+        stamps = new long[capacity];
+        values = new long[capacity];
+        objects = new AtomicReferenceArray<>(capacity);
+    }
+
+    /** @return Number of samples that the ring can hold */
+    int getCapacity()
+    {
+        return objects.length();
+    }
+
+    /** @return Number of samples in the ring */
+    int size()
+    {
+        // Read head first: Tail can only grow, so size is never negative
+        final long h = head.get();
+        return (int) Math.min(tail - h, objects.length());
+    }
+
+    /** Add a sample, dropping the oldest sample if the ring is full.
+     *  <p>
+     *  To be called by the producer.
+     *  @param value Sample to add
+     *  @return <code>true</code> if the oldest sample was dropped
+     */
+    boolean add(final VType value)
+    {
+        final long t = tail;
+        // Drop oldest sample unless the consumer just removed it
+        boolean dropped = false;
+        long h = head.get();
+        while (t - h >= objects.length())
+        {
+            if (head.compareAndSet(h, h+1))
+            {
+                dropped = true;
+                break;
+            }
+            h = head.get();
+        }
+
+        // Slot is no longer read by the consumer
+        final int slot = (int) (t % objects.length());
+        if (! addPrimitive(slot, value))
+            objects.set(slot, new Holder(value));
+        // Publish the sample
+        tail = t + 1;
+        return dropped;
+    }
+
+    /** @param slot Slot for the sample
+     *  @param value Sample
+     *  @return <code>true</code> if the sample was added as a primitive
+     */
+    private boolean addPrimitive(final int slot, final VType value)
+    {
+        final int kind;
+        final long bits;
+        final Alarm alarm;
+        final Time time;
+        final Object display;
+        if (value instanceof VDouble)
+        {
+            final VDouble number = (VDouble) value;
+            kind = DOUBLE;
+            bits = Double.doubleToRawLongBits(number.getValue());
+            alarm = number.getAlarm();
+            time = number.getTime();
+            display = number.getDisplay();
+        }
+        else if (value instanceof VFloat)
+        {
+            final VFloat number = (VFloat) value;
+            kind = FLOAT;
+            bits = Double.doubleToRawLongBits(number.getValue());
+            alarm = number.getAlarm();
+            time = number.getTime();
+            display = number.getDisplay();
+        }
+        else if (value instanceof VLong)
+        {
+            final VLong number = (VLong) value;
+            kind = LONG;
+            bits = number.getValue();
+            alarm = number.getAlarm();
+            time = number.getTime();
+            display = number.getDisplay();
+        }
+        else if (value instanceof VInt)
+        {
+            final VInt number = (VInt) value;
+            kind = INT;
+            bits = number.getValue();
+            alarm = number.getAlarm();
+            time = number.getTime();
+            display = number.getDisplay();
+        }
+        else if (value instanceof VShort)
+        {
+            final VShort number = (VShort) value;
+            kind = SHORT;
+            bits = number.getValue();
+            alarm = number.getAlarm();
+            time = number.getTime();
+            display = number.getDisplay();
+        }
+        else if (value instanceof VByte)
+        {
+            final VByte number = (VByte) value;
+            kind = BYTE;
+            bits = number.getValue();
+            alarm = number.getAlarm();
+            time = number.getTime();
+            display = number.getDisplay();
+        }
+        else if (value instanceof VEnum)
+        {
+            final VEnum enumerated = (VEnum) value;
+            kind = ENUM;
+            bits = enumerated.getIndex();
+            alarm = enumerated.getAlarm();
+            time = enumerated.getTime();
+            display = enumerated.getDisplay();
+        }
+        else
+            return false;
+
+        final Instant stamp = time.getTimestamp();
+        if (alarm == null  ||  display == null  ||  stamp == null  ||
+            Math.abs(stamp.getEpochSecond()) > MAX_SECONDS)
+            return false;
+
+        Meta meta = last_meta;
+        if (meta == null  ||  ! meta.matches(kind, alarm, display, time))
+            last_meta = meta = new Meta(kind, alarm, display, time);
+        stamps[slot] = stamp.getEpochSecond() * 1000000000L + stamp.getNano();
+        values[slot] = bits;
+        objects.set(slot, meta);
+        return true;
+    }
+
+    /** Remove the oldest sample.
+     *  <p>
+     *  To be called by the consumer.
+     *  @return Oldest sample or <code>null</code> if empty
+     */
+    VType remove()
+    {
+        while (true)
+        {
+            final long h = head.get();
+            if (h >= tail)
+                return null;
+            // Read the slot, then claim it.
+            // If the producer dropped the sample in the meantime,
+            // the slot may already hold a new sample, so try again.
+            final int slot = (int) (h % objects.length());
+            final Object object = objects.get(slot);
+            final long stamp = stamps[slot];
+            final long bits = values[slot];
+            if (! head.compareAndSet(h, h+1))
+                continue;
+            if (object instanceof Meta)
+                return createVType((Meta) object, stamp, bits);
+            // Release the sample unless the producer already reused the slot
+            objects.compareAndSet(slot, object, null);
+            return ((Holder) object).value;
+        }
+    }
+
+    /** @param meta Meta data of sample
+     *  @param stamp Time stamp in epoch nanoseconds
+     *  @param bits Value
+     *  @return {@link VType} for the sample
+     */
+    private static VType createVType(final Meta meta, final long stamp, final long bits)
+    {
+        final Time time = Time.of(Instant.ofEpochSecond(Math.floorDiv(stamp, 1000000000L),
+                                                        Math.floorMod(stamp, 1000000000L)),
+                                  meta.user_tag, meta.valid);
+        switch (meta.kind)
+        {
+        case DOUBLE:
+            return VDouble.of(Double.longBitsToDouble(bits), meta.alarm, time, (Display) meta.display);
+        case FLOAT:
+            return VFloat.of((float) Double.longBitsToDouble(bits), meta.alarm, time, (Display) meta.display);
+        case LONG:
+            return VLong.of(bits, meta.alarm, time, (Display) meta.display);
+        case INT:
+            return VInt.of((int) bits, meta.alarm, time, (Display) meta.display);
+        case SHORT:
+            return VShort.of((short) bits, meta.alarm, time, (Display) meta.display);
+        case BYTE:
+            return VByte.of((byte) bits, meta.alarm, time, (Display) meta.display);
+        default:
+            return VEnum.of((int) bits, (EnumDisplay) meta.display, meta.alarm, time);
+        }
+    }
+}
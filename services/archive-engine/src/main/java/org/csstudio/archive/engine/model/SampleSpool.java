@@ -0,0 +1,666 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.csstudio.archive.Engine.logger;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ListByte;
+import org.epics.util.array.ListNumber;
+import org.epics.util.stats.Range;
+import org.epics.util.text.NumberFormats;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.EnumDisplay;
+import org.epics.vtype.Time;
+import org.epics.vtype.VByteArray;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VFloat;
+import org.epics.vtype.VLong;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VString;
+import org.epics.vtype.VStringArray;
+import org.epics.vtype.VType;
+
+/** Append-only spool of samples on disk
+ *  <p>
+ *  Holds samples that could not be written to the archive
+ *  until they can be replayed.
+ *  The spool is a sequence of memory-mapped segment files in a directory.
+ *  Each segment starts with a header that holds the position
+ *  up to which its samples have been replayed, followed by records
+ *  of channel name, retention and sample.
+ *  A segment is deleted once all its samples have been replayed.
+ *  Samples that remain in the spool when the engine stops
+ *  are replayed after the next start.
+ *  Samples are only removed once they have been committed.
+ *  When the engine stops after writing replayed samples to the archive
+ *  but before committing them, they are replayed again after the next start.
+ *  <p>
+ *  Samples are stored with the information that the archive
+ *  writer uses, i.e. time stamp, alarm, value and meta data.
+ *  Samples of types that the writer stores as text are spooled as text.
+ *  <p>
+ *  Not thread-safe, to be used by one {@link WriteThread}.
+ */
+@SuppressWarnings("nls")
+public class SampleSpool
+{
+    /** Sample read from the spool */
+    static class Sample
+    {
+        final String channel;
+        final String retention;
+        final VType value;
+
+        Sample(final String channel, final String retention, final VType value)
+        {
+            this.channel = channel;
+            this.retention = retention;
+            this.value = value;
+        }
+    }
+
+    /** Segment file of the spool */
+    private static class Segment
+    {
+        final File file;
+        final MappedByteBuffer buffer;
+        /** Position of next record to read */
+        int read;
+        /** Position of next record to write */
+        int end;
+
+        Segment(final File file, final int size) throws Exception
+        {
+            this.file = file;
+            try
+            (
+                RandomAccessFile access = new RandomAccessFile(file, "rw");
+                FileChannel channel = access.getChannel();
+            )
+            {
+                final boolean created = access.length() == 0;
+                if (created)
+                    access.setLength(size);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, access.length());
+                if (created)
+                {
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, HEADER_SIZE);
+                }
+                else if (buffer.getInt(0) != MAGIC)
+                {
+                    unmap(buffer);
+                    throw new Exception("Invalid spool file " + file);
+                }
+            }
+            read = buffer.getInt(4);
+            // Locate end of records
+            end = read;
+            while (end + 4 <= buffer.limit())
+            {
+                final int length = buffer.getInt(end);
+                if (length <= 0  ||  end + 4 + length > buffer.limit())
+                    break;
+                end += 4 + length;
+            }
+        }
+
+        /** @param record Record to append
+         *  @return <code>true</code> if appended, <code>false</code> if segment is full
+         */
+        boolean append(final ByteBuffer record)
+        {
+            final int length = record.remaining();
+            if (end + 4 + length > buffer.limit())
+                return false;
+            // Add data, then the length that marks it as a valid record
+            buffer.position(end + 4);
+            buffer.put(record);
+            buffer.putInt(end, length);
+            end += 4 + length;
+            return true;
+        }
+
+        /** Mark records that have been read as replayed */
+        void commit()
+        {
+            buffer.putInt(4, read);
+        }
+
+        /** Return to the last replayed record */
+        void rollback()
+        {
+            read = buffer.getInt(4);
+        }
+
+        /** Release the mapped file. Segment must not be used afterwards. */
+        void close()
+        {
+            unmap(buffer);
+        }
+    }
+
+    /** Marker at start of each segment file */
+    private static final int MAGIC = 0x53504F4C;
+
+    /** Size of segment header: Magic, read position */
+    private static final int HEADER_SIZE = 8;
+
+    /** One MB */
+    private static final long MB = 1024L * 1024L;
+
+    /** Largest segment size in MB, since a segment is mapped into one buffer */
+    static final int MAX_SEGMENT_MB = (int) (Integer.MAX_VALUE / MB);
+
+    /** Kinds of spooled samples */
+    private static final byte DOUBLE = 0, LONG = 1, ENUM = 2, STRING = 3, DOUBLE_ARRAY = 4, BYTE_ARRAY = 5, STRING_ARRAY = 6;
+
+    /** Directory of the segment files */
+    private final File directory;
+
+    /** Size of a segment file */
+    private final int segment_size;
+
+    /** Segments, oldest first. Last one is written */
+    private final List<Segment> segments = new ArrayList<>();
+
+    /** Index of the segment that is read */
+    private int read_segment = 0;
+
+    /** Number of the last segment file */
+    private long last_segment = 0;
+
+    /** Buffer for encoding a record */
+    private ByteBuffer record = ByteBuffer.allocate(1024);
+
+    /** Open spool, finding samples that remain from a previous run
+     *  @param directory Directory for the spool files
+     *  @param segment_size Size of each spool file in bytes
+     *  @throws Exception on error
+     */
+    public SampleSpool(final File directory, final int segment_size) throws Exception
+    {
+        this.directory = directory;
+        this.segment_size = segment_size;
+        if (! directory.isDirectory()  &&  ! directory.mkdirs())
+            throw new Exception("Cannot create spool directory " + directory);
+
+        final File[] files = directory.listFiles((dir, name) -> isSegmentFile(name));
+        Arrays.sort(files, (a, b) -> Long.compare(getNumber(a), getNumber(b)));
+        for (File file : files)
+        {
+            last_segment = getNumber(file);
+            try
+            {
+                final Segment segment = new Segment(file, segment_size);
+                if (segment.read < segment.end)
+                    segments.add(segment);
+                else
+                {
+                    segment.close();
+                    delete(file);
+                }
+            }
+            catch (Exception ex)
+            {   // File that was created but not initialized, or corrupted
+                logger.log(Level.WARNING, "Skipping spool file " + file, ex);
+            }
+        }
+        if (! segments.isEmpty())
+            logger.log(Level.INFO, "Spool {0} holds {1} files with samples to replay",
+                       new Object[] { directory, segments.size() });
+    }
+
+    /** @param megabytes Requested size of a segment file in MB
+     *  @return Segment size in bytes, at least 1 MB and at most {@link #MAX_SEGMENT_MB}
+     */
+    static int getSegmentSize(final int megabytes)
+    {
+        if (megabytes < 1)
+        {
+            logger.log(Level.WARNING, "Spool segment size of {0} MB is too small, using 1 MB", megabytes);
+            return (int) MB;
+        }
+        if (megabytes > MAX_SEGMENT_MB)
+        {
+            logger.log(Level.WARNING, "Spool segment size of {0} MB is too large, using {1} MB",
+                       new Object[] { megabytes, MAX_SEGMENT_MB });
+            return (int) (MAX_SEGMENT_MB * MB);
+        }
+        return (int) (megabytes * MB);
+    }
+
+    /** @param name File name
+     *  @return Is that the name of a segment file?
+     */
+    static boolean isSegmentFile(final String name)
+    {
+        return name.matches("spool-[0-9]+\\.dat");
+    }
+
+    /** @param file Segment file
+     *  @return Number of the segment
+     */
+    private static long getNumber(final File file)
+    {
+        final String name = file.getName();
+        return Long.parseLong(name.substring(6, name.length() - 4));
+    }
+
+    /** @param file Segment file to delete */
+    private static void delete(final File file)
+    {
+        // A fully replayed file that cannot be deleted now,
+        // for example because it could not be unmapped,
+        // is deleted on the next start.
+        if (! file.delete())
+            logger.log(Level.FINE, "Cannot delete spool file {0}", file);
+    }
+
+    /** Unmap a buffer
+     *  <p>
+     *  A mapped buffer is otherwise only released when it is garbage collected,
+     *  which keeps the file mapped and, on some systems, prevents deleting it.
+     *  The buffer must not be accessed after unmapping it.
+     *  @param buffer Buffer to unmap
+     */
+    private static void unmap(final MappedByteBuffer buffer)
+    {
+        try
+        {
+            final Class<?> unsafe_class = Class.forName("sun.misc.Unsafe");
+            final Field unsafe = unsafe_class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            unsafe_class.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe.get(null), buffer);
+        }
+        catch (Throwable ex)
+        {
+            logger.log(Level.FINE, "Cannot unmap spool file", ex);
+        }
+    }
+
+    /** @return <code>true</code> if there are no samples to replay */
+    public boolean isEmpty()
+    {
+        for (Segment segment : segments)
+            if (segment.read < segment.end)
+                return false;
+        return true;
+    }
+
+    /** @return Number of bytes of samples to replay */
+    public long getSize()
+    {
+        long size = 0;
+        for (Segment segment : segments)
+            size += segment.end - segment.read;
+        return size;
+    }
+
+    /** Add sample to spool
+     *  @param channel Channel name
+     *  @param retention Retention of the channel
+     *  @param value Sample to add
+     *  @throws Exception on error
+     */
+    public void add(final String channel, final String retention, final VType value) throws Exception
+    {
+        // Encode, growing the buffer as needed
+        while (true)
+        {
+            try
+            {
+                record.clear();
+                putString(record, channel);
+                putString(record, retention);
+                encode(record, value);
+                break;
+            }
+            catch (BufferOverflowException ex)
+            {
+                record = ByteBuffer.allocate(record.capacity() * 2);
+            }
+        }
+        record.flip();
+
+        final Segment last = segments.isEmpty() ? null : segments.get(segments.size()-1);
+        if (last != null  &&  last.append(record))
+            return;
+        // Start new segment, large enough for at least this record
+        final File file = new File(directory, String.format("spool-%012d.dat", ++last_segment));
+        final Segment segment = new Segment(file, Math.max(segment_size, HEADER_SIZE + 4 + record.remaining() + 4));
+        segment.append(record);
+        segments.add(segment);
+    }
+
+    /** Write added samples to disk */
+    public void force()
+    {
+        if (! segments.isEmpty())
+            segments.get(segments.size()-1).buffer.force();
+    }
+
+    /** Write added samples to disk and release the spool files.
+     *  <p>
+     *  Samples that have not been committed remain in the files
+     *  to be replayed after opening the spool again.
+     */
+    public void close()
+    {
+        force();
+        for (Segment segment : segments)
+            segment.close();
+        segments.clear();
+        read_segment = 0;
+    }
+
+    /** Close the spool and delete its files and directory
+     *  <p>
+     *  To be called once all samples have been replayed.
+     */
+    public void delete()
+    {
+        for (Segment segment : segments)
+        {
+            segment.close();
+            delete(segment.file);
+        }
+        segments.clear();
+        read_segment = 0;
+        if (! directory.delete())
+            logger.log(Level.FINE, "Cannot delete spool directory {0}", directory);
+    }
+
+    /** Read next sample
+     *  <p>
+     *  Read samples remain in the spool
+     *  until they are committed.
+     *  @return Next sample or <code>null</code>
+     */
+    Sample read()
+    {
+        while (read_segment < segments.size())
+        {
+            final Segment segment = segments.get(read_segment);
+            if (segment.read < segment.end)
+            {
+                final int length = segment.buffer.getInt(segment.read);
+                final ByteBuffer data = segment.buffer.duplicate();
+                data.position(segment.read + 4);
+                data.limit(segment.read + 4 + length);
+                segment.read += 4 + length;
+                final String channel = getString(data);
+                final String retention = getString(data);
+                return new Sample(channel, retention, decode(data));
+            }
+            // Stop at last segment, it's still written
+            if (read_segment >= segments.size() - 1)
+                break;
+            ++read_segment;
+        }
+        return null;
+    }
+
+    /** Remove the samples that have been read from the spool */
+    void commit()
+    {
+        for (int i=0; i<=read_segment  &&  i<segments.size(); ++i)
+            segments.get(i).commit();
+        // Delete segments that have been replayed, except for the one that's written
+        while (segments.size() > 1)
+        {
+            final Segment segment = segments.get(0);
+            if (segment.read < segment.end)
+                break;
+            segments.remove(0);
+            segment.close();
+            delete(segment.file);
+        }
+        read_segment = 0;
+    }
+
+    /** Return the samples that have been read to the spool,
+     *  to be read again
+     */
+    void rollback()
+    {
+        for (int i=0; i<=read_segment  &&  i<segments.size(); ++i)
+            segments.get(i).rollback();
+        read_segment = 0;
+    }
+
+    private static void putString(final ByteBuffer buffer, final String text)
+    {
+        if (text == null)
+        {
+            buffer.putInt(-1);
+            return;
+        }
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(final ByteBuffer buffer)
+    {
+        final int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Encode the sample with the information that the archive writer stores
+     *  @param buffer Buffer
+     *  @param value Sample
+     */
+    private static void encode(final ByteBuffer buffer, final VType value)
+    {
+        final byte kind;
+        if (value instanceof VDouble  ||  value instanceof VFloat)
+            kind = DOUBLE;
+        else if (value instanceof VNumber)
+        {
+            final Number number = ((VNumber) value).getValue();
+            kind = (number instanceof Double  ||  number instanceof Float) ? DOUBLE : LONG;
+        }
+        else if (value instanceof VEnum)
+            kind = ENUM;
+        else if (value instanceof VByteArray)
+            kind = BYTE_ARRAY;
+        else if (value instanceof VNumberArray)
+            kind = DOUBLE_ARRAY;
+        else if (value instanceof VStringArray)
+            kind = STRING_ARRAY;
+        else
+            kind = STRING;
+        buffer.put(kind);
+
+        Time time = Time.timeOf(value);
+        if (time == null)
+            time = Time.now();
+        buffer.putLong(time.getTimestamp().getEpochSecond());
+        buffer.putInt(time.getTimestamp().getNano());
+
+        Alarm alarm = Alarm.alarmOf(value);
+        if (alarm == null)
+            alarm = Alarm.none();
+        buffer.put((byte) alarm.getSeverity().ordinal());
+        buffer.put((byte) alarm.getStatus().ordinal());
+        putString(buffer, alarm.getName());
+
+        switch (kind)
+        {
+        case DOUBLE:
+            buffer.putDouble(((VNumber) value).getValue().doubleValue());
+            putDisplay(buffer, ((VNumber) value).getDisplay());
+            break;
+        case LONG:
+            buffer.putLong(((VNumber) value).getValue().longValue());
+            putDisplay(buffer, ((VNumber) value).getDisplay());
+            break;
+        case ENUM:
+        {
+            final VEnum enumerated = (VEnum) value;
+            buffer.putInt(enumerated.getIndex());
+            final List<String> labels = enumerated.getDisplay().getChoices();
+            buffer.putInt(labels.size());
+            for (String label : labels)
+                putString(buffer, label);
+            break;
+        }
+        case BYTE_ARRAY:
+        {
+            final ListByte data = ((VByteArray) value).getData();
+            buffer.putInt(data.size());
+            for (int i=0; i<data.size(); ++i)
+                buffer.put(data.getByte(i));
+            putDisplay(buffer, ((VByteArray) value).getDisplay());
+            break;
+        }
+        case DOUBLE_ARRAY:
+        {
+            final ListNumber data = ((VNumberArray) value).getData();
+            buffer.putInt(data.size());
+            for (int i=0; i<data.size(); ++i)
+                buffer.putDouble(data.getDouble(i));
+            putDisplay(buffer, ((VNumberArray) value).getDisplay());
+            break;
+        }
+        case STRING_ARRAY:
+        {
+            final List<String> strings = ((VStringArray) value).getData();
+            buffer.putInt(strings.size());
+            for (String text : strings)
+                putString(buffer, text);
+            break;
+        }
+        default:
+            putString(buffer, value instanceof VString ? ((VString) value).getValue() : value.toString());
+        }
+    }
+
+    /** @param buffer Buffer
+     *  @return Sample
+     */
+    private static VType decode(final ByteBuffer buffer)
+    {
+        final byte kind = buffer.get();
+        final Time time = Time.of(Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()));
+        final Alarm alarm = Alarm.of(AlarmSeverity.values()[buffer.get()],
+                                     AlarmStatus.values()[buffer.get()],
+                                     getString(buffer));
+        switch (kind)
+        {
+        case DOUBLE:
+        {
+            final double number = buffer.getDouble();
+            return VDouble.of(number, alarm, time, getDisplay(buffer));
+        }
+        case LONG:
+        {
+            final long number = buffer.getLong();
+            return VLong.of(number, alarm, time, getDisplay(buffer));
+        }
+        case ENUM:
+        {
+            final int index = buffer.getInt();
+            final int size = buffer.getInt();
+            final List<String> labels = new ArrayList<>(size);
+            for (int i=0; i<size; ++i)
+                labels.add(getString(buffer));
+            return VEnum.of(index, EnumDisplay.of(labels), alarm, time);
+        }
+        case BYTE_ARRAY:
+        {
+            final byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            return VByteArray.of(ArrayByte.of(data), alarm, time, getDisplay(buffer));
+        }
+        case DOUBLE_ARRAY:
+        {
+            final double[] data = new double[buffer.getInt()];
+            buffer.asDoubleBuffer().get(data);
+            buffer.position(buffer.position() + data.length * Double.BYTES);
+            return VDoubleArray.of(ArrayDouble.of(data), alarm, time, getDisplay(buffer));
+        }
+        case STRING_ARRAY:
+        {
+            final int size = buffer.getInt();
+            final List<String> strings = new ArrayList<>(size);
+            for (int i=0; i<size; ++i)
+                strings.add(getString(buffer));
+            return VStringArray.of(strings, alarm, time);
+        }
+        default:
+            return VString.of(getString(buffer), alarm, time);
+        }
+    }
+
+    private static void putDisplay(final ByteBuffer buffer, final Display display)
+    {
+        putRange(buffer, display.getDisplayRange());
+        putRange(buffer, display.getAlarmRange());
+        putRange(buffer, display.getWarningRange());
+        putRange(buffer, display.getControlRange());
+        putString(buffer, display.getUnit());
+        final NumberFormat format = display.getFormat();
+        buffer.putInt(format == null ? -1 : format.getMinimumFractionDigits());
+    }
+
+    private static Display getDisplay(final ByteBuffer buffer)
+    {
+        final Range display = getRange(buffer);
+        final Range alarm = getRange(buffer);
+        final Range warning = getRange(buffer);
+        final Range control = getRange(buffer);
+        final String units = getString(buffer);
+        final int precision = buffer.getInt();
+        return Display.of(display, alarm, warning, control, units,
+                          precision < 0 ? NumberFormats.toStringFormat() : NumberFormats.precisionFormat(precision));
+    }
+
+    private static void putRange(final ByteBuffer buffer, final Range range)
+    {
+        buffer.putDouble(range.getMinimum());
+        buffer.putDouble(range.getMaximum());
+    }
+
+    private static Range getRange(final ByteBuffer buffer)
+    {
+        final double min = buffer.getDouble();
+        final double max = buffer.getDouble();
+        if (Double.isNaN(min)  ||  Double.isNaN(max))
+            return Range.undefined();
+        return Range.of(min, max);
+    }
+}
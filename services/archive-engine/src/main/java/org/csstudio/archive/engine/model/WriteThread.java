@@ -9,10 +9,15 @@ package org.csstudio.archive.engine.model;
 
 import static org.csstudio.archive.Engine.logger;
 
+import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
+import org.csstudio.archive.Preferences;
 import org.csstudio.archive.writer.ArchiveWriter;
 import org.csstudio.archive.writer.ArchiveWriterFactory;
 import org.csstudio.archive.writer.WriteChannel;
@@ -28,6 +33,23 @@ import org.epics.vtype.VType;
  *  be lost.
  *  The channels that add samples to the sample buffer supposedly notice
  *  the error condition and add a special indicator once we recover.
+ *  <p>
+ *  With a {@link SampleSpool}, samples of a failed batch
+ *  and samples that arrive while writes fail are written to the spool
+ *  instead of overrunning the sample buffers.
+ *  Once writes succeed, the spooled samples are replayed
+ *  at a limited rate in addition to the current samples.
+ *  Replayed samples are older than the current samples,
+ *  so the archive receives the samples of a channel out of time order.
+ *  Archive readers that sort samples by time show them in order.
+ *  Replayed samples are removed from the spool once they have been flushed.
+ *  If the engine stops in between, they are replayed again after the next start.
+ *  Spools of other threads, for example from a previous run with
+ *  a different number of write threads, can be added for replay.
+ *  They are removed once they have been replayed.
+ *  <p>
+ *  A {@link WriteThreadPool} may run several write threads,
+ *  each with its own writer, for a subset of the channels.
  *
  *  @author Kay Kasemir
  */
@@ -36,15 +58,26 @@ public class WriteThread implements Runnable
     /** Minimum write period [seconds] */
     private static final double MIN_WRITE_PERIOD = 5.0;
 
+    /** Name of the thread */
+    final private String name;
+
+    /** Number of write threads in error state.
+     *  Shared by all threads of a pool.
+     */
+    final private AtomicInteger threads_in_error;
+
+    /** Is this thread in error state? */
+    private volatile boolean in_error = false;
+
     /** Server to which this thread writes. */
     private ArchiveWriter writer;
 
     /** All the sample buffers this thread writes. */
-    final private ArrayList<SampleBuffer> buffers =
-        new ArrayList<>();
+    final private List<SampleBuffer> buffers =
+        new CopyOnWriteArrayList<>();
 
     /** Flag that tells the write thread to run or quit. */
-    private boolean do_run;
+    private volatile boolean do_run;
 
     /** Synchronization block for waiting.
      *  Signaled in stop().
@@ -54,6 +87,9 @@ public class WriteThread implements Runnable
     /** Delay between write runs. */
     private long millisec_delay = 5000;
 
+    /** Delay before the first write run */
+    private long millisec_initial_delay = 0;
+
     /** Number of values to place into one batch */
     private int batch_size = 500;
 
@@ -66,9 +102,48 @@ public class WriteThread implements Runnable
     /** Average duration of write run */
     private Average write_time = new Average();
 
+    /** Average number of values written per second */
+    private Average write_rate = new Average();
+
+    /** Average duration of a flush, i.e. commit */
+    private Average flush_time = new Average();
+
+    /** Start of the last write run, 0 if none */
+    private long last_write_start = 0;
+
+    /** Spool for samples that cannot be written, or <code>null</code> */
+    private SampleSpool spool = null;
+
+    /** Spool directories of other threads to replay */
+    private final List<File> other_spool_directories = new ArrayList<>();
+
+    /** Spools of other threads that still need to be replayed */
+    private final List<SampleSpool> other_spools = new ArrayList<>();
+
+    /** Samples added to the writer since the last flush.
+     *  Only tracked with a spool.
+     */
+    private final List<SampleSpool.Sample> unflushed = new ArrayList<>();
+
     /** Thread the executes this.run() */
     private Thread thread;
 
+    /** Create write thread */
+    public WriteThread()
+    {
+        this("WriteThread", new AtomicInteger());
+    }
+
+    /** Create write thread
+     *  @param name Name of the thread
+     *  @param threads_in_error Counter for threads in error state, shared by all threads
+     */
+    WriteThread(final String name, final AtomicInteger threads_in_error)
+    {
+        this.name = name;
+        this.threads_in_error = threads_in_error;
+    }
+
     /** Add a channel's buffer that this thread reads */
     public void addChannel(final ArchiveChannel channel)
     {
@@ -81,12 +156,40 @@ public class WriteThread implements Runnable
         buffers.add(buffer);
     }
 
+    /** @param name Name of a write thread
+     *  @return Spool directory of that thread
+     */
+    static File getSpoolDirectory(final String name)
+    {
+        return new File(Preferences.spool_directory, name.replace(' ', '_'));
+    }
+
+    /** Add spool of another thread to replay
+     *  <p>
+     *  Must be called before the thread is started.
+     *  @param directory Spool directory that no thread writes
+     */
+    void addSpoolToReplay(final File directory)
+    {
+        other_spool_directories.add(directory);
+    }
+
     /** Start the write thread.
      *  @param write_period Period between writes in seconds
      *  @param batch_size Number of values to batch
      */
+    public void start(final double write_period, final int batch_size)
+    {
+        start(write_period, batch_size, 0.0);
+    }
+
+    /** Start the write thread.
+     *  @param write_period Period between writes in seconds
+     *  @param batch_size Number of values to batch
+     *  @param offset Fraction of the write period to wait before the first write
+     */
     @SuppressWarnings("nls")
-    public void start(double write_period, int batch_size)
+    void start(double write_period, final int batch_size, final double offset)
     {
         if (write_period < MIN_WRITE_PERIOD)
         {
@@ -95,8 +198,41 @@ public class WriteThread implements Runnable
             write_period = MIN_WRITE_PERIOD;
         }
         millisec_delay = (int)(1000.0 * write_period);
+        millisec_initial_delay = (long) (millisec_delay * offset);
         this.batch_size = batch_size;
-        thread = new Thread(this, "WriteThread");
+        if (! Preferences.spool_directory.isEmpty())
+        {
+            final int segment_size = SampleSpool.getSegmentSize(Preferences.spool_segment_size);
+            final File directory = getSpoolDirectory(name);
+            try
+            {
+                spool = new SampleSpool(directory, segment_size);
+            }
+            catch (Exception ex)
+            {
+                logger.log(Level.WARNING, "Cannot use spool " + directory, ex);
+            }
+            for (File other : other_spool_directories)
+            {
+                try
+                {
+                    final SampleSpool other_spool = new SampleSpool(other, segment_size);
+                    if (other_spool.isEmpty())
+                        other_spool.delete();
+                    else
+                    {
+                        logger.log(Level.INFO, name + " replays spool " + other);
+                        other_spools.add(other_spool);
+                    }
+                }
+                catch (Exception ex)
+                {
+                    logger.log(Level.WARNING, "Cannot replay spool " + other, ex);
+                }
+            }
+        }
+        do_run = true;
+        thread = new Thread(this, name);
         thread.start();
     }
 
@@ -105,10 +241,12 @@ public class WriteThread implements Runnable
     {
         write_count.reset();
         write_time.reset();
+        write_rate.reset();
+        flush_time.reset();
     }
 
     /** Ask the write thread to stop ASAP. */
-    private void stop()
+    void stop()
     {
         do_run = false;
         synchronized (wait_block)
@@ -117,6 +255,33 @@ public class WriteThread implements Runnable
         }
     }
 
+    /** @return Name of the thread */
+    public String getName()
+    {
+        return name;
+    }
+
+    /** @return Number of channels written by this thread */
+    public int getChannelCount()
+    {
+        return buffers.size();
+    }
+
+    /** @return Number of samples currently queued for this thread */
+    public int getQueueSize()
+    {
+        int size = 0;
+        for (SampleBuffer buffer : buffers)
+            size += buffer.getQueueSize();
+        return size;
+    }
+
+    /** @return <code>true</code> if this thread experiences write errors */
+    public boolean isInErrorState()
+    {
+        return in_error;
+    }
+
     /** @return Timestamp of end of last write run */
     public Instant getLastWriteTime()
     {
@@ -135,6 +300,18 @@ public class WriteThread implements Runnable
         return write_time.get();
     }
 
+    /** @return Average number of values written per second */
+    public double getWriteRate()
+    {
+        return write_rate.get();
+    }
+
+    /** @return Average duration of a flush (commit) in seconds */
+    public double getFlushDuration()
+    {
+        return flush_time.get();
+    }
+
     /** 'Main loop' of the write thread.
      *  <p>
      *  Writes all values out, then waits.
@@ -152,9 +329,12 @@ public class WriteThread implements Runnable
     @SuppressWarnings("nls")
     public void run()
     {
-        logger.info("WriteThread starts");
+        logger.info(name + " starts");
         boolean write_error = false;
-        do_run = true;
+        // Threads of a pool start at different times
+        // to spread their commits over the write period
+        if (millisec_initial_delay > 0)
+            waitFor(millisec_initial_delay);
         while (do_run)
         {
             long delay;
@@ -162,7 +342,10 @@ public class WriteThread implements Runnable
             {
                 // If there was an error before...
                 if (write_error)
-                {   // .. try to reconnect
+                {   // .. spool what arrived while waiting
+                    if (spool != null)
+                        spool();
+                    // .. and try to reconnect
                     if (writer != null)
                     {
                         writer.close();
@@ -173,15 +356,43 @@ public class WriteThread implements Runnable
                     // .. and we continue to write.
                 }
                 if (writer == null)
+                {
                     writer = ArchiveWriterFactory.getArchiveWriter();
+                    // Fetch channel information in bulk instead of one by one
+                    final List<String> names = new ArrayList<>(buffers.size());
+                    for (SampleBuffer buffer : buffers)
+                        names.add(buffer.getChannelName());
+                    writer.prefetchChannels(names);
+                }
                 final long start = System.currentTimeMillis();
                 // In case of a network problem, we can hang in here
                 // for a long time...
-                final long written = write();
+                long written = write();
+                long replay_limit = Preferences.spool_replay_rate * millisec_delay / 1000;
+                if (spool != null  &&  ! spool.isEmpty())
+                {
+                    final long replayed = replay(spool, replay_limit);
+                    written += replayed;
+                    replay_limit -= replayed;
+                }
+                while (replay_limit > 0  &&  ! other_spools.isEmpty())
+                {
+                    final SampleSpool other = other_spools.get(0);
+                    final long replayed = replay(other, replay_limit);
+                    written += replayed;
+                    replay_limit -= replayed;
+                    if (! other.isEmpty())
+                        break;
+                    other_spools.remove(0);
+                    other.delete();
+                }
                 final long milli = System.currentTimeMillis() - start;
                 last_write_stamp = Instant.now();
                 write_count.update(written);
                 write_time.update(milli / 1000.0);
+                if (last_write_start > 0  &&  start > last_write_start)
+                    write_rate.update(written * 1000.0 / (start - last_write_start));
+                last_write_start = start;
                 // How much of the scheduled delay is left after write()?
                 delay = millisec_delay - milli;
             }
@@ -191,26 +402,54 @@ public class WriteThread implements Runnable
                 // Use max. delay
                 delay = millisec_delay;
                 write_error = true;
+                if (spool != null)
+                    spool();
             }
-            SampleBuffer.setErrorState(write_error);
+            setErrorState(write_error);
             // See if there's any time left to wait,
             // or if we already used all that time in the last 'write'
             if (delay > 0)
+                waitFor(delay);
+        }
+        logger.info(name + " exists");
+    }
+
+    /** Wait unless stopped
+     *  @param delay Milliseconds to wait
+     */
+    @SuppressWarnings("nls")
+    private void waitFor(final long delay)
+    {
+        synchronized (wait_block)
+        {
+            if (! do_run)
+                return;
+            try
             {
-                synchronized (wait_block)
-                {
-                    try
-                    {
-                        wait_block.wait(delay);
-                    }
-                    catch (InterruptedException ex)
-                    {
-                        logger.log(Level.WARNING, "Interrupted wait", ex);
-                    }
-                }
+                wait_block.wait(delay);
+            }
+            catch (InterruptedException ex)
+            {
+                logger.log(Level.WARNING, "Interrupted wait", ex);
             }
         }
-        logger.info("WriteThread exists");
+    }
+
+    /** Update error state of this thread
+     *  and the overall {@link SampleBuffer} error state
+     *  @param error Did this thread encounter an error?
+     */
+    private void setErrorState(final boolean error)
+    {
+        if (error != in_error)
+        {
+            in_error = error;
+            if (error)
+                threads_in_error.incrementAndGet();
+            else
+                threads_in_error.decrementAndGet();
+        }
+        SampleBuffer.setErrorState(threads_in_error.get() > 0);
     }
 
     /** Stop the write thread, performing a final write. */
@@ -226,6 +465,13 @@ public class WriteThread implements Runnable
         {
             write();
         }
+        catch (Exception ex)
+        {
+            if (spool == null)
+                throw ex;
+            logger.log(Level.WARNING, name + " spools samples of final write", ex);
+            spool();
+        }
         finally
         {
             if (writer != null)
@@ -233,6 +479,14 @@ public class WriteThread implements Runnable
                 writer.close();
                 writer = null;
             }
+            if (spool != null)
+            {
+                spool.close();
+                spool = null;
+            }
+            for (SampleSpool other : other_spools)
+                other.close();
+            other_spools.clear();
         }
     }
 
@@ -253,7 +507,10 @@ public class WriteThread implements Runnable
             final WriteChannel channel = writer.getChannel(name, retention);
             VType sample = buffer.remove();
             while (sample != null)
-            {   // Write one value
+            {   // Write one value.
+                // Track it before adding it, so it's spooled if that fails.
+                if (spool != null)
+                    unflushed.add(new SampleSpool.Sample(name, retention, sample));
                 writer.addSample(channel, sample);
                 // Note: count across different sample buffers!
                 ++count;
@@ -261,15 +518,92 @@ public class WriteThread implements Runnable
                 {
                     total_count += count;
                     count = 0;
-                    writer.flush();
+                    flush();
                 }
                 // next
                 sample = buffer.remove();
             }
         }
         // Flush remaining samples (less than batch_size)
-        writer.flush();
+        flush();
         total_count += count;
         return total_count;
     }
+
+    /** Flush written samples, i.e. commit them */
+    private void flush() throws Exception
+    {
+        final long start = System.nanoTime();
+        writer.flush();
+        unflushed.clear();
+        flush_time.update((System.nanoTime() - start) / 1e9);
+    }
+
+    /** Replay samples from a spool
+     *  @param spool Spool to replay
+     *  @param limit Maximum number of samples to replay
+     *  @return Number of samples replayed
+     */
+    private long replay(final SampleSpool spool, final long limit) throws Exception
+    {
+        long total_count = 0;
+        boolean more = true;
+        while (more  &&  total_count < limit)
+        {
+            int count = 0;
+            try
+            {
+                SampleSpool.Sample sample = null;
+                while (count <= batch_size  &&  total_count + count < limit  &&
+                       (sample = spool.read()) != null)
+                {
+                    writer.addSample(writer.getChannel(sample.channel, sample.retention), sample.value);
+                    ++count;
+                }
+                more = sample != null;
+                flush();
+            }
+            catch (Exception ex)
+            {   // Samples of the failed batch remain in the spool
+                spool.rollback();
+                throw ex;
+            }
+            // Samples are in the archive.
+            // Never roll them back, that would write them again.
+            spool.commit();
+            total_count += count;
+        }
+        return total_count;
+    }
+
+    /** Move samples that were not flushed
+     *  and the samples in the buffers to the spool
+     */
+    @SuppressWarnings("nls")
+    private void spool()
+    {
+        try
+        {
+            for (SampleSpool.Sample sample : unflushed)
+                spool.add(sample.channel, sample.retention, sample.value);
+            unflushed.clear();
+            for (SampleBuffer buffer : buffers)
+            {
+                buffer.updateStats();
+                final String name = buffer.getChannelName();
+                final String retention = buffer.getArchiveDataRetention();
+                VType sample = buffer.remove();
+                while (sample != null)
+                {
+                    spool.add(name, retention, sample);
+                    sample = buffer.remove();
+                }
+            }
+            spool.force();
+        }
+        catch (Exception ex)
+        {
+            logger.log(Level.WARNING, name + " cannot spool samples", ex);
+        }
+    }
 }
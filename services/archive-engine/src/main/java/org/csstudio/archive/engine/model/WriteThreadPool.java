@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.Preferences;
+
+/** Pool of {@link WriteThread}s
+ *  <p>
+ *  Channels are assigned to one of the threads by the hash of their name.
+ *  Each thread writes its channels via its own writer,
+ *  i.e. its own RDB connection, and commits independently.
+ *  A slow commit thus only delays the channels of one thread.
+ *  The threads start at different times within the write period
+ *  to spread the load on the archive.
+ *  <p>
+ *  Each thread spools to its own sub-directory of the spool directory.
+ *  Sub-directories that don't belong to any of the threads,
+ *  for example after changing the number of threads,
+ *  are replayed by the threads and then removed.
+ */
+public class WriteThreadPool
+{
+    /** Write threads */
+    final private WriteThread[] threads;
+
+    /** Number of threads in error state */
+    final private AtomicInteger threads_in_error = new AtomicInteger();
+
+    /** @param count Number of write threads */
+    @SuppressWarnings("nls")
+    public WriteThreadPool(final int count)
+    {
+        threads = new WriteThread[Math.max(1, count)];
+        for (int i=0; i<threads.length; ++i)
+            threads[i] = new WriteThread(threads.length == 1 ? "WriteThread" : "WriteThread " + (i+1),
+                                         threads_in_error);
+    }
+
+    /** @return Write threads */
+    public List<WriteThread> getThreads()
+    {
+        return List.of(threads);
+    }
+
+    /** Add a channel to the thread for its name */
+    public void addChannel(final ArchiveChannel channel)
+    {
+        threads[Math.floorMod(channel.getName().hashCode(), threads.length)].addChannel(channel);
+    }
+
+    /** @param directory Spool directory
+     *  @param names Names of the sub-directories used by the write threads
+     *  @return Other sub-directories that hold spool files
+     */
+    static List<File> getOtherSpoolDirectories(final File directory, final Set<String> names)
+    {
+        final List<File> others = new ArrayList<>();
+        final File[] subdirs = directory.listFiles(File::isDirectory);
+        if (subdirs == null)
+            return others;
+        Arrays.sort(subdirs);
+        for (File subdir : subdirs)
+        {
+            if (names.contains(subdir.getName()))
+                continue;
+            final String[] files = subdir.list((dir, name) -> SampleSpool.isSegmentFile(name));
+            if (files != null  &&  files.length > 0)
+                others.add(subdir);
+        }
+        return others;
+    }
+
+    /** Start the write threads
+     *  @param write_period Period between writes in seconds
+     *  @param batch_size Number of values to batch
+     */
+    public void start(final double write_period, final int batch_size)
+    {
+        SampleBuffer.setErrorState(false);
+        if (! Preferences.spool_directory.isEmpty())
+        {
+            // Replay samples that were spooled by threads which no longer exist
+            final Set<String> names = new HashSet<>();
+            for (WriteThread thread : threads)
+                names.add(WriteThread.getSpoolDirectory(thread.getName()).getName());
+            final List<File> others = getOtherSpoolDirectories(new File(Preferences.spool_directory), names);
+            for (int i=0; i<others.size(); ++i)
+                threads[i % threads.length].addSpoolToReplay(others.get(i));
+        }
+        for (int i=0; i<threads.length; ++i)
+            threads[i].start(write_period, batch_size, i / (double) threads.length);
+    }
+
+    /** Reset statistics */
+    public void reset()
+    {
+        for (WriteThread thread : threads)
+            thread.reset();
+    }
+
+    /** @return Timestamp of end of the oldest last write run of all threads,
+     *          <code>null</code> if a thread has not written
+     */
+    public Instant getLastWriteTime()
+    {
+        Instant oldest = null;
+        for (WriteThread thread : threads)
+        {
+            final Instant time = thread.getLastWriteTime();
+            if (time == null)
+                return null;
+            if (oldest == null  ||  time.isBefore(oldest))
+                oldest = time;
+        }
+        return oldest;
+    }
+
+    /** @return Average number of values per write run, summed over all threads */
+    public double getWriteCount()
+    {
+        double count = 0;
+        for (WriteThread thread : threads)
+            count += thread.getWriteCount();
+        return count;
+    }
+
+    /** @return Longest average duration of write run of all threads in seconds */
+    public double getWriteDuration()
+    {
+        double duration = 0;
+        for (WriteThread thread : threads)
+            duration = Math.max(duration, thread.getWriteDuration());
+        return duration;
+    }
+
+    /** Stop the write threads, each performing a final write.
+     *  @throws Exception on error in final write
+     */
+    public void shutdown() throws Exception
+    {
+        // Ask all to stop, then wait for each
+        for (WriteThread thread : threads)
+            thread.stop();
+        Exception error = null;
+        for (WriteThread thread : threads)
+        {
+            try
+            {
+                thread.shutdown();
+            }
+            catch (Exception ex)
+            {
+                if (error == null)
+                    error = ex;
+                else
+                    error.addSuppressed(ex);
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+}
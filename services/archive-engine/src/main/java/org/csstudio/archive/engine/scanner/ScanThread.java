@@ -56,6 +56,8 @@ public class ScanThread implements Runnable
         {
             scanner.scanOnce();
         }
+        // Let scans in progress complete
+        scanner.stop();
         logger.info("Scan Thread ends");
     }
 
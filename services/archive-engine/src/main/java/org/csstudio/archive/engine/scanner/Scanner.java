@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010-2018 Oak Ridge National Laboratory.
+ * Copyright (c) 2010-2024 Oak Ridge National Laboratory.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,55 +10,86 @@ package org.csstudio.archive.engine.scanner;
 import static org.csstudio.archive.Engine.logger;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.csstudio.archive.engine.model.Average;
+import org.csstudio.archive.engine.model.Histogram;
+import org.csstudio.archive.engine.scanner.TimerWheel.Timer;
 
 /** Helper for scanning something.
  *  <p>
- *  Places runnable items on scan lists,
- *  determines how long to wait to the scan next.
+ *  Schedules each runnable item on a {@link TimerWheel}
+ *  and runs the items that are due on a pool of worker threads.
+ *  Items with the same period are spread over the period,
+ *  and a slow item only delays the items that happen to share its worker.
+ *  <p>
+ *  An item is scheduled again after it ran, so it never runs concurrently
+ *  with itself. When it ran longer than its period, the missed scans are skipped.
  *  @author Kay Kasemir
  */
+@SuppressWarnings("nls")
 public class Scanner implements Scheduleable
 {
-    /** Granularity in seconds for the supported lists. */
+    /** Granularity in seconds for the supported periods. */
     final private static double GRANULARITY = 0.1;
 
-    /** Default idle delay */
-    final private static long DEFAULT_IDLE_DELAY = 500;
+    /** Fraction of the golden ratio, used to spread items over their period */
+    final private static double SPREAD = 0.6180339887;
 
-    /** Time to wait in system millis when nothing to do */
-    final private long idle_delay;
+    /** Number of worker threads */
+    final private int threads;
 
-    /** All the single-period scan lists.
-     *  <p>
-     *  Note that we don't keep empty lists around,
-     *  so every list should have a valid 'due time'.
-     */
-    final private ArrayList<ScanList> lists = new ArrayList<>();
+    /** Timer wheel. Synchronize on it to access the wheel or the timers */
+    final private TimerWheel wheel = new TimerWheel(System.currentTimeMillis());
+
+    /** Timers for all items */
+    final private Map<Runnable, Timer> timers = new HashMap<>();
+
+    /** Number of items that have been added, used to spread them */
+    private long added = 0;
+
+    /** Threads that run due items, created when scanning starts */
+    private volatile ExecutorService workers = null;
 
-    /** Next due time in system millis */
-    private long next_due_time;
+    /** Time in millis that workers spent scanning since last idle time update */
+    final private AtomicLong busy_millis = new AtomicLong();
+
+    /** Time of last idle time update */
+    private long last_idle_update = 0;
 
     /** Average idle time in percent. */
     final private Average idle_percentage = new Average();
 
+    /** Delay between due time and start of a scan */
+    final private Histogram latency = new Histogram();
+
+    /** Deviation between the time from one scan to the next and the period */
+    final private Histogram jitter = new Histogram();
+
     /** Construct scanner
-     *  @param idle_delay Time to wait in system millis when nothing to do
+     *  @param threads Number of threads that run the scanned items
      */
-    public Scanner(final long idle_delay)
+    public Scanner(final int threads)
     {
-        this.idle_delay = idle_delay;
+        this.threads = Math.max(1, threads);
     }
 
-    /** Construct scanner with default idle delay */
+    /** Construct scanner with one worker thread */
     public Scanner()
     {
-        this(DEFAULT_IDLE_DELAY);
+        this(1);
     }
 
-    /** Add an item to the scanner, placing it on a suitable scan list.
+    /** Add an item to the scanner.
      *  @param item Item to scan
      *  @param period Scan period in seconds
      */
@@ -67,100 +98,74 @@ public class Scanner implements Scheduleable
         // Avoid duplicates by removing what might be there
         remove(item);
 
-        // Locate suitable scan list
-        ScanList the_list = null;
-        for (ScanList list : lists)
+        final long period_millis = Math.max(1, Math.round(period / GRANULARITY)) * Math.round(GRANULARITY * 1000);
+        final List<Timer> expired = new ArrayList<>();
+        synchronized (wheel)
         {
-            if (Math.abs(list.getPeriod() - period) < GRANULARITY)
-            {
-                the_list = list;
-                break;
-            }
+            // Start within the first period, spread over the period
+            final long offset = (long) (period_millis * ((++added * SPREAD) % 1.0));
+            final Timer timer = new Timer(item, period_millis, System.currentTimeMillis() + offset);
+            timers.put(item, timer);
+            wheel.add(timer, expired);
         }
-        // Nothing found?
-        if (the_list == null)
-        {   // Create new scan list
-            the_list = new ScanList(Math.round(period / GRANULARITY) * GRANULARITY);
-            lists.add(the_list);
-        }
-        // Add item to list
-        the_list.add(item);
-        computeDueTime();
+        execute(expired);
     }
 
     /** Remove an item from the scanner */
     public void remove(final Runnable item)
     {
-        // Brute-force remove from all lists,
-        // stopping as soon as item was found
-        for (ScanList list : lists)
-            if (list.remove(item))
-            {
-                // If this leaves an empty list, remove it.
-                if (! list.isDueAtAll())
-                    lists.remove(list);
-                return;
-            }
+        synchronized (wheel)
+        {
+            final Timer timer = timers.remove(item);
+            if (timer != null)
+                timer.cancelled = true;
+        }
     }
 
     /** Remove all items from this scanner */
     public void clear()
     {
-        lists.clear();
+        synchronized (wheel)
+        {
+            for (Timer timer : timers.values())
+                timer.cancelled = true;
+            timers.clear();
+            wheel.clear();
+        }
     }
 
-    /** @return Number of scan lists. */
+    /** @return Number of scanned items. */
     public long size()
     {
-        return lists.size();
-    }
-
-    /** @return One of the scan lists. */
-    public ScanList get(final int index)
-    {
-        return lists.get(index);
+        synchronized (wheel)
+        {
+            return timers.size();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public boolean isDueAtAll()
     {
-        return lists.size() > 0;
+        return size() > 0;
     }
 
     /** {@inheritDoc} */
     @Override
     public long getNextDueTime()
     {
-        if (lists.size() == 0)
-            throw new Error("Scanner never due"); //$NON-NLS-1$
-        return next_due_time;
-    }
-
-    /** Scan all the scan lists which are currently due */
-    void scanDueScanLists()
-    {
-        final long now = System.currentTimeMillis();
-        next_due_time = Long.MAX_VALUE;
-        for (ScanList list : lists)
-        {   // Scan (run) what's due now, and update the next due time
-            if (list.getNextDueTime() <= now)
-                list.scanItems();
-            // Update the next due time - which could change in run()
-            if (list.getNextDueTime() < next_due_time)
-                next_due_time = list.getNextDueTime();
+        synchronized (wheel)
+        {
+            if (timers.isEmpty())
+                throw new Error("Scanner never due");
+            long next_due_time = Long.MAX_VALUE;
+            for (Timer timer : timers.values())
+                next_due_time = Math.min(timer.due, next_due_time);
+            return next_due_time;
         }
     }
 
-    /** Compute the next due time */
-    private void computeDueTime()
-    {
-        next_due_time = Long.MAX_VALUE;
-        for (ScanList list : lists)
-            next_due_time = Math.min(list.getNextDueTime(), next_due_time);
-    }
-
-    /** Average idle time in percent.
+    /** Average idle time of the worker threads in percent.
      *  <p>
      *  100 means: Nothing to do, always waiting.<br>
      *   50 means: using about half the allocated time for the scan<br>
@@ -171,45 +176,157 @@ public class Scanner implements Scheduleable
         return idle_percentage.get();
     }
 
+    /** @return Histogram of the delay between due time and start of a scan */
+    public Histogram getLatency()
+    {
+        return latency;
+    }
+
+    /** @return Histogram of the deviation between the time from one scan to the next and the period */
+    public Histogram getJitter()
+    {
+        return jitter;
+    }
+
     /** Reset statistics */
     public void reset()
     {
         idle_percentage.reset();
+        latency.reset();
+        jitter.reset();
     }
 
-    /** Perform one scan: Wait for the next scan, perform it. */
+    /** Perform one scan: Wait for the next tick, start items that are due. */
     public void scanOnce()
     {
+        if (workers == null)
+        {
+            final AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(threads,
+                    runnable -> new Thread(runnable, "ScanWorker " + count.incrementAndGet()));
+            last_idle_update = System.currentTimeMillis();
+            busy_millis.set(0);
+        }
         try
         {
-            if (isDueAtAll())
+            final long now = System.currentTimeMillis();
+            Thread.sleep(TimerWheel.TICK - now % TimerWheel.TICK);
+        }
+        catch (InterruptedException ex)
+        {
+            logger.log(Level.WARNING, "Scanner interrupted", ex);
+        }
+        final long now = System.currentTimeMillis();
+        final List<Timer> expired = new ArrayList<>();
+        synchronized (wheel)
+        {
+            wheel.advance(now, expired);
+        }
+        execute(expired);
+
+        // Update idle time about once per second
+        final long elapsed = now - last_idle_update;
+        if (elapsed >= 1000)
+        {
+            final double busy = busy_millis.getAndSet(0) / (double) (elapsed * threads);
+            idle_percentage.update(Math.max(0.0, 100.0 * (1.0 - busy)));
+            last_idle_update = now;
+        }
+    }
+
+    /** @param expired Timers to run, if scanner has been started */
+    private void execute(final List<Timer> expired)
+    {
+        final ExecutorService pool = workers;
+        if (pool == null)
+        {   // Not started, so place again, keeping the phase of each item
+            final long now = System.currentTimeMillis();
+            synchronized (wheel)
             {
-                final long delay = getNextDueTime() - System.currentTimeMillis();
-                if (delay > idle_delay)
-                {   // Nothing due within idle time
-                    idle_percentage.update(100.0);
-                    Thread.sleep(idle_delay);
-                    return;
+                for (Timer timer : expired)
+                {
+                    timer.due = getNextDueTime(timer.due, timer.period, now);
+                    wheel.add(timer, new ArrayList<>());
                 }
-                if (delay > 0)
-                {   // Need to wait a little, then run scan
-                    idle_percentage.update(delay*100.0/idle_delay);
-                    Thread.sleep(delay);
-                    scanDueScanLists();
-                    return;
-                }
-                // High noon
-                idle_percentage.update(0.0);
-                scanDueScanLists();
-                return;
             }
-            // Nothing to do, ever. Just wait.
-            idle_percentage.update(100.0);
-            Thread.sleep(idle_delay);
+            return;
+        }
+        try
+        {
+            for (Timer timer : expired)
+                pool.execute(() -> scan(timer));
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // Scanner is stopping
+        }
+    }
+
+    /** Keep the phase of an item, skipping missed scans
+     *  @param due Last due time in millis
+     *  @param period Period in millis
+     *  @param now Current time in millis
+     *  @return Next due time after 'now' that's a multiple of the period after 'due'
+     */
+    static long getNextDueTime(final long due, final long period, final long now)
+    {
+        long next = due + period;
+        if (next <= now)
+            next += ((now - next) / period + 1) * period;
+        return next;
+    }
+
+    /** Run a timer's item, then schedule it again
+     *  @param timer Timer that's due
+     */
+    private void scan(final Timer timer)
+    {
+        if (timer.cancelled)
+            return;
+        final long start = System.currentTimeMillis();
+        latency.update(start - timer.due);
+        if (timer.last_start > 0)
+            jitter.update(Math.abs(start - timer.last_start - timer.period));
+        timer.last_start = start;
+        try
+        {
+            timer.item.run();
+        }
+        catch (Throwable ex)
+        {
+            logger.log(Level.SEVERE, "Scan error for " + timer.item, ex);
+        }
+        final long end = System.currentTimeMillis();
+        busy_millis.addAndGet(end - start);
+
+        final long next = getNextDueTime(timer.due, timer.period, end);
+        final List<Timer> expired = new ArrayList<>();
+        synchronized (wheel)
+        {
+            if (timer.cancelled)
+                return;
+            timer.due = next;
+            wheel.add(timer, expired);
+        }
+        execute(expired);
+    }
+
+    /** Stop the worker threads, waiting for scans in progress to complete */
+    void stop()
+    {
+        final ExecutorService stopped = workers;
+        if (stopped == null)
+            return;
+        stopped.shutdown();
+        try
+        {
+            if (! stopped.awaitTermination(1, TimeUnit.MINUTES))
+                logger.log(Level.WARNING, "Scan workers do not stop");
         }
         catch (InterruptedException ex)
         {
-            logger.log(Level.WARNING, "Scanner interrupted", ex); //$NON-NLS-1$
+            logger.log(Level.WARNING, "Scanner interrupted", ex);
         }
+        workers = null;
     }
 }
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Hierarchical timer wheel
+ *  <p>
+ *  Timers are placed into the slot of a wheel for their due time.
+ *  The first wheel has one slot per tick.
+ *  Each slot of the following wheels covers a full turn of the previous wheel,
+ *  and its timers are moved down when the previous wheel completes a turn.
+ *  Adding a timer and advancing by one tick thus costs the same
+ *  no matter how many timers there are.
+ *  <p>
+ *  Not thread-safe, calls need to synchronize on the wheel.
+ */
+class TimerWheel
+{
+    /** Timer for a periodic item */
+    static class Timer
+    {
+        /** Item to run */
+        final Runnable item;
+
+        /** Period in millis */
+        final long period;
+
+        /** Due time in millis */
+        long due;
+
+        /** Start of the last run in millis, 0 if never run */
+        long last_start = 0;
+
+        /** Set when the item has been removed */
+        volatile boolean cancelled = false;
+
+        Timer(final Runnable item, final long period, final long due)
+        {
+            this.item = item;
+            this.period = period;
+            this.due = due;
+        }
+    }
+
+    /** Slot of a wheel */
+    private static class Slot extends ArrayList<Timer>
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Duration of a tick in millis */
+    static final long TICK = 10;
+
+    /** Number of bits for the slots of each wheel */
+    private static final int[] BITS = { 8, 6, 6, 6 };
+
+    /** Shift of tick count to get slot of each wheel */
+    private static final int[] SHIFT = new int[BITS.length];
+
+    /** Number of ticks covered by all wheels */
+    private static final long MAX_TICKS;
+
+    static
+    {
+        int shift = 0;
+        for (int level=0; level<BITS.length; ++level)
+        {
+            SHIFT[level] = shift;
+            shift += BITS[level];
+        }
+        MAX_TICKS = 1L << shift;
+    }
+
+    /** Slots of each wheel */
+    private final Slot[][] wheels = new Slot[BITS.length][];
+
+    /** Current tick */
+    private long now;
+
+    /** @param time Current time in millis */
+    TimerWheel(final long time)
+    {
+        for (int level=0; level<BITS.length; ++level)
+        {
+            wheels[level] = new Slot[1 << BITS[level]];
+            for (int slot=0; slot<wheels[level].length; ++slot)
+                wheels[level][slot] = new Slot();
+        }
+        now = time / TICK;
+    }
+
+    /** @param time Time in millis
+     *  @return Tick at or after that time
+     */
+    private static long toTick(final long time)
+    {
+        return Math.floorDiv(time + TICK - 1, TICK);
+    }
+
+    /** Add timer to the wheel
+     *  @param timer Timer
+     *  @param expired Timers that are already due
+     */
+    void add(final Timer timer, final List<Timer> expired)
+    {
+        final long due = toTick(timer.due);
+        long delta = due - now;
+        if (delta <= 0)
+        {
+            expired.add(timer);
+            return;
+        }
+        // Timers beyond the last wheel are moved down
+        // when their slot is reached, then placed again
+        final long tick = delta < MAX_TICKS ? due : now + MAX_TICKS - 1;
+        delta = tick - now;
+        int level = 0;
+        while (level < BITS.length-1  &&  delta >= 1L << SHIFT[level+1])
+            ++level;
+        final int slot = (int) ((tick >> SHIFT[level]) & (wheels[level].length - 1));
+        wheels[level][slot].add(timer);
+    }
+
+    /** Advance the wheel
+     *  @param time Current time in millis
+     *  @param expired Timers that are now due
+     */
+    void advance(final long time, final List<Timer> expired)
+    {
+        final long end = time / TICK;
+        while (now < end)
+        {
+            ++now;
+            // When a wheel completes a turn, move down the next slot of the following wheel
+            for (int level=1; level<BITS.length; ++level)
+            {
+                if ((now & ((1L << SHIFT[level]) - 1)) != 0)
+                    break;
+                final int slot = (int) ((now >> SHIFT[level]) & (wheels[level].length - 1));
+                cascade(wheels[level][slot], expired);
+            }
+            cascade(wheels[0][(int) (now & (wheels[0].length - 1))], expired);
+        }
+    }
+
+    /** @param slot Slot whose timers are placed again or expire
+     *  @param expired Timers that are now due
+     */
+    private void cascade(final Slot slot, final List<Timer> expired)
+    {
+        if (slot.isEmpty())
+            return;
+        final Timer[] timers = slot.toArray(new Timer[slot.size()]);
+        slot.clear();
+        for (Timer timer : timers)
+            if (! timer.cancelled)
+                add(timer, expired);
+    }
+
+    /** Remove all timers */
+    void clear()
+    {
+        for (Slot[] wheel : wheels)
+            for (Slot slot : wheel)
+                slot.clear();
+    }
+}
@@ -20,6 +20,7 @@ import org.csstudio.archive.Engine;
 import org.csstudio.archive.Preferences;
 import org.csstudio.archive.engine.model.ArchiveGroup;
 import org.csstudio.archive.engine.model.EngineModel;
+import org.csstudio.archive.engine.model.Histogram;
 import org.csstudio.archive.engine.model.SampleBuffer;
 import org.csstudio.archive.writer.rdb.TimestampHelper;
 import org.phoebus.util.time.SecondsParser;
@@ -86,6 +87,7 @@ public class MainServlet extends HttpServlet
             jg.writeNumberField(Messages.HTTP_Disconnected, disconnectCount);
             jg.writeNumberField(Messages.HTTP_BatchSize, Preferences.batch_size);
             jg.writeNumberField(Messages.HTTP_WritePeriod, Preferences.write_period);
+            jg.writeNumberField(Messages.HTTP_WriteThreads, model.getWriteThreads().size());
 
             jg.writeStringField(Messages.HTTP_WriteState, (SampleBuffer.isInErrorState()
                     ? Messages.HTTP_WriteError : "OK"));
@@ -94,6 +96,8 @@ public class MainServlet extends HttpServlet
             jg.writeNumberField(Messages.HTTP_WriteCount, model.getWriteCount());
             jg.writeNumberField(Messages.HTTP_WriteDuration, model.getWriteDuration());
             jg.writeNumberField(Messages.HTTP_Idletime, model.getIdlePercentage());
+            writeHistogram(jg, Messages.HTTP_ScanLatency, model.getScanLatency());
+            writeHistogram(jg, Messages.HTTP_ScanJitter, model.getScanJitter());
 
             final Runtime runtime = Runtime.getRuntime();
             final double used_mem = runtime.totalMemory() / MB;
@@ -131,6 +135,7 @@ public class MainServlet extends HttpServlet
 
             html.tableLine(Messages.HTTP_BatchSize, Preferences.batch_size + " samples");
             html.tableLine(Messages.HTTP_WritePeriod, Preferences.write_period + " sec");
+            html.tableLine(Messages.HTTP_WriteThreads, HTMLWriter.makeLink("writers", Integer.toString(model.getWriteThreads().size())));
 
             html.tableLine(Messages.HTTP_WriteState, (SampleBuffer.isInErrorState()
                     ? HTMLWriter.makeRedText(Messages.HTTP_WriteError)
@@ -141,6 +146,8 @@ public class MainServlet extends HttpServlet
             html.tableLine(Messages.HTTP_WriteDuration, String.format("%.1f sec", model.getWriteDuration()));
 
             html.tableLine(Messages.HTTP_Idletime, String.format("%.1f %%", model.getIdlePercentage()));
+            html.tableLine(Messages.HTTP_ScanLatency, model.getScanLatency().toString());
+            html.tableLine(Messages.HTTP_ScanJitter, model.getScanJitter().toString());
 
             final Runtime runtime = Runtime.getRuntime();
             final double used_mem = runtime.totalMemory() / MB;
@@ -153,4 +160,16 @@ public class MainServlet extends HttpServlet
             html.close();
         }
     }
+
+    /** @param jg JSON generator
+     *  @param name Field name
+     *  @param histogram Histogram to write as object with count per bucket
+     */
+    private static void writeHistogram(final JsonGenerator jg, final String name, final Histogram histogram) throws IOException
+    {
+        jg.writeObjectFieldStart(name);
+        for (int i=0; i<histogram.getBucketCount(); ++i)
+            jg.writeNumberField(histogram.getLabel(i), histogram.getCount(i));
+        jg.writeEndObject();
+    }
 }
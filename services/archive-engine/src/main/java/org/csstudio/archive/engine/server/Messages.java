@@ -19,6 +19,7 @@ public class Messages
     final public static String HTTP_ChannelCount = "Channels";
     final public static String HTTP_ChannelInfo = "Channel Info";
     final public static String HTTP_Channels = "Channels";
+    final public static String HTTP_CommitDuration = "Commit Duration";
     final public static String HTTP_Connected = "Connected";
     final public static String HTTP_Description = "Description";
     final public static String HTTP_Disabled = "Disabled";
@@ -44,6 +45,8 @@ public class Messages
     final public static String HTTP_QueueCapacity = "Capacity";
     final public static String HTTP_QueueOverruns = "Overruns";
     final public static String HTTP_ReceivedValues = "Received Values";
+    final public static String HTTP_ScanJitter = "Scan Jitter";
+    final public static String HTTP_ScanLatency = "Scan Latency";
     final public static String HTTP_StartTime = "Start Time";
     final public static String HTTP_State = "State";
     final public static String HTTP_Status = "Status";
@@ -55,5 +58,8 @@ public class Messages
     final public static String HTTP_WriteDuration = "Write Duration";
     final public static String HTTP_WriteError = "Write Error";
     final public static String HTTP_WritePeriod = "Write Period";
+    final public static String HTTP_WriteRate = "Write Rate";
     final public static String HTTP_WriteState = "Write State";
+    final public static String HTTP_WriteThreads = "Write Threads";
+    final public static String HTTP_Writer = "Writer";
 }
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.server;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.csstudio.archive.Engine;
+import org.csstudio.archive.engine.model.EngineModel;
+import org.csstudio.archive.engine.model.WriteThread;
+import org.csstudio.archive.writer.rdb.TimestampHelper;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/** 'writers' web page
+ *
+ *  <p>Statistics of each write thread
+ */
+@SuppressWarnings("nls")
+public class WritersServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(final HttpServletRequest request,
+                         final HttpServletResponse response) throws ServletException, IOException
+    {
+        final EngineModel model = Engine.getModel();
+        final List<WriteThread> threads = model.getWriteThreads();
+
+        if ("json".equals(request.getParameter("format")))
+        {
+            final JSONWriter json = new JSONWriter(request, response);
+            final JsonGenerator jg = json.getGenerator();
+
+            jg.writeArrayFieldStart("Archive Engine Writers");
+            for (WriteThread thread : threads)
+            {
+                final Instant last_write_time = thread.getLastWriteTime();
+                jg.writeStartObject();
+                jg.writeStringField(Messages.HTTP_Writer, thread.getName());
+                jg.writeNumberField(Messages.HTTP_ChannelCount, thread.getChannelCount());
+                jg.writeStringField(Messages.HTTP_WriteState, thread.isInErrorState() ? Messages.HTTP_WriteError : "OK");
+                jg.writeNumberField(Messages.HTTP_QueueLen, thread.getQueueSize());
+                jg.writeNumberField(Messages.HTTP_WriteRate, thread.getWriteRate());
+                jg.writeNumberField(Messages.HTTP_WriteCount, thread.getWriteCount());
+                jg.writeNumberField(Messages.HTTP_WriteDuration, thread.getWriteDuration());
+                jg.writeNumberField(Messages.HTTP_CommitDuration, thread.getFlushDuration());
+                jg.writeStringField(Messages.HTTP_LastWriteTime, last_write_time == null ? "Never" : TimestampHelper.format(last_write_time));
+                jg.writeEndObject();
+            }
+            jg.writeEndArray();
+
+            json.close();
+        }
+        else
+        {
+            final HTMLWriter html = new HTMLWriter(response, "Archive Engine Writers");
+            html.openTable(1, Messages.HTTP_Writer,
+                              Messages.HTTP_ChannelCount,
+                              Messages.HTTP_WriteState,
+                              Messages.HTTP_QueueLen,
+                              Messages.HTTP_WriteRate,
+                              Messages.HTTP_WriteCount,
+                              Messages.HTTP_WriteDuration,
+                              Messages.HTTP_CommitDuration,
+                              Messages.HTTP_LastWriteTime);
+            for (WriteThread thread : threads)
+            {
+                final Instant last_write_time = thread.getLastWriteTime();
+                html.tableLine(
+                    thread.getName(),
+                    Integer.toString(thread.getChannelCount()),
+                    thread.isInErrorState() ? HTMLWriter.makeRedText(Messages.HTTP_WriteError) : "OK",
+                    Integer.toString(thread.getQueueSize()),
+                    String.format("%.1f samples/sec", thread.getWriteRate()),
+                    (int) thread.getWriteCount() + " samples",
+                    String.format("%.1f sec", thread.getWriteDuration()),
+                    String.format("%.1f ms", thread.getFlushDuration() * 1000.0),
+                    last_write_time == null ? Messages.HTTP_Never : TimestampHelper.format(last_write_time));
+            }
+            html.closeTable();
+            html.close();
+        }
+    }
+}
@@ -7,6 +7,8 @@
  ******************************************************************************/
 package org.csstudio.archive.writer;
 
+import java.util.Collection;
+
 import org.epics.vtype.VType;
 
 /** Interface for writing samples to an archive
@@ -29,6 +31,21 @@ public interface ArchiveWriter
         return getChannel(name);
     }
 
+    /** Prepare for writing to the given channels.
+     *
+     *  <p>The underlying implementation may use this to
+     *  fetch information for all channels at once,
+     *  instead of one channel at a time in <code>getChannel()</code>,
+     *  and to add channels that are not yet in the data store.
+     *  @param names Names of the channels that will be written
+     *  @throws Exception on error, for example failure to access
+     *          the data store
+     */
+    public default void prefetchChannels(Collection<String> names) throws Exception
+    {
+        // Default: Nothing to prepare
+    }
+
     /** Add a sample to the archive.
      *
      *  <p>The underlying implementation might optimize
@@ -11,7 +11,11 @@ import static org.csstudio.archive.Engine.logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 /** Enumeration Strings for a channel.
@@ -50,6 +54,28 @@ public class EnumMetaDataHelper
         }
     }
 
+    /** Read meta data of all channels
+     *  @param connection Connection
+     *  @param sql SQL statements
+     *  @return Enumeration labels by channel ID
+     *  @throws Exception on error
+     */
+    public static Map<Integer, List<String>> readAll(final Connection connection, final SQL sql) throws Exception
+    {
+        final Map<Integer, List<String>> labels = new HashMap<>();
+        try
+        (
+            PreparedStatement select = connection.prepareStatement(sql.enum_sel_all);
+            ResultSet result = select.executeQuery();
+        )
+        {
+            while (result.next())
+                labels.computeIfAbsent(result.getInt(1), id -> new ArrayList<>())
+                      .add(result.getString(3));
+        }
+        return labels;
+    }
+
     /** Insert meta data for channel into archive
      *  @param connection Connection
      *  @param sql SQL statements
@@ -36,8 +36,9 @@ public class MetaDataHelper
         if (! (obj instanceof Display))
             return false;
         final Display other = (Display) obj;
+        // The control range is not stored in the RDB,
+        // so changes to it don't require writing the meta data
         if (! (display.getDisplayRange().equals(other.getDisplayRange())  &&
-               display.getControlRange().equals(other.getControlRange())  &&
                display.getWarningRange().equals(other.getWarningRange())  &&
                display.getAlarmRange().equals(other.getAlarmRange())  &&
                display.getUnit().equals(other.getUnit())))
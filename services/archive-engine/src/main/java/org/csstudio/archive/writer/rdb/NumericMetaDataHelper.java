@@ -9,10 +9,15 @@ package org.csstudio.archive.writer.rdb;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.epics.util.stats.Range;
+import org.epics.util.text.NumberFormats;
 import org.epics.vtype.Display;
 
 /** Helper for handling the numeric meta data table.
@@ -81,6 +86,58 @@ public class NumericMetaDataHelper
         }
     }
 
+    /** Read meta data of all channels
+     *  <p>
+     *  The control range is not stored in the archive
+     *  and thus undefined in the returned meta data.
+     *  @param connection Connection
+     *  @param sql SQL statements
+     *  @return Meta data by channel ID
+     *  @throws Exception on error
+     */
+    public static Map<Integer, Display> readAll(final Connection connection, final SQL sql) throws Exception
+    {
+        final Map<Integer, Display> displays = new HashMap<>();
+        try
+        (
+            PreparedStatement select = connection.prepareStatement(sql.numeric_meta_sel_all);
+            ResultSet result = select.executeQuery();
+        )
+        {
+            while (result.next())
+            {
+                final Range display = getRange(result, 2);
+                final Range warning = getRange(result, 4);
+                final Range alarm = getRange(result, 6);
+                final int precision = result.getInt(8);
+                // Empty units were written as " "
+                String units = result.getString(9);
+                if (units == null  ||  units.equals(" ")) //$NON-NLS-1$
+                    units = ""; //$NON-NLS-1$
+                displays.put(result.getInt(1),
+                             Display.of(display, alarm, warning, Range.undefined(),
+                                        units, NumberFormats.precisionFormat(precision)));
+            }
+        }
+        return displays;
+    }
+
+    /** @param result Result with low and high limit
+     *  @param index Index of low limit, followed by high limit
+     *  @return {@link Range}, undefined for null limits
+     *  @throws SQLException on error
+     */
+    private static Range getRange(final ResultSet result, final int index) throws SQLException
+    {
+        final double low = result.getDouble(index);
+        if (result.wasNull())
+            return Range.undefined();
+        final double high = result.getDouble(index+1);
+        if (result.wasNull()  ||  low > high)
+            return Range.undefined();
+        return Range.of(low, high);
+    }
+
     /** Some dialects like MySQL cannot handle NaN or +-Inf.
      *  Set those numbers as Null in the statement.
      *  @param statement
@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer.rdb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/** Prepared statement that performs batched inserts via the
+ *  binary 'COPY .. FROM STDIN (FORMAT binary)' of PostgreSQL
+ *  <p>
+ *  Like the {@link PGCopyPreparedStatement}, which formats
+ *  each row as CSV text, but encodes the values in the binary
+ *  format of their column type straight into a reusable buffer.
+ *  Numbers and time stamps are thus never formatted as text,
+ *  and the server doesn't need to parse them.
+ *  <p>
+ *  Supports columns of type int2, int4, int8, float4, float8, bool,
+ *  timestamp, timestamptz, bytea, char, varchar and text.
+ */
+@SuppressWarnings("nls")
+public class PGBinaryCopyPreparedStatement extends PGCopyPreparedStatement
+{
+    /** Header of the binary COPY format: Signature, flags, header extension length */
+    private static final byte[] HEADER =
+    {
+        'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0,
+        0, 0, 0, 0,
+        0, 0, 0, 0
+    };
+
+    /** Start of PostgreSQL time stamps, 2000-01-01 00:00:00, in epoch seconds */
+    private static final long PG_EPOCH_SECS = 946684800L;
+
+    /** Column types */
+    private static final int INT2 = 0, INT4 = 1, INT8 = 2, FLOAT4 = 3, FLOAT8 = 4, BOOL = 5,
+                             TIMESTAMP = 6, TIMESTAMPTZ = 7, BYTEA = 8, TEXT = 9;
+
+    /** Type of each column in the order of the insert query */
+    private final int[] types;
+
+    /** Fixed-size value of each column, set as raw bits */
+    private final long[] bits;
+
+    /** Variable-size value of each column */
+    private final byte[][] bytes;
+
+    /** Is the value of each column null? */
+    private final boolean[] nulls;
+
+    /** Time zone for time stamps without time zone */
+    private final TimeZone zone = TimeZone.getDefault();
+
+    /** COPY command */
+    private final String copy;
+
+    /** Buffer for the batched rows, reused for each batch */
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    /** Number of batched rows */
+    private int rows = 0;
+
+    /** @param connection PostgreSQL connection
+     *  @param insertSqlQuery "INSERT INTO table (columns) ..."
+     *  @throws SQLException on error, including columns of unsupported type
+     */
+    public PGBinaryCopyPreparedStatement(final Connection connection, final String insertSqlQuery)
+            throws SQLException
+    {
+        super(connection, insertSqlQuery);
+        final int N = columnNames.length;
+        types = new int[N];
+        for (int i=0; i<N; ++i)
+            types[i] = getType(columnNames[i], columnTypes[i]);
+        bits = new long[N];
+        bytes = new byte[N][];
+        nulls = new boolean[N];
+        Arrays.fill(nulls, true);
+        copy = "COPY " + tableName + " (" + String.join(", ", columnNames) + ") FROM STDIN (FORMAT binary)";
+        buffer.put(HEADER);
+    }
+
+    /** @param name Column name
+     *  @param type_name Database type name
+     *  @return Column type
+     *  @throws SQLException for unsupported type
+     */
+    private int getType(final String name, final String type_name) throws SQLException
+    {
+        if (type_name != null)
+            switch (type_name)
+            {
+            case "int2":        return INT2;
+            case "int4":        return INT4;
+            case "int8":        return INT8;
+            case "float4":      return FLOAT4;
+            case "float8":      return FLOAT8;
+            case "bool":        return BOOL;
+            case "timestamp":   return TIMESTAMP;
+            case "timestamptz": return TIMESTAMPTZ;
+            case "bytea":       return BYTEA;
+            case "bpchar":
+            case "varchar":
+            case "text":        return TEXT;
+            default:
+            }
+        throw new SQLException("Column " + name + " of table " + tableName +
+                               " has type " + type_name + ", not supported by binary COPY");
+    }
+
+    /** @param parameterIndex 1-based parameter index
+     *  @return 0-based column index
+     *  @throws SQLException if there is no such parameter
+     */
+    private int column(final int parameterIndex) throws SQLException
+    {
+        if (parameterIndex < 1  ||  parameterIndex > types.length)
+            throw new SQLException("Invalid parameter index " + parameterIndex);
+        return parameterIndex - 1;
+    }
+
+    /** @param col Column index
+     *  @param value Fixed-size value
+     */
+    private void setBits(final int col, final long value)
+    {
+        bits[col] = value;
+        bytes[col] = null;
+        nulls[col] = false;
+    }
+
+    /** @param col Column index
+     *  @param value Variable-size value or <code>null</code>
+     */
+    private void setVariable(final int col, final byte[] value)
+    {
+        bytes[col] = value;
+        nulls[col] = value == null;
+    }
+
+    private SQLException wrongType(final int col, final String value_type)
+    {
+        return new SQLException("Cannot set " + value_type + " for column " + columnNames[col] +
+                                " of type " + columnTypes[col]);
+    }
+
+    @Override
+    public void setLong(final int parameterIndex, final long x) throws SQLException
+    {
+        final int col = column(parameterIndex);
+        switch (types[col])
+        {
+        case INT2:
+            if (x < Short.MIN_VALUE  ||  x > Short.MAX_VALUE)
+                throw new SQLException("Value " + x + " exceeds range of column " + columnNames[col]);
+            setBits(col, x);
+            break;
+        case INT4:
+            if (x < Integer.MIN_VALUE  ||  x > Integer.MAX_VALUE)
+                throw new SQLException("Value " + x + " exceeds range of column " + columnNames[col]);
+            setBits(col, x);
+            break;
+        case INT8:
+            setBits(col, x);
+            break;
+        case FLOAT4:
+        case FLOAT8:
+            setDouble(parameterIndex, x);
+            break;
+        case TEXT:
+            setVariable(col, Long.toString(x).getBytes(StandardCharsets.UTF_8));
+            break;
+        default:
+            throw wrongType(col, "long");
+        }
+    }
+
+    @Override
+    public void setInt(final int parameterIndex, final int x) throws SQLException
+    {
+        setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(final int parameterIndex, final short x) throws SQLException
+    {
+        setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(final int parameterIndex, final double x) throws SQLException
+    {
+        final int col = column(parameterIndex);
+        switch (types[col])
+        {
+        case FLOAT4:
+            setBits(col, Float.floatToRawIntBits((float) x));
+            break;
+        case FLOAT8:
+            setBits(col, Double.doubleToRawLongBits(x));
+            break;
+        case TEXT:
+            setVariable(col, Double.toString(x).getBytes(StandardCharsets.UTF_8));
+            break;
+        default:
+            throw wrongType(col, "double");
+        }
+    }
+
+    @Override
+    public void setFloat(final int parameterIndex, final float x) throws SQLException
+    {
+        setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException
+    {
+        final int col = column(parameterIndex);
+        if (x == null)
+            setVariable(col, null);
+        else if (types[col] == TEXT)
+            setVariable(col, x.toPlainString().getBytes(StandardCharsets.UTF_8));
+        else if (types[col] == FLOAT4  ||  types[col] == FLOAT8)
+            setDouble(parameterIndex, x.doubleValue());
+        else
+        {
+            try
+            {
+                setLong(parameterIndex, x.longValueExact());
+            }
+            catch (ArithmeticException ex)
+            {
+                throw new SQLException("Value " + x + " is not an integer for column " + columnNames[col], ex);
+            }
+        }
+    }
+
+    @Override
+    public void setBoolean(final int parameterIndex, final boolean x) throws SQLException
+    {
+        final int col = column(parameterIndex);
+        if (types[col] == BOOL)
+            setBits(col, x ? 1 : 0);
+        else if (types[col] == TEXT)
+            setVariable(col, Boolean.toString(x).getBytes(StandardCharsets.UTF_8));
+        else
+            throw wrongType(col, "boolean");
+    }
+
+    @Override
+    public void setString(final int parameterIndex, final String x) throws SQLException
+    {
+        final int col = column(parameterIndex);
+        // Like text COPY, a string for a bytea column provides its bytes
+        if (types[col] != TEXT  &&  types[col] != BYTEA)
+            throw wrongType(col, "string");
+        setVariable(col, x == null ? null : x.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void setNString(final int parameterIndex, final String value) throws SQLException
+    {
+        setString(parameterIndex, value);
+    }
+
+    @Override
+    public void setBytes(final int parameterIndex, final byte[] x) throws SQLException
+    {
+        final int col = column(parameterIndex);
+        if (types[col] != BYTEA)
+            throw wrongType(col, "bytes");
+        setVariable(col, x);
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException
+    {
+        final int col = column(parameterIndex);
+        if (x == null)
+        {
+            setVariable(col, null);
+            return;
+        }
+        // Time stamps are microseconds since 2000-01-01 00:00:00.
+        // Without time zone, that's the local date and time,
+        // which is also what the text COPY would send.
+        long millis = x.getTime();
+        switch (types[col])
+        {
+        case TIMESTAMP:
+            millis += zone.getOffset(millis);
+            break;
+        case TIMESTAMPTZ:
+            break;
+        case TEXT:
+            setVariable(col, x.toString().getBytes(StandardCharsets.UTF_8));
+            return;
+        default:
+            throw wrongType(col, "timestamp");
+        }
+        final long secs = Math.floorDiv(millis, 1000L) - PG_EPOCH_SECS;
+        setBits(col, secs * 1000000L + x.getNanos() / 1000);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType) throws SQLException
+    {
+        setVariable(column(parameterIndex), null);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException
+    {
+        setVariable(column(parameterIndex), null);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException
+    {
+        Arrays.fill(bytes, null);
+        Arrays.fill(nulls, true);
+    }
+
+    /** @param needed Number of bytes that need to fit into the buffer */
+    private void ensureCapacity(final int needed)
+    {
+        if (buffer.remaining() >= needed)
+            return;
+        final ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    @Override
+    public void addBatch() throws SQLException
+    {
+        final int N = types.length;
+        // Field count, then length and value of each field
+        int needed = 2;
+        for (int i=0; i<N; ++i)
+            needed += 4 + (nulls[i] ? 0 : bytes[i] != null ? bytes[i].length : 8);
+        ensureCapacity(needed);
+
+        buffer.putShort((short) N);
+        for (int i=0; i<N; ++i)
+        {
+            if (nulls[i])
+            {
+                buffer.putInt(-1);
+                continue;
+            }
+            if (bytes[i] != null)
+            {
+                buffer.putInt(bytes[i].length);
+                buffer.put(bytes[i]);
+                continue;
+            }
+            switch (types[i])
+            {
+            case BOOL:
+                buffer.putInt(1);
+                buffer.put((byte) bits[i]);
+                break;
+            case INT2:
+                buffer.putInt(2);
+                buffer.putShort((short) bits[i]);
+                break;
+            case INT4:
+            case FLOAT4:
+                buffer.putInt(4);
+                buffer.putInt((int) bits[i]);
+                break;
+            default:
+                buffer.putInt(8);
+                buffer.putLong(bits[i]);
+            }
+        }
+        ++rows;
+        clearParameters();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException
+    {
+        buffer.clear();
+        buffer.put(HEADER);
+        rows = 0;
+    }
+
+    /** Add file trailer to the batched rows
+     *  @return Number of bytes in buffer
+     */
+    private int finishBatch()
+    {
+        ensureCapacity(2);
+        buffer.putShort((short) -1);
+        return buffer.position();
+    }
+
+    /** Get the binary COPY data, then clear the batch
+     *  @return Header, batched rows and trailer
+     *  @throws SQLException on error
+     */
+    byte[] getCopyData() throws SQLException
+    {
+        final byte[] data = Arrays.copyOf(buffer.array(), finishBatch());
+        clearBatch();
+        return data;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException
+    {
+        if (rows <= 0)
+            return new int[] { 0 };
+        final int length = finishBatch();
+
+        final CopyIn copy_in = ((PGConnection) connection).getCopyAPI().copyIn(copy);
+        final long res;
+        try
+        {
+            copy_in.writeToCopy(buffer.array(), 0, length);
+            res = copy_in.endCopy();
+        }
+        finally
+        {
+            if (copy_in.isActive())
+                copy_in.cancelCopy();
+            clearBatch();
+        }
+        return new int[] { (int) res };
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        buffer = null;
+        super.close();
+    }
+}
@@ -37,7 +37,7 @@ import org.postgresql.copy.CopyManager;
 @SuppressWarnings("nls")
 public class PGCopyPreparedStatement implements PreparedStatement {
 
-    private Connection connection;
+    protected Connection connection;
 
     private String[] rowValues;
 
@@ -45,7 +45,13 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
     private int[] columnOrderMapping;
 
-    private String tableName;
+    protected String tableName;
+
+    /** Names of the columns in the order of the insert query */
+    protected String[] columnNames;
+
+    /** Database type names of the columns in the order of the insert query */
+    protected String[] columnTypes;
 
     public PGCopyPreparedStatement(Connection connection, String insertSqlQuery)
             throws SQLException {
@@ -66,11 +72,14 @@ public class PGCopyPreparedStatement implements PreparedStatement {
 
         // Get the column order as it's stored in database
         Map<String, Integer> postgresColumnOrderMap = new HashMap<>();
+        Map<String, String> postgresColumnTypeMap = new HashMap<>();
         ResultSet columnsRs = connection.getMetaData().getColumns(
                 connection.getCatalog(), null, tableName, null);
         while (columnsRs.next()) {
             postgresColumnOrderMap.put(columnsRs.getString("COLUMN_NAME"),
                     columnsRs.getInt("ORDINAL_POSITION"));
+            postgresColumnTypeMap.put(columnsRs.getString("COLUMN_NAME"),
+                    columnsRs.getString("TYPE_NAME"));
         }
         rowValues = new String[postgresColumnOrderMap.size()];
 
@@ -78,6 +87,8 @@ public class PGCopyPreparedStatement implements PreparedStatement {
         // database order
         columnOrderMapping = new int[columnsArrays.length + 1];
         columnOrderMapping[0] = -1;
+        columnNames = new String[columnsArrays.length];
+        columnTypes = new String[columnsArrays.length];
         for (int i = 0; i < columnsArrays.length; i++) {
             String columnName = columnsArrays[i].trim();
             Integer postgresColumnOrder = postgresColumnOrderMap
@@ -87,6 +98,8 @@ public class PGCopyPreparedStatement implements PreparedStatement {
                         + "  in table " + tableName);
             }
             columnOrderMapping[i + 1] = postgresColumnOrder.intValue() - 1;
+            columnNames[i] = columnName;
+            columnTypes[i] = postgresColumnTypeMap.get(columnName);
         }
     }
 
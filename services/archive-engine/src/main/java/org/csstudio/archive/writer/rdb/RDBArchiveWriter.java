@@ -19,9 +19,12 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -130,7 +133,8 @@ public class RDBArchiveWriter implements ArchiveWriter
 
     /** Create a new prepared statement. For PostgreSQL connections, this method
      *  create a PGCopyPreparedStatement to improve insert speed using COPY
-     *  instead of INSERT.
+     *  instead of INSERT, or a PGBinaryCopyPreparedStatement to use the
+     *  binary COPY format.
      *
      *  @param sqlQuery
      *  @return
@@ -143,7 +147,12 @@ public class RDBArchiveWriter implements ArchiveWriter
     {
         final PreparedStatement statement;
         if (dialect == Dialect.PostgreSQL  &&  Preferences.use_postgres_copy)
-            statement = new PGCopyPreparedStatement(connection, sqlQuery);
+        {
+            if (Preferences.use_postgres_binary_copy)
+                statement = new PGBinaryCopyPreparedStatement(connection, sqlQuery);
+            else
+                statement = new PGCopyPreparedStatement(connection, sqlQuery);
+        }
         else
             statement = connection.prepareStatement(sqlQuery);
         if (Preferences.timeout_secs > 0)
@@ -175,6 +184,120 @@ public class RDBArchiveWriter implements ArchiveWriter
         return channel;
     }
 
+    /** {@inheritDoc}
+     *
+     *  <p>Reads the IDs and meta data of all channels,
+     *  the severities and the stati in a few queries.
+     *
+     *  <p>Channels that are not in the RDB are added in batches.
+     *  Their IDs are assigned by the RDB, for example from the
+     *  'channel_chid' sequence of PostgreSQL or the MySQL AUTO_INCREMENT.
+     *  The new channels do not belong to a group.
+     *  Importing the engine configuration moves them into their group.
+     */
+    @Override
+    public void prefetchChannels(final Collection<String> names) throws Exception
+    {
+        final long start = System.currentTimeMillis();
+        severities.prefetch();
+        stati.prefetch();
+
+        // Get IDs of known channels
+        final Set<String> missing = new HashSet<>(names);
+        missing.removeAll(channels.keySet());
+        readChannelIDs(missing);
+        if (! missing.isEmpty())
+        {
+            addChannels(missing);
+            // Get IDs that the RDB assigned to the new channels
+            readChannelIDs(missing);
+            if (! missing.isEmpty())
+                throw new Exception("Cannot add " + missing.size() + " channels, for example " + missing.iterator().next());
+        }
+
+        // Get meta data, so it's only written when it changes
+        final Map<Integer, RDBWriteChannel> by_id = new HashMap<>();
+        for (RDBWriteChannel channel : channels.values())
+            if (channel.getMetadata() == null)
+                by_id.put(channel.getId(), channel);
+        for (Map.Entry<Integer, Display> entry : NumericMetaDataHelper.readAll(connection, sql).entrySet())
+        {
+            final RDBWriteChannel channel = by_id.get(entry.getKey());
+            if (channel != null)
+                channel.setMetaData(entry.getValue());
+        }
+        for (Map.Entry<Integer, List<String>> entry : EnumMetaDataHelper.readAll(connection, sql).entrySet())
+        {
+            final RDBWriteChannel channel = by_id.get(entry.getKey());
+            if (channel != null)
+                channel.setMetaData(entry.getValue());
+        }
+        // Release read locks
+        connection.commit();
+        logger.log(Level.INFO, "Prefetched {0} channels in {1} ms",
+                   new Object[] { names.size(), System.currentTimeMillis() - start });
+    }
+
+    /** Read IDs of channels
+     *  @param names Names of channels to read, those found are removed
+     *  @throws Exception on error
+     */
+    private void readChannelIDs(final Set<String> names) throws Exception
+    {
+        try
+        (
+            PreparedStatement statement = connection.prepareStatement(sql.channel_sel_all);
+            ResultSet result = statement.executeQuery();
+        )
+        {
+            while (result.next())
+            {
+                final String name = result.getString(2);
+                if (names.remove(name))
+                    channels.put(name, new RDBWriteChannel(name, result.getInt(1)));
+            }
+        }
+    }
+
+    /** Add channels to the RDB
+     *
+     *  <p>The RDB assigns the channel IDs,
+     *  so this is safe while other engines or the configuration tool
+     *  also add channels.
+     *
+     *  @param names Names of channels to add
+     *  @throws Exception on error
+     */
+    private void addChannels(final Collection<String> names) throws Exception
+    {
+        logger.log(Level.INFO, "Adding {0} new channels", names.size());
+        try
+        (
+            PreparedStatement insert = connection.prepareStatement(sql.channel_insert);
+        )
+        {
+            int count = 0;
+            for (String name : names)
+            {
+                insert.setString(1, name);
+                insert.addBatch();
+                if (++count >= Preferences.batch_size)
+                {
+                    insert.executeBatch();
+                    count = 0;
+                }
+            }
+            if (count > 0)
+                insert.executeBatch();
+            connection.commit();
+        }
+        catch (Exception ex)
+        {
+            connection.rollback();
+            throw new Exception("Cannot add " + names.size() + " channels", ex);
+        }
+    }
+
     @Override
     public void addSample(final WriteChannel channel, final VType sample) throws Exception
     {
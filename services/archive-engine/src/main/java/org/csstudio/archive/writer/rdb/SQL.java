@@ -21,14 +21,18 @@ public class SQL
 {
     // 'channel' table
     final String channel_sel_by_name;
+    final String channel_sel_all;
+    final String channel_insert;
 
     // 'enum_metadata' table
     final public String enum_delete_by_channel;
     final public String enum_insert_channel_num_val;
+    final public String enum_sel_all;
 
     // 'num_metadata' table
     final public String numeric_meta_insert;
     final public String numeric_meta_delete_by_channel;
+    final public String numeric_meta_sel_all;
 
     // 'severity' table
     final public String severity_table;
@@ -58,11 +62,16 @@ public class SQL
         else if (schema.length() > 0)
             schema = schema + ".";
         channel_sel_by_name = "SELECT channel_id FROM " + schema + "channel WHERE name=?";
+        channel_sel_all = "SELECT channel_id, name FROM " + schema + "channel";
+        // Channel ID is assigned by the RDB
+        channel_insert = "INSERT INTO " + schema + "channel(name) VALUES (?)";
 
         // 'enum_metadata' table
         enum_delete_by_channel = "DELETE FROM " + schema + "enum_metadata WHERE channel_id=?";
         enum_insert_channel_num_val = "INSERT INTO " + schema
             + "enum_metadata(channel_id,enum_nbr, enum_val) VALUES(?,?,?)";
+        enum_sel_all = "SELECT channel_id, enum_nbr, enum_val FROM " + schema
+            + "enum_metadata ORDER BY channel_id, enum_nbr";
 
         // 'num_metadata' table
         numeric_meta_insert = "INSERT INTO " + schema + "num_metadata " +
@@ -72,6 +81,10 @@ public class SQL
                 " prec, unit) VALUES (?,?,?,?,?,?,?,?,?)";
         numeric_meta_delete_by_channel = "DELETE FROM "
             + schema + "num_metadata WHERE channel_id=?";
+        numeric_meta_sel_all = "SELECT channel_id, low_disp_rng, high_disp_rng," +
+                " low_warn_lmt, high_warn_lmt," +
+                " low_alarm_lmt, high_alarm_lmt," +
+                " prec, unit FROM " + schema + "num_metadata";
 
         // 'severity' table
         severity_table = schema + "severity";
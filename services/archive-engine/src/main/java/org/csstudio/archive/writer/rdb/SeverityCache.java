@@ -38,6 +38,17 @@ public class SeverityCache
         cache_by_name.clear();
     }
 
+    /** Add all severities of the RDB to cache
+     *  @throws Exception on error
+     */
+    public void prefetch() throws Exception
+    {
+        for (StringID found : helper.findAll())
+            for (AlarmSeverity severity : AlarmSeverity.values())
+                if (severity.name().equals(found.getName()))
+                    cache_by_name.put(severity, found.getId());
+    }
+
     /** Find or create a severity by name.
      *  @param severity alarm Severity name
      *  @return Severity
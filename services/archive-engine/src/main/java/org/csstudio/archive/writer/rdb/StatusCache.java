@@ -42,6 +42,15 @@ public class StatusCache
         cache_by_name.put(status.getName(), status);
     }
 
+    /** Add all stati of the RDB to cache
+     *  @throws Exception on error
+     */
+    public void prefetch() throws Exception
+    {
+        for (StringID found : helper.findAll())
+            memorize(new Status(found.getId(), found.getName()));
+    }
+
     /** Get status by name.
      *  @param name status name
      *  @return status or <code>null</code>
@@ -11,6 +11,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Helper for {@link StringID} entries in RDB.
  *
@@ -97,6 +99,26 @@ public class StringIDHelper
         return null;
     }
 
+    /** Read all entries
+     *  @return All StringIDs
+     *  @throws Exception on error
+     */
+    public List<StringID> findAll() throws Exception
+    {
+        final List<StringID> entries = new ArrayList<>();
+        try
+        (
+            Statement statement = connection.createStatement();
+            ResultSet result = statement.executeQuery(
+                    "SELECT " + id_column + ", " + name_column + " FROM " + table);
+        )
+        {
+            while (result.next())
+                entries.add(new StringID(result.getInt(1), result.getString(2)));
+        }
+        return entries;
+    }
+
     /** Add new name, unless it's already in the RDB.
      *  @param name Name to add
      *  @return StringID found or generated
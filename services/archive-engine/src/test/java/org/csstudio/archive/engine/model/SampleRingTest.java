@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.stats.Range;
+import org.epics.util.text.NumberFormats;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.EnumDisplay;
+import org.epics.vtype.Time;
+import org.epics.vtype.VByte;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VFloat;
+import org.epics.vtype.VInt;
+import org.epics.vtype.VLong;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VShort;
+import org.epics.vtype.VString;
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link SampleRing}
+ */
+@SuppressWarnings("nls")
+public class SampleRingTest
+{
+    private static final Instant START = Instant.parse("2024-01-02T03:04:05.123456789Z");
+
+    private static Alarm createAlarm()
+    {
+        return Alarm.of(AlarmSeverity.MINOR, AlarmStatus.RECORD, "HIGH");
+    }
+
+    private static Display createDisplay()
+    {
+        return Display.of(Range.of(0, 10), Range.of(1, 9), Range.of(2, 8), Range.of(0, 10),
+                          "V", NumberFormats.precisionFormat(2));
+    }
+
+    private static VDouble createDouble(final int i)
+    {
+        return VDouble.of((double) i, Alarm.none(), Time.of(START.plusMillis(i)), Display.none());
+    }
+
+    private static void checkMeta(final VType copy, final VType original)
+    {
+        assertThat(Alarm.alarmOf(copy), equalTo(Alarm.alarmOf(original)));
+        final Time time = Time.timeOf(copy), orig_time = Time.timeOf(original);
+        assertThat(time.getTimestamp(), equalTo(orig_time.getTimestamp()));
+        assertThat(time.getUserTag(), equalTo(orig_time.getUserTag()));
+        assertThat(time.isValid(), equalTo(orig_time.isValid()));
+    }
+
+    @Test
+    public void testOverrun()
+    {
+        final SampleRing ring = new SampleRing(5);
+        assertThat(ring.getCapacity(), equalTo(5));
+        assertThat(ring.remove(), nullValue());
+
+        // Fill ring, nothing dropped
+        for (int i=0; i<5; ++i)
+            assertThat(ring.add(createDouble(i)), equalTo(false));
+        assertThat(ring.size(), equalTo(5));
+
+        // Wrap around several times, each add drops the oldest sample
+        int dropped = 0;
+        for (int i=5; i<23; ++i)
+            if (ring.add(createDouble(i)))
+                ++dropped;
+        assertThat(dropped, equalTo(18));
+        assertThat(ring.size(), equalTo(5));
+
+        // Ring holds the newest samples, oldest first
+        for (int i=18; i<23; ++i)
+            assertThat(((VDouble) ring.remove()).getValue(), equalTo((double) i));
+        assertThat(ring.size(), equalTo(0));
+        assertThat(ring.remove(), nullValue());
+
+        // After removing some, adding doesn't drop until full again
+        assertThat(ring.add(createDouble(100)), equalTo(false));
+        assertThat(ring.add(createDouble(101)), equalTo(false));
+        assertThat(ring.remove(), not(nullValue()));
+        for (int i=102; i<106; ++i)
+            assertThat(ring.add(createDouble(i)), equalTo(false));
+        assertThat(ring.add(createDouble(106)), equalTo(true));
+        assertThat(((VDouble) ring.remove()).getValue(), equalTo(102.0));
+    }
+
+    @Test
+    public void testMetaSharing()
+    {
+        final SampleRing ring = new SampleRing(10);
+        // Equal, but not identical alarm and display
+        ring.add(VDouble.of(1.0, createAlarm(), Time.of(START), createDisplay()));
+        ring.add(VDouble.of(2.0, createAlarm(), Time.of(START.plusSeconds(1)), createDisplay()));
+        // Changed alarm
+        final Alarm major = Alarm.of(AlarmSeverity.MAJOR, AlarmStatus.RECORD, "HIHI");
+        ring.add(VDouble.of(3.0, major, Time.of(START.plusSeconds(2)), createDisplay()));
+        // Changed user tag
+        ring.add(VDouble.of(4.0, major, Time.of(START.plusSeconds(3), 42, true), createDisplay()));
+
+        final VDouble first = (VDouble) ring.remove();
+        final VDouble second = (VDouble) ring.remove();
+        assertThat(second.getAlarm(), sameInstance(first.getAlarm()));
+        assertThat(second.getDisplay(), sameInstance(first.getDisplay()));
+        assertThat(second.getTime().getTimestamp(), equalTo(START.plusSeconds(1)));
+
+        final VDouble third = (VDouble) ring.remove();
+        assertThat(third.getAlarm(), equalTo(major));
+        assertThat(third.getDisplay(), equalTo(first.getDisplay()));
+
+        final VDouble fourth = (VDouble) ring.remove();
+        assertThat(fourth.getAlarm(), sameInstance(third.getAlarm()));
+        assertThat(fourth.getTime().getUserTag(), equalTo(42));
+        assertThat(third.getTime().getUserTag(), nullValue());
+    }
+
+    @Test
+    public void testTypes()
+    {
+        final Alarm alarm = createAlarm();
+        final Display display = createDisplay();
+        final Time time = Time.of(START, 7, false);
+        final EnumDisplay labels = EnumDisplay.of(List.of("Off", "On", "Error"));
+        final VType[] values =
+        {
+            VDouble.of(-3.14, alarm, time, display),
+            VDouble.of(Double.NaN, alarm, time, display),
+            VFloat.of(2.5f, alarm, time, display),
+            VLong.of(Long.MIN_VALUE, alarm, time, display),
+            VInt.of(-42, alarm, time, display),
+            VShort.of((short) -7, alarm, time, display),
+            VByte.of((byte) -128, alarm, time, display),
+            VEnum.of(2, labels, alarm, time),
+            // Time stamp before 1970
+            VDouble.of(1.0, alarm, Time.of(Instant.parse("1960-01-01T00:00:00.5Z")), display),
+        };
+        final SampleRing ring = new SampleRing(values.length);
+        for (VType value : values)
+            ring.add(value);
+
+        for (VType value : values)
+        {
+            final VType copy = ring.remove();
+            assertThat(copy.getClass(), equalTo(value.getClass()));
+            checkMeta(copy, value);
+            if (value instanceof VNumber)
+            {
+                assertThat(((VNumber) copy).getValue(), equalTo(((VNumber) value).getValue()));
+                assertThat(((VNumber) copy).getDisplay(), equalTo(display));
+            }
+            else
+            {
+                assertThat(((VEnum) copy).getIndex(), equalTo(2));
+                assertThat(((VEnum) copy).getDisplay(), equalTo(labels));
+            }
+        }
+        assertThat(ring.remove(), nullValue());
+    }
+
+    @Test
+    public void testHeldSamples()
+    {
+        // Samples that are not held as primitives are returned as they are
+        final VType[] values =
+        {
+            VString.of("Hello", Alarm.none(), Time.of(START)),
+            VDoubleArray.of(ArrayDouble.of(1, 2, 3), Alarm.none(), Time.of(START), Display.none()),
+            // Time stamp too large for nanoseconds
+            VDouble.of(1.0, Alarm.none(), Time.of(Instant.parse("2500-01-01T00:00:00Z")), Display.none()),
+        };
+        final SampleRing ring = new SampleRing(2);
+        assertThat(ring.add(values[0]), equalTo(false));
+        assertThat(ring.remove(), sameInstance(values[0]));
+        for (VType value : values)
+            ring.add(value);
+        assertThat(ring.size(), equalTo(2));
+        assertThat(ring.remove(), sameInstance(values[1]));
+        assertThat(ring.remove(), sameInstance(values[2]));
+        assertThat(ring.remove(), nullValue());
+    }
+
+    @Test
+    public void testConcurrency() throws Exception
+    {
+        final int N = 1000000;
+        final SampleRing ring = new SampleRing(100);
+        final AtomicInteger dropped = new AtomicInteger();
+        final Thread producer = new Thread(() ->
+        {
+            for (int i=0; i<N; ++i)
+                if (ring.add(createDouble(i)))
+                    dropped.incrementAndGet();
+        }, "Producer");
+        producer.start();
+
+        // Consumer receives samples in order, none twice
+        int received = 0;
+        double last = -1;
+        while (producer.isAlive()  ||  ring.size() > 0)
+        {
+            final VType value = ring.remove();
+            if (value == null)
+                continue;
+            assertThat(value, instanceOf(VDouble.class));
+            final double number = ((VDouble) value).getValue();
+            if (number <= last)
+                throw new AssertionError("Received " + number + " after " + last);
+            assertThat(((VDouble) value).getTime().getTimestamp(), equalTo(START.plusMillis((long) number)));
+            last = number;
+            ++received;
+        }
+        producer.join();
+        System.out.println("Received " + received + ", dropped " + dropped.get() + " of " + N);
+        assertThat(received + dropped.get(), equalTo(N));
+        assertThat(last, equalTo(N - 1.0));
+    }
+}
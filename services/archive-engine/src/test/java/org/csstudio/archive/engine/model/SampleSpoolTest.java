@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.List;
+
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.stats.Range;
+import org.epics.util.text.NumberFormats;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.EnumDisplay;
+import org.epics.vtype.Time;
+import org.epics.vtype.VByteArray;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VFloat;
+import org.epics.vtype.VInt;
+import org.epics.vtype.VLong;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VShort;
+import org.epics.vtype.VString;
+import org.epics.vtype.VStringArray;
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link SampleSpool}
+ */
+@SuppressWarnings("nls")
+public class SampleSpoolTest
+{
+    private static final Instant START = Instant.parse("2024-01-02T03:04:05.123456789Z");
+
+    private static final Alarm ALARM = Alarm.of(AlarmSeverity.MINOR, AlarmStatus.RECORD, "HIGH");
+
+    private static final Display DISPLAY = Display.of(Range.of(0, 10), Range.of(1, 9), Range.of(2, 8), Range.of(-1, 11),
+                                                      "V", NumberFormats.precisionFormat(3));
+
+    private File directory;
+
+    @BeforeEach
+    public void createDirectory() throws Exception
+    {
+        directory = Files.createTempDirectory("spool").toFile();
+    }
+
+    @AfterEach
+    public void deleteDirectory()
+    {
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    private static VDouble createDouble(final int i)
+    {
+        return VDouble.of((double) i, ALARM, Time.of(START.plusMillis(i)), DISPLAY);
+    }
+
+    private int countFiles()
+    {
+        return directory.listFiles().length;
+    }
+
+    private static void checkDisplay(final Display copy)
+    {
+        assertThat(copy.getDisplayRange(), equalTo(DISPLAY.getDisplayRange()));
+        assertThat(copy.getAlarmRange(), equalTo(DISPLAY.getAlarmRange()));
+        assertThat(copy.getWarningRange(), equalTo(DISPLAY.getWarningRange()));
+        assertThat(copy.getControlRange(), equalTo(DISPLAY.getControlRange()));
+        assertThat(copy.getUnit(), equalTo("V"));
+        assertThat(copy.getFormat().getMinimumFractionDigits(), equalTo(3));
+    }
+
+    @Test
+    public void testTypes() throws Exception
+    {
+        final Time time = Time.of(START);
+        final VType[] values =
+        {
+            VDouble.of(-3.14, ALARM, time, DISPLAY),
+            VFloat.of(2.5f, ALARM, time, DISPLAY),
+            VLong.of(Long.MIN_VALUE, ALARM, time, DISPLAY),
+            VInt.of(-42, ALARM, time, DISPLAY),
+            VShort.of((short) 7, ALARM, time, DISPLAY),
+            VEnum.of(1, EnumDisplay.of(List.of("Off", "On")), ALARM, time),
+            VString.of("Hello, Dolly", ALARM, time),
+            VDoubleArray.of(ArrayDouble.of(1.5, -2.5, Double.NaN), ALARM, time, DISPLAY),
+            VByteArray.of(ArrayByte.of((byte) 1, (byte) -2, (byte) 127), ALARM, time, DISPLAY),
+            VStringArray.of(List.of("a", "", "µA"), ALARM, time),
+        };
+
+        final SampleSpool spool = new SampleSpool(directory, 100000);
+        assertThat(spool.isEmpty(), equalTo(true));
+        for (VType value : values)
+            spool.add("test", "default", value);
+        assertThat(spool.isEmpty(), equalTo(false));
+
+        for (VType value : values)
+        {
+            final SampleSpool.Sample sample = spool.read();
+            assertThat(sample.channel, equalTo("test"));
+            assertThat(sample.retention, equalTo("default"));
+            final VType copy = sample.value;
+            assertThat(Alarm.alarmOf(copy), equalTo(ALARM));
+            assertThat(Time.timeOf(copy).getTimestamp(), equalTo(START));
+
+            if (value instanceof VDouble  ||  value instanceof VFloat)
+            {   // Floating point is spooled as double
+                assertThat(copy, instanceOf(VDouble.class));
+                assertThat(((VDouble) copy).getValue(), equalTo(((VNumber) value).getValue().doubleValue()));
+                checkDisplay(((VDouble) copy).getDisplay());
+            }
+            else if (value instanceof VNumber)
+            {   // Integer types are spooled as long
+                assertThat(copy, instanceOf(VLong.class));
+                assertThat(((VLong) copy).getValue(), equalTo(((VNumber) value).getValue().longValue()));
+                checkDisplay(((VLong) copy).getDisplay());
+            }
+            else if (value instanceof VEnum)
+            {
+                assertThat(((VEnum) copy).getIndex(), equalTo(1));
+                assertThat(((VEnum) copy).getDisplay().getChoices(), equalTo(List.of("Off", "On")));
+            }
+            else if (value instanceof VString)
+                assertThat(((VString) copy).getValue(), equalTo("Hello, Dolly"));
+            else if (value instanceof VByteArray)
+            {
+                assertThat(copy, instanceOf(VByteArray.class));
+                final VByteArray array = (VByteArray) copy;
+                assertThat(array.getData().size(), equalTo(3));
+                assertThat(array.getData().getByte(1), equalTo((byte) -2));
+                assertThat(array.getData().getByte(2), equalTo((byte) 127));
+                checkDisplay(array.getDisplay());
+            }
+            else if (value instanceof VNumberArray)
+            {
+                assertThat(copy, instanceOf(VDoubleArray.class));
+                final VDoubleArray array = (VDoubleArray) copy;
+                assertThat(array.getData().size(), equalTo(3));
+                assertThat(array.getData().getDouble(0), equalTo(1.5));
+                assertThat(array.getData().getDouble(1), equalTo(-2.5));
+                assertThat(Double.isNaN(array.getData().getDouble(2)), equalTo(true));
+                checkDisplay(array.getDisplay());
+            }
+            else
+                assertThat(((VStringArray) copy).getData(), equalTo(List.of("a", "", "µA")));
+        }
+        assertThat(spool.read(), nullValue());
+        spool.close();
+    }
+
+    @Test
+    public void testNoMetaData() throws Exception
+    {
+        final SampleSpool spool = new SampleSpool(directory, 100000);
+        spool.add("test", null, VDouble.of(1.0, Alarm.none(), Time.of(START), Display.none()));
+        final SampleSpool.Sample sample = spool.read();
+        assertThat(sample.retention, nullValue());
+        final Display display = ((VDouble) sample.value).getDisplay();
+        assertThat(Double.isNaN(display.getDisplayRange().getMinimum()), equalTo(true));
+        assertThat(Alarm.alarmOf(sample.value).getSeverity(), equalTo(AlarmSeverity.NONE));
+        spool.close();
+    }
+
+    @Test
+    public void testCommitRollback() throws Exception
+    {
+        // Small segments, so samples are spread over several files
+        final SampleSpool spool = new SampleSpool(directory, 500);
+        final int N = 50;
+        for (int i=0; i<N; ++i)
+            spool.add("test", "default", createDouble(i));
+        final int files = countFiles();
+        System.out.println(N + " samples in " + files + " files");
+        assertThat(files > 3, equalTo(true));
+
+        // Read some, roll back, then read them again
+        final long size = spool.getSize();
+        for (int i=0; i<20; ++i)
+            assertThat(((VDouble) spool.read().value).getValue(), equalTo((double) i));
+        spool.rollback();
+        assertThat(spool.getSize(), equalTo(size));
+        assertThat(countFiles(), equalTo(files));
+        for (int i=0; i<20; ++i)
+            assertThat(((VDouble) spool.read().value).getValue(), equalTo((double) i));
+
+        // Commit removes the replayed files, next read continues
+        spool.commit();
+        assertThat(spool.getSize() < size, equalTo(true));
+        assertThat(countFiles() < files, equalTo(true));
+        spool.rollback();
+        assertThat(((VDouble) spool.read().value).getValue(), equalTo(20.0));
+        spool.rollback();
+
+        // Committed samples are gone after re-opening, the rest remains
+        spool.close();
+        final SampleSpool reopened = new SampleSpool(directory, 500);
+        for (int i=20; i<N; ++i)
+            assertThat(((VDouble) reopened.read().value).getValue(), equalTo((double) i));
+        assertThat(reopened.read(), nullValue());
+        reopened.commit();
+        assertThat(reopened.isEmpty(), equalTo(true));
+        // Only the last, written segment remains
+        assertThat(countFiles(), equalTo(1));
+        reopened.close();
+    }
+
+    @Test
+    public void testPartialSegment() throws Exception
+    {
+        SampleSpool spool = new SampleSpool(directory, 10000);
+        for (int i=0; i<3; ++i)
+            spool.add("test", "default", createDouble(i));
+        // Header, then the records
+        final long end = 8 + spool.getSize();
+        spool.close();
+
+        // Simulate a crash while writing a record:
+        // Data of the next record is there, but not its length.
+        final File file = directory.listFiles()[0];
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.seek(end);
+            assertThat(access.readInt(), equalTo(0));
+            for (int i=0; i<20; ++i)
+                access.writeInt(0xDEADBEEF);
+        }
+
+        // Complete samples are read, then new samples are appended
+        spool = new SampleSpool(directory, 10000);
+        assertThat(spool.getSize(), equalTo(end - 8));
+        spool.add("test", "default", createDouble(3));
+        final long new_end = 8 + spool.getSize();
+        for (int i=0; i<4; ++i)
+            assertThat(((VDouble) spool.read().value).getValue(), equalTo((double) i));
+        assertThat(spool.read(), nullValue());
+        spool.close();
+
+        // Length that exceeds the file is also ignored
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw"))
+        {
+            access.seek(new_end);
+            access.writeInt(1000000);
+        }
+        spool = new SampleSpool(directory, 10000);
+        for (int i=0; i<4; ++i)
+            assertThat(((VDouble) spool.read().value).getValue(), equalTo((double) i));
+        assertThat(spool.read(), nullValue());
+        spool.commit();
+        spool.close();
+
+        // Replayed file is removed when opened again
+        spool = new SampleSpool(directory, 10000);
+        assertThat(spool.isEmpty(), equalTo(true));
+        assertThat(countFiles(), equalTo(0));
+        spool.close();
+    }
+
+    @Test
+    public void testSegmentSize()
+    {
+        assertThat(SampleSpool.getSegmentSize(64), equalTo(64 * 1024 * 1024));
+        assertThat(SampleSpool.getSegmentSize(SampleSpool.MAX_SEGMENT_MB), equalTo(2047 * 1024 * 1024));
+        // Sizes that don't fit into one mapped buffer are limited, not overflowed
+        assertThat(SampleSpool.getSegmentSize(2048), equalTo(2047 * 1024 * 1024));
+        assertThat(SampleSpool.getSegmentSize(5000), equalTo(2047 * 1024 * 1024));
+        assertThat(SampleSpool.getSegmentSize(0), equalTo(1024 * 1024));
+        assertThat(SampleSpool.getSegmentSize(-1), equalTo(1024 * 1024));
+    }
+
+    @Test
+    public void testDelete() throws Exception
+    {
+        final File sub = new File(directory, "WriteThread_3");
+        SampleSpool spool = new SampleSpool(sub, 1000);
+        for (int i=0; i<100; ++i)
+            spool.add("test", "default", createDouble(i));
+        spool.close();
+
+        // Replay all, then remove the spool
+        spool = new SampleSpool(sub, 1000);
+        for (int i=0; i<100; ++i)
+            assertThat(((VDouble) spool.read().value).getValue(), equalTo((double) i));
+        spool.commit();
+        assertThat(spool.isEmpty(), equalTo(true));
+        spool.delete();
+        assertThat(sub.exists(), equalTo(false));
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link WriteThreadPool}
+ */
+@SuppressWarnings("nls")
+public class WriteThreadPoolTest
+{
+    private static void createSpoolFile(final File directory) throws Exception
+    {
+        directory.mkdirs();
+        new File(directory, "spool-000000000001.dat").createNewFile();
+    }
+
+    private static void delete(final File file)
+    {
+        final File[] files = file.listFiles();
+        if (files != null)
+            for (File sub : files)
+                delete(sub);
+        file.delete();
+    }
+
+    @Test
+    public void testOtherSpoolDirectories() throws Exception
+    {
+        final File directory = Files.createTempDirectory("spool").toFile();
+        try
+        {
+            // Spools from a previous run with one and with three threads
+            createSpoolFile(new File(directory, "WriteThread"));
+            createSpoolFile(new File(directory, "WriteThread_1"));
+            createSpoolFile(new File(directory, "WriteThread_2"));
+            createSpoolFile(new File(directory, "WriteThread_3"));
+            // Directory without spool files
+            new File(directory, "Other").mkdirs();
+
+            // Now running two threads
+            final List<File> others = WriteThreadPool.getOtherSpoolDirectories(directory, Set.of("WriteThread_1", "WriteThread_2"));
+            assertThat(others, equalTo(List.of(new File(directory, "WriteThread"),
+                                               new File(directory, "WriteThread_3"))));
+
+            // Missing spool directory
+            assertThat(WriteThreadPool.getOtherSpoolDirectories(new File(directory, "Missing"), Set.of()).size(), equalTo(0));
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.scanner;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link Scanner}
+ */
+@SuppressWarnings("nls")
+public class ScannerTest
+{
+    /** Check next due time */
+    @Test
+    public void testNextDueTime()
+    {
+        // Next period
+        assertThat(Scanner.getNextDueTime(1000, 100, 1050), equalTo(1100L));
+        assertThat(Scanner.getNextDueTime(1000, 100, 1000), equalTo(1100L));
+        // Missed scans are skipped, keeping the phase
+        assertThat(Scanner.getNextDueTime(1000, 100, 1100), equalTo(1200L));
+        assertThat(Scanner.getNextDueTime(1030, 100, 1555), equalTo(1630L));
+        assertThat(Scanner.getNextDueTime(1030, 100, 1630), equalTo(1730L));
+    }
+
+    /** Check that items are spread over their period and keep their phase,
+     *  also when scanning starts late
+     */
+    @Test
+    public void testScan() throws Exception
+    {
+        final long period = 200;
+        final int items = 8;
+        final Scanner scanner = new Scanner(2);
+        final List<List<Long>> runs = new ArrayList<>();
+        for (int i=0; i<items; ++i)
+        {
+            final List<Long> times = new ArrayList<>();
+            runs.add(times);
+            scanner.add(() ->
+            {
+                synchronized (times)
+                {
+                    times.add(System.currentTimeMillis());
+                }
+            }, period / 1000.0);
+        }
+        assertThat(scanner.size(), equalTo((long) items));
+
+        // Start a few periods after the items were added
+        Thread.sleep(3 * period);
+        final long end = System.currentTimeMillis() + 6 * period + period / 2;
+        while (System.currentTimeMillis() < end)
+            scanner.scanOnce();
+        scanner.stop();
+
+        final Set<Long> phases = new HashSet<>();
+        for (List<Long> times : runs)
+        {
+            synchronized (times)
+            {
+                System.out.println(times);
+                // First run is right at the start, then once per period
+                assertThat(times.size(), greaterThanOrEqualTo(5));
+                final int last = times.size() - 1;
+                final long average = (times.get(last) - times.get(1)) / (last - 1);
+                assertThat(Math.abs(average - period), lessThanOrEqualTo(period / 10));
+                // Phase in units of 2 ticks
+                phases.add((times.get(last) % period) / (2 * TimerWheel.TICK));
+            }
+        }
+        // Items are spread over the period, not bunched up
+        System.out.println("Phases: " + phases);
+        assertThat(phases.size(), greaterThanOrEqualTo(items / 2));
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.scanner;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.csstudio.archive.engine.scanner.TimerWheel.Timer;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link TimerWheel}
+ */
+@SuppressWarnings("nls")
+public class TimerWheelTest
+{
+    /** Start time, a multiple of the tick */
+    private static final long START = 1700000000000L;
+
+    private static final Runnable NOP = () -> {};
+
+    /** Check that timer expires at its due time, not earlier
+     *  @param wheel Wheel that's at START
+     *  @param delay Delay of the timer from START in millis
+     */
+    private static void checkExpiration(final TimerWheel wheel, final long delay)
+    {
+        final Timer timer = new Timer(NOP, 1000, START + delay);
+        final List<Timer> expired = new ArrayList<>();
+        wheel.add(timer, expired);
+        assertThat(expired.size(), equalTo(0));
+
+        wheel.advance(START + delay - 1, expired);
+        assertThat(expired.size(), equalTo(0));
+        wheel.advance(START + delay, expired);
+        assertThat(expired, equalTo(List.of(timer)));
+    }
+
+    @Test
+    public void testLevels()
+    {
+        final long[] delays =
+        {
+            TimerWheel.TICK,
+            // Last tick of the first wheel
+            255 * TimerWheel.TICK,
+            // First tick of the second wheel
+            256 * TimerWheel.TICK,
+            // Third wheel
+            1000L * 1000,
+            // Fourth wheel, 3 hours
+            3L * 60 * 60 * 1000,
+            // Just within the last wheel
+            ((1L << 26) - 1) * TimerWheel.TICK,
+        };
+        for (long delay : delays)
+            checkExpiration(new TimerWheel(START), delay);
+    }
+
+    @Test
+    public void testBeyondMaxTicks()
+    {
+        // All wheels cover 2^26 ticks, about 7.7 days
+        checkExpiration(new TimerWheel(START), (1L << 26) * TimerWheel.TICK);
+        checkExpiration(new TimerWheel(START), 10L * 24 * 60 * 60 * 1000);
+        checkExpiration(new TimerWheel(START), 3 * (1L << 26) * TimerWheel.TICK + 7 * TimerWheel.TICK);
+    }
+
+    @Test
+    public void testUnalignedTimes()
+    {
+        // Wheel not started on a tick
+        final long start = START + 3;
+        final TimerWheel wheel = new TimerWheel(start);
+
+        // Timer that's not due on a tick expires on the following tick
+        final Timer timer = new Timer(NOP, 1000, start + 52);
+        final List<Timer> expired = new ArrayList<>();
+        wheel.add(timer, expired);
+        wheel.advance(START + 59, expired);
+        assertThat(expired.size(), equalTo(0));
+        wheel.advance(START + 60, expired);
+        assertThat(expired, equalTo(List.of(timer)));
+
+        // Timer that's already due expires right away
+        expired.clear();
+        final Timer past = new Timer(NOP, 1000, START);
+        wheel.add(past, expired);
+        assertThat(expired, equalTo(List.of(past)));
+    }
+
+    @Test
+    public void testCancel()
+    {
+        final TimerWheel wheel = new TimerWheel(START);
+        final List<Timer> expired = new ArrayList<>();
+        final List<Timer> timers = new ArrayList<>();
+        // Timers on each wheel, then cancel every other one
+        for (long delay : new long[] { 50, 60, 5000, 6000, 1000000, 1100000, 20000000, 21000000 })
+        {
+            final Timer timer = new Timer(NOP, 1000, START + delay);
+            wheel.add(timer, expired);
+            timers.add(timer);
+        }
+        for (int i=0; i<timers.size(); i+=2)
+            timers.get(i).cancelled = true;
+
+        wheel.advance(START + 21000000, expired);
+        final List<Timer> remaining = new ArrayList<>();
+        for (int i=1; i<timers.size(); i+=2)
+            remaining.add(timers.get(i));
+        assertThat(expired, equalTo(remaining));
+
+        // Clearing the wheel removes all timers
+        expired.clear();
+        wheel.add(new Timer(NOP, 1000, START + 21000000 + 5000), expired);
+        wheel.clear();
+        wheel.advance(START + 22000000, expired);
+        assertThat(expired.size(), equalTo(0));
+    }
+
+    @Test
+    public void testPeriodic()
+    {
+        // Like the Scanner, re-schedule each timer when it expires
+        final TimerWheel wheel = new TimerWheel(START);
+        final List<Timer> expired = new ArrayList<>();
+        final long[] periods = { 10, 100, 1000, 2570, 60000, 600000, 3600000 };
+        final Map<Timer, Integer> runs = new HashMap<>();
+        for (long period : periods)
+        {
+            final Timer timer = new Timer(NOP, period, START + period);
+            wheel.add(timer, expired);
+            runs.put(timer, 0);
+        }
+
+        final long end = START + 2 * 3600000;
+        for (long time = START;  time <= end;  time += TimerWheel.TICK)
+        {
+            wheel.advance(time, expired);
+            for (Timer timer : expired)
+            {
+                // Each run happens on time
+                assertThat(timer.due, equalTo(time));
+                runs.put(timer, runs.get(timer) + 1);
+                timer.due += timer.period;
+                final List<Timer> again = new ArrayList<>();
+                wheel.add(timer, again);
+                assertThat(again.size(), equalTo(0));
+            }
+            expired.clear();
+        }
+
+        for (Timer timer : runs.keySet())
+        {
+            System.out.println("Period " + timer.period + " ms: " + runs.get(timer) + " runs");
+            assertThat(runs.get(timer), equalTo((int) ((end - START) / timer.period)));
+        }
+    }
+}
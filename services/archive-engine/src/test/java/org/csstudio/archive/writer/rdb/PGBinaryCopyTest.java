@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer.rdb;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link PGBinaryCopyPreparedStatement} encoding
+ *
+ *  <p>Uses a connection that only provides the column meta data,
+ *  then checks the bytes of the binary COPY data.
+ */
+@SuppressWarnings("nls")
+public class PGBinaryCopyTest
+{
+    private static final String[][] COLUMNS =
+    {
+        { "id",    "int4" },
+        { "value", "float8" },
+        { "time",  "timestamptz" },
+        { "text",  "text" },
+        { "flag",  "bool" },
+        { "small", "int2" },
+        { "data",  "bytea" },
+        { "big",   "int8" },
+    };
+
+    /** @return Connection that only supports the column meta data of the test table */
+    private static Connection createConnection()
+    {
+        final int[] row = { -1 };
+        final ResultSet columns = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+            (proxy, method, args) ->
+            {
+                switch (method.getName())
+                {
+                case "next":
+                    return ++row[0] < COLUMNS.length;
+                case "getString":
+                    return "COLUMN_NAME".equals(args[0]) ? COLUMNS[row[0]][0] : COLUMNS[row[0]][1];
+                case "getInt":
+                    return row[0] + 1;
+                default:
+                    return null;
+                }
+            });
+        final DatabaseMetaData meta = (DatabaseMetaData) Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+            (proxy, method, args) -> "getColumns".equals(method.getName()) ? columns : null);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> "getMetaData".equals(method.getName()) ? meta : null);
+    }
+
+    private static PGBinaryCopyPreparedStatement createStatement() throws Exception
+    {
+        return new PGBinaryCopyPreparedStatement(createConnection(),
+            "INSERT INTO test (id, value, time, text, flag, small, data, big) VALUES (?,?,?,?,?,?,?,?)");
+    }
+
+    private static void checkHeader(final ByteBuffer data)
+    {
+        final byte[] signature = new byte[11];
+        data.get(signature);
+        assertThat(signature, equalTo(new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 }));
+        // Flags, header extension length
+        assertThat(data.getInt(), equalTo(0));
+        assertThat(data.getInt(), equalTo(0));
+    }
+
+    @Test
+    public void testRows() throws Exception
+    {
+        final PGBinaryCopyPreparedStatement statement = createStatement();
+        // 2000-01-01 00:00:01.000002 UTC is 1000002 microseconds into the PostgreSQL epoch
+        final Timestamp time = Timestamp.from(Instant.parse("2000-01-01T00:00:01.000002Z"));
+        statement.setInt(1, 42);
+        statement.setDouble(2, 3.14);
+        statement.setTimestamp(3, time);
+        statement.setString(4, "Hi");
+        statement.setBoolean(5, true);
+        statement.setNull(6, java.sql.Types.SMALLINT);
+        statement.setBytes(7, new byte[] { 1, 2, 3 });
+        statement.setLong(8, -2L);
+        statement.addBatch();
+
+        // Second row: Parameters were cleared, set only some
+        statement.setShort(6, (short) -7);
+        statement.setFloat(2, 1.5f);
+        statement.addBatch();
+
+        final ByteBuffer data = ByteBuffer.wrap(statement.getCopyData());
+        checkHeader(data);
+
+        // First row
+        assertThat(data.getShort(), equalTo((short) COLUMNS.length));
+        assertThat(data.getInt(), equalTo(4));
+        assertThat(data.getInt(), equalTo(42));
+        assertThat(data.getInt(), equalTo(8));
+        assertThat(data.getDouble(), equalTo(3.14));
+        assertThat(data.getInt(), equalTo(8));
+        assertThat(data.getLong(), equalTo(1000002L));
+        assertThat(data.getInt(), equalTo(2));
+        assertThat(data.get(), equalTo((byte) 'H'));
+        assertThat(data.get(), equalTo((byte) 'i'));
+        assertThat(data.getInt(), equalTo(1));
+        assertThat(data.get(), equalTo((byte) 1));
+        assertThat(data.getInt(), equalTo(-1));
+        assertThat(data.getInt(), equalTo(3));
+        final byte[] bytes = new byte[3];
+        data.get(bytes);
+        assertThat(bytes, equalTo(new byte[] { 1, 2, 3 }));
+        assertThat(data.getInt(), equalTo(8));
+        assertThat(data.getLong(), equalTo(-2L));
+
+        // Second row
+        assertThat(data.getShort(), equalTo((short) COLUMNS.length));
+        assertThat(data.getInt(), equalTo(-1));
+        assertThat(data.getInt(), equalTo(8));
+        assertThat(data.getDouble(), equalTo(1.5));
+        for (int i=0; i<3; ++i)
+            assertThat(data.getInt(), equalTo(-1));
+        assertThat(data.getInt(), equalTo(2));
+        assertThat(data.getShort(), equalTo((short) -7));
+        for (int i=0; i<2; ++i)
+            assertThat(data.getInt(), equalTo(-1));
+
+        // Trailer
+        assertThat(data.getShort(), equalTo((short) -1));
+        assertThat(data.remaining(), equalTo(0));
+    }
+
+    @Test
+    public void testClearedBatch() throws Exception
+    {
+        final PGBinaryCopyPreparedStatement statement = createStatement();
+        statement.setInt(1, 1);
+        statement.addBatch();
+        statement.getCopyData();
+
+        // After getting the data, batch is empty: Just header and trailer
+        final ByteBuffer data = ByteBuffer.wrap(statement.getCopyData());
+        checkHeader(data);
+        assertThat(data.getShort(), equalTo((short) -1));
+        assertThat(data.remaining(), equalTo(0));
+    }
+
+    @Test
+    public void testLargeBatch() throws Exception
+    {
+        // Grows the initial 64k buffer
+        final PGBinaryCopyPreparedStatement statement = createStatement();
+        final byte[] blob = new byte[1000];
+        Arrays.fill(blob, (byte) 7);
+        final int N = 200;
+        for (int i=0; i<N; ++i)
+        {
+            statement.setInt(1, i);
+            statement.setBytes(7, blob);
+            statement.addBatch();
+        }
+        final ByteBuffer data = ByteBuffer.wrap(statement.getCopyData());
+        checkHeader(data);
+        for (int i=0; i<N; ++i)
+        {
+            assertThat(data.getShort(), equalTo((short) COLUMNS.length));
+            assertThat(data.getInt(), equalTo(4));
+            assertThat(data.getInt(), equalTo(i));
+            for (int c=1; c<6; ++c)
+                assertThat(data.getInt(), equalTo(-1));
+            assertThat(data.getInt(), equalTo(blob.length));
+            data.position(data.position() + blob.length);
+            assertThat(data.getInt(), equalTo(-1));
+        }
+        assertThat(data.getShort(), equalTo((short) -1));
+    }
+
+    @Test
+    public void testErrors() throws Exception
+    {
+        final PGBinaryCopyPreparedStatement statement = createStatement();
+        // Out of range for int2
+        assertThrows(SQLException.class, () -> statement.setInt(6, 100000));
+        // Wrong type
+        assertThrows(SQLException.class, () -> statement.setString(1, "text"));
+        assertThrows(SQLException.class, () -> statement.setBytes(4, new byte[1]));
+        // No such parameter
+        assertThrows(SQLException.class, () -> statement.setInt(9, 1));
+        assertThrows(SQLException.class, () -> statement.setInt(0, 1));
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2024 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer.rdb;
+
+import java.time.Instant;
+
+import org.csstudio.archive.Preferences;
+import org.csstudio.archive.writer.WriteChannel;
+import org.epics.util.array.ArrayDouble;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VType;
+import org.phoebus.framework.rdb.RDBInfo;
+import org.phoebus.framework.rdb.RDBInfo.Dialect;
+
+/** Throughput of text vs. binary COPY
+ *
+ *  <p>Writes samples via the CSV {@link PGCopyPreparedStatement}
+ *  and the {@link PGBinaryCopyPreparedStatement}
+ *  into the PostgreSQL archive configured in the preferences,
+ *  and prints the samples per second for each.
+ *
+ *  <p>Not a unit test because it writes into the configured archive.
+ */
+@SuppressWarnings("nls")
+public class PGCopyDemo
+{
+    private static final int BATCH = 5000, RUNS = 20;
+
+    private static final String name = "jane";
+
+    private static double write(final boolean binary, final boolean array) throws Exception
+    {
+        Preferences.use_postgres_copy = true;
+        Preferences.use_postgres_binary_copy = binary;
+        final RDBArchiveWriter writer = new RDBArchiveWriter(Preferences.url, Preferences.user, Preferences.password, Preferences.schema, Preferences.use_array_blob);
+        try
+        {
+            final WriteChannel channel = writer.getChannel(name);
+            // Unique time stamps for each sample of each run
+            final Instant start = Instant.now().plusSeconds(binary ? 1000 : 0).plusSeconds(array ? 2000 : 0);
+            final long begin = System.nanoTime();
+            for (int run=0; run<RUNS; ++run)
+            {
+                for (int i=0; i<BATCH; ++i)
+                {
+                    final Time time = Time.of(start.plusNanos((run * BATCH + i) * 1000L));
+                    final VType value = array
+                        ? VDoubleArray.of(ArrayDouble.of(i, 1, 2, 3, 4, 5, 6, 7, 8, 9), Alarm.none(), time, Display.none())
+                        : VDouble.of(Math.sin(i * 0.01), Alarm.none(), time, Display.none());
+                    writer.addSample(channel, value);
+                }
+                writer.flush();
+            }
+            return RUNS * BATCH / ((System.nanoTime() - begin) / 1e9);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (new RDBInfo(Preferences.url, Preferences.user, Preferences.password).getDialect() != Dialect.PostgreSQL)
+        {
+            System.out.println("Need PostgreSQL archive, check " + Preferences.url);
+            return;
+        }
+        // Warm up
+        write(false, false);
+        write(true, false);
+        for (boolean array : new boolean[] { false, true })
+        {
+            final double text = write(false, array);
+            final double binary = write(true, array);
+            System.out.format("%-7s text COPY: %,10.0f samples/sec, binary COPY: %,10.0f samples/sec (%.1fx)\n",
+                              array ? "Arrays" : "Scalars", text, binary, binary / text);
+        }
+    }
+}